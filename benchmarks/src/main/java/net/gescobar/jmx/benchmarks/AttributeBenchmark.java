@@ -0,0 +1,135 @@
+package net.gescobar.jmx.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.impl.MBeanFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>getAttribute</code>, <code>setAttribute</code> and <code>getAttributes</code> on the DynamicMBean 
+ * created from an annotated object, against a hand-written StandardMBean. The MBeans are called directly and 
+ * through the platform MBeanServer.
+ * 
+ * @author German Escobar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AttributeBenchmark {
+	
+	private static final String[] ATTRIBUTES = { "counter", "name", "enabled" };
+
+	private DynamicMBean annotated;
+	
+	private DynamicMBean standard;
+	
+	private Attribute primitiveValue;
+	
+	private Attribute objectValue;
+	
+	private MBeanServer mBeanServer;
+	
+	private ObjectName annotatedName;
+	
+	private ObjectName standardName;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		annotated = MBeanFactory.createMBean( new Counter() );
+		standard = new StandardMBean( new StandardCounter(), StandardCounterMBean.class );
+		
+		primitiveValue = new Attribute("counter", 10);
+		objectValue = new Attribute("name", "benchmark");
+		
+		mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		String suffix = ",thread=" + Thread.currentThread().getId();
+		annotatedName = new ObjectName("net.gescobar.jmx.benchmarks:type=AttributeAnnotated" + suffix);
+		standardName = new ObjectName("net.gescobar.jmx.benchmarks:type=AttributeStandard" + suffix);
+		
+		Management.register( new Counter(), annotatedName.toString() );
+		mBeanServer.registerMBean( new StandardCounter(), standardName );
+		
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		Management.unregister( annotatedName.toString() );
+		mBeanServer.unregisterMBean(standardName);
+	}
+	
+	@Benchmark
+	public Object getAttribute() throws Exception {
+		return annotated.getAttribute("counter");
+	}
+	
+	@Benchmark
+	public Object getAttributeStandardMBean() throws Exception {
+		return standard.getAttribute("counter");
+	}
+	
+	@Benchmark
+	public void setPrimitiveAttribute() throws Exception {
+		annotated.setAttribute(primitiveValue);
+	}
+	
+	@Benchmark
+	public void setPrimitiveAttributeStandardMBean() throws Exception {
+		standard.setAttribute(primitiveValue);
+	}
+	
+	@Benchmark
+	public void setObjectAttribute() throws Exception {
+		annotated.setAttribute(objectValue);
+	}
+	
+	@Benchmark
+	public void setObjectAttributeStandardMBean() throws Exception {
+		standard.setAttribute(objectValue);
+	}
+	
+	@Benchmark
+	public AttributeList getAttributes() {
+		return annotated.getAttributes(ATTRIBUTES);
+	}
+	
+	@Benchmark
+	public AttributeList getAttributesStandardMBean() {
+		return standard.getAttributes(ATTRIBUTES);
+	}
+	
+	@Benchmark
+	public Object getAttributeThroughServer() throws Exception {
+		return mBeanServer.getAttribute(annotatedName, "counter");
+	}
+	
+	@Benchmark
+	public Object getAttributeThroughServerStandardMBean() throws Exception {
+		return mBeanServer.getAttribute(standardName, "counter");
+	}
+	
+}
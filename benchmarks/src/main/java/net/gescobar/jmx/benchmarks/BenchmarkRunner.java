@@ -0,0 +1,35 @@
+package net.gescobar.jmx.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks (or the ones matching the regular expression received as the first argument) with the GC
+ * profiler enabled, so the allocation rate (<code>gc.alloc.rate.norm</code>, in bytes per operation) is reported 
+ * next to the time of each benchmark.
+ * 
+ * @author German Escobar
+ */
+public final class BenchmarkRunner {
+	
+	/**
+	 * Hide public constructor.
+	 */
+	private BenchmarkRunner() {}
+
+	public static void main(String[] args) throws Exception {
+		
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+		
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build();
+		
+		new Runner(options).run();
+		
+	}
+	
+}
@@ -0,0 +1,66 @@
+package net.gescobar.jmx.benchmarks;
+
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * The annotated object used by the benchmarks. {@link StandardCounter} exposes exactly the same attributes and
+ * operations as a hand-written StandardMBean.
+ * 
+ * @author German Escobar
+ */
+@Description("Benchmark counter")
+public class Counter {
+
+	private int counter;
+	
+	private String name = "counter";
+	
+	private boolean enabled = true;
+	
+	@ManagedAttribute
+	public int getCounter() {
+		return counter;
+	}
+
+	public void setCounter(int counter) {
+		this.counter = counter;
+	}
+
+	@ManagedAttribute
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@ManagedAttribute
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	@ManagedOperation(impact=Impact.ACTION)
+	public void reset() {
+		counter = 0;
+	}
+	
+	@ManagedOperation(impact=Impact.ACTION)
+	public int increment(int delta) {
+		counter += delta;
+		return counter;
+	}
+	
+	@ManagedOperation(impact=Impact.INFO)
+	public String label(String prefix) {
+		return prefix;
+	}
+	
+}
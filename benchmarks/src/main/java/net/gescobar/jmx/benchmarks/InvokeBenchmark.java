@@ -0,0 +1,87 @@
+package net.gescobar.jmx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.DynamicMBean;
+import javax.management.StandardMBean;
+
+import net.gescobar.jmx.impl.MBeanFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>invoke</code> of operations without parameters, with a primitive parameter and with an object 
+ * parameter on the DynamicMBean created from an annotated object, against a hand-written StandardMBean.
+ * 
+ * @author German Escobar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvokeBenchmark {
+	
+	private static final Object[] NO_PARAMS = new Object[0];
+	
+	private static final String[] NO_SIGNATURE = new String[0];
+	
+	private static final Object[] PRIMITIVE_PARAMS = { 1 };
+	
+	private static final String[] PRIMITIVE_SIGNATURE = { "int" };
+	
+	private static final Object[] OBJECT_PARAMS = { "benchmark" };
+	
+	private static final String[] OBJECT_SIGNATURE = { String.class.getName() };
+
+	private DynamicMBean annotated;
+	
+	private DynamicMBean standard;
+	
+	@Setup
+	public void setup() throws Exception {
+		annotated = MBeanFactory.createMBean( new Counter() );
+		standard = new StandardMBean( new StandardCounter(), StandardCounterMBean.class );
+	}
+	
+	@Benchmark
+	public Object invokeNoParams() throws Exception {
+		return annotated.invoke("reset", NO_PARAMS, NO_SIGNATURE);
+	}
+	
+	@Benchmark
+	public Object invokeNoParamsStandardMBean() throws Exception {
+		return standard.invoke("reset", NO_PARAMS, NO_SIGNATURE);
+	}
+	
+	@Benchmark
+	public Object invokePrimitive() throws Exception {
+		return annotated.invoke("increment", PRIMITIVE_PARAMS, PRIMITIVE_SIGNATURE);
+	}
+	
+	@Benchmark
+	public Object invokePrimitiveStandardMBean() throws Exception {
+		return standard.invoke("increment", PRIMITIVE_PARAMS, PRIMITIVE_SIGNATURE);
+	}
+	
+	@Benchmark
+	public Object invokeObject() throws Exception {
+		return annotated.invoke("label", OBJECT_PARAMS, OBJECT_SIGNATURE);
+	}
+	
+	@Benchmark
+	public Object invokeObjectStandardMBean() throws Exception {
+		return standard.invoke("label", OBJECT_PARAMS, OBJECT_SIGNATURE);
+	}
+	
+}
@@ -0,0 +1,93 @@
+package net.gescobar.jmx.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.impl.MBeanFactory;
+import net.gescobar.jmx.impl.MBeanImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the allocation rate of reading a primitive attribute: <code>getAttribute</code> (which boxes the value) 
+ * against the primitive reads of {@link MBeanImpl#getLong(String)} and 
+ * {@link Management#getLong(ObjectName, String)}. Run it with <code>-prof gc</code>, the primitive reads should 
+ * report a <code>gc.alloc.rate.norm</code> of 0 bytes per operation. The counter is set to a value that is not in the 
+ * cache of <code>Integer.valueOf</code>, so boxing allocates.
+ * 
+ * @author German Escobar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitiveReadBenchmark {
+	
+	private MBeanImpl annotated;
+	
+	private MBeanServer mBeanServer;
+	
+	private ObjectName name;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		Counter counter = new Counter();
+		counter.setCounter(100000);
+		annotated = (MBeanImpl) MBeanFactory.createMBean(counter);
+		
+		mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		name = new ObjectName("net.gescobar.jmx.benchmarks:type=PrimitiveRead,thread=" + 
+				Thread.currentThread().getId());
+		Management.register( counter, name.toString() );
+		
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		Management.unregister( name.toString() );
+	}
+	
+	@Benchmark
+	public Object getAttribute() throws Exception {
+		return annotated.getAttribute("counter");
+	}
+	
+	@Benchmark
+	public long getLong() throws Exception {
+		return annotated.getLong("counter");
+	}
+	
+	@Benchmark
+	public double getDouble() throws Exception {
+		return annotated.getDouble("counter");
+	}
+	
+	@Benchmark
+	public Object getAttributeThroughServer() throws Exception {
+		return mBeanServer.getAttribute(name, "counter");
+	}
+	
+	@Benchmark
+	public long getLongByName() {
+		return Management.getLong(name, "counter");
+	}
+	
+}
@@ -0,0 +1,85 @@
+package net.gescobar.jmx.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.DynamicMBean;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.impl.MBeanFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the creation of the DynamicMBean from an annotated object ({@link MBeanFactory#createMBean(Object)}) and 
+ * a full register/unregister cycle with {@link Management}, against a hand-written StandardMBean.
+ * 
+ * @author German Escobar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistrationBenchmark {
+
+	private MBeanServer mBeanServer;
+	
+	private String name;
+	
+	private ObjectName objectName;
+	
+	private Counter counter;
+	
+	private StandardCounter standardCounter;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		// one name per thread so the benchmark can run with many threads
+		name = "net.gescobar.jmx.benchmarks:type=Registration,thread=" + Thread.currentThread().getId();
+		objectName = new ObjectName(name);
+		
+		counter = new Counter();
+		standardCounter = new StandardCounter();
+		
+	}
+	
+	@Benchmark
+	public DynamicMBean createMBean() {
+		return MBeanFactory.createMBean(counter);
+	}
+	
+	@Benchmark
+	public DynamicMBean createStandardMBean() throws Exception {
+		return new StandardMBean(standardCounter, StandardCounterMBean.class);
+	}
+	
+	@Benchmark
+	public void registerAndUnregister() throws Exception {
+		Management.register(counter, name);
+		Management.unregister(name);
+	}
+	
+	@Benchmark
+	public void registerAndUnregisterStandardMBean() throws Exception {
+		mBeanServer.registerMBean(standardCounter, objectName);
+		mBeanServer.unregisterMBean(objectName);
+	}
+	
+}
@@ -0,0 +1,62 @@
+package net.gescobar.jmx.benchmarks;
+
+/**
+ * The hand-written StandardMBean baseline. It has the same attributes and operations as {@link Counter}.
+ * 
+ * @author German Escobar
+ */
+public class StandardCounter implements StandardCounterMBean {
+
+	private int counter;
+	
+	private String name = "counter";
+	
+	private boolean enabled = true;
+	
+	@Override
+	public int getCounter() {
+		return counter;
+	}
+
+	@Override
+	public void setCounter(int counter) {
+		this.counter = counter;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public void reset() {
+		counter = 0;
+	}
+
+	@Override
+	public int increment(int delta) {
+		counter += delta;
+		return counter;
+	}
+
+	@Override
+	public String label(String prefix) {
+		return prefix;
+	}
+	
+}
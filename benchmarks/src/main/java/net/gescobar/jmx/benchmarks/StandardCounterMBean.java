@@ -0,0 +1,28 @@
+package net.gescobar.jmx.benchmarks;
+
+/**
+ * The management interface of {@link StandardCounter}.
+ * 
+ * @author German Escobar
+ */
+public interface StandardCounterMBean {
+
+	int getCounter();
+	
+	void setCounter(int counter);
+	
+	String getName();
+	
+	void setName(String name);
+	
+	boolean isEnabled();
+	
+	void setEnabled(boolean enabled);
+	
+	void reset();
+	
+	int increment(int delta);
+	
+	String label(String prefix);
+	
+}
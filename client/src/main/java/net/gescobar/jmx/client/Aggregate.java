@@ -0,0 +1,74 @@
+package net.gescobar.jmx.client;
+
+/**
+ * The sum, minimum, maximum and average of the numeric values of an attribute in the nodes of the cluster.
+ *
+ * @author German Escobar
+ */
+public final class Aggregate {
+
+	private long count;
+
+	private double sum;
+
+	private double min = Double.NaN;
+
+	private double max = Double.NaN;
+
+	Aggregate() {}
+
+	/**
+	 * Helper method. Adds a value to the aggregate.
+	 */
+	void add(double value) {
+
+		if (count == 0 || value < min) {
+			min = value;
+		}
+		if (count == 0 || value > max) {
+			max = value;
+		}
+
+		sum += value;
+		count++;
+
+	}
+
+	/**
+	 * @return the number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return the minimum value or <code>NaN</code> if there are no values.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * @return the maximum value or <code>NaN</code> if there are no values.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the average of the values or <code>NaN</code> if there are no values.
+	 */
+	public double getAvg() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max + ", avg=" + getAvg();
+	}
+
+}
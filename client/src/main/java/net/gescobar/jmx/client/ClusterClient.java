@@ -0,0 +1,355 @@
+package net.gescobar.jmx.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * <p>Reads attributes from many JMX agents (e.g. all the JVMs of a cluster) in parallel and merges the results, so
+ * the time of a read is the time of the slowest node instead of the sum of all of them.</p>
+ *
+ * <pre>
+ * ClusterClient client = new ClusterClient(urls);
+ *
+ * ReadResult result = client.read( new ObjectName("org.test:type=Statistics,*"), "requests" );
+ * double total = result.aggregate("requests").getSum();
+ *
+ * client.close();
+ * </pre>
+ *
+ * <p>The connections are kept open between reads (a connection that fails is reopened in the next read) and the
+ * <code>MBeanInfo</code> of each MBean is retrieved only once. The attributes of each MBean are read with one
+ * <code>getAttributes</code> call. A node that fails or doesn't answer before the timeout doesn't fail the read:
+ * its {@link NodeResult} has the error instead of the values.</p>
+ *
+ * <p>A node whose previous read is still running (a thread blocked on a node that doesn't answer can't be
+ * interrupted) is not read again, its result is a <code>TimeoutException</code>, so a hung node takes at most one
+ * thread. The lookup of the connectors in the RMI registry times out after the timeout of the client; to time out the
+ * calls of a connector that hangs after it's connected, set the <code>sun.rmi.transport.tcp.responseTimeout</code>
+ * system property.</p>
+ *
+ * @author German Escobar
+ */
+public class ClusterClient {
+
+	/**
+	 * The default time to wait for the nodes in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT = 10000;
+
+	/**
+	 * The maximum number of threads used to read the nodes.
+	 */
+	public static final int MAX_THREADS = 32;
+
+	private final List<Endpoint> endpoints;
+
+	private final long timeout;
+
+	private final ExecutorService executor;
+
+	/**
+	 * Constructor. Creates a client with the default timeout and no credentials.
+	 *
+	 * @param urls the URLs of the JMX agents.
+	 */
+	public ClusterClient(List<JMXServiceURL> urls) {
+		this(urls, null, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param urls the URLs of the JMX agents.
+	 * @param environment the environment used to connect to the agents (e.g. the credentials), can be null. The
+	 * 	connect and request timeouts are added unless they are specified.
+	 * @param timeout the time to wait for the nodes in milliseconds.
+	 */
+	public ClusterClient(List<JMXServiceURL> urls, Map<String,?> environment, long timeout) {
+
+		if (urls == null || urls.isEmpty()) {
+			throw new IllegalArgumentException("No urls specified.");
+		}
+
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("The timeout must be positive.");
+		}
+
+		Map<String,?> withTimeouts = withTimeouts(environment, timeout);
+
+		List<Endpoint> endpoints = new ArrayList<Endpoint>();
+		for (JMXServiceURL url : urls) {
+			if (url == null) {
+				throw new IllegalArgumentException("No url specified.");
+			}
+			endpoints.add( new Endpoint(url, withTimeouts) );
+		}
+
+		this.endpoints = Collections.unmodifiableList(endpoints);
+		this.timeout = timeout;
+		this.executor = Executors.newFixedThreadPool( Math.min(endpoints.size(), MAX_THREADS), new ThreadFactory() {
+
+			private int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jmx-client-" + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+
+	}
+
+	/**
+	 * Helper method. Adds the timeouts to the environment used to connect to the agents, unless they are specified:
+	 * the socket factory of the RMI registry lookup and the request timeout of the connectors that support it.
+	 */
+	private static Map<String,?> withTimeouts(Map<String,?> environment, long timeout) {
+
+		Map<String,Object> withTimeouts = new HashMap<String,Object>();
+		int millis = (int) Math.min(timeout, Integer.MAX_VALUE);
+		withTimeouts.put( "com.sun.jndi.rmi.factory.socket", new TimeoutSocketFactory(millis) );
+		withTimeouts.put( "jmx.remote.x.request.waiting.timeout", Long.valueOf(timeout) );
+
+		if (environment != null) {
+			withTimeouts.putAll(environment);
+		}
+
+		return withTimeouts;
+
+	}
+
+	/**
+	 * Reads attributes of the MBeans that match a name in all the nodes.
+	 *
+	 * @param name the name of the MBeans, can be a pattern.
+	 * @param attributes the names of the attributes, all the readable attributes if none is specified.
+	 *
+	 * @return the merged result with the values of each node.
+	 */
+	public ReadResult read(ObjectName name, String... attributes) {
+
+		if (name == null) {
+			throw new IllegalArgumentException("No name specified.");
+		}
+
+		if (executor.isShutdown()) {
+			throw new IllegalStateException("Client closed.");
+		}
+
+		long start = System.nanoTime();
+
+		// null for the nodes whose previous read is still running
+		List<ReadTask> tasks = new ArrayList<ReadTask>();
+		List<Future<NodeResult>> futures = new ArrayList<Future<NodeResult>>();
+		for (Endpoint endpoint : endpoints) {
+
+			if (!endpoint.startRead()) {
+				tasks.add(null);
+				futures.add(null);
+				continue;
+			}
+
+			ReadTask task = new ReadTask(endpoint, name, attributes);
+			try {
+				futures.add( executor.submit(task) );
+				tasks.add(task);
+			} catch (RejectedExecutionException e) {
+				endpoint.endRead();
+				throw new IllegalStateException("Client closed.");
+			}
+
+		}
+
+		List<NodeResult> results = new ArrayList<NodeResult>();
+		for (int i=0; i < futures.size(); i++) {
+
+			Future<NodeResult> future = futures.get(i);
+			JMXServiceURL url = endpoints.get(i).getUrl();
+
+			if (future == null) {
+				results.add( new NodeResult(url, null, new TimeoutException("The previous read of the node is still " +
+						"running"), 0) );
+				continue;
+			}
+
+			long remaining = TimeUnit.MILLISECONDS.toNanos(timeout) - (System.nanoTime() - start);
+			try {
+				results.add( future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS) );
+			} catch (TimeoutException e) {
+				future.cancel(true);
+				tasks.get(i).cancelled();
+				results.add( new NodeResult(url, null, e, System.nanoTime() - start) );
+			} catch (ExecutionException e) {
+				Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				results.add( new NodeResult(url, null, cause, System.nanoTime() - start) );
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.cancel(true);
+				tasks.get(i).cancelled();
+				results.add( new NodeResult(url, null, e, System.nanoTime() - start) );
+			}
+
+		}
+
+		return new ReadResult(results);
+
+	}
+
+	/**
+	 * Helper method. Reads the attributes of the MBeans in one node. If an open connection fails, it's reopened and
+	 * the read is retried once, as the agent may have been restarted since the last read.
+	 */
+	private NodeResult read(Endpoint endpoint, ObjectName name, String[] attributes) {
+
+		long start = System.nanoTime();
+
+		boolean retry = endpoint.isConnected();
+		while (true) {
+			try {
+
+				Map<ObjectName,Map<String,Object>> values = read(endpoint, endpoint.connection(), name, attributes);
+				return new NodeResult(endpoint.getUrl(), values, null, System.nanoTime() - start);
+
+			} catch (IOException e) {
+
+				endpoint.disconnect();
+				if (!retry) {
+					return new NodeResult(endpoint.getUrl(), null, e, System.nanoTime() - start);
+				}
+				retry = false;
+
+			} catch (Exception e) {
+				return new NodeResult(endpoint.getUrl(), null, e, System.nanoTime() - start);
+			}
+		}
+
+	}
+
+	/**
+	 * Helper method. Reads the attributes of the MBeans that match a name using one connection.
+	 */
+	private Map<ObjectName,Map<String,Object>> read(Endpoint endpoint, MBeanServerConnection connection,
+			ObjectName name, String[] attributes) throws Exception {
+
+		Set<ObjectName> names = name.isPattern() ? connection.queryNames(name, null) : Collections.singleton(name);
+
+		Map<ObjectName,Map<String,Object>> values = new LinkedHashMap<ObjectName,Map<String,Object>>();
+		for (ObjectName mBeanName : names) {
+
+			AttributeList list;
+			try {
+				String[] attributeNames = attributes.length > 0 ? attributes :
+						endpoint.attributeNames(connection, mBeanName);
+				list = connection.getAttributes(mBeanName, attributeNames);
+			} catch (InstanceNotFoundException e) {
+
+				endpoint.forget(mBeanName);
+
+				// the MBean was unregistered after the query
+				if (name.isPattern()) {
+					continue;
+				}
+				throw e;
+
+			}
+
+			Map<String,Object> mBeanValues = new LinkedHashMap<String,Object>();
+			for (Object attribute : list) {
+				mBeanValues.put( ((Attribute) attribute).getName(), ((Attribute) attribute).getValue() );
+			}
+			values.put(mBeanName, mBeanValues);
+
+		}
+
+		return values;
+
+	}
+
+	/**
+	 * Reads one node. The node is released (see {@link Endpoint#endRead()}) when the read returns or, if the task is
+	 * cancelled before it starts, by {@link #cancelled()}.
+	 */
+	private class ReadTask implements Callable<NodeResult> {
+
+		private final Endpoint endpoint;
+
+		private final ObjectName name;
+
+		private final String[] attributes;
+
+		/**
+		 * Set by the first of the task and the cancellation, the one that releases the node.
+		 */
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		public ReadTask(Endpoint endpoint, ObjectName name, String[] attributes) {
+			this.endpoint = endpoint;
+			this.name = name;
+			this.attributes = attributes;
+		}
+
+		@Override
+		public NodeResult call() {
+
+			if (!started.compareAndSet(false, true)) {
+				return null;
+			}
+
+			try {
+				return read(endpoint, name, attributes);
+			} finally {
+				endpoint.endRead();
+			}
+
+		}
+
+		/**
+		 * Releases the node if the task was cancelled before it started, otherwise the task releases it when the read
+		 * returns.
+		 */
+		public void cancelled() {
+			if (started.compareAndSet(false, true)) {
+				endpoint.endRead();
+			}
+		}
+
+	}
+
+	/**
+	 * Closes the connections to the agents. The client cannot be used after it's closed.
+	 */
+	public void close() {
+
+		executor.shutdownNow();
+		for (Endpoint endpoint : endpoints) {
+			endpoint.disconnect();
+		}
+
+	}
+
+}
@@ -0,0 +1,162 @@
+package net.gescobar.jmx.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * A JMX agent of the cluster. Keeps the connection open between reads (JMX connections are thread safe and
+ * multiplex the calls, so one connection is shared by all the reads) and caches the names of the readable
+ * attributes of each MBean, taken from its <code>MBeanInfo</code>, so it's retrieved only once. Only one read of
+ * the agent runs at a time (see {@link #startRead()}).
+ *
+ * @author German Escobar
+ */
+class Endpoint {
+
+	private final JMXServiceURL url;
+
+	private final Map<String,?> environment;
+
+	/**
+	 * The open connection or null if we are not connected.
+	 */
+	private JMXConnector connector;
+
+	/**
+	 * The names of the readable attributes of each MBean.
+	 */
+	private final ConcurrentMap<ObjectName,String[]> attributeNames = new ConcurrentHashMap<ObjectName,String[]>();
+
+	/**
+	 * True while a read of the agent is queued or running.
+	 */
+	private final AtomicBoolean reading = new AtomicBoolean();
+
+	public Endpoint(JMXServiceURL url, Map<String,?> environment) {
+		this.url = url;
+		this.environment = environment;
+	}
+
+	public JMXServiceURL getUrl() {
+		return url;
+	}
+
+	/**
+	 * Marks the start of a read. A thread blocked on an agent that doesn't answer can't be interrupted (neither 
+	 * <code>JMXConnectorFactory.connect</code> nor the RMI calls respond to interrupts), so the agent is not read 
+	 * again until that thread returns; otherwise each read would block another thread on the same agent.
+	 *
+	 * @return true if the read can start, false if the previous read is still queued or running.
+	 */
+	public boolean startRead() {
+		return reading.compareAndSet(false, true);
+	}
+
+	/**
+	 * Marks the end of a read started with {@link #startRead()}.
+	 */
+	public void endRead() {
+		reading.set(false);
+	}
+
+	/**
+	 * @return true if the connection is open.
+	 */
+	public synchronized boolean isConnected() {
+		return connector != null;
+	}
+
+	/**
+	 * Retrieves the connection to the agent, connecting if it's not open.
+	 *
+	 * @return the connection to the agent.
+	 * @throws IOException if the agent cannot be reached.
+	 */
+	public synchronized MBeanServerConnection connection() throws IOException {
+
+		if (connector == null) {
+			connector = JMXConnectorFactory.connect(url, environment);
+		}
+
+		return connector.getMBeanServerConnection();
+
+	}
+
+	/**
+	 * Retrieves the names of the readable attributes of an MBean from its <code>MBeanInfo</code>, which is
+	 * retrieved only the first time.
+	 *
+	 * @param connection the connection to the agent.
+	 * @param name the name of the MBean.
+	 *
+	 * @return the names of the readable attributes.
+	 */
+	public String[] attributeNames(MBeanServerConnection connection, ObjectName name) throws IOException,
+			InstanceNotFoundException, IntrospectionException, ReflectionException {
+
+		String[] names = attributeNames.get(name);
+		if (names != null) {
+			return names;
+		}
+
+		MBeanInfo info = connection.getMBeanInfo(name);
+
+		List<String> readable = new ArrayList<String>();
+		for (MBeanAttributeInfo attribute : info.getAttributes()) {
+			if (attribute.isReadable()) {
+				readable.add( attribute.getName() );
+			}
+		}
+
+		names = readable.toArray( new String[readable.size()] );
+		attributeNames.put(name, names);
+
+		return names;
+
+	}
+
+	/**
+	 * Removes the cached <code>MBeanInfo</code> of an MBean (e.g. because it was unregistered).
+	 *
+	 * @param name the name of the MBean.
+	 */
+	public void forget(ObjectName name) {
+		attributeNames.remove(name);
+	}
+
+	/**
+	 * Closes the connection, if it's open, and clears the cached <code>MBeanInfo</code>s as the agent may have been
+	 * restarted. The next read will open a new connection.
+	 */
+	public synchronized void disconnect() {
+
+		if (connector != null) {
+			try {
+				connector.close();
+			} catch (IOException e) {
+				// the connection is probably broken already
+			}
+			connector = null;
+		}
+
+		attributeNames.clear();
+
+	}
+
+}
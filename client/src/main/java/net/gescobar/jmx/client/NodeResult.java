@@ -0,0 +1,82 @@
+package net.gescobar.jmx.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * The result of a read in one of the nodes (JMX agents) of the cluster: the values of the attributes of each MBean,
+ * or the error if the node couldn't be read, and the time it took.
+ *
+ * @author German Escobar
+ */
+public final class NodeResult {
+
+	private final JMXServiceURL url;
+
+	private final Map<ObjectName,Map<String,Object>> values;
+
+	private final Exception error;
+
+	private final long latency;
+
+	NodeResult(JMXServiceURL url, Map<ObjectName,Map<String,Object>> values, Exception error, long latency) {
+		this.url = url;
+		this.values = values;
+		this.error = error;
+		this.latency = latency;
+	}
+
+	/**
+	 * @return the URL of the node.
+	 */
+	public JMXServiceURL getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return true if the node was read, false otherwise.
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * @return the values of the attributes of each MBean, an empty map if the node couldn't be read.
+	 */
+	public Map<ObjectName,Map<String,Object>> getValues() {
+		return values == null ? Collections.<ObjectName,Map<String,Object>>emptyMap() : values;
+	}
+
+	/**
+	 * @return the value of an attribute of an MBean or null if it was not read.
+	 */
+	public Object getValue(ObjectName name, String attribute) {
+
+		Map<String,Object> attributes = getValues().get(name);
+		return attributes == null ? null : attributes.get(attribute);
+
+	}
+
+	/**
+	 * @return the reason why the node couldn't be read or null if it was read.
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @return the time it took to read the node (or to fail) in nanoseconds.
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return url + (error == null ? " " + getValues() : " error: " + error) + " (" + (latency / 1000000) + " ms)";
+	}
+
+}
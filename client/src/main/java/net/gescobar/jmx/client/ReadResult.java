@@ -0,0 +1,94 @@
+package net.gescobar.jmx.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * The merged result of a read in all the nodes of the cluster, with the result of each node (see
+ * {@link NodeResult}) and the aggregation of the values of the same attribute in different nodes.
+ *
+ * @author German Escobar
+ */
+public final class ReadResult {
+
+	private final List<NodeResult> nodes;
+
+	ReadResult(List<NodeResult> nodes) {
+		this.nodes = Collections.unmodifiableList(nodes);
+	}
+
+	/**
+	 * @return the result of each node, in the order in which the nodes were passed to the client.
+	 */
+	public List<NodeResult> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return the results of the nodes that couldn't be read.
+	 */
+	public List<NodeResult> getFailedNodes() {
+
+		List<NodeResult> failed = new ArrayList<NodeResult>();
+		for (NodeResult node : nodes) {
+			if (!node.isSuccess()) {
+				failed.add(node);
+			}
+		}
+
+		return failed;
+
+	}
+
+	/**
+	 * Aggregates the numeric values of an attribute in all the MBeans of all the nodes that were read. Values that
+	 * are not numbers are ignored.
+	 *
+	 * @param attribute the name of the attribute.
+	 *
+	 * @return the sum, min, max and average of the values.
+	 */
+	public Aggregate aggregate(String attribute) {
+		return aggregate(null, attribute);
+	}
+
+	/**
+	 * Aggregates the numeric values of an attribute of an MBean in all the nodes that were read. Values that are not
+	 * numbers are ignored.
+	 *
+	 * @param name the name of the MBean, null to aggregate all the MBeans.
+	 * @param attribute the name of the attribute.
+	 *
+	 * @return the sum, min, max and average of the values.
+	 */
+	public Aggregate aggregate(ObjectName name, String attribute) {
+
+		if (attribute == null) {
+			throw new IllegalArgumentException("No attribute specified.");
+		}
+
+		Aggregate aggregate = new Aggregate();
+		for (NodeResult node : nodes) {
+			for (Map.Entry<ObjectName,Map<String,Object>> mBean : node.getValues().entrySet()) {
+
+				if (name != null && !name.equals(mBean.getKey())) {
+					continue;
+				}
+
+				Object value = mBean.getValue().get(attribute);
+				if (value instanceof Number) {
+					aggregate.add( ((Number) value).doubleValue() );
+				}
+
+			}
+		}
+
+		return aggregate;
+
+	}
+
+}
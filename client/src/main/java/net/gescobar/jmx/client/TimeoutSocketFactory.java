@@ -0,0 +1,69 @@
+package net.gescobar.jmx.client;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.rmi.server.RMIClientSocketFactory;
+
+/**
+ * Creates the sockets used to look up the JMX connector of an agent in its RMI registry with a connect and a read
+ * timeout, so an agent that accepts the connection but never answers fails the lookup instead of blocking the thread
+ * forever. RMI sets its own read timeouts on the sockets (60 seconds for the handshake, none for the calls), so the
+ * sockets never wait longer than the timeout of the factory.
+ *
+ * @author German Escobar
+ */
+class TimeoutSocketFactory implements RMIClientSocketFactory, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The connect and read timeout in milliseconds.
+	 */
+	private final int timeout;
+
+	public TimeoutSocketFactory(int timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+
+		Socket socket = new TimeoutSocket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), timeout);
+			socket.setSoTimeout(timeout);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+
+		return socket;
+
+	}
+
+	/**
+	 * A socket whose read timeout is never longer than the timeout of the factory.
+	 */
+	private class TimeoutSocket extends Socket {
+
+		@Override
+		public synchronized void setSoTimeout(int soTimeout) throws SocketException {
+			super.setSoTimeout( soTimeout == 0 ? timeout : Math.min(soTimeout, timeout) );
+		}
+
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof TimeoutSocketFactory && ((TimeoutSocketFactory) obj).timeout == timeout;
+	}
+
+	@Override
+	public int hashCode() {
+		return timeout;
+	}
+
+}
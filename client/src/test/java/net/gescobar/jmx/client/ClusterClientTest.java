@@ -0,0 +1,179 @@
+package net.gescobar.jmx.client;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.impl.MBeanFactory;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ClusterClientTest {
+
+	private List<JMXConnectorServer> servers = new ArrayList<JMXConnectorServer>();
+
+	private List<JMXServiceURL> urls = new ArrayList<JMXServiceURL>();
+
+	private ClusterClient client;
+
+	@BeforeClass
+	public void startServers() throws Exception {
+
+		// three nodes, each one with two counters
+		for (int i=1; i <= 3; i++) {
+
+			MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+			mBeanServer.registerMBean( MBeanFactory.createMBean(new Counter(i)),
+					new ObjectName("org.test.client:type=Counter,name=first") );
+			mBeanServer.registerMBean( MBeanFactory.createMBean(new Counter(i * 10)),
+					new ObjectName("org.test.client:type=Counter,name=second") );
+
+			JMXConnectorServer server = JMXConnectorServerFactory.newJMXConnectorServer(
+					new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, mBeanServer);
+			server.start();
+
+			servers.add(server);
+			urls.add( server.getAddress() );
+
+		}
+
+		client = new ClusterClient(urls);
+
+	}
+
+	@AfterClass
+	public void stopServers() throws Exception {
+
+		client.close();
+		for (JMXConnectorServer server : servers) {
+			server.stop();
+		}
+
+	}
+
+	@Test
+	public void shouldReadAndAggregateAllNodes() throws Exception {
+
+		ObjectName first = new ObjectName("org.test.client:type=Counter,name=first");
+
+		ReadResult result = client.read( new ObjectName("org.test.client:type=Counter,*"), "counter" );
+		Assert.assertEquals( result.getNodes().size(), 3 );
+		Assert.assertTrue( result.getFailedNodes().isEmpty() );
+
+		for (int i=0; i < 3; i++) {
+			NodeResult node = result.getNodes().get(i);
+			Assert.assertEquals( node.getUrl(), urls.get(i) );
+			Assert.assertEquals( node.getValues().size(), 2 );
+			Assert.assertEquals( node.getValue(first, "counter"), i + 1 );
+			Assert.assertTrue( node.getLatency() > 0 );
+		}
+
+		Aggregate all = result.aggregate("counter");
+		Assert.assertEquals( all.getCount(), 6 );
+		Assert.assertEquals( all.getSum(), 66.0 );
+		Assert.assertEquals( all.getMin(), 1.0 );
+		Assert.assertEquals( all.getMax(), 30.0 );
+
+		Aggregate firstOnly = result.aggregate(first, "counter");
+		Assert.assertEquals( firstOnly.getSum(), 6.0 );
+		Assert.assertEquals( firstOnly.getAvg(), 2.0 );
+
+		// all the readable attributes, from the cached MBeanInfo
+		result = client.read(first);
+		Assert.assertEquals( result.getNodes().get(2).getValue(first, "counter"), 3 );
+		Assert.assertEquals( result.getNodes().get(2).getValue(first, "name"), "counter" );
+
+	}
+
+	@Test
+	public void shouldReportFailedNodes() throws Exception {
+
+		List<JMXServiceURL> withDown = new ArrayList<JMXServiceURL>(urls);
+		withDown.add( new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:1/jmxrmi") );
+
+		ClusterClient client = new ClusterClient(withDown);
+		try {
+
+			ReadResult result = client.read( new ObjectName("org.test.client:type=Counter,*"), "counter" );
+			Assert.assertEquals( result.getNodes().size(), 4 );
+			Assert.assertEquals( result.getFailedNodes().size(), 1 );
+
+			NodeResult down = result.getFailedNodes().get(0);
+			Assert.assertEquals( down.getUrl(), withDown.get(3) );
+			Assert.assertNotNull( down.getError() );
+			Assert.assertTrue( down.getValues().isEmpty() );
+
+			Assert.assertEquals( result.aggregate("counter").getCount(), 6 );
+
+		} finally {
+			client.close();
+		}
+
+	}
+
+	@Test
+	public void shouldNotBlockOnNodesThatDontAnswer() throws Exception {
+
+		// accepts connections (in the backlog) but never answers
+		ServerSocket hung = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+		List<JMXServiceURL> withHung = new ArrayList<JMXServiceURL>();
+		withHung.add( new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:" + hung.getLocalPort() + "/jmxrmi") );
+		withHung.add( urls.get(0) );
+
+		// one thread for each node
+		ClusterClient client = new ClusterClient(withHung, null, 500);
+		try {
+
+			for (int i=0; i < 5; i++) {
+
+				ReadResult result = client.read( new ObjectName("org.test.client:type=Counter,*"), "counter" );
+				Assert.assertEquals( result.getFailedNodes().size(), 1 );
+				Assert.assertEquals( result.getFailedNodes().get(0).getUrl(), withHung.get(0) );
+
+				// the hung node doesn't take the thread of the other node
+				Assert.assertTrue( result.getNodes().get(1).isSuccess(), "read " + i + ": " +
+						result.getNodes().get(1).getError() );
+
+			}
+
+		} finally {
+			client.close();
+			hung.close();
+		}
+
+	}
+
+	public class Counter {
+
+		private int counter;
+
+		public Counter(int counter) {
+			this.counter = counter;
+		}
+
+		@ManagedAttribute
+		public int getCounter() {
+			return counter;
+		}
+
+		@ManagedAttribute
+		public String getName() {
+			return "counter";
+		}
+
+	}
+
+}
@@ -0,0 +1,464 @@
+package net.gescobar.jmx.http;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.RuntimeOperationsException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Handles the requests of the {@link HttpGateway}. The body of a request is a JSON object or an array of JSON objects
+ * (a batch), each one with a <code>type</code> member that can be:
+ *
+ * <ul>
+ * 	<li><code>read</code>: reads the attributes named in <code>attribute</code> (a string or an array; all the
+ * 	readable attributes if missing) of all the MBeans that match the <code>mbean</code> name or pattern. The value is
+ * 	an object keyed by ObjectName with the attributes of each MBean, read with a single <code>getAttributes</code>
+ * 	call per MBean.</li>
+ * 	<li><code>write</code>: sets the <code>value</code> of the <code>attribute</code> of the <code>mbean</code>.</li>
+ * 	<li><code>exec</code>: invokes the <code>operation</code> of the <code>mbean</code> with the
+ * 	<code>arguments</code> array. The <code>signature</code> array is optional if the operation is not
+ * 	overloaded.</li>
+ * </ul>
+ *
+ * <p>Bodies larger than {@link #MAX_BODY_SIZE} bytes are rejected with a 400 status and bodies whose
+ * <code>Content-Type</code> is not <code>application/json</code> with a 415 status. <code>write</code> and
+ * <code>exec</code> requests on MBeans that are not writable get a 403 status.</p>
+ *
+ * <p>Each request gets its own response object with a <code>status</code> (HTTP-like codes) and either a
+ * <code>value</code> or an <code>error</code>, so one failing request doesn't affect the rest of the batch. The
+ * response of each request is built in memory and streamed once it's complete, so a value that fails while it's
+ * being written is replaced by an error instead of leaving a broken document.</p>
+ *
+ * @author German Escobar
+ */
+class BatchHandler implements HttpHandler {
+
+	/**
+	 * The maximum size in bytes of the body of a request.
+	 */
+	public static final int MAX_BODY_SIZE = 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int OK = 200;
+
+	private static final int BAD_REQUEST = 400;
+
+	private static final int FORBIDDEN = 403;
+
+	private static final int NOT_FOUND = 404;
+
+	private static final int METHOD_NOT_ALLOWED = 405;
+
+	private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+	private static final int ERROR = 500;
+
+	/**
+	 * The MBeanServer we are exposing.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * The names or patterns of the MBeans on which we allow writes and invocations.
+	 */
+	private final List<ObjectName> writable;
+
+	public BatchHandler(MBeanServer mBeanServer, Collection<ObjectName> writable) {
+		this.mBeanServer = mBeanServer;
+		this.writable = new ArrayList<ObjectName>(writable);
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+
+		try {
+
+			if (!"POST".equalsIgnoreCase( exchange.getRequestMethod() )) {
+				sendError(exchange, METHOD_NOT_ALLOWED, "Only POST requests are supported");
+				return;
+			}
+
+			if ( !isJson(exchange.getRequestHeaders().getFirst("Content-Type")) ) {
+				sendError(exchange, UNSUPPORTED_MEDIA_TYPE, "Only application/json requests are supported");
+				return;
+			}
+
+			Object body;
+			try {
+				body = JsonReader.parse( readBody(exchange.getRequestBody()) );
+			} catch (IllegalArgumentException e) {
+				sendError(exchange, BAD_REQUEST, e.getMessage());
+				return;
+			}
+
+			boolean batch = body instanceof List<?>;
+			List<?> requests = batch ? (List<?>) body : Collections.singletonList(body);
+
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(OK, 0); // chunked, we are streaming
+
+			JsonWriter json = new JsonWriter( new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), UTF8)) );
+			if (batch) {
+				json.beginArray();
+			}
+			for (Object request : requests) {
+				json.rawValue( process(request) );
+			}
+			if (batch) {
+				json.endArray();
+			}
+			json.close();
+
+		} finally {
+			exchange.close();
+		}
+
+	}
+
+	/**
+	 * Helper method. Processes a single request of the batch.
+	 *
+	 * @return the response of the request serialized as JSON.
+	 */
+	private String process(Object request) throws IOException {
+
+		StringWriter buffer = new StringWriter();
+		try {
+			process(request, new JsonWriter(buffer));
+		} catch (Exception e) {
+			// the response may be partially written, it's replaced by the error
+			buffer = new StringWriter();
+			writeError(new JsonWriter(buffer), status(e), message(e));
+		}
+
+		return buffer.toString();
+
+	}
+
+	/**
+	 * Helper method. Processes a single request of the batch writing its response.
+	 */
+	private void process(Object request, JsonWriter json) throws Exception {
+
+		if ( !(request instanceof Map<?,?>) ) {
+			writeError(json, BAD_REQUEST, "Request must be a JSON object");
+			return;
+		}
+
+		Map<?,?> map = (Map<?,?>) request;
+		Object type = map.get("type");
+
+		ObjectName objectName = new ObjectName( requiredString(map, "mbean") );
+
+		if ("read".equals(type)) {
+			read(objectName, map.get("attribute"), json);
+		} else if ( ("write".equals(type) || "exec".equals(type)) && !isWritable(objectName) ) {
+			writeError(json, FORBIDDEN, "Writes are not allowed on " + objectName);
+		} else if ("write".equals(type)) {
+			write(objectName, requiredString(map, "attribute"), map.get("value"), json);
+		} else if ("exec".equals(type)) {
+			exec(objectName, requiredString(map, "operation"), map.get("arguments"), map.get("signature"), json);
+		} else {
+			writeError(json, BAD_REQUEST, "Unknown request type: " + type);
+		}
+
+	}
+
+	/**
+	 * Helper method. Reads the attributes of all the MBeans matching <code>objectName</code>. MBeans that disappear or
+	 * fail while we are reading them are left out of the response.
+	 */
+	private void read(ObjectName objectName, Object attribute, JsonWriter json) throws Exception {
+
+		String[] attributes = attribute == null ? null : toStringArray(attribute, "attribute");
+
+		Set<ObjectName> names = mBeanServer.queryNames(objectName, null);
+		if (names.isEmpty() && !objectName.isPattern()) {
+			throw new InstanceNotFoundException( objectName.toString() );
+		}
+
+		json.beginObject().name("status").value(OK).name("value").beginObject();
+		for (ObjectName name : names) {
+
+			AttributeList values;
+			try {
+				values = mBeanServer.getAttributes(name, attributes != null ? attributes : readableAttributes(name));
+			} catch (Exception e) {
+				continue;
+			}
+
+			json.name( name.toString() ).beginObject();
+			for (Object value : values) {
+				Attribute a = (Attribute) value;
+				json.name( a.getName() ).value( a.getValue() );
+			}
+			json.endObject();
+
+		}
+		json.endObject().endObject();
+
+	}
+
+	/**
+	 * Helper method. Sets the value of an attribute converting it to the type declared in the MBeanInfo.
+	 */
+	private void write(ObjectName objectName, String attribute, Object value, JsonWriter json) throws Exception {
+
+		MBeanAttributeInfo attributeInfo = null;
+		for (MBeanAttributeInfo candidate : mBeanServer.getMBeanInfo(objectName).getAttributes()) {
+			if (candidate.getName().equals(attribute) && candidate.isWritable()) {
+				attributeInfo = candidate;
+			}
+		}
+
+		if (attributeInfo == null) {
+			throw new AttributeNotFoundException("No writable attribute " + attribute + " in " + objectName);
+		}
+
+		Object converted = JsonValues.convert(value, attributeInfo.getType(), mBeanServer.getClassLoaderFor(objectName));
+		mBeanServer.setAttribute( objectName, new Attribute(attribute, converted) );
+
+		json.beginObject().name("status").value(OK).name("value").nullValue().endObject();
+
+	}
+
+	/**
+	 * Helper method. Invokes an operation converting the arguments to the types of the signature. If no signature
+	 * is specified, we find it in the MBeanInfo by the name of the operation and the number of arguments.
+	 */
+	private void exec(ObjectName objectName, String operation, Object arguments, Object signature, JsonWriter json)
+			throws Exception {
+
+		List<?> args = arguments == null ? Collections.emptyList() : toList(arguments, "arguments");
+
+		String[] sig = signature == null ? findSignature(objectName, operation, args.size())
+				: toStringArray(signature, "signature");
+		if (sig.length != args.size()) {
+			throw new IllegalArgumentException("Signature and arguments of " + operation + " don't match");
+		}
+
+		ClassLoader classLoader = mBeanServer.getClassLoaderFor(objectName);
+		Object[] params = new Object[sig.length];
+		for (int i=0; i < sig.length; i++) {
+			params[i] = JsonValues.convert(args.get(i), sig[i], classLoader);
+		}
+
+		Object result = mBeanServer.invoke(objectName, operation, params, sig);
+		json.beginObject().name("status").value(OK).name("value").value(result).endObject();
+
+	}
+
+	private String[] findSignature(ObjectName objectName, String operation, int argsCount) throws Exception {
+
+		MBeanOperationInfo found = null;
+		for (MBeanOperationInfo operationInfo : mBeanServer.getMBeanInfo(objectName).getOperations()) {
+			if (operationInfo.getName().equals(operation) && operationInfo.getSignature().length == argsCount) {
+				if (found != null) {
+					throw new IllegalArgumentException("Operation " + operation + " is overloaded, please specify " +
+							"a signature");
+				}
+				found = operationInfo;
+			}
+		}
+
+		if (found == null) {
+			throw new ReflectionException(new NoSuchMethodException(operation), "Cannot find the operation " +
+					operation + " with " + argsCount + " arguments in " + objectName);
+		}
+
+		String[] signature = new String[argsCount];
+		for (int i=0; i < argsCount; i++) {
+			signature[i] = found.getSignature()[i].getType();
+		}
+
+		return signature;
+
+	}
+
+	private String[] readableAttributes(ObjectName name) throws Exception {
+
+		MBeanInfo mBeanInfo = mBeanServer.getMBeanInfo(name);
+
+		List<String> attributes = new ArrayList<String>();
+		for (MBeanAttributeInfo attributeInfo : mBeanInfo.getAttributes()) {
+			if (attributeInfo.isReadable()) {
+				attributes.add( attributeInfo.getName() );
+			}
+		}
+
+		return attributes.toArray( new String[0] );
+
+	}
+
+	/**
+	 * Helper method. Checks if an MBean matches one of the names or patterns on which we allow writes. A pattern
+	 * itself is never writable.
+	 */
+	private boolean isWritable(ObjectName objectName) {
+
+		for (ObjectName pattern : writable) {
+			if (pattern.apply(objectName)) {
+				return true;
+			}
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Helper method. Checks if a <code>Content-Type</code> is <code>application/json</code>, with or without
+	 * parameters.
+	 */
+	private boolean isJson(String contentType) {
+
+		if (contentType == null) {
+			return false;
+		}
+
+		int semicolon = contentType.indexOf(';');
+		String mediaType = semicolon == -1 ? contentType : contentType.substring(0, semicolon);
+
+		return "application/json".equalsIgnoreCase( mediaType.trim() );
+
+	}
+
+	private String requiredString(Map<?,?> request, String member) {
+		Object value = request.get(member);
+		if ( !(value instanceof String) ) {
+			throw new IllegalArgumentException("Missing " + member);
+		}
+		return (String) value;
+	}
+
+	private List<?> toList(Object value, String member) {
+		if ( !(value instanceof List<?>) ) {
+			throw new IllegalArgumentException(member + " must be an array");
+		}
+		return (List<?>) value;
+	}
+
+	private String[] toStringArray(Object value, String member) {
+
+		if (value instanceof String) {
+			return new String[] { (String) value };
+		}
+
+		List<?> list = toList(value, member);
+		String[] strings = new String[list.size()];
+		for (int i=0; i < strings.length; i++) {
+			strings[i] = String.valueOf( list.get(i) );
+		}
+
+		return strings;
+
+	}
+
+	private void writeError(JsonWriter json, int status, String message) throws IOException {
+		json.beginObject().name("status").value(status).name("error").value(message).endObject();
+	}
+
+	private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, 0);
+
+		JsonWriter json = new JsonWriter( new OutputStreamWriter(exchange.getResponseBody(), UTF8) );
+		writeError(json, status, message);
+		json.close();
+
+	}
+
+	/**
+	 * Helper method. Maps an exception to the status of the response.
+	 */
+	private int status(Exception e) {
+
+		Throwable cause = e;
+		if (e instanceof RuntimeOperationsException) {
+			cause = e.getCause();
+		} else if (e instanceof ReflectionException) {
+			cause = ((ReflectionException) e).getTargetException();
+		}
+
+		if (e instanceof InstanceNotFoundException || e instanceof AttributeNotFoundException
+				|| cause instanceof NoSuchMethodException) {
+			return NOT_FOUND;
+		}
+
+		if (e instanceof MalformedObjectNameException || e instanceof InvalidAttributeValueException
+				|| cause instanceof IllegalArgumentException) {
+			return BAD_REQUEST;
+		}
+
+		return ERROR;
+
+	}
+
+	/**
+	 * Helper method. Retrieves the message of the most meaningful exception.
+	 */
+	private String message(Exception e) {
+
+		Throwable t = e;
+		if (e instanceof MBeanException) {
+			t = ((MBeanException) e).getTargetException();
+		} else if (e instanceof ReflectionException && e.getMessage() == null) {
+			t = ((ReflectionException) e).getTargetException();
+		}
+
+		return t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+
+	}
+
+	/**
+	 * Helper method. Reads the body of the request.
+	 *
+	 * @throws IllegalArgumentException if the body is larger than {@link #MAX_BODY_SIZE} bytes.
+	 */
+	private String readBody(InputStream in) throws IOException, IllegalArgumentException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		byte[] buffer = new byte[4096];
+		int read;
+		while ( (read = in.read(buffer)) != -1 ) {
+			if (out.size() + read > MAX_BODY_SIZE) {
+				throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_SIZE + " bytes");
+			}
+			out.write(buffer, 0, read);
+		}
+
+		return new String(out.toByteArray(), UTF8);
+
+	}
+
+}
@@ -0,0 +1,232 @@
+package net.gescobar.jmx.http;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>Exposes an <code>MBeanServer</code> over HTTP using JSON, so that many attributes of many MBeans can be read,
+ * written and invoked in one single round trip. It uses the HTTP server that comes with the JDK so it doesn't add
+ * any dependencies.</p>
+ *
+ * <pre>
+ * HttpGateway gateway = new HttpGateway( new InetSocketAddress("127.0.0.1", 8778) );
+ * gateway.start();
+ * </pre>
+ *
+ * <p>Requests are POSTed to the <code>/jmx</code> path with an <code>application/json</code> body (so a browser
+ * can't send them from another site without a preflight request). See {@link BatchHandler} for the format of the
+ * requests and responses.</p>
+ *
+ * <p>The gateway is read-only by default: writes and invocations are only allowed on the MBeans that match the
+ * patterns passed to {@link #allowWrites(String...)}. Bind it to the loopback address unless an
+ * {@link #authenticator(Authenticator)} is set, anyone that reaches the port can read every MBean.</p>
+ *
+ * @author German Escobar
+ */
+public class HttpGateway {
+
+	/**
+	 * The path in which the gateway listens for requests.
+	 */
+	public static final String CONTEXT_PATH = "/jmx";
+
+	/**
+	 * The default number of threads that handle the requests.
+	 */
+	public static final int DEFAULT_THREADS = 4;
+
+	/**
+	 * The MBeanServer that we are exposing.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * The address to which we bind the HTTP server.
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * The number of threads that handle the requests.
+	 */
+	private final int threads;
+
+	/**
+	 * The MBeans on which attributes can be written and operations invoked.
+	 */
+	private final List<ObjectName> writable = new ArrayList<ObjectName>();
+
+	/**
+	 * Authenticates the requests, null if they are not authenticated.
+	 */
+	private Authenticator authenticator;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	/**
+	 * Constructor. Creates a gateway that exposes the default <code>MBeanServer</code> (which is retrieved using the
+	 * <code>ManagementFactory.getPlatformServer()</code> method).
+	 *
+	 * @param address the address to which we bind the HTTP server.
+	 */
+	public HttpGateway(InetSocketAddress address) {
+		this(ManagementFactory.getPlatformMBeanServer(), address, DEFAULT_THREADS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer that we are exposing.
+	 * @param address the address to which we bind the HTTP server.
+	 * @param threads the number of threads that handle the requests.
+	 */
+	public HttpGateway(MBeanServer mBeanServer, InetSocketAddress address, int threads) {
+
+		if (mBeanServer == null) {
+			throw new IllegalArgumentException("No MBeanServer specified.");
+		}
+
+		if (address == null) {
+			throw new IllegalArgumentException("No address specified.");
+		}
+
+		if (threads <= 0) {
+			throw new IllegalArgumentException("The number of threads must be positive.");
+		}
+
+		this.mBeanServer = mBeanServer;
+		this.address = address;
+		this.threads = threads;
+
+	}
+
+	/**
+	 * Allows writing attributes and invoking operations (which can change the state of the application or, in the
+	 * case of platform MBeans, of the JVM) on the MBeans that match the patterns. Be as specific as possible.
+	 *
+	 * @param patterns the names of the MBeans, can be patterns.
+	 *
+	 * @return itself, so calls can be chained.
+	 * @throws IllegalArgumentException if a pattern is not a valid ObjectName.
+	 */
+	public synchronized HttpGateway allowWrites(String... patterns) throws IllegalArgumentException {
+
+		if (patterns == null || patterns.length == 0) {
+			throw new IllegalArgumentException("No patterns specified.");
+		}
+
+		checkNotStarted();
+
+		for (String pattern : patterns) {
+			try {
+				writable.add( new ObjectName(pattern) );
+			} catch (MalformedObjectNameException e) {
+				throw new IllegalArgumentException("Invalid pattern: " + pattern, e);
+			}
+		}
+
+		return this;
+
+	}
+
+	/**
+	 * @param authenticator authenticates the requests (e.g. a <code>BasicAuthenticator</code>), null to accept
+	 * 	requests without credentials.
+	 *
+	 * @return itself, so calls can be chained.
+	 */
+	public synchronized HttpGateway authenticator(Authenticator authenticator) {
+
+		checkNotStarted();
+		this.authenticator = authenticator;
+
+		return this;
+
+	}
+
+	/**
+	 * Starts the HTTP server.
+	 *
+	 * @throws IOException if the server cannot be bound to the address.
+	 */
+	public synchronized void start() throws IOException {
+
+		if (server != null) {
+			throw new IllegalStateException("Gateway already started.");
+		}
+
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jmx-http-gateway-" + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+
+		server = HttpServer.create(address, 0);
+		HttpContext context = server.createContext( CONTEXT_PATH, new BatchHandler(mBeanServer, writable) );
+		if (authenticator != null) {
+			context.setAuthenticator(authenticator);
+		}
+		server.setExecutor(executor);
+		server.start();
+
+	}
+
+	/**
+	 * Stops the HTTP server. Does nothing if the server was not started.
+	 */
+	public synchronized void stop() {
+
+		if (server == null) {
+			return;
+		}
+
+		server.stop(0);
+		executor.shutdown();
+
+		server = null;
+		executor = null;
+
+	}
+
+	/**
+	 * @return the address in which the server is listening, useful if it was bound to an ephemeral port.
+	 */
+	public synchronized InetSocketAddress getAddress() {
+
+		if (server == null) {
+			throw new IllegalStateException("Gateway not started.");
+		}
+
+		return server.getAddress();
+
+	}
+
+	private void checkNotStarted() {
+		if (server != null) {
+			throw new IllegalStateException("Cannot be changed after the gateway is started.");
+		}
+	}
+
+}
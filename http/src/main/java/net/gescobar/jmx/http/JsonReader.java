@@ -0,0 +1,263 @@
+package net.gescobar.jmx.http;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON parser used to read the requests of the gateway. Objects are parsed into <code>Map</code>s (keeping
+ * the order of the members), arrays into <code>List</code>s, integral numbers into <code>Long</code>s and decimal
+ * numbers into <code>Double</code>s. Objects and arrays can be nested up to {@link #MAX_DEPTH} levels, so a
+ * malicious document can't exhaust the stack.
+ *
+ * @author German Escobar
+ */
+final class JsonReader {
+
+	/**
+	 * The maximum number of nested objects and arrays.
+	 */
+	public static final int MAX_DEPTH = 64;
+
+	/**
+	 * The JSON document we are parsing.
+	 */
+	private final String json;
+
+	/**
+	 * The current position in the document.
+	 */
+	private int pos;
+
+	/**
+	 * The number of objects and arrays that contain the current position.
+	 */
+	private int depth;
+
+	private JsonReader(String json) {
+		this.json = json;
+	}
+
+	/**
+	 * Parses a JSON document.
+	 *
+	 * @param json the document to parse.
+	 *
+	 * @return the parsed value: a Map, List, String, Long, Double, Boolean or null.
+	 * @throws IllegalArgumentException if the document is not valid JSON or is nested more than {@link #MAX_DEPTH}
+	 * 		levels.
+	 */
+	public static Object parse(String json) throws IllegalArgumentException {
+
+		if (json == null) {
+			throw new IllegalArgumentException("No JSON specified.");
+		}
+
+		JsonReader reader = new JsonReader(json);
+		Object value = reader.readValue();
+
+		reader.skipWhitespace();
+		if (reader.pos < json.length()) {
+			throw reader.error("Unexpected content after JSON value");
+		}
+
+		return value;
+
+	}
+
+	private Object readValue() {
+
+		skipWhitespace();
+		if (pos >= json.length()) {
+			throw error("Unexpected end of JSON");
+		}
+
+		char c = json.charAt(pos);
+		if (c == '{' || c == '[') {
+
+			if (++depth > MAX_DEPTH) {
+				throw error("JSON nested more than " + MAX_DEPTH + " levels");
+			}
+
+			Object value = c == '{' ? readObject() : readArray();
+			depth--;
+			return value;
+
+		} else if (c == '"') {
+			return readString();
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			return readNumber();
+		} else if (json.startsWith("true", pos)) {
+			pos += 4;
+			return Boolean.TRUE;
+		} else if (json.startsWith("false", pos)) {
+			pos += 5;
+			return Boolean.FALSE;
+		} else if (json.startsWith("null", pos)) {
+			pos += 4;
+			return null;
+		}
+
+		throw error("Unexpected character '" + c + "'");
+
+	}
+
+	private Map<String,Object> readObject() {
+
+		Map<String,Object> object = new LinkedHashMap<String,Object>();
+
+		pos++; // skip '{'
+		skipWhitespace();
+		if (peek() == '}') {
+			pos++;
+			return object;
+		}
+
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') {
+				throw error("Expected member name");
+			}
+			String name = readString();
+
+			skipWhitespace();
+			expect(':');
+			object.put(name, readValue());
+
+			skipWhitespace();
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+
+	}
+
+	private List<Object> readArray() {
+
+		List<Object> array = new ArrayList<Object>();
+
+		pos++; // skip '['
+		skipWhitespace();
+		if (peek() == ']') {
+			pos++;
+			return array;
+		}
+
+		while (true) {
+			array.add( readValue() );
+
+			skipWhitespace();
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+
+	}
+
+	private String readString() {
+
+		StringBuilder sb = new StringBuilder();
+
+		pos++; // skip the opening quote
+		while (pos < json.length()) {
+			char c = json.charAt(pos++);
+			if (c == '"') {
+				return sb.toString();
+			} else if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+
+			if (pos >= json.length()) {
+				break;
+			}
+
+			char escaped = json.charAt(pos++);
+			switch (escaped) {
+				case '"': sb.append('"'); break;
+				case '\\': sb.append('\\'); break;
+				case '/': sb.append('/'); break;
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'u':
+					if (pos + 4 > json.length()) {
+						throw error("Invalid unicode escape");
+					}
+					try {
+						sb.append( (char) Integer.parseInt(json.substring(pos, pos + 4), 16) );
+					} catch (NumberFormatException e) {
+						throw error("Invalid unicode escape");
+					}
+					pos += 4;
+					break;
+				default:
+					throw error("Invalid escape character '" + escaped + "'");
+			}
+		}
+
+		throw error("Unterminated string");
+
+	}
+
+	private Number readNumber() {
+
+		int start = pos;
+		boolean decimal = false;
+
+		while (pos < json.length()) {
+			char c = json.charAt(pos);
+			if (c == '.' || c == 'e' || c == 'E') {
+				decimal = true;
+			} else if (c != '-' && c != '+' && (c < '0' || c > '9')) {
+				break;
+			}
+			pos++;
+		}
+
+		String number = json.substring(start, pos);
+		try {
+			if (decimal) {
+				return Double.valueOf(number);
+			}
+			return Long.valueOf(number);
+		} catch (NumberFormatException e) {
+			throw error("Invalid number " + number);
+		}
+
+	}
+
+	private char peek() {
+		if (pos >= json.length()) {
+			throw error("Unexpected end of JSON");
+		}
+		return json.charAt(pos);
+	}
+
+	private void expect(char c) {
+		if (peek() != c) {
+			throw error("Expected '" + c + "'");
+		}
+		pos++;
+	}
+
+	private void skipWhitespace() {
+		while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+
+}
@@ -0,0 +1,152 @@
+package net.gescobar.jmx.http;
+
+/**
+ * Converts the values parsed from a JSON request (Strings, Longs, Doubles, Booleans, Lists and Maps) to the types
+ * declared in the <code>MBeanInfo</code> of the target MBean.
+ *
+ * @author German Escobar
+ */
+final class JsonValues {
+
+	/**
+	 * Hide public constructor.
+	 */
+	private JsonValues() {}
+
+	/**
+	 * Converts a JSON value to the specified type. Primitives, their wrappers, Strings and enums are converted;
+	 * any other value is returned as it is and it's up to the MBean to accept it or not. Integral types only accept
+	 * integral values within their range, nothing is truncated.
+	 *
+	 * @param value the value parsed from the JSON request.
+	 * @param type the name of the type we need, as found in the MBeanInfo.
+	 * @param classLoader the class loader used to load the MBean, used to find enum classes. Can be null.
+	 *
+	 * @return the converted value.
+	 * @throws IllegalArgumentException if the value cannot be converted.
+	 */
+	public static Object convert(Object value, String type, ClassLoader classLoader) throws IllegalArgumentException {
+
+		if (value == null || type == null) {
+			return value;
+		}
+
+		if ("int".equals(type) || Integer.class.getName().equals(type)) {
+			return (int) toIntegral(value, type, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		} else if ("long".equals(type) || Long.class.getName().equals(type)) {
+			return toIntegral(value, type, Long.MIN_VALUE, Long.MAX_VALUE);
+		} else if ("short".equals(type) || Short.class.getName().equals(type)) {
+			return (short) toIntegral(value, type, Short.MIN_VALUE, Short.MAX_VALUE);
+		} else if ("byte".equals(type) || Byte.class.getName().equals(type)) {
+			return (byte) toIntegral(value, type, Byte.MIN_VALUE, Byte.MAX_VALUE);
+		} else if ("double".equals(type) || Double.class.getName().equals(type)) {
+			return toNumber(value, type).doubleValue();
+		} else if ("float".equals(type) || Float.class.getName().equals(type)) {
+			return toNumber(value, type).floatValue();
+		} else if ("boolean".equals(type) || Boolean.class.getName().equals(type)) {
+			return toBoolean(value, type);
+		} else if ("char".equals(type) || Character.class.getName().equals(type)) {
+			String s = value.toString();
+			if (s.length() != 1) {
+				throw new IllegalArgumentException("Cannot convert " + value + " to " + type);
+			}
+			return s.charAt(0);
+		} else if (String.class.getName().equals(type)) {
+			return value.toString();
+		} else if (value instanceof String && classLoader != null) {
+			return toEnum((String) value, type, classLoader);
+		}
+
+		return value;
+
+	}
+
+	/**
+	 * Helper method. Converts a JSON value to a <code>boolean</code>: a boolean or the strings "true" and "false".
+	 *
+	 * @throws IllegalArgumentException if the value is anything else.
+	 */
+	private static boolean toBoolean(Object value, String type) throws IllegalArgumentException {
+
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+
+		if ("true".equals(value)) {
+			return true;
+		} else if ("false".equals(value)) {
+			return false;
+		}
+
+		throw new IllegalArgumentException("Cannot convert " + value + " to " + type);
+
+	}
+
+	/**
+	 * Helper method. Converts a JSON value to a <code>long</code> checking that it's integral and within a range.
+	 *
+	 * @throws IllegalArgumentException if the value is not a number, has decimals or is out of the range.
+	 */
+	private static long toIntegral(Object value, String type, long min, long max) throws IllegalArgumentException {
+
+		Number number = toNumber(value, type);
+
+		long integral;
+		if (number instanceof Double || number instanceof Float) {
+
+			double d = number.doubleValue();
+			// 2^63 is the first double that doesn't fit in a long
+			if (d != Math.rint(d) || d < -0x1p63 || d >= 0x1p63) {
+				throw new IllegalArgumentException("Cannot convert " + value + " to " + type);
+			}
+			integral = (long) d;
+
+		} else {
+			integral = number.longValue();
+		}
+
+		if (integral < min || integral > max) {
+			throw new IllegalArgumentException("Cannot convert " + value + " to " + type + ": out of range");
+		}
+
+		return integral;
+
+	}
+
+	private static Number toNumber(Object value, String type) {
+
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+
+		try {
+			String s = value.toString().trim();
+			if (s.indexOf('.') >= 0 || s.indexOf('e') >= 0 || s.indexOf('E') >= 0) {
+				return Double.valueOf(s);
+			}
+			return Long.valueOf(s);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Cannot convert " + value + " to " + type);
+		}
+
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object toEnum(String value, String type, ClassLoader classLoader) {
+
+		Class<?> clazz;
+		try {
+			clazz = Class.forName(type, false, classLoader);
+		} catch (ClassNotFoundException e) {
+			return value;
+		}
+
+		if (!clazz.isEnum()) {
+			return value;
+		}
+
+		return Enum.valueOf((Class) clazz, value);
+
+	}
+
+}
@@ -0,0 +1,287 @@
+package net.gescobar.jmx.http;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/**
+ * A minimal streaming JSON writer. Values are written directly to the underlying <code>Writer</code> as they are
+ * produced so that big responses never have to be held in memory.
+ *
+ * @author German Escobar
+ */
+final class JsonWriter {
+
+	/**
+	 * The maximum nesting of objects and arrays that we support.
+	 */
+	private static final int MAX_DEPTH = 64;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The writer to which we are streaming the JSON document.
+	 */
+	private final Writer writer;
+
+	/**
+	 * Tells, for each nesting level, if we already wrote an element (so we need a comma before the next one).
+	 */
+	private final boolean[] hasElements = new boolean[MAX_DEPTH];
+
+	/**
+	 * The current nesting level.
+	 */
+	private int depth;
+
+	/**
+	 * True if a name was just written and we are waiting for its value.
+	 */
+	private boolean afterName;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param writer the writer to which we are streaming the JSON document.
+	 */
+	public JsonWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		return open('{');
+	}
+
+	public JsonWriter endObject() throws IOException {
+		return close('}');
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		return open('[');
+	}
+
+	public JsonWriter endArray() throws IOException {
+		return close(']');
+	}
+
+	/**
+	 * Writes the name of the next member of the current object.
+	 *
+	 * @param name the name of the member.
+	 *
+	 * @return this object.
+	 * @throws IOException if there is a problem writing to the underlying writer.
+	 */
+	public JsonWriter name(String name) throws IOException {
+		beforeValue();
+		writeString(name);
+		writer.write(':');
+		afterName = true;
+		return this;
+	}
+
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+
+		beforeValue();
+		writeString(value);
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException {
+		beforeValue();
+		writer.write( Long.toString(value) );
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException {
+		beforeValue();
+		writer.write( value ? "true" : "false" );
+		return this;
+	}
+
+	public JsonWriter nullValue() throws IOException {
+		beforeValue();
+		writer.write("null");
+		return this;
+	}
+
+	/**
+	 * Writes a value that was already serialized as JSON (e.g. by another <code>JsonWriter</code>).
+	 *
+	 * @param json the serialized value.
+	 *
+	 * @return this object.
+	 * @throws IOException if there is a problem writing to the underlying writer.
+	 */
+	public JsonWriter rawValue(String json) throws IOException {
+		beforeValue();
+		writer.write(json);
+		return this;
+	}
+
+	/**
+	 * Writes any value that we can find in an MBean attribute or operation result. Open types, collections, maps and
+	 * arrays are written recursively; anything we don't know how to handle is written using its
+	 * <code>toString()</code> method.
+	 *
+	 * @param value the value to write, can be null.
+	 *
+	 * @return this object.
+	 * @throws IOException if there is a problem writing to the underlying writer.
+	 */
+	public JsonWriter value(Object value) throws IOException {
+
+		if (value == null) {
+			return nullValue();
+		} else if (value instanceof String) {
+			return value((String) value);
+		} else if (value instanceof Boolean) {
+			return value( ((Boolean) value).booleanValue() );
+		} else if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				return value( value.toString() ); // JSON has no representation for these
+			}
+			beforeValue();
+			writer.write( value.toString() );
+			return this;
+		} else if (value instanceof Number) {
+			beforeValue();
+			writer.write( value.toString() );
+			return this;
+		} else if (value instanceof Character || value instanceof ObjectName) {
+			return value( value.toString() );
+		} else if (value instanceof Enum<?>) {
+			return value( ((Enum<?>) value).name() );
+		} else if (value instanceof Date) {
+			return value( ((Date) value).getTime() );
+		} else if (value instanceof CompositeData) {
+			return compositeValue( (CompositeData) value );
+		} else if (value instanceof TabularData) {
+			beginArray();
+			for (Object row : ((TabularData) value).values()) {
+				value(row);
+			}
+			return endArray();
+		} else if (value instanceof Map<?,?>) {
+			beginObject();
+			for (Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet()) {
+				name( String.valueOf(entry.getKey()) ).value( entry.getValue() );
+			}
+			return endObject();
+		} else if (value instanceof Collection<?>) {
+			beginArray();
+			for (Object element : (Collection<?>) value) {
+				value(element);
+			}
+			return endArray();
+		} else if (value.getClass().isArray()) {
+			beginArray();
+			for (int i=0; i < Array.getLength(value); i++) {
+				value( Array.get(value, i) );
+			}
+			return endArray();
+		}
+
+		return value( value.toString() );
+
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Helper method. Writes a CompositeData as a JSON object using the keys of its type.
+	 */
+	private JsonWriter compositeValue(CompositeData compositeData) throws IOException {
+		beginObject();
+		for (String key : compositeData.getCompositeType().keySet()) {
+			name(key).value( compositeData.get(key) );
+		}
+		return endObject();
+	}
+
+	private JsonWriter open(char c) throws IOException {
+		if (depth == MAX_DEPTH - 1) {
+			throw new IllegalStateException("JSON nesting too deep");
+		}
+
+		beforeValue();
+		writer.write(c);
+		hasElements[++depth] = false;
+		return this;
+	}
+
+	private JsonWriter close(char c) throws IOException {
+		if (depth == 0) {
+			throw new IllegalStateException("Nothing to close");
+		}
+
+		writer.write(c);
+		depth--;
+		return this;
+	}
+
+	/**
+	 * Helper method. Writes the separator that is needed (if any) before the next value.
+	 */
+	private void beforeValue() throws IOException {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+
+		if (hasElements[depth]) {
+			writer.write(',');
+		}
+		hasElements[depth] = true;
+	}
+
+	/**
+	 * Helper method. Writes a quoted and escaped JSON string.
+	 */
+	private void writeString(String value) throws IOException {
+
+		writer.write('"');
+		for (int i=0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"': writer.write("\\\""); break;
+				case '\\': writer.write("\\\\"); break;
+				case '\n': writer.write("\\n"); break;
+				case '\r': writer.write("\\r"); break;
+				case '\t': writer.write("\\t"); break;
+				case '\b': writer.write("\\b"); break;
+				case '\f': writer.write("\\f"); break;
+				default:
+					if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+						writer.write("\\u");
+						writer.write( HEX[(c >> 12) & 0xf] );
+						writer.write( HEX[(c >> 8) & 0xf] );
+						writer.write( HEX[(c >> 4) & 0xf] );
+						writer.write( HEX[c & 0xf] );
+					} else {
+						writer.write(c);
+					}
+			}
+		}
+		writer.write('"');
+
+	}
+
+}
@@ -0,0 +1,328 @@
+package net.gescobar.jmx.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+import com.sun.net.httpserver.BasicAuthenticator;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class HttpGatewayTest {
+
+	private HttpGateway gateway;
+
+	private Counter first = new Counter();
+
+	private Counter second = new Counter();
+
+	@BeforeClass
+	public void startGateway() throws Exception {
+
+		Management.register(first, "org.test.http:type=Counter,name=first");
+		Management.register(second, "org.test.http:type=Counter,name=second");
+
+		gateway = new HttpGateway( new InetSocketAddress("127.0.0.1", 0) ).allowWrites("org.test.http:type=Counter,*");
+		gateway.start();
+
+	}
+
+	@AfterClass
+	public void stopGateway() throws Exception {
+
+		gateway.stop();
+
+		Management.unregister("org.test.http:type=Counter,name=first");
+		Management.unregister("org.test.http:type=Counter,name=second");
+
+	}
+
+	@Test
+	public void shouldReadAttributesOfAPattern() throws Exception {
+
+		first.setCounter(5);
+		second.setCounter(7);
+
+		Map<?,?> response = (Map<?,?>) post("{\"type\":\"read\",\"mbean\":\"org.test.http:type=Counter,*\"," +
+				"\"attribute\":[\"counter\",\"name\"]}");
+		Assert.assertEquals( response.get("status"), 200L );
+
+		Map<?,?> value = (Map<?,?>) response.get("value");
+		Assert.assertEquals( value.size(), 2 );
+
+		Map<?,?> firstValue = (Map<?,?>) value.get("org.test.http:type=Counter,name=first");
+		Assert.assertEquals( firstValue.get("counter"), 5L );
+		Assert.assertEquals( firstValue.get("name"), "counter" );
+
+		Map<?,?> secondValue = (Map<?,?>) value.get("org.test.http:type=Counter,name=second");
+		Assert.assertEquals( secondValue.get("counter"), 7L );
+
+	}
+
+	@Test
+	public void shouldExecuteABatch() throws Exception {
+
+		first.setCounter(0);
+
+		List<?> responses = (List<?>) post("[" +
+				"{\"type\":\"write\",\"mbean\":\"org.test.http:type=Counter,name=first\",\"attribute\":\"counter\",\"value\":10}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=first\",\"operation\":\"addCounter\",\"arguments\":[\"5\"]}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=first\",\"operation\":\"unknown\"}," +
+				"{\"type\":\"read\",\"mbean\":\"org.test.http:type=Counter,name=first\"}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=first\",\"operation\":\"broken\"}" +
+				"]");
+		Assert.assertEquals( responses.size(), 5 );
+
+		Assert.assertEquals( ((Map<?,?>) responses.get(0)).get("status"), 200L );
+
+		Map<?,?> exec = (Map<?,?>) responses.get(1);
+		Assert.assertEquals( exec.get("status"), 200L );
+		Assert.assertEquals( exec.get("value"), 15L );
+
+		Map<?,?> unknown = (Map<?,?>) responses.get(2);
+		Assert.assertEquals( unknown.get("status"), 404L );
+		Assert.assertNotNull( unknown.get("error") );
+
+		Map<?,?> read = (Map<?,?>) ((Map<?,?>) responses.get(3)).get("value");
+		Map<?,?> attributes = (Map<?,?>) read.get("org.test.http:type=Counter,name=first");
+		Assert.assertEquals( attributes.get("counter"), 15L );
+
+		// the result fails while it's being written, the response is replaced by the error
+		Map<?,?> broken = (Map<?,?>) responses.get(4);
+		Assert.assertEquals( broken.get("status"), 500L );
+		Assert.assertEquals( broken.get("error"), "broken value" );
+
+		Assert.assertEquals( first.getCounter(), 15 );
+
+	}
+
+	@Test
+	public void shouldRejectWritesOnMBeansThatAreNotAllowed() throws Exception {
+
+		List<?> responses = (List<?>) post("[" +
+				"{\"type\":\"exec\",\"mbean\":\"java.lang:type=Memory\",\"operation\":\"gc\"}," +
+				"{\"type\":\"write\",\"mbean\":\"java.lang:type=Memory\",\"attribute\":\"Verbose\",\"value\":true}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,*\",\"operation\":\"addCounter\",\"arguments\":[1]}," +
+				"{\"type\":\"read\",\"mbean\":\"java.lang:type=Memory\",\"attribute\":\"Verbose\"}" +
+				"]");
+
+		Assert.assertEquals( ((Map<?,?>) responses.get(0)).get("status"), 403L );
+		Assert.assertEquals( ((Map<?,?>) responses.get(1)).get("status"), 403L );
+		Assert.assertEquals( ((Map<?,?>) responses.get(2)).get("status"), 403L );
+		Assert.assertEquals( ((Map<?,?>) responses.get(3)).get("status"), 200L );
+
+	}
+
+	@Test
+	public void shouldRejectRequestsThatAreNotJson() throws Exception {
+
+		HttpURLConnection connection = open();
+		connection.setRequestProperty("Content-Type", "text/plain");
+		write(connection, "{\"type\":\"read\",\"mbean\":\"org.test.http:type=Counter,*\"}");
+		Assert.assertEquals( connection.getResponseCode(), 415 );
+
+	}
+
+	@Test
+	public void shouldRejectBooleansThatAreNotTrueOrFalse() throws Exception {
+
+		List<?> responses = (List<?>) post("[" +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=first\",\"operation\":\"negate\",\"arguments\":[\"yes\"]}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=first\",\"operation\":\"negate\",\"arguments\":[1]}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=first\",\"operation\":\"negate\",\"arguments\":[\"false\"]}" +
+				"]");
+
+		Assert.assertEquals( ((Map<?,?>) responses.get(0)).get("status"), 400L );
+		Assert.assertEquals( ((Map<?,?>) responses.get(1)).get("status"), 400L );
+		Assert.assertEquals( ((Map<?,?>) responses.get(2)).get("value"), Boolean.TRUE );
+
+	}
+
+	@Test
+	public void shouldAuthenticateRequests() throws Exception {
+
+		HttpGateway secured = new HttpGateway( new InetSocketAddress("127.0.0.1", 0) )
+				.authenticator(new BasicAuthenticator("jmx") {
+
+					@Override
+					public boolean checkCredentials(String user, String password) {
+						return "admin".equals(user) && "secret".equals(password);
+					}
+
+				});
+		secured.start();
+
+		try {
+
+			URL url = new URL("http://127.0.0.1:" + secured.getAddress().getPort() + HttpGateway.CONTEXT_PATH);
+
+			HttpURLConnection connection = open(url);
+			write(connection, "{\"type\":\"read\",\"mbean\":\"org.test.http:type=Counter,*\"}");
+			Assert.assertEquals( connection.getResponseCode(), 401 );
+
+			connection = open(url);
+			connection.setRequestProperty("Authorization", "Basic " + DatatypeConverter.printBase64Binary(
+					"admin:secret".getBytes("UTF-8")));
+			write(connection, "{\"type\":\"read\",\"mbean\":\"org.test.http:type=Counter,*\"}");
+			Assert.assertEquals( connection.getResponseCode(), 200 );
+
+		} finally {
+			secured.stop();
+		}
+
+	}
+
+	@Test
+	public void shouldRespondNotFoundForUnknownMBean() throws Exception {
+
+		Map<?,?> response = (Map<?,?>) post("{\"type\":\"read\",\"mbean\":\"org.test.http:type=Unknown\"}");
+		Assert.assertEquals( response.get("status"), 404L );
+
+	}
+
+	@Test
+	public void shouldRejectArgumentsThatDontFitTheType() throws Exception {
+
+		second.setCounter(0);
+
+		List<?> responses = (List<?>) post("[" +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=second\",\"operation\":\"addCounter\",\"arguments\":[1.5]}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=second\",\"operation\":\"addCounter\",\"arguments\":[4294967296]}," +
+				"{\"type\":\"exec\",\"mbean\":\"org.test.http:type=Counter,name=second\",\"operation\":\"addCounter\",\"arguments\":[2.0]}" +
+				"]");
+
+		Assert.assertEquals( ((Map<?,?>) responses.get(0)).get("status"), 400L );
+		Assert.assertEquals( ((Map<?,?>) responses.get(1)).get("status"), 400L );
+		Assert.assertEquals( ((Map<?,?>) responses.get(2)).get("value"), 2L );
+		Assert.assertEquals( second.getCounter(), 2 );
+
+	}
+
+	@Test
+	public void shouldRespondBadRequestForInvalidJson() throws Exception {
+
+		HttpURLConnection connection = open();
+		write(connection, "{\"type\":");
+		Assert.assertEquals( connection.getResponseCode(), 400 );
+
+		// too deeply nested
+		StringBuilder nested = new StringBuilder();
+		for (int i=0; i <= JsonReader.MAX_DEPTH; i++) {
+			nested.append('[');
+		}
+		connection = open();
+		write(connection, nested.toString());
+		Assert.assertEquals( connection.getResponseCode(), 400 );
+
+		// too large
+		char[] large = new char[BatchHandler.MAX_BODY_SIZE + 1];
+		Arrays.fill(large, ' ');
+		connection = open();
+		write(connection, new String(large));
+		Assert.assertEquals( connection.getResponseCode(), 400 );
+
+	}
+
+	private Object post(String body) throws Exception {
+
+		HttpURLConnection connection = open();
+		write(connection, body);
+		Assert.assertEquals( connection.getResponseCode(), 200 );
+
+		InputStream in = connection.getInputStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ( (read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+
+		return JsonReader.parse( new String(out.toByteArray(), "UTF-8") );
+
+	}
+
+	private HttpURLConnection open() throws Exception {
+
+		InetSocketAddress address = gateway.getAddress();
+		return open( new URL("http://127.0.0.1:" + address.getPort() + HttpGateway.CONTEXT_PATH) );
+
+	}
+
+	private HttpURLConnection open(URL url) throws Exception {
+
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setDoOutput(true);
+
+		return connection;
+
+	}
+
+	private void write(HttpURLConnection connection, String body) throws Exception {
+		OutputStream out = connection.getOutputStream();
+		out.write( body.getBytes("UTF-8") );
+		out.close();
+	}
+
+	public static class Counter {
+
+		private int counter;
+
+		@ManagedAttribute
+		public int getCounter() {
+			return counter;
+		}
+
+		public void setCounter(int counter) {
+			this.counter = counter;
+		}
+
+		@ManagedAttribute
+		public String getName() {
+			return "counter";
+		}
+
+		@ManagedOperation(impact=Impact.ACTION)
+		public int addCounter(int value) {
+			counter += value;
+			return counter;
+		}
+
+		@ManagedOperation(impact=Impact.INFO)
+		public boolean negate(boolean value) {
+			return !value;
+		}
+
+		@ManagedOperation(impact=Impact.INFO)
+		public List<Object> broken() {
+			return Arrays.<Object>asList(counter, new Object() {
+
+				@Override
+				public String toString() {
+					throw new IllegalStateException("broken value");
+				}
+
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+package net.gescobar.jmx.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * A sample of the value of a numeric attribute of an MBean, emitted periodically (every 10 seconds unless the
+ * recording settings say otherwise).
+ *
+ * @author German Escobar
+ */
+@Name(AttributeSampleEvent.NAME)
+@Label("MBean Attribute Sample")
+@Category({ "JMX Annotations" })
+@Description("The value of a numeric attribute of an MBean")
+@Period("10 s")
+@StackTrace(false)
+class AttributeSampleEvent extends Event {
+
+	static final String NAME = "net.gescobar.jmx.AttributeSample";
+
+	@Label("MBean")
+	String mBean;
+
+	@Label("Attribute")
+	String attribute;
+
+	@Label("Value")
+	double value;
+
+}
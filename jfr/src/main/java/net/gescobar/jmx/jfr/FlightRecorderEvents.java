@@ -0,0 +1,277 @@
+package net.gescobar.jmx.jfr;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import jdk.jfr.FlightRecorder;
+
+import net.gescobar.jmx.InvocationListener;
+import net.gescobar.jmx.Management;
+
+/**
+ * <p>Emits JDK Flight Recorder events for the MBeans created by the library, so the application metrics can be
+ * correlated with the GC, lock and CPU profiles of the same recording:</p>
+ *
+ * <ul>
+ * 	<li><code>net.gescobar.jmx.OperationInvocation</code>: each invocation of an operation, with its duration, the
+ * 		arguments and the outcome.</li>
+ * 	<li><code>net.gescobar.jmx.AttributeSample</code>: periodic samples (every 10 seconds by default) of the numeric
+ * 		attributes selected with {@link #sample(String, String...)}.</li>
+ * </ul>
+ *
+ * <pre>
+ * FlightRecorderEvents events = new FlightRecorderEvents()
+ *         .sample("org.test:type=Statistics,*", "requests", "errors");
+ * events.start();
+ * </pre>
+ *
+ * <p>The events are only created while a recording has them enabled, so the cost is negligible otherwise.</p>
+ *
+ * @author German Escobar
+ */
+public class FlightRecorderEvents {
+
+	/**
+	 * The maximum length of the summary of the arguments of an invocation.
+	 */
+	public static final int MAX_ARGUMENTS_LENGTH = 256;
+
+	/**
+	 * The MBeanServer from which we sample the attributes.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * The attributes that are sampled.
+	 */
+	private final List<Sample> samples = new ArrayList<Sample>();
+
+	private final InvocationListener listener = new InvocationListener() {
+
+		@Override
+		public Object invocationStarted(ObjectName name, String operation, Object[] params) {
+
+			OperationInvocationEvent event = new OperationInvocationEvent();
+			if (!event.isEnabled()) {
+				return null;
+			}
+
+			event.mBean = String.valueOf(name);
+			event.operation = operation;
+			event.arguments = summary(params);
+			event.begin();
+
+			return event;
+
+		}
+
+		@Override
+		public void invocationFinished(Object context, Throwable error) {
+
+			if (context == null) {
+				return;
+			}
+
+			OperationInvocationEvent event = (OperationInvocationEvent) context;
+			event.end();
+			if (event.shouldCommit()) {
+				event.outcome = error == null ? "success" : cause(error).getClass().getName();
+				event.commit();
+			}
+
+		}
+
+	};
+
+	private final Runnable sampler = new Runnable() {
+
+		@Override
+		public void run() {
+			sampleAttributes();
+		}
+
+	};
+
+	private boolean started;
+
+	/**
+	 * Constructor. Samples the attributes from the default <code>MBeanServer</code> (which is retrieved using the
+	 * <code>ManagementFactory.getPlatformServer()</code> method).
+	 */
+	public FlightRecorderEvents() {
+		this( ManagementFactory.getPlatformMBeanServer() );
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer from which we sample the attributes.
+	 */
+	public FlightRecorderEvents(MBeanServer mBeanServer) {
+
+		if (mBeanServer == null) {
+			throw new IllegalArgumentException("No MBeanServer specified.");
+		}
+
+		this.mBeanServer = mBeanServer;
+
+	}
+
+	/**
+	 * Selects attributes to be sampled periodically. Values that are not numbers are ignored.
+	 *
+	 * @param pattern the name of the MBeans, can be a pattern.
+	 * @param attributes the names of the attributes.
+	 *
+	 * @return itself, so calls can be chained.
+	 * @throws IllegalArgumentException if the pattern is not a valid ObjectName.
+	 */
+	public synchronized FlightRecorderEvents sample(String pattern, String... attributes)
+			throws IllegalArgumentException {
+
+		if (pattern == null) {
+			throw new IllegalArgumentException("No pattern specified.");
+		}
+
+		if (attributes == null || attributes.length == 0) {
+			throw new IllegalArgumentException("No attributes specified.");
+		}
+
+		try {
+			samples.add( new Sample(new ObjectName(pattern), attributes) );
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException("Invalid pattern: " + pattern, e);
+		}
+
+		return this;
+
+	}
+
+	/**
+	 * Starts emitting the events.
+	 */
+	public synchronized void start() {
+
+		if (started) {
+			throw new IllegalStateException("Already started.");
+		}
+
+		Management.addInvocationListener(listener);
+		FlightRecorder.addPeriodicEvent(AttributeSampleEvent.class, sampler);
+
+		started = true;
+
+	}
+
+	/**
+	 * Stops emitting the events. Does nothing if it was not started.
+	 */
+	public synchronized void stop() {
+
+		if (!started) {
+			return;
+		}
+
+		Management.removeInvocationListener(listener);
+		FlightRecorder.removePeriodicEvent(sampler);
+
+		started = false;
+
+	}
+
+	/**
+	 * Helper method. Emits an event for each value of the selected attributes. Each MBean is read with one
+	 * <code>getAttributes</code> call.
+	 */
+	private void sampleAttributes() {
+
+		List<Sample> samples;
+		synchronized (this) {
+			samples = new ArrayList<Sample>(this.samples);
+		}
+
+		for (Sample sample : samples) {
+
+			Set<ObjectName> names = mBeanServer.queryNames(sample.pattern, null);
+			for (ObjectName name : names) {
+
+				List<Attribute> attributes;
+				try {
+					attributes = mBeanServer.getAttributes(name, sample.attributes).asList();
+				} catch (Exception e) {
+					// the MBean was unregistered
+					continue;
+				}
+
+				for (Attribute attribute : attributes) {
+					if (attribute.getValue() instanceof Number) {
+						AttributeSampleEvent event = new AttributeSampleEvent();
+						event.mBean = name.toString();
+						event.attribute = attribute.getName();
+						event.value = ((Number) attribute.getValue()).doubleValue();
+						event.commit();
+					}
+				}
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Helper method. Builds the summary of the arguments of an invocation.
+	 */
+	private static String summary(Object[] params) {
+
+		if (params == null || params.length == 0) {
+			return "";
+		}
+
+		String summary = Arrays.deepToString(params);
+		return summary.length() > MAX_ARGUMENTS_LENGTH ? summary.substring(0, MAX_ARGUMENTS_LENGTH) + "..." : summary;
+
+	}
+
+	/**
+	 * Helper method. Finds the exception thrown by the operation, which is wrapped by the JMX exceptions.
+	 */
+	private static Throwable cause(Throwable error) {
+
+		while ( (error instanceof MBeanException || error instanceof ReflectionException
+				|| error instanceof InvocationTargetException) && error.getCause() != null ) {
+			error = error.getCause();
+		}
+
+		return error;
+
+	}
+
+	/**
+	 * The attributes that are sampled of the MBeans that match a pattern.
+	 */
+	private static class Sample {
+
+		private final ObjectName pattern;
+
+		private final String[] attributes;
+
+		public Sample(ObjectName pattern, String[] attributes) {
+			this.pattern = pattern;
+			this.attributes = attributes;
+		}
+
+	}
+
+}
@@ -0,0 +1,38 @@
+package net.gescobar.jmx.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An invocation of an operation of an MBean created by the library, with its duration.
+ *
+ * @author German Escobar
+ */
+@Name(OperationInvocationEvent.NAME)
+@Label("MBean Operation Invocation")
+@Category({ "JMX Annotations" })
+@Description("An invocation of an operation of an MBean")
+@StackTrace(false)
+class OperationInvocationEvent extends Event {
+
+	static final String NAME = "net.gescobar.jmx.OperationInvocation";
+
+	@Label("MBean")
+	String mBean;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Arguments")
+	@Description("The arguments of the invocation, truncated")
+	String arguments;
+
+	@Label("Outcome")
+	@Description("\"success\" or the class of the exception thrown by the operation")
+	String outcome;
+
+}
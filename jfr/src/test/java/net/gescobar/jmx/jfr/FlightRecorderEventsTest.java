@@ -0,0 +1,120 @@
+package net.gescobar.jmx.jfr;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class FlightRecorderEventsTest {
+
+	@Test
+	public void shouldRecordInvocationsAndSamples() throws Exception {
+
+		String name = "org.test.jfr:type=Counter";
+		Management.register(new Counter(), name);
+
+		FlightRecorderEvents events = new FlightRecorderEvents().sample("org.test.jfr:*", "counter");
+		events.start();
+
+		Recording recording = new Recording();
+		recording.enable(OperationInvocationEvent.NAME);
+		recording.enable(AttributeSampleEvent.NAME).withPeriod( Duration.ofMillis(50) );
+		recording.start();
+
+		try {
+
+			ManagementFactory.getPlatformMBeanServer().invoke( new ObjectName(name), "addCounter",
+					new Object[] { 5 }, new String[] { "int" } );
+			try {
+				ManagementFactory.getPlatformMBeanServer().invoke( new ObjectName(name), "fail", null, null );
+				Assert.fail("Should have thrown an exception");
+			} catch (ReflectionException e) {}
+
+			Thread.sleep(300);
+
+		} finally {
+			recording.stop();
+			events.stop();
+			Management.unregister(name);
+		}
+
+		File file = File.createTempFile("jmx-annotations", ".jfr");
+		try {
+
+			recording.dump( file.toPath() );
+			recording.close();
+
+			List<RecordedEvent> recorded = RecordingFile.readAllEvents( file.toPath() );
+
+			boolean success = false;
+			boolean failure = false;
+			boolean sample = false;
+			for (RecordedEvent event : recorded) {
+
+				String type = event.getEventType().getName();
+				if (type.equals(OperationInvocationEvent.NAME)) {
+
+					Assert.assertEquals( event.getString("mBean"), name );
+					if (event.getString("operation").equals("addCounter")) {
+						Assert.assertEquals( event.getString("arguments"), "[5]" );
+						Assert.assertEquals( event.getString("outcome"), "success" );
+						success = true;
+					} else {
+						Assert.assertEquals( event.getString("outcome"), IllegalStateException.class.getName() );
+						failure = true;
+					}
+
+				} else if (type.equals(AttributeSampleEvent.NAME) && event.getString("mBean").equals(name)) {
+					// the first samples may be taken before the invocation
+					Assert.assertEquals( event.getString("attribute"), "counter" );
+					sample |= event.getDouble("value") == 5.0;
+				}
+
+			}
+
+			Assert.assertTrue( success );
+			Assert.assertTrue( failure );
+			Assert.assertTrue( sample );
+
+		} finally {
+			file.delete();
+		}
+
+	}
+
+	public class Counter {
+
+		private int counter;
+
+		@ManagedAttribute
+		public int getCounter() {
+			return counter;
+		}
+
+		@ManagedOperation
+		public void addCounter(int value) {
+			counter += value;
+		}
+
+		@ManagedOperation
+		public void fail() {
+			throw new IllegalStateException("failed");
+		}
+
+	}
+
+}
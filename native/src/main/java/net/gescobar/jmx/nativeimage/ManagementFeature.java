@@ -0,0 +1,147 @@
+package net.gescobar.jmx.nativeimage;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.nativeimage.hosted.RuntimeClassInitialization;
+import org.graalvm.nativeimage.hosted.RuntimeReflection;
+
+import net.gescobar.jmx.ManagementException;
+import net.gescobar.jmx.impl.MBeanFactory;
+import net.gescobar.jmx.impl.ResourceIndex;
+
+/**
+ * <p>A GraalVM native image <code>Feature</code> that creates the MBean metadata of the annotated classes while the
+ * image is built, so the application doesn't introspect any class when it starts. It's enabled automatically (by the
+ * <code>native-image.properties</code> of this jar) when the jar is in the classpath of <code>native-image</code>.</p>
+ *
+ * <p>The classes are read from the indexes generated by the annotation processor (see {@link ResourceIndex}), which
+ * also lists the classes of the library that are exposed as MBeans. Each one is prepared with
+ * {@link MBeanFactory#prepare(Class)}: the MBeanInfo and the accessors of its attributes and operations are stored in
+ * the image heap (the classes that hold them are initialized at build time) and the methods and fields that they call
+ * are registered for reflection. Classes with invalid annotations are skipped, registering them fails as it does in
+ * the JVM.</p>
+ *
+ * @author German Escobar
+ */
+public class ManagementFeature implements Feature {
+
+	/**
+	 * The classes of the library that are stored in the image heap with the prepared models (their nested classes
+	 * are included).
+	 */
+	private static final String[] BUILD_TIME_CLASSES = {
+		"net.gescobar.jmx.Limits",
+		"net.gescobar.jmx.impl.MBeanFactory",
+		"net.gescobar.jmx.impl.MBeanModel",
+		"net.gescobar.jmx.impl.AttributeAccessor",
+		"net.gescobar.jmx.impl.ComponentAttributeAccessor",
+		"net.gescobar.jmx.impl.SnapshotAttributeAccessor",
+		"net.gescobar.jmx.impl.AttributeMapAccessor",
+		"net.gescobar.jmx.impl.OperationInvoker",
+		"net.gescobar.jmx.impl.ComponentOperationInvoker",
+		"net.gescobar.jmx.impl.Converter",
+		"net.gescobar.jmx.impl.Converters"
+	};
+
+	@Override
+	public String getDescription() {
+		return "Creates the MBean metadata of the classes annotated with JMX Annotations at build time";
+	}
+
+	@Override
+	public void afterRegistration(AfterRegistrationAccess access) {
+
+		for (String className : buildTimeClasses( access.getApplicationClassLoader() )) {
+			RuntimeClassInitialization.initializeAtBuildTime(className);
+		}
+
+	}
+
+	@Override
+	public void beforeAnalysis(BeforeAnalysisAccess access) {
+
+		for (Map.Entry<Class<?>,Collection<Member>> prepared : prepare( access.getApplicationClassLoader() ).entrySet()) {
+
+			Class<?> type = prepared.getKey();
+			RuntimeReflection.register(type);
+
+			// the classes annotated with @ManagedResource are instantiated by Management.registerIndexed()
+			try {
+				RuntimeReflection.register( type.getConstructor() );
+			} catch (NoSuchMethodException e) {}
+
+			for (Member member : prepared.getValue()) {
+
+				RuntimeReflection.register( member.getDeclaringClass() );
+				if (member instanceof Method) {
+					RuntimeReflection.register( (Method) member );
+				} else {
+					RuntimeReflection.register( (Field) member );
+				}
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Prepares the indexed classes that are visible from a class loader.
+	 *
+	 * @param classLoader the class loader from which we are reading the indexes and loading the classes.
+	 *
+	 * @return the methods and fields that are accessed with reflection by indexed class, without the classes that
+	 * 		have invalid annotations.
+	 * @throws ManagementException if an index cannot be read or references a class that doesn't exist.
+	 */
+	public static Map<Class<?>,Collection<Member>> prepare(ClassLoader classLoader) throws ManagementException {
+
+		Map<Class<?>,Collection<Member>> prepared = new LinkedHashMap<Class<?>,Collection<Member>>();
+		for (Class<?> type : ResourceIndex.loadClasses(classLoader)) {
+
+			try {
+				prepared.put( type, MBeanFactory.prepare(type) );
+			} catch (ManagementException e) {
+				// invalid annotations, registering the class will fail
+			}
+
+		}
+
+		return prepared;
+
+	}
+
+	/**
+	 * @param classLoader the class loader from which the library is loaded.
+	 *
+	 * @return the names of the classes that are initialized at build time, including the nested classes.
+	 */
+	public static List<String> buildTimeClasses(ClassLoader classLoader) {
+
+		List<String> classNames = new ArrayList<String>();
+		for (String className : BUILD_TIME_CLASSES) {
+
+			classNames.add(className);
+			try {
+				for (Class<?> nested : Class.forName(className, false, classLoader).getDeclaredClasses()) {
+					classNames.add( nested.getName() );
+				}
+			} catch (ClassNotFoundException e) {
+				throw new ManagementException(e, "Class " + className + " not found, is the library in the classpath?");
+			}
+
+		}
+
+		return classNames;
+
+	}
+
+}
@@ -0,0 +1,63 @@
+package net.gescobar.jmx.nativeimage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Member;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ManagementFeatureTest {
+
+	@Test
+	public void shouldPrepareIndexedClasses() throws Exception {
+
+		Map<Class<?>,Collection<Member>> prepared = ManagementFeature.prepare( getClass().getClassLoader() );
+
+		Assert.assertTrue( prepared.get(Counter.class).contains(Counter.class.getMethod("getCounter")) );
+		Assert.assertTrue( prepared.get(Counter.class).contains(Counter.class.getMethod("addCounter", int.class)) );
+		Assert.assertTrue( prepared.containsKey(Class.forName("net.gescobar.jmx.impl.JobManager")) );
+
+		Assert.assertTrue( ManagementFeature.buildTimeClasses( getClass().getClassLoader() )
+				.contains("net.gescobar.jmx.impl.Converters$NumberConverter") );
+
+		// the MBean is created from the prepared model
+		String name = "org.test.native:type=Counter";
+		Management.register(new Counter(), name);
+		try {
+
+			ManagementFactory.getPlatformMBeanServer().invoke( new ObjectName(name), "addCounter",
+					new Object[] { 5 }, new String[] { "int" } );
+			Assert.assertEquals( ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(name),
+					"counter"), 5 );
+
+		} finally {
+			Management.unregister(name);
+		}
+
+	}
+
+	public static class Counter {
+
+		private int counter;
+
+		@ManagedAttribute
+		public int getCounter() {
+			return counter;
+		}
+
+		@ManagedOperation
+		public void addCounter(int value) {
+			counter += value;
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+package net.gescobar.jmx;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>Receives the invocations of the operations of the MBeans created by the library (e.g. to record them in a
+ * profiler). Listeners are added with {@link Management#addInvocationListener(InvocationListener)}.</p>
+ *
+ * <p>The methods are called in the thread that invokes the operation, so they must be fast. Exceptions thrown by
+ * the listener are ignored.</p>
+ *
+ * @author German Escobar
+ */
+public interface InvocationListener {
+
+	/**
+	 * Called before an operation is invoked, including invocations that are going to be rejected by the limits.
+	 *
+	 * @param name the name of the MBean, null if the MBean is not registered.
+	 * @param operation the name of the operation.
+	 * @param params the received parameters, can be null.
+	 *
+	 * @return an object that is passed to {@link #invocationFinished(Object, Throwable)}, can be null.
+	 */
+	Object invocationStarted(ObjectName name, String operation, Object[] params);
+
+	/**
+	 * Called after an operation is invoked (or submitted, if the operation is async).
+	 *
+	 * @param context the object returned by {@link #invocationStarted(ObjectName, String, Object[])}.
+	 * @param error the exception thrown by the invocation (usually a <code>ReflectionException</code> or a
+	 * 		  <code>MBeanException</code> that wraps the cause), null if it succeeded.
+	 */
+	void invocationFinished(Object context, Throwable error);
+
+}
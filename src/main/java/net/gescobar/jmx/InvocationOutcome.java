@@ -0,0 +1,83 @@
+package net.gescobar.jmx;
+
+/**
+ * The outcome of invoking an operation on one of the MBeans that matched the pattern of a fan-out invocation (see
+ * {@link Management#invokeAll(String, String, Object[], String[], int, long)}).
+ *
+ * @author German Escobar
+ */
+public final class InvocationOutcome {
+
+	public enum Status {
+
+		/**
+		 * The operation returned, the value is the result of the operation.
+		 */
+		SUCCEEDED,
+
+		/**
+		 * The operation threw an exception or the call was rejected (e.g. by a limit).
+		 */
+		FAILED,
+
+		/**
+		 * The operation didn't return before the timeout, the thread that was invoking it was interrupted.
+		 */
+		TIMED_OUT
+
+	}
+
+	private final Status status;
+
+	private final Object value;
+
+	private final String error;
+
+	private final long nanos;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param status the status of the invocation.
+	 * @param value the value returned by the operation, if it succeeded.
+	 * @param error the exception thrown by the operation (or the reason of the timeout), if it didn't succeed.
+	 * @param nanos the nanoseconds that the operation took.
+	 */
+	public InvocationOutcome(Status status, Object value, String error, long nanos) {
+		this.status = status;
+		this.value = value;
+		this.error = error;
+		this.nanos = nanos;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the value returned by the operation, null if it failed, timed out or returns <code>void</code>.
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the exception thrown by the operation (or the reason of the timeout), null if it succeeded.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * @return the milliseconds that the operation took or the timeout if it timed out.
+	 */
+	public double getMillis() {
+		return nanos / 1000000.0;
+	}
+
+	@Override
+	public String toString() {
+		return status + (error != null ? ": " + error : value != null ? ": " + value : "");
+	}
+
+}
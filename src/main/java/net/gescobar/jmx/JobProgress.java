@@ -0,0 +1,54 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.impl.Job;
+
+/**
+ * <p>Used by async operations (see {@link ManagedOperation#async()}) to report their progress and to find out if they
+ * were cancelled. Both methods work on the job that is running in the current thread and do nothing (or return 
+ * false) if they are called outside a job.</p>
+ * 
+ * <pre>
+ * &#064;ManagedOperation(async=true)
+ * public void rebuild() {
+ *     for (int i=0; i &lt; size &amp;&amp; !JobProgress.isCancelled(); i++) {
+ *         ...
+ *         JobProgress.update(i * 100 / size);
+ *     }
+ * }
+ * </pre>
+ * 
+ * @author German Escobar
+ */
+public final class JobProgress {
+	
+	/**
+	 * Hide public constructor.
+	 */
+	private JobProgress() {}
+	
+	/**
+	 * Reports the progress of the job running in the current thread.
+	 * 
+	 * @param percent the progress, from 0 to 100.
+	 */
+	public static void update(int percent) {
+		
+		Job job = Job.current();
+		if (job != null) {
+			job.setProgress(percent);
+		}
+		
+	}
+	
+	/**
+	 * @return true if the job running in the current thread was cancelled, false otherwise.
+	 */
+	public static boolean isCancelled() {
+		
+		Job job = Job.current();
+		return job != null && job.isCancelled();
+		
+	}
+
+}
@@ -0,0 +1,83 @@
+package net.gescobar.jmx;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * <p>Limits of the attributes and operations of an MBean that are configured when the object is registered (see
+ * {@link Management#register(Object, String, Limits)}). They replace the limits declared in the
+ * {@link ManagedAttribute} and {@link ManagedOperation} annotations.</p>
+ *
+ * <pre>
+ * Management.register(statistics, "org.test:type=Statistics", new Limits()
+ *         .limit("rebuild", 1, 0)
+ *         .limit("histogram", 0, 5));
+ * </pre>
+ *
+ * @author German Escobar
+ */
+public final class Limits {
+
+	private final Map<String,Integer> maxConcurrency = new HashMap<String,Integer>();
+
+	private final Map<String,Double> maxRate = new HashMap<String,Double>();
+
+	/**
+	 * Limits an attribute (its reads) or an operation (all its overloads).
+	 *
+	 * @param name the name of the attribute or operation.
+	 * @param maxConcurrency the maximum number of concurrent calls, 0 for no limit.
+	 * @param maxRate the maximum number of calls per second, 0 for no limit.
+	 *
+	 * @return this object, to chain calls.
+	 */
+	public Limits limit(String name, int maxConcurrency, double maxRate) {
+
+		if (name == null || "".equals(name)) {
+			throw new IllegalArgumentException("No name specified.");
+		}
+
+		if (maxConcurrency < 0 || maxRate < 0) {
+			throw new IllegalArgumentException("Limits cannot be negative.");
+		}
+
+		this.maxConcurrency.put(name, maxConcurrency);
+		this.maxRate.put(name, maxRate);
+
+		return this;
+
+	}
+
+	/**
+	 * @return the names of the limited attributes and operations.
+	 */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet( maxConcurrency.keySet() );
+	}
+
+	/**
+	 * @param name the name of the attribute or operation.
+	 *
+	 * @return the maximum number of concurrent calls, 0 for no limit.
+	 */
+	public int getMaxConcurrency(String name) {
+		Integer value = maxConcurrency.get(name);
+		return value == null ? 0 : value;
+	}
+
+	/**
+	 * @param name the name of the attribute or operation.
+	 *
+	 * @return the maximum number of calls per second, 0 for no limit.
+	 */
+	public double getMaxRate(String name) {
+		Double value = maxRate.get(name);
+		return value == null ? 0 : value;
+	}
+
+}
@@ -1,16 +1,31 @@
 package net.gescobar.jmx;
 
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import javax.management.DynamicMBean;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
 import net.gescobar.jmx.annotation.ManagedAttribute;
 import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.ManagedResource;
+import net.gescobar.jmx.impl.ClientProxy;
+import net.gescobar.jmx.impl.FanOutManager;
+import net.gescobar.jmx.impl.InvocationListeners;
+import net.gescobar.jmx.impl.LibraryMBeans;
 import net.gescobar.jmx.impl.MBeanFactory;
+import net.gescobar.jmx.impl.PrimitiveAttributes;
+import net.gescobar.jmx.impl.Query;
+import net.gescobar.jmx.impl.QueryManager;
+import net.gescobar.jmx.impl.ResourceIndex;
 
 
 /**
@@ -42,6 +57,24 @@ public final class Management {
 	 * @throws ManagementException if there is a problem creating or registering the MBean.
 	 */
     public static void register(Object object, String name) throws InstanceAlreadyExistsException, ManagementException {
+    	register(object, name, null);
+    }
+    
+    /**
+     * <p>Registers an object with the specified <code>name</code> in the default <code>MBeanServer</code> like 
+     * {@link #register(Object, String)} but replacing the limits declared in the {@link ManagedAttribute} and 
+     * {@link ManagedOperation} annotations with the specified ones. Calls over the limits are rejected and counted in 
+     * the <code>net.gescobar.jmx:type=Limits</code> MBean.</p>
+     * 
+     * @param object the object that will be exposed as an MBean.
+     * @param name the name used to expose the object in the MBeanServer.
+     * @param limits the limits of the attributes and operations, can be null.
+     * 
+     * @throws InstanceAlreadyExistsException if the MBean is already registered.
+     * @throws ManagementException if there is a problem creating or registering the MBean.
+     */
+    public static void register(Object object, String name, Limits limits) throws InstanceAlreadyExistsException, 
+    		ManagementException {
     	
     	if (object == null) {
     		throw new IllegalArgumentException("No object specified.");
@@ -56,7 +89,7 @@ public final class Management {
     		throw new ManagementException("No MBeanServer found.");
     	}
     		
-    	DynamicMBean mBean = MBeanFactory.createMBean(object);
+    	DynamicMBean mBean = MBeanFactory.createMBean( object, limits );
 		
     	try { 
     		mBeanServer.registerMBean( mBean, new ObjectName(name) );
@@ -68,6 +101,110 @@ public final class Management {
     	
     }
 
+    /**
+     * <p>Instantiates and registers in the default <code>MBeanServer</code> all the classes annotated with 
+     * {@link ManagedResource} that are visible from the context class loader of the current thread (or from the class 
+     * loader of this class if there is no context class loader).</p>
+     * 
+     * @return the names of the registered MBeans.
+     * 
+     * @throws InstanceAlreadyExistsException if one of the MBeans is already registered.
+     * @throws ManagementException if there is a problem instantiating or registering one of the MBeans.
+     * 
+     * @see #registerIndexed(ClassLoader)
+     */
+    public static List<String> registerIndexed() throws InstanceAlreadyExistsException, ManagementException {
+    	
+    	ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    	if (classLoader == null) {
+    		classLoader = Management.class.getClassLoader();
+    	}
+    	
+    	return registerIndexed(classLoader);
+    	
+    }
+    
+    /**
+     * <p>Instantiates and registers in the default <code>MBeanServer</code> all the classes annotated with 
+     * {@link ManagedResource} that are visible from the specified class loader.</p>
+     * 
+     * <p>The classes are found using the index generated at compile time (see {@link ResourceIndex}) instead of 
+     * scanning the classpath, and only the methods listed in the index are introspected, so the cost depends only on
+     * the number of managed classes.</p>
+     * 
+     * <p>If one of the MBeans can't be registered, the ones that were already registered are unregistered before the 
+     * exception is thrown, so the classes are registered all or none.</p>
+     * 
+     * @param classLoader the class loader from which we are reading the indexes and loading the classes.
+     * 
+     * @return the names of the registered MBeans.
+     * 
+     * @throws InstanceAlreadyExistsException if one of the MBeans is already registered.
+     * @throws ManagementException if there is a problem instantiating or registering one of the MBeans.
+     */
+    public static List<String> registerIndexed(ClassLoader classLoader) throws InstanceAlreadyExistsException, 
+    		ManagementException {
+    	
+    	MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    	if (mBeanServer == null) {
+    		throw new ManagementException("No MBeanServer found.");
+    	}
+    	
+    	List<String> names = new ArrayList<String>();
+    	boolean registered = false;
+    	try {
+    		
+    		for (ResourceIndex.Entry entry : ResourceIndex.load(classLoader)) {
+    			
+    			Object object;
+    			try {
+    				object = entry.getType().newInstance();
+    			} catch (Exception e) {
+    				throw new ManagementException(e, "Cannot instantiate " + entry.getType().getName());
+    			}
+    			
+    			List<Method> methods = entry.getMethods();
+    			DynamicMBean mBean = MBeanFactory.createMBean( object, methods.toArray(new Method[methods.size()]) );
+    			
+    			try {
+    				mBeanServer.registerMBean( mBean, new ObjectName(entry.getName()) );
+    			} catch (InstanceAlreadyExistsException e) {
+    				throw e;
+    			} catch (Exception e) {
+    				throw new ManagementException(e);
+    			}
+    			
+    			names.add( entry.getName() );
+    			
+    		}
+    		registered = true;
+    		
+    	} finally {
+    		if (!registered) {
+    			unregisterAll(mBeanServer, names);
+    		}
+    	}
+    	
+    	return names;
+    	
+    }
+    
+    /**
+     * Helper method. Unregisters the MBeans registered by {@link #registerIndexed(ClassLoader)} when one of them 
+     * fails. The MBeans that were already unregistered are ignored.
+     */
+    private static void unregisterAll(MBeanServer mBeanServer, List<String> names) {
+    	
+    	for (String name : names) {
+    		try {
+    			mBeanServer.unregisterMBean( new ObjectName(name) );
+    		} catch (Exception e) {
+    			// unregistered by someone else, the original exception is the one that matters
+    		}
+    	}
+    	
+    }
+
     /**
      * <p>Unregisters an MBean with the specified <code>name</code> if it exists in the default 
      * <code>MBeanServer</code> (which is retrieved using the <code>ManagementFactory.getPlatformServer()</code> 
@@ -98,6 +235,251 @@ public final class Management {
     	
     }
     
+    /**
+     * <p>Creates a typed client of an MBean: the getters and setters of the interface are mapped to the attributes of 
+     * the MBean and the other methods to its operations. The <code>MBeanInfo</code> is retrieved once, when the 
+     * client is created, so each call is one round trip.</p>
+     * 
+     * <pre>
+     * StatisticsClient statistics = Management.newClient(connection, name, StatisticsClient.class);
+     * statistics.resetCounter();
+     * </pre>
+     * 
+     * @param <T> the type of the client.
+     * @param connection the connection to the MBeanServer in which the MBean is registered.
+     * @param name the name of the MBean.
+     * @param type the interface of the client, it can't be a class.
+     * 
+     * @return an object that implements the interface.
+     * @throws ManagementException if the MBeanInfo cannot be retrieved or a method of the interface cannot be mapped 
+     * 		to an attribute or operation of the MBean.
+     * @throws IllegalArgumentException if the type is not an interface.
+     */
+    public static <T> T newClient(MBeanServerConnection connection, ObjectName name, Class<T> type) 
+    		throws ManagementException {
+    	return ClientProxy.create(connection, name, type);
+    }
+    
+    /**
+     * Reads the attributes of a client (created with {@link #newClient(MBeanServerConnection, ObjectName, Class)}) in 
+     * one <code>getAttributes</code> round trip.
+     * 
+     * <pre>
+     * StatisticsClient batch = Management.batch(statistics);
+     * int counter = batch.getCounter();
+     * </pre>
+     * 
+     * @param <T> the type of the client.
+     * @param client the client.
+     * @param attributes the names of the attributes to read, all the attributes of the getters if none is specified.
+     * 
+     * @return an object that implements the same interface whose getters return the values that were read (the 
+     * 		other methods are called on the MBean).
+     * @throws ManagementException if the attributes cannot be read.
+     */
+    public static <T> T batch(T client, String... attributes) throws ManagementException {
+    	return ClientProxy.batch(client, attributes);
+    }
+    
+    /**
+     * <p>Reads a numeric attribute of an MBean created by the library and registered in the default 
+     * <code>MBeanServer</code> as a <code>long</code>, without going through the <code>MBeanServer</code>. If the 
+     * getter returns a primitive number the value is not boxed, so samplers and exporters that keep the 
+     * <code>ObjectName</code> objects can read many attributes periodically without allocating:</p>
+     * 
+     * <pre>
+     * ObjectName name = new ObjectName("org.test:type=Statistics");
+     * long counter = Management.getLong(name, "counter");
+     * </pre>
+     * 
+     * @param name the name with which the MBean was registered.
+     * @param attribute the name of the attribute.
+     * 
+     * @return the value of the attribute.
+     * @throws ManagementException if there is no MBean created by the library with that name, the attribute doesn't 
+     * 		exist or is not a number, or the getter throws an exception.
+     */
+    public static long getLong(ObjectName name, String attribute) throws ManagementException {
+    	return getLong(ManagementFactory.getPlatformMBeanServer(), name, attribute);
+    }
+    
+    /**
+     * Reads a numeric attribute of an MBean created by the library and registered in an <code>MBeanServer</code> as 
+     * a <code>long</code> (see {@link #getLong(ObjectName, String)}).
+     * 
+     * @param mBeanServer the MBeanServer in which the MBean is registered.
+     * @param name the name with which the MBean was registered.
+     * @param attribute the name of the attribute.
+     * 
+     * @return the value of the attribute.
+     * @throws ManagementException if there is no MBean created by the library with that name in the MBeanServer, the 
+     * 		attribute doesn't exist or is not a number, or the getter throws an exception.
+     */
+    public static long getLong(MBeanServer mBeanServer, ObjectName name, String attribute) 
+    		throws ManagementException {
+    	return PrimitiveAttributes.getLong(mBeanServer, name, attribute);
+    }
+    
+    /**
+     * Reads a numeric attribute of an MBean created by the library and registered in the default 
+     * <code>MBeanServer</code> as a <code>double</code>, without allocating if the getter returns a primitive number 
+     * (see {@link #getLong(ObjectName, String)}).
+     * 
+     * @param name the name with which the MBean was registered.
+     * @param attribute the name of the attribute.
+     * 
+     * @return the value of the attribute.
+     * @throws ManagementException if there is no MBean created by the library with that name, the attribute doesn't 
+     * 		exist or is not a number, or the getter throws an exception.
+     */
+    public static double getDouble(ObjectName name, String attribute) throws ManagementException {
+    	return getDouble(ManagementFactory.getPlatformMBeanServer(), name, attribute);
+    }
+    
+    /**
+     * Reads a numeric attribute of an MBean created by the library and registered in an <code>MBeanServer</code> as 
+     * a <code>double</code> (see {@link #getLong(ObjectName, String)}).
+     * 
+     * @param mBeanServer the MBeanServer in which the MBean is registered.
+     * @param name the name with which the MBean was registered.
+     * @param attribute the name of the attribute.
+     * 
+     * @return the value of the attribute.
+     * @throws ManagementException if there is no MBean created by the library with that name in the MBeanServer, the 
+     * 		attribute doesn't exist or is not a number, or the getter throws an exception.
+     */
+    public static double getDouble(MBeanServer mBeanServer, ObjectName name, String attribute) 
+    		throws ManagementException {
+    	return PrimitiveAttributes.getDouble(mBeanServer, name, attribute);
+    }
+    
+    /**
+     * <p>Reads some attributes of the MBeans created by the library and registered in the default MBeanServer that 
+     * match a pattern and a condition on their attributes:</p>
+     * 
+     * <pre>
+     * Map&lt;ObjectName,Map&lt;String,Object&gt;&gt; pools = 
+     * 		Management.query("org.test:type=Pool,*", "name, active", "active &gt; 0.9 * max and name != 'batch'");
+     * </pre>
+     * 
+     * <p>The condition supports comparisons, <code>and</code>, <code>or</code>, <code>not</code>, arithmetic and 
+     * parenthesis; attributes that an MBean doesn't have are null. The compiled queries are cached and, if many MBeans 
+     * match the pattern, they are evaluated in parallel (see {@link Query}). Remote clients use the 
+     * <code>net.gescobar.jmx:type=Query</code> MBean (see {@link #enableLibraryMBeans()}).</p>
+     * 
+     * @param pattern the ObjectName pattern of the MBeans.
+     * @param select the comma separated names of the attributes that are returned, all the numeric, boolean and 
+     * 		string attributes if it's null, empty or <code>*</code>.
+     * @param where the condition that the MBeans must match, can be null or empty.
+     * 
+     * @return the values of the selected attributes by attribute name of the matching MBeans by name.
+     * @throws IllegalArgumentException if the pattern or the condition are not valid.
+     */
+    public static Map<ObjectName,Map<String,Object>> query(String pattern, String select, String where) 
+    		throws IllegalArgumentException {
+    	return QueryManager.execute(ManagementFactory.getPlatformMBeanServer(), pattern, select, where);
+    }
+    
+    /**
+     * <p>Invokes an operation on all the MBeans created by the library and registered in the default MBeanServer that 
+     * match a pattern, in parallel, and returns the outcome of each one (the operations that fail or time out don't stop the 
+     * others):</p>
+     * 
+     * <pre>
+     * Map&lt;ObjectName,InvocationOutcome&gt; outcomes = 
+     * 		Management.invokeAll("org.test:type=Cache,*", "flush", null, null, 16, 5000);
+     * </pre>
+     * 
+     * <p>Remote clients use the <code>net.gescobar.jmx:type=FanOut</code> MBean (see {@link FanOutManager} and 
+     * {@link #enableLibraryMBeans()}).</p>
+     * 
+     * @param pattern the ObjectName pattern of the MBeans.
+     * @param operation the name of the operation.
+     * @param params the arguments of the operation, can be null if it has no parameters.
+     * @param signature the types of the parameters of the operation, can be null if it has no parameters.
+     * @param concurrency the maximum number of calls that run at the same time.
+     * @param timeoutMillis the milliseconds that each call can take before it's interrupted.
+     * 
+     * @return the outcome of each MBean by name.
+     * @throws ManagementException if the pattern is not valid or the thread is interrupted.
+     */
+    public static Map<ObjectName,InvocationOutcome> invokeAll(String pattern, String operation, Object[] params, 
+    		String[] signature, int concurrency, long timeoutMillis) throws ManagementException {
+    	
+    	try {
+    		return FanOutManager.invoke(ManagementFactory.getPlatformMBeanServer(), pattern, operation, params, 
+    				signature, concurrency, timeoutMillis);
+    	} catch (MalformedObjectNameException e) {
+    		throw new ManagementException(e);
+    	}
+    	
+    }
+    
+    /**
+     * <p>Registers the <code>net.gescobar.jmx:type=Statistics</code>, <code>net.gescobar.jmx:type=Snapshot</code>, 
+     * <code>net.gescobar.jmx:type=Query</code> and <code>net.gescobar.jmx:type=FanOut</code> MBeans in the default 
+     * <code>MBeanServer</code>, so remote clients can use them. They read or invoke every MBean created by the 
+     * library, so they are not registered unless they are enabled.</p>
+     * 
+     * @throws ManagementException if there is a problem creating or registering the MBeans.
+     */
+    public static void enableLibraryMBeans() throws ManagementException {
+    	enableLibraryMBeans( ManagementFactory.getPlatformMBeanServer() );
+    }
+    
+    /**
+     * Registers the MBeans of the library (see {@link #enableLibraryMBeans()}) in an <code>MBeanServer</code>. They 
+     * only see the MBeans registered in that <code>MBeanServer</code>.
+     * 
+     * @param mBeanServer the MBeanServer in which the MBeans are registered.
+     * 
+     * @throws ManagementException if there is a problem creating or registering the MBeans.
+     */
+    public static void enableLibraryMBeans(MBeanServer mBeanServer) throws ManagementException {
+    	LibraryMBeans.enable(mBeanServer);
+    }
+    
+    /**
+     * Unregisters the MBeans registered with {@link #enableLibraryMBeans()} from the default <code>MBeanServer</code>.
+     * 
+     * @throws ManagementException if there is a problem unregistering the MBeans.
+     */
+    public static void disableLibraryMBeans() throws ManagementException {
+    	disableLibraryMBeans( ManagementFactory.getPlatformMBeanServer() );
+    }
+    
+    /**
+     * Unregisters the MBeans registered with {@link #enableLibraryMBeans(MBeanServer)} from an 
+     * <code>MBeanServer</code>.
+     * 
+     * @param mBeanServer the MBeanServer from which the MBeans are unregistered.
+     * 
+     * @throws ManagementException if there is a problem unregistering the MBeans.
+     */
+    public static void disableLibraryMBeans(MBeanServer mBeanServer) throws ManagementException {
+    	LibraryMBeans.disable(mBeanServer);
+    }
+    
+    /**
+     * Adds a listener that is notified of the invocations of the operations of all the MBeans created by the 
+     * library.
+     * 
+     * @param listener the listener to add.
+     */
+    public static void addInvocationListener(InvocationListener listener) {
+    	InvocationListeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener added with {@link #addInvocationListener(InvocationListener)}. Does nothing if the listener 
+     * was not added.
+     * 
+     * @param listener the listener to remove.
+     */
+    public static void removeInvocationListener(InvocationListener listener) {
+    	InvocationListeners.remove(listener);
+    }
+    
     public boolean isRegistered(String name) throws ManagementException {
     	
     	if (name == null || "".equals(name)) {
@@ -18,4 +18,24 @@ public @interface ManagedAttribute {
 	boolean readable() default true;
     boolean writable() default true;
     String description() default "";
+    
+    /**
+     * @return the maximum number of concurrent reads of the attribute, 0 (the default) for no limit. Reads over the
+     * limit are rejected.
+     */
+    int maxConcurrency() default 0;
+    
+    /**
+     * @return the maximum number of reads per second of the attribute, 0 (the default) for no limit. Reads over the
+     * limit are rejected.
+     */
+    double maxRate() default 0;
+    
+    /**
+     * @return true if the attribute is a monotonic counter whose per second rates are exposed as the 
+     * <code>xxxRate1m</code>, <code>xxxRate5m</code> and <code>xxxRate15m</code> attributes (where <code>xxx</code> is 
+     * the name of the attribute). The getter must return a number.
+     */
+    boolean rate() default false;
 }
+
@@ -0,0 +1,34 @@
+package net.gescobar.jmx.annotation;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field or a method without parameters that holds a <code>Map&lt;String,?&gt;</code> whose entries are exposed 
+ * as read-only attributes: the key is the name of the attribute and the value its value. Entries can be added and 
+ * removed at runtime without registering the MBean again; the <code>MBeanInfo</code> is rebuilt only when the keys 
+ * (or the types of the values) change. Use a concurrent map (e.g. <code>ConcurrentHashMap</code>) as it's read while 
+ * other threads update it.
+ * 
+ * @author German Escobar
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={FIELD, METHOD})
+public @interface ManagedAttributeMap {
+	
+	/**
+	 * @return a prefix for the names of the attributes, which is prepended to the keys as is (keys are arbitrary 
+	 * strings so they are not capitalized). For example, the key <code>shard1</code> with prefix <code>shard.</code> 
+	 * is exposed as <code>shard.shard1</code>.
+	 */
+	String prefix() default "";
+	
+    String description() default "";
+    
+}
@@ -0,0 +1,23 @@
+package net.gescobar.jmx.annotation;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose instances are exposed as part of the MBean of the object that holds them in a field (e.g. the
+ * <code>TopK</code> class of the library). The attributes and operations of the class are exposed with the name of 
+ * the field as prefix: the attribute <code>top</code> of the field <code>urls</code> is exposed as 
+ * <code>urlsTop</code> and the operation <code>reset</code> as <code>urlsReset</code>.
+ * 
+ * @author German Escobar
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={TYPE})
+public @interface ManagedComponent {
+	
+}
@@ -17,4 +17,29 @@ import java.lang.annotation.Target;
 public @interface ManagedOperation {
     Impact impact() default Impact.UNKNOWN;
     String description() default "";
-}
\ No newline at end of file
+    
+    /**
+     * @return true if the operation must run in the background. The invocation returns immediately with the id 
+     * (a <code>long</code>) of a job that can be tracked and cancelled through the 
+     * <code>net.gescobar.jmx:type=Jobs</code> MBean.
+     */
+    boolean async() default false;
+    
+    /**
+     * @return the maximum number of jobs of an async operation that can be running at the same time for each MBean;
+     * invocations over the limit are rejected.
+     */
+    int maxConcurrentJobs() default 1;
+    
+    /**
+     * @return the maximum number of concurrent invocations of the operation, 0 (the default) for no limit. 
+     * Invocations over the limit are rejected.
+     */
+    int maxConcurrency() default 0;
+    
+    /**
+     * @return the maximum number of invocations per second of the operation, 0 (the default) for no limit. 
+     * Invocations over the limit are rejected.
+     */
+    double maxRate() default 0;
+}
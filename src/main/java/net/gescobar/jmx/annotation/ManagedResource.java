@@ -0,0 +1,30 @@
+package net.gescobar.jmx.annotation;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class that must be instantiated and registered automatically with the specified name when 
+ * <code>Management.registerIndexed()</code> is called. The class must be public, have a public constructor 
+ * without arguments and, if nested, be static.
+ * 
+ * <p>The classes are found using an index that is generated at compile time (the annotation processor is included in
+ * the library jar) so no classpath scanning is done at runtime.</p>
+ * 
+ * @author German Escobar
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={TYPE})
+public @interface ManagedResource {
+	
+	/**
+	 * @return the name used to register the MBean (see <code>javax.management.ObjectName</code>).
+	 */
+	String value();
+	
+}
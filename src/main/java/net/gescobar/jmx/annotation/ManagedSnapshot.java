@@ -0,0 +1,31 @@
+package net.gescobar.jmx.annotation;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method without parameters that returns an immutable snapshot object (a POJO with getters or a record). 
+ * Each component of the snapshot is exposed as a read-only attribute. A bulk read (<code>getAttributes</code>) calls
+ * the method only once and serves all the requested components from the same snapshot, so related values are 
+ * consistent with each other without locking in the getters.
+ * 
+ * @author German Escobar
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={METHOD})
+public @interface ManagedSnapshot {
+	
+	/**
+	 * @return a prefix for the names of the attributes, useful if there is more than one snapshot method. For 
+	 * example, the component <code>errors</code> with prefix <code>http</code> is exposed as <code>httpErrors</code>.
+	 */
+	String prefix() default "";
+	
+    String description() default "";
+    
+}
@@ -0,0 +1,21 @@
+package net.gescobar.jmx.annotation;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Used to name a parameter of a {@link ManagedOperation}. Parameters without a name are named <code>param</code>
+ * followed by their position (e.g. <code>param0</code>).
+ * 
+ * @author German Escobar
+ */
+@Documented
+@Retention(value = RUNTIME)
+@Target(value = { PARAMETER })
+public @interface Name {
+  String value();
+}
@@ -0,0 +1,173 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads and writes an attribute of the instrumented object. It's built once, when the MBean is created, with the 
+ * getter and setter methods and the {@link Converter} of the attribute, so that {@link MBeanImpl} doesn't need to 
+ * find any method or class when the attribute is accessed.
+ * 
+ * @author German Escobar
+ */
+class AttributeAccessor {
+	
+	/**
+	 * The name of the attribute.
+	 */
+	private final String name;
+	
+	/**
+	 * The getter method, null if the attribute is not readable.
+	 */
+	private final Method getter;
+	
+	/**
+	 * The setter method, null if the attribute is not writable.
+	 */
+	private final Method setter;
+	
+	/**
+	 * Converts the values before calling the setter, null if the attribute is not writable.
+	 */
+	private final Converter converter;
+	
+	/**
+	 * Reads the attribute without boxing it, null if the getter doesn't return a primitive integer (see 
+	 * {@link #bind(LongReader, DoubleReader)}).
+	 */
+	private LongReader longReader;
+	
+	/**
+	 * Reads the attribute without boxing it, null if the getter doesn't return a <code>double</code> or 
+	 * <code>float</code>.
+	 */
+	private DoubleReader doubleReader;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name the name of the attribute.
+	 * @param getter the getter method, null if the attribute is not readable.
+	 * @param setter the setter method, null if the attribute is not writable.
+	 */
+	public AttributeAccessor(String name, Method getter, Method setter) {
+		this.name = name;
+		this.getter = getter;
+		this.setter = setter;
+		this.converter = setter != null ? Converters.forType( setter.getParameterTypes()[0] ) : null;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public boolean isReadable() {
+		return getter != null;
+	}
+	
+	public boolean isWritable() {
+		return setter != null;
+	}
+	
+	/**
+	 * Reads the value of the attribute. The attribute must be readable.
+	 * 
+	 * @param object the instrumented object.
+	 * 
+	 * @return the value returned by the getter.
+	 * @throws Exception if the getter throws an exception or cannot be invoked.
+	 */
+	public Object get(Object object) throws Exception {
+		return getter.invoke(object);
+	}
+	
+	/**
+	 * Binds the readers generated for a getter that returns a primitive number (see {@link ReaderGenerator}). It's 
+	 * called when the MBean is created, before it's used.
+	 * 
+	 * @param longReader the reader of a getter that returns a primitive integer, can be null.
+	 * @param doubleReader the reader of a getter that returns a <code>double</code> or <code>float</code>, can be 
+	 * 		null.
+	 */
+	public void bind(LongReader longReader, DoubleReader doubleReader) {
+		this.longReader = longReader;
+		this.doubleReader = doubleReader;
+	}
+	
+	/**
+	 * Reads the value of a numeric attribute as a <code>long</code>. The attribute must be readable. It doesn't 
+	 * allocate if a reader was bound, the value is read with {@link #get(Object)} and converted otherwise.
+	 * 
+	 * @param object the instrumented object.
+	 * 
+	 * @return the value returned by the getter.
+	 * @throws Exception if the getter throws an exception or cannot be invoked, or the value is not a number.
+	 */
+	public long getLong(Object object) throws Exception {
+		
+		if (longReader != null) {
+			return longReader.read(object);
+		} else if (doubleReader != null) {
+			return (long) doubleReader.read(object);
+		}
+		
+		return number( get(object) ).longValue();
+		
+	}
+	
+	/**
+	 * Reads the value of a numeric attribute as a <code>double</code>. The attribute must be readable. It doesn't 
+	 * allocate if a reader was bound, the value is read with {@link #get(Object)} and converted otherwise.
+	 * 
+	 * @param object the instrumented object.
+	 * 
+	 * @return the value returned by the getter.
+	 * @throws Exception if the getter throws an exception or cannot be invoked, or the value is not a number.
+	 */
+	public double getDouble(Object object) throws Exception {
+		
+		if (doubleReader != null) {
+			return doubleReader.read(object);
+		} else if (longReader != null) {
+			return longReader.read(object);
+		}
+		
+		return number( get(object) ).doubleValue();
+		
+	}
+	
+	private Number number(Object value) {
+		
+		if (!(value instanceof Number)) {
+			throw new IllegalArgumentException("The value of " + name + " is not a number: " + value);
+		}
+		
+		return (Number) value;
+		
+	}
+	
+	/**
+	 * Converts a value to the type of the attribute. The attribute must be writable.
+	 * 
+	 * @param value the value to convert.
+	 * 
+	 * @return the converted value.
+	 * @throws IllegalArgumentException if the value cannot be converted.
+	 */
+	public Object convert(Object value) throws IllegalArgumentException {
+		return converter.convert(value);
+	}
+	
+	/**
+	 * Writes the value of the attribute. The attribute must be writable and the value already converted.
+	 * 
+	 * @param object the instrumented object.
+	 * @param value the converted value.
+	 * 
+	 * @throws Exception if the setter throws an exception or cannot be invoked.
+	 */
+	public void set(Object object, Object value) throws Exception {
+		setter.invoke(object, value);
+	}
+	
+}
@@ -0,0 +1,72 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import net.gescobar.jmx.annotation.ManagedAttributeMap;
+
+/**
+ * Reads the map held by a field or returned by a method annotated with {@link ManagedAttributeMap}, whose entries 
+ * are exposed as attributes.
+ * 
+ * @author German Escobar
+ */
+class AttributeMapAccessor {
+	
+	/**
+	 * The field that holds the map, null if it's returned by a method.
+	 */
+	private final Field field;
+	
+	/**
+	 * The method that returns the map, null if it's held by a field.
+	 */
+	private final Method method;
+	
+	/**
+	 * Prepended to the keys to build the names of the attributes.
+	 */
+	private final String prefix;
+	
+	private final String description;
+	
+	public AttributeMapAccessor(Field field, Method method, String prefix, String description) {
+		this.field = field;
+		this.method = method;
+		this.prefix = prefix;
+		this.description = description;
+	}
+	
+	public String getPrefix() {
+		return prefix;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	
+	/**
+	 * Retrieves the map.
+	 * 
+	 * @param object the instrumented object.
+	 * 
+	 * @return the map or null if the field or method is null.
+	 * @throws Exception if the field or method cannot be accessed.
+	 */
+	public Map<?,?> get(Object object) throws Exception {
+		return (Map<?,?>) (field != null ? field.get(object) : method.invoke(object));
+	}
+	
+	/**
+	 * Helper method. Retrieves the key of an attribute.
+	 * 
+	 * @param attributeName the name of the attribute.
+	 * 
+	 * @return the key or null if the name doesn't start with the prefix.
+	 */
+	public String key(String attributeName) {
+		return attributeName.startsWith(prefix) ? attributeName.substring( prefix.length() ) : null;
+	}
+	
+}
@@ -0,0 +1,54 @@
+package net.gescobar.jmx.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The number of calls to an attribute or operation, and the cumulative and maximum time spent in them. Recorded by
+ * {@link MBeanImpl} when the statistics are enabled (see {@link StatisticsManager}).
+ *
+ * @author German Escobar
+ */
+final class CallStats {
+
+	private final StripedLong calls = new StripedLong();
+
+	private final StripedLong nanos = new StripedLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a call.
+	 *
+	 * @param elapsed the nanoseconds that the call took.
+	 */
+	public void record(long elapsed) {
+
+		calls.increment();
+		nanos.add(elapsed);
+
+		long max = maxNanos.get();
+		while (elapsed > max && !maxNanos.compareAndSet(max, elapsed)) {
+			max = maxNanos.get();
+		}
+
+	}
+
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	public long getNanos() {
+		return nanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public void reset() {
+		calls.reset();
+		nanos.reset();
+		maxNanos.set(0);
+	}
+
+}
@@ -0,0 +1,364 @@
+package net.gescobar.jmx.impl;
+
+import static net.gescobar.jmx.util.StringUtils.capitalize;
+import static net.gescobar.jmx.util.StringUtils.decapitalize;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.RuntimeErrorException;
+import javax.management.RuntimeMBeanException;
+
+import net.gescobar.jmx.ManagementException;
+import net.gescobar.jmx.util.ClassUtils;
+
+/**
+ * <p>A typed client of a remote (or local) MBean: the getters and setters of the interface are mapped to attributes
+ * and the other methods to operations. The <code>MBeanInfo</code> is retrieved once, when the proxy is created, to
+ * map each method to an attribute or operation (failing if a method cannot be mapped) and to precompute the
+ * signature of each operation, so each call is just one call to the <code>MBeanServerConnection</code>.</p>
+ *
+ * <p>A batch (see {@link #batch(Object, String...)}) reads many attributes in one <code>getAttributes</code> round
+ * trip and returns a proxy of the same interface whose getters return the values read.</p>
+ *
+ * @author German Escobar
+ */
+public final class ClientProxy implements InvocationHandler {
+
+	private static final Object[] NO_PARAMS = new Object[0];
+
+	private final MBeanServerConnection connection;
+
+	private final ObjectName name;
+
+	/**
+	 * The calls by method, precomputed when the proxy is created.
+	 */
+	private final Map<Method,Call> calls;
+
+	/**
+	 * The values of the attributes by attribute name read by a batch, null if this is not a batch.
+	 */
+	private final Map<String,Object> values;
+
+	private ClientProxy(MBeanServerConnection connection, ObjectName name, Map<Method,Call> calls,
+			Map<String,Object> values) {
+		this.connection = connection;
+		this.name = name;
+		this.calls = calls;
+		this.values = values;
+	}
+
+	/**
+	 * Creates a typed client of an MBean.
+	 *
+	 * @param <T> the type of the client.
+	 * @param connection the connection to the MBeanServer in which the MBean is registered.
+	 * @param name the name of the MBean.
+	 * @param type the interface of the client, it can't be a class.
+	 *
+	 * @return a proxy that implements the interface.
+	 * @throws ManagementException if the MBeanInfo cannot be retrieved or a method cannot be mapped to an attribute
+	 * 		or operation.
+	 */
+	public static <T> T create(MBeanServerConnection connection, ObjectName name, Class<T> type)
+			throws ManagementException {
+
+		if (connection == null) {
+			throw new IllegalArgumentException("No connection specified.");
+		}
+
+		if (name == null) {
+			throw new IllegalArgumentException("No name specified.");
+		}
+
+		if (type == null) {
+			throw new IllegalArgumentException("No type specified.");
+		}
+
+		if (!type.isInterface()) {
+			throw new IllegalArgumentException("The type of a client must be an interface: " + type.getName());
+		}
+
+		MBeanInfo mBeanInfo;
+		try {
+			mBeanInfo = connection.getMBeanInfo(name);
+		} catch (Exception e) {
+			throw new ManagementException(e);
+		}
+
+		Map<Method,Call> calls = new HashMap<Method,Call>();
+		for (Method method : type.getMethods()) {
+			calls.put( method, mapMethod(mBeanInfo, method) );
+		}
+
+		return type.cast( newProxy(type, new ClientProxy(connection, name, calls, null)) );
+
+	}
+
+	/**
+	 * Reads attributes of a client in one round trip.
+	 *
+	 * @param <T> the type of the client.
+	 * @param client a client created with {@link #create(MBeanServerConnection, ObjectName, Class)}.
+	 * @param attributes the names of the attributes to read, all the attributes of the getters if none is
+	 * 		specified.
+	 *
+	 * @return a proxy of the same interface whose getters return the values read (the getters of other attributes,
+	 * 		the setters and the operations are called on the MBean).
+	 * @throws ManagementException if the attributes cannot be read.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T batch(T client, String... attributes) throws ManagementException {
+
+		if (client == null || !Proxy.isProxyClass(client.getClass())
+				|| !(Proxy.getInvocationHandler(client) instanceof ClientProxy)) {
+			throw new IllegalArgumentException("Not a client: " + client);
+		}
+
+		ClientProxy clientProxy = (ClientProxy) Proxy.getInvocationHandler(client);
+
+		Set<String> names = new LinkedHashSet<String>();
+		if (attributes != null && attributes.length > 0) {
+			Collections.addAll(names, attributes);
+		} else {
+			for (Call call : clientProxy.calls.values()) {
+				if (call.kind == Call.GET) {
+					names.add(call.name);
+				}
+			}
+		}
+
+		AttributeList list;
+		try {
+			list = clientProxy.connection.getAttributes( clientProxy.name, names.toArray(new String[names.size()]) );
+		} catch (Exception e) {
+			throw new ManagementException(e);
+		}
+
+		Map<String,Object> values = new HashMap<String,Object>();
+		for (Object attribute : list) {
+			values.put( ((Attribute) attribute).getName(), ((Attribute) attribute).getValue() );
+		}
+
+		return (T) newProxy( client.getClass().getInterfaces()[0], new ClientProxy(clientProxy.connection,
+				clientProxy.name, clientProxy.calls, values) );
+
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+		Call call = calls.get(method);
+		if (call == null) {
+			// a method of Object
+			if (method.getName().equals("equals")) {
+				return proxy == args[0];
+			} else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			return "Client of " + name + (values != null ? " " + values : "");
+		}
+
+		try {
+
+			if (call.kind == Call.GET) {
+				if (values != null && values.containsKey(call.name)) {
+					return values.get(call.name);
+				}
+				return connection.getAttribute(name, call.name);
+			}
+
+			if (call.kind == Call.SET) {
+				connection.setAttribute( name, new Attribute(call.name, args[0]) );
+				return null;
+			}
+
+			return connection.invoke( name, call.name, args == null ? NO_PARAMS : args, call.signature );
+
+		} catch (Exception e) {
+			throw unwrap(method, e);
+		}
+
+	}
+
+	/**
+	 * Helper method. Finds the exception that the client should throw: the exception thrown by the MBean if it's
+	 * unchecked or declared by the method, the exception itself if it's declared by the method (e.g. an
+	 * <code>IOException</code>) or a ManagementException that wraps it otherwise.
+	 */
+	private static Throwable unwrap(Method method, Exception e) {
+
+		Throwable cause = e;
+		while ( (cause instanceof MBeanException || cause instanceof ReflectionException
+				|| cause instanceof RuntimeMBeanException || cause instanceof RuntimeErrorException
+				|| cause instanceof InvocationTargetException)
+				&& cause.getCause() != null ) {
+			cause = cause.getCause();
+		}
+
+		for (Throwable throwable : new Throwable[] { cause, e }) {
+
+			if (throwable instanceof RuntimeException || throwable instanceof Error) {
+				return throwable;
+			}
+
+			for (Class<?> exceptionType : method.getExceptionTypes()) {
+				if (exceptionType.isInstance(throwable)) {
+					return throwable;
+				}
+			}
+
+		}
+
+		return new ManagementException(e);
+
+	}
+
+	/**
+	 * Helper method. Maps a method of the interface to an attribute or operation of the MBean.
+	 */
+	private static Call mapMethod(MBeanInfo mBeanInfo, Method method) throws ManagementException {
+
+		String methodName = method.getName();
+		Class<?>[] params = method.getParameterTypes();
+
+		// a getter
+		if (params.length == 0 && method.getReturnType() != Void.TYPE) {
+
+			String attributeName = null;
+			if (methodName.startsWith("get") && methodName.length() > 3) {
+				attributeName = methodName.substring(3);
+			} else if (methodName.startsWith("is") && methodName.length() > 2
+					&& ClassUtils.wrapperClass(method.getReturnType()) == Boolean.class) {
+				attributeName = methodName.substring(2);
+			}
+
+			MBeanAttributeInfo attribute = attributeName != null ? findAttribute(mBeanInfo, attributeName) : null;
+			if (attribute != null && attribute.isReadable()) {
+				return new Call(Call.GET, attribute.getName(), null);
+			}
+
+		}
+
+		// a setter
+		if (params.length == 1 && method.getReturnType() == Void.TYPE && methodName.startsWith("set")
+				&& methodName.length() > 3) {
+
+			MBeanAttributeInfo attribute = findAttribute(mBeanInfo, methodName.substring(3));
+			if (attribute != null && attribute.isWritable()) {
+				return new Call(Call.SET, attribute.getName(), null);
+			}
+
+		}
+
+		// an operation, we use the signature of the MBeanInfo so wrappers and primitives can be used interchangeably
+		List<MBeanOperationInfo> candidates = new ArrayList<MBeanOperationInfo>();
+		for (MBeanOperationInfo operation : mBeanInfo.getOperations()) {
+			if (operation.getName().equals(methodName) && operation.getSignature().length == params.length) {
+				candidates.add(operation);
+			}
+		}
+
+		for (MBeanOperationInfo operation : candidates) {
+			if (candidates.size() == 1 || matches(operation.getSignature(), params)) {
+
+				MBeanParameterInfo[] signature = operation.getSignature();
+				String[] types = new String[signature.length];
+				for (int i=0; i < signature.length; i++) {
+					types[i] = signature[i].getType();
+				}
+
+				return new Call(Call.INVOKE, methodName, types);
+
+			}
+		}
+
+		throw new ManagementException("Cannot map method " + methodName + " of " +
+				method.getDeclaringClass().getName() + " to an attribute or operation of " + mBeanInfo.getClassName());
+
+	}
+
+	/**
+	 * Helper method. Finds an attribute by name, the first letter can be lower or upper case (e.g. the attributes of
+	 * this library are decapitalized while the attributes of the platform MBeans are capitalized).
+	 */
+	private static MBeanAttributeInfo findAttribute(MBeanInfo mBeanInfo, String name) {
+
+		for (MBeanAttributeInfo attribute : mBeanInfo.getAttributes()) {
+			if (attribute.getName().equals( decapitalize(name) ) || attribute.getName().equals( capitalize(name) )) {
+				return attribute;
+			}
+		}
+
+		return null;
+
+	}
+
+	private static boolean matches(MBeanParameterInfo[] signature, Class<?>[] params) {
+
+		for (int i=0; i < params.length; i++) {
+			if (!signature[i].getType().equals( params[i].getName() )) {
+				return false;
+			}
+		}
+
+		return true;
+
+	}
+
+	private static Object newProxy(Class<?> type, ClientProxy clientProxy) {
+		return Proxy.newProxyInstance( type.getClassLoader(), new Class<?>[] { type }, clientProxy );
+	}
+
+	/**
+	 * The attribute or operation to which a method is mapped.
+	 */
+	private static class Call {
+
+		public static final int GET = 0;
+
+		public static final int SET = 1;
+
+		public static final int INVOKE = 2;
+
+		private final int kind;
+
+		/**
+		 * The name of the attribute or operation.
+		 */
+		private final String name;
+
+		/**
+		 * The signature of the operation, null if it's an attribute.
+		 */
+		private final String[] signature;
+
+		public Call(int kind, String name, String[] signature) {
+			this.kind = kind;
+			this.name = name;
+			this.signature = signature;
+		}
+
+	}
+
+}
@@ -0,0 +1,43 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import net.gescobar.jmx.annotation.ManagedComponent;
+
+/**
+ * Reads an attribute of an object held in a field whose type is annotated with {@link ManagedComponent}.
+ * 
+ * @author German Escobar
+ */
+class ComponentAttributeAccessor extends AttributeAccessor {
+	
+	/**
+	 * The field that holds the component.
+	 */
+	private final Field field;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name the name of the attribute.
+	 * @param field the field that holds the component.
+	 * @param getter the getter of the attribute in the component's class.
+	 */
+	public ComponentAttributeAccessor(String name, Field field, Method getter) {
+		super(name, getter, null);
+		this.field = field;
+	}
+
+	/**
+	 * Reads the attribute from the component that the field holds when it's called.
+	 */
+	@Override
+	public Object get(Object object) throws Exception {
+		
+		Object component = field.get(object);
+		return component == null ? null : super.get(component);
+		
+	}
+	
+}
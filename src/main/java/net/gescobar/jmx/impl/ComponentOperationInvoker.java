@@ -0,0 +1,74 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import net.gescobar.jmx.annotation.ManagedComponent;
+
+/**
+ * Invokes an operation of an object held in a field whose type is annotated with {@link ManagedComponent}.
+ * 
+ * @author German Escobar
+ */
+class ComponentOperationInvoker extends OperationInvoker {
+	
+	/**
+	 * The name of the operation, prefixed with the name of the field.
+	 */
+	private final String name;
+	
+	/**
+	 * The field that holds the component.
+	 */
+	private final Field field;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name the name of the operation.
+	 * @param field the field that holds the component.
+	 * @param method the method of the operation in the component's class.
+	 */
+	public ComponentOperationInvoker(String name, Field field, Method method) {
+		super(method);
+		this.name = name;
+		this.field = field;
+	}
+	
+	/**
+	 * Copy constructor.
+	 * 
+	 * @param prototype the invoker to copy.
+	 */
+	private ComponentOperationInvoker(ComponentOperationInvoker prototype) {
+		super(prototype);
+		this.name = prototype.name;
+		this.field = prototype.field;
+	}
+	
+	@Override
+	public OperationInvoker copy() {
+		return new ComponentOperationInvoker(this);
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Invokes the operation on the component that the field holds when it's called.
+	 */
+	@Override
+	public Object invoke(Object object, Object[] params) throws Exception {
+		
+		Object component = field.get(object);
+		if (component == null) {
+			throw new IllegalStateException("Field " + field.getName() + " is null");
+		}
+		
+		return super.invoke(component, params);
+		
+	}
+	
+}
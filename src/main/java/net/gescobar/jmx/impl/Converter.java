@@ -0,0 +1,22 @@
+package net.gescobar.jmx.impl;
+
+/**
+ * Converts the values received in <code>setAttribute</code> and <code>invoke</code> to the type that the setter or
+ * operation parameter expects. Converters are built once per attribute and operation parameter when the MBean is 
+ * created (see {@link Converters#forType(Class)}) so converting a value doesn't need any class lookup.
+ * 
+ * @author German Escobar
+ */
+interface Converter {
+
+	/**
+	 * Converts a value. Values that already have the expected type are returned as they are.
+	 * 
+	 * @param value the value to convert, can be null.
+	 * 
+	 * @return the converted value.
+	 * @throws IllegalArgumentException if the value cannot be converted to the expected type.
+	 */
+	Object convert(Object value) throws IllegalArgumentException;
+	
+}
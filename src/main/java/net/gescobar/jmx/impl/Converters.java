@@ -0,0 +1,360 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.gescobar.jmx.util.ClassUtils;
+
+/**
+ * <p>Builds the {@link Converter} of a type. Besides the values that are already assignable to the type, the
+ * converters accept:</p>
+ *
+ * <ul>
+ * 	<li>Widening primitive conversions (e.g. an <code>Integer</code> for a <code>long</code>).</li>
+ * 	<li>Strings for primitives, their wrappers and enums (by the name of the constant), which is what generic
+ * 	consoles and non-Java clients usually send.</li>
+ * 	<li>Arrays and collections for arrays, converting each element with the converter of the component type.</li>
+ * </ul>
+ *
+ * @author German Escobar
+ */
+final class Converters {
+
+	/**
+	 * Hide public constructor.
+	 */
+	private Converters() {}
+
+	/**
+	 * Builds the converter of a type.
+	 *
+	 * @param type the type to which the converter converts.
+	 *
+	 * @return a Converter object, never null.
+	 */
+	public static Converter forType(Class<?> type) {
+
+		if (type == null) {
+			throw new IllegalArgumentException("No type specified.");
+		}
+
+		Class<?> wrapper = ClassUtils.wrapperClass(type);
+
+		if (wrapper.equals(Boolean.class)) {
+			return new BooleanConverter( type.isPrimitive() );
+		} else if (wrapper.equals(Character.class)) {
+			return new CharacterConverter( type.isPrimitive() );
+		} else if (Number.class.isAssignableFrom(wrapper) && (type.isPrimitive() || isNumberWrapper(wrapper))) {
+			return new NumberConverter( wrapper, type.isPrimitive() );
+		} else if (type.isEnum()) {
+			return new EnumConverter(type);
+		} else if (type.isArray()) {
+			return new ArrayConverter( type, forType(type.getComponentType()) );
+		}
+
+		return new AssignableConverter(type);
+
+	}
+
+	private static boolean isNumberWrapper(Class<?> type) {
+		return type.equals(Byte.class) || type.equals(Short.class) || type.equals(Integer.class)
+				|| type.equals(Long.class) || type.equals(Float.class) || type.equals(Double.class);
+	}
+
+	private static IllegalArgumentException cannotConvert(Object value, Class<?> type) {
+		String from = value == null ? "null" : "a " + value.getClass().getName() + " object";
+		return new IllegalArgumentException("Cannot convert " + from + " to " + type.getName());
+	}
+
+	/**
+	 * Accepts only values that are instances of the type (or null).
+	 */
+	private static class AssignableConverter implements Converter {
+
+		private final Class<?> type;
+
+		public AssignableConverter(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public Object convert(Object value) {
+
+			if (value == null || type.isInstance(value)) {
+				return value;
+			}
+
+			throw cannotConvert(value, type);
+
+		}
+
+	}
+
+	/**
+	 * Converts numbers (and chars) using the widening primitive conversions and Strings by parsing them.
+	 */
+	private static class NumberConverter implements Converter {
+
+		/**
+		 * The order of the widening primitive conversions: a type can be widened to any type on its right. Char is
+		 * a special case as it can't be widened to short.
+		 */
+		private static final Class<?>[] WIDENING = { Byte.class, Short.class, Integer.class, Long.class,
+			Float.class, Double.class };
+
+		private final Class<?> wrapper;
+
+		private final boolean primitive;
+
+		/**
+		 * The classes that can be widened to the type of this converter.
+		 */
+		private final Class<?>[] widenable;
+
+		public NumberConverter(Class<?> wrapper, boolean primitive) {
+
+			this.wrapper = wrapper;
+			this.primitive = primitive;
+
+			int index = 0;
+			while (!WIDENING[index].equals(wrapper)) {
+				index++;
+			}
+
+			boolean fromChar = index >= 2; // char can be widened to int, long, float and double
+			widenable = new Class<?>[index + 1 + (fromChar ? 1 : 0)];
+			System.arraycopy(WIDENING, 0, widenable, 0, index + 1);
+			if (fromChar) {
+				widenable[index + 1] = Character.class;
+			}
+
+		}
+
+		@Override
+		public Object convert(Object value) {
+
+			if (value == null) {
+				if (primitive) {
+					throw cannotConvert(value, wrapper);
+				}
+				return null;
+			}
+
+			Class<?> valueType = value.getClass();
+			if (valueType.equals(wrapper)) {
+				return value;
+			}
+
+			for (Class<?> candidate : widenable) {
+				if (candidate.equals(valueType)) {
+					return widen(value);
+				}
+			}
+
+			if (value instanceof String) {
+				return parse( ((String) value).trim() );
+			}
+
+			throw cannotConvert(value, wrapper);
+
+		}
+
+		private Object widen(Object value) {
+
+			Number number = value instanceof Character ? Integer.valueOf( ((Character) value).charValue() )
+					: (Number) value;
+
+			if (wrapper.equals(Short.class)) {
+				return number.shortValue();
+			} else if (wrapper.equals(Integer.class)) {
+				return number.intValue();
+			} else if (wrapper.equals(Long.class)) {
+				return number.longValue();
+			} else if (wrapper.equals(Float.class)) {
+				return number.floatValue();
+			} else if (wrapper.equals(Double.class)) {
+				return number.doubleValue();
+			}
+
+			return number.byteValue();
+
+		}
+
+		private Object parse(String value) {
+
+			try {
+				if (wrapper.equals(Byte.class)) {
+					return Byte.valueOf(value);
+				} else if (wrapper.equals(Short.class)) {
+					return Short.valueOf(value);
+				} else if (wrapper.equals(Integer.class)) {
+					return Integer.valueOf(value);
+				} else if (wrapper.equals(Long.class)) {
+					return Long.valueOf(value);
+				} else if (wrapper.equals(Float.class)) {
+					return Float.valueOf(value);
+				}
+				return Double.valueOf(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Cannot convert \"" + value + "\" to " + wrapper.getName());
+			}
+
+		}
+
+	}
+
+	/**
+	 * Converts Strings "true" and "false" (ignoring case) to booleans.
+	 */
+	private static class BooleanConverter implements Converter {
+
+		private final boolean primitive;
+
+		public BooleanConverter(boolean primitive) {
+			this.primitive = primitive;
+		}
+
+		@Override
+		public Object convert(Object value) {
+
+			if (value instanceof Boolean || (value == null && !primitive)) {
+				return value;
+			}
+
+			if (value instanceof String) {
+				String s = ((String) value).trim();
+				if ("true".equalsIgnoreCase(s)) {
+					return Boolean.TRUE;
+				} else if ("false".equalsIgnoreCase(s)) {
+					return Boolean.FALSE;
+				}
+			}
+
+			throw cannotConvert(value, Boolean.class);
+
+		}
+
+	}
+
+	/**
+	 * Converts Strings of one character to chars.
+	 */
+	private static class CharacterConverter implements Converter {
+
+		private final boolean primitive;
+
+		public CharacterConverter(boolean primitive) {
+			this.primitive = primitive;
+		}
+
+		@Override
+		public Object convert(Object value) {
+
+			if (value instanceof Character || (value == null && !primitive)) {
+				return value;
+			}
+
+			if (value instanceof String && ((String) value).length() == 1) {
+				return ((String) value).charAt(0);
+			}
+
+			throw cannotConvert(value, Character.class);
+
+		}
+
+	}
+
+	/**
+	 * Converts Strings to the enum constant with that name using a map that is built once.
+	 */
+	private static class EnumConverter implements Converter {
+
+		private final Class<?> type;
+
+		private final Map<String,Object> constants = new HashMap<String,Object>();
+
+		public EnumConverter(Class<?> type) {
+
+			this.type = type;
+
+			for (Object constant : type.getEnumConstants()) {
+				constants.put( ((Enum<?>) constant).name(), constant );
+			}
+
+		}
+
+		@Override
+		public Object convert(Object value) {
+
+			if (value == null || type.isInstance(value)) {
+				return value;
+			}
+
+			if (value instanceof String) {
+				Object constant = constants.get( ((String) value).trim() );
+				if (constant != null) {
+					return constant;
+				}
+				throw new IllegalArgumentException("\"" + value + "\" is not a constant of " + type.getName());
+			}
+
+			throw cannotConvert(value, type);
+
+		}
+
+	}
+
+	/**
+	 * Converts arrays and collections to arrays converting each one of the elements.
+	 */
+	private static class ArrayConverter implements Converter {
+
+		private final Class<?> type;
+
+		private final Converter componentConverter;
+
+		public ArrayConverter(Class<?> type, Converter componentConverter) {
+			this.type = type;
+			this.componentConverter = componentConverter;
+		}
+
+		@Override
+		public Object convert(Object value) {
+
+			if (value == null || type.isInstance(value)) {
+				return value;
+			}
+
+			if (value.getClass().isArray()) {
+
+				int length = Array.getLength(value);
+				Object array = Array.newInstance(type.getComponentType(), length);
+				for (int i=0; i < length; i++) {
+					Array.set( array, i, componentConverter.convert(Array.get(value, i)) );
+				}
+
+				return array;
+
+			} else if (value instanceof Collection<?>) {
+
+				Collection<?> collection = (Collection<?>) value;
+				Object array = Array.newInstance(type.getComponentType(), collection.size());
+				Iterator<?> iterator = collection.iterator();
+				for (int i=0; iterator.hasNext(); i++) {
+					Array.set( array, i, componentConverter.convert(iterator.next()) );
+				}
+
+				return array;
+
+			}
+
+			throw cannotConvert(value, type);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,366 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import net.gescobar.jmx.InvocationOutcome;
+import net.gescobar.jmx.ManagementException;
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.Name;
+
+/**
+ * <p>Invokes an operation on all the MBeans that match a pattern in parallel, exposed as the
+ * <code>net.gescobar.jmx:type=FanOut</code> MBean which is registered with {@link LibraryMBeans#enable(MBeanServer)}.
+ * Instead of looping over <code>queryNames</code> and invoking the operation on one
+ * MBean at a time, a client invokes <code>invokeAll</code> once and gets a table with the outcome of each MBean:</p>
+ *
+ * <pre>
+ * TabularData outcomes = (TabularData) connection.invoke(new ObjectName("net.gescobar.jmx:type=FanOut"),
+ * 		"invokeAll", new Object[] { "org.test:type=Cache,*", "flush", new Object[0], new String[0], 16, 5000L },
+ * 		new String[] { "java.lang.String", "java.lang.String", "[Ljava.lang.Object;", "[Ljava.lang.String;", "int",
+ * 			"long" });
+ * </pre>
+ *
+ * <p>The operations are invoked (with the limits, statistics and listeners of each MBean) by a pool of at most
+ * {@link #MAX_THREADS} daemon threads shared by all the invocations; <code>concurrency</code> bounds the calls of an
+ * invocation that run at the same time. A call that doesn't return within the timeout (counted from the time it's
+ * dispatched to the pool) is interrupted and reported as timed out, so one slow MBean doesn't hold the others. An
+ * operation that ignores the interruption keeps its thread until it returns.</p>
+ *
+ * <p>Only the MBeans created by the library that are registered in the same MBeanServer are invoked.</p>
+ *
+ * @author German Escobar
+ */
+@Description("Invokes an operation on many MBeans in parallel")
+public final class FanOutManager {
+
+	/**
+	 * The name of the MBean that invokes the operations.
+	 */
+	public static final String OBJECT_NAME = "net.gescobar.jmx:type=FanOut";
+
+	/**
+	 * The maximum number of threads that invoke the operations.
+	 */
+	public static final int MAX_THREADS = 32;
+
+	private static final String[] ITEM_NAMES = { "name", "status", "value", "error", "millis" };
+
+	private static final CompositeType ROW_TYPE;
+
+	private static final TabularType TABLE_TYPE;
+
+	static {
+		try {
+			ROW_TYPE = new CompositeType("InvocationOutcome", "The outcome of invoking an operation on an MBean",
+					ITEM_NAMES, ITEM_NAMES, new OpenType<?>[] { SimpleType.STRING, SimpleType.STRING,
+					SimpleType.STRING, SimpleType.STRING, SimpleType.DOUBLE });
+			TABLE_TYPE = new TabularType("InvocationOutcomes", "The outcome of invoking an operation on each MBean",
+					ROW_TYPE, new String[] { "name" });
+		} catch (OpenDataException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+	/**
+	 * The MBeanServer whose MBeans are invoked.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer whose MBeans are invoked.
+	 */
+	private FanOutManager(MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	/**
+	 * Helper method. Creates the pool that is shared by the invocations of all the MBeanServers.
+	 */
+	private static ThreadPoolExecutor createExecutor() {
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jmx-fanout-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+
+	}
+
+	/**
+	 * Registers a fan-out MBean in an MBeanServer with the {@link #OBJECT_NAME} name if it's not already registered.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the fan-out MBean.
+	 */
+	static void registerIn(MBeanServer mBeanServer) {
+		LibraryMBeans.registerIfAbsent(mBeanServer, OBJECT_NAME, new FanOutManager(mBeanServer));
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Invokes an operation on all the MBeans that match a pattern " +
+			"in parallel and returns the outcome of each one")
+	public TabularData invokeAll(
+			@Name("pattern") @Description("The name of the MBeans, can be a pattern") String pattern,
+			@Name("operation") @Description("The name of the operation") String operation,
+			@Name("params") @Description("The arguments of the operation") Object[] params,
+			@Name("signature") @Description("The class names of the parameters of the operation") String[] signature,
+			@Name("concurrency") @Description("The maximum number of concurrent invocations") int concurrency,
+			@Name("timeoutMillis") @Description("The milliseconds to wait for all the invocations") long timeoutMillis)
+			throws MalformedObjectNameException, IllegalArgumentException {
+
+		TabularData table = new TabularDataSupport(TABLE_TYPE);
+		for (Map.Entry<ObjectName,InvocationOutcome> outcome :
+				invoke(mBeanServer, pattern, operation, params, signature, concurrency, timeoutMillis).entrySet()) {
+
+			InvocationOutcome value = outcome.getValue();
+			try {
+				table.put( new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, new Object[] {
+						outcome.getKey().toString(), value.getStatus().name(),
+						value.getValue() != null ? value.getValue().toString() : null, value.getError(),
+						value.getMillis() }) );
+			} catch (OpenDataException e) {
+				throw new ManagementException(e);
+			}
+
+		}
+
+		return table;
+
+	}
+
+	/**
+	 * Invokes an operation on all the MBeans registered in an MBeanServer that match a pattern in parallel.
+	 *
+	 * @param mBeanServer the MBeanServer in which the MBeans are registered.
+	 * @param pattern the ObjectName pattern of the MBeans (e.g. <code>org.test:type=Cache,*</code>).
+	 * @param operation the name of the operation.
+	 * @param params the arguments of the operation, can be null if it has no parameters.
+	 * @param signature the types of the parameters of the operation, can be null if it has no parameters.
+	 * @param concurrency the maximum number of calls that run at the same time, at most {@link #MAX_THREADS}.
+	 * @param timeoutMillis the milliseconds that each call can take.
+	 *
+	 * @return the outcome of each MBean by name, in no particular order.
+	 * @throws MalformedObjectNameException if the pattern is not valid.
+	 * @throws IllegalArgumentException if the pattern or the operation are not specified, or the concurrency or the
+	 * 		timeout are not positive.
+	 * @throws ManagementException if the thread is interrupted (the running calls are interrupted too).
+	 */
+	public static Map<ObjectName,InvocationOutcome> invoke(MBeanServer mBeanServer, String pattern, String operation,
+			Object[] params, String[] signature, int concurrency, long timeoutMillis) 
+			throws MalformedObjectNameException, IllegalArgumentException, ManagementException {
+
+		if (pattern == null || "".equals(pattern)) {
+			throw new IllegalArgumentException("No pattern specified.");
+		}
+
+		if (operation == null || "".equals(operation)) {
+			throw new IllegalArgumentException("No operation specified.");
+		}
+
+		if (concurrency <= 0 || timeoutMillis <= 0) {
+			throw new IllegalArgumentException("The concurrency and the timeout must be positive.");
+		}
+
+		ObjectName name = new ObjectName(pattern);
+		Object[] arguments = params != null ? params : new Object[0];
+		String[] types = signature != null ? signature : new String[0];
+
+		List<Call> calls = new ArrayList<Call>();
+		for (Map.Entry<ObjectName,MBeanImpl> mBean : MBeanRegistry.getAll(mBeanServer).entrySet()) {
+			if (name.apply( mBean.getKey() )) {
+				calls.add( new Call(mBean.getKey(), mBean.getValue(), operation, arguments, types) );
+			}
+		}
+
+		long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		int maxRunning = Math.min(concurrency, MAX_THREADS);
+
+		Map<ObjectName,InvocationOutcome> outcomes = new LinkedHashMap<ObjectName,InvocationOutcome>();
+		CompletionService<InvocationOutcome> completionService =
+				new ExecutorCompletionService<InvocationOutcome>(EXECUTOR);
+
+		// the running calls in the order they were dispatched, so the first one is the next to time out
+		Map<Future<InvocationOutcome>,Call> running = new LinkedHashMap<Future<InvocationOutcome>,Call>();
+
+		int next = 0;
+		try {
+
+			while (next < calls.size() || !running.isEmpty()) {
+
+				while (running.size() < maxRunning && next < calls.size()) {
+					Call call = calls.get(next++);
+					call.deadline = System.nanoTime() + timeout;
+					running.put(completionService.submit(call), call);
+				}
+
+				long wait = running.values().iterator().next().deadline - System.nanoTime();
+				Future<InvocationOutcome> done = wait > 0 ? completionService.poll(wait, TimeUnit.NANOSECONDS) : null;
+
+				if (done != null) {
+					// the futures of the calls that timed out are already removed
+					Call call = running.remove(done);
+					if (call != null) {
+						outcomes.put( call.name, outcome(done) );
+					}
+				} else {
+					timeOut(running, outcomes, timeout);
+				}
+
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ManagementException(e, "Interrupted while invoking " + operation + " on " + pattern);
+		} finally {
+			for (Future<InvocationOutcome> future : running.keySet()) {
+				future.cancel(true);
+			}
+		}
+
+		return outcomes;
+
+	}
+
+	/**
+	 * Helper method. Interrupts the running calls whose deadline passed.
+	 */
+	private static void timeOut(Map<Future<InvocationOutcome>,Call> running, Map<ObjectName,InvocationOutcome> outcomes,
+			long timeout) {
+
+		long now = System.nanoTime();
+
+		Iterator<Map.Entry<Future<InvocationOutcome>,Call>> iterator = running.entrySet().iterator();
+		while (iterator.hasNext()) {
+
+			Map.Entry<Future<InvocationOutcome>,Call> entry = iterator.next();
+			if (entry.getValue().deadline - now > 0) {
+				break;
+			}
+
+			entry.getKey().cancel(true);
+			iterator.remove();
+			outcomes.put( entry.getValue().name, new InvocationOutcome(InvocationOutcome.Status.TIMED_OUT, null,
+					"Timed out after " + TimeUnit.NANOSECONDS.toMillis(timeout) + " ms", timeout) );
+
+		}
+
+	}
+
+	/**
+	 * Helper method. Retrieves the outcome of a call that finished.
+	 */
+	private static InvocationOutcome outcome(Future<InvocationOutcome> future) throws InterruptedException {
+
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			// a call catches its exceptions, this is an Error
+			return new InvocationOutcome(InvocationOutcome.Status.FAILED, null, e.getCause().toString(), 0);
+		}
+
+	}
+
+	/**
+	 * Invokes the operation on one MBean.
+	 */
+	private static class Call implements Callable<InvocationOutcome> {
+
+		private final ObjectName name;
+
+		private final MBeanImpl mBean;
+
+		private final String operation;
+
+		private final Object[] params;
+
+		private final String[] signature;
+
+		/**
+		 * The value of <code>System.nanoTime()</code> after which the call is interrupted.
+		 */
+		private long deadline;
+
+		public Call(ObjectName name, MBeanImpl mBean, String operation, Object[] params, String[] signature) {
+			this.name = name;
+			this.mBean = mBean;
+			this.operation = operation;
+			this.params = params;
+			this.signature = signature;
+		}
+
+		@Override
+		public InvocationOutcome call() {
+
+			long start = System.nanoTime();
+			try {
+				Object value = mBean.invoke(operation, params, signature);
+				return new InvocationOutcome(InvocationOutcome.Status.SUCCEEDED, value, null,
+						System.nanoTime() - start);
+			} catch (Exception e) {
+				return new InvocationOutcome(InvocationOutcome.Status.FAILED, null, cause(e).toString(),
+						System.nanoTime() - start);
+			}
+
+		}
+
+		/**
+		 * Helper method. Finds the exception thrown by the operation inside the exceptions that wrap it.
+		 */
+		private Throwable cause(Throwable e) {
+
+			while (e.getCause() != null && (e instanceof MBeanException || e instanceof ReflectionException
+					|| e instanceof InvocationTargetException)) {
+				e = e.getCause();
+			}
+
+			return e;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+package net.gescobar.jmx.impl;
+
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.InvocationListener;
+
+/**
+ * Holds the {@link InvocationListener}s that are notified by {@link MBeanImpl} of the invocations of the operations.
+ * The listeners are kept in an array that is copied on each change, so the cost for the MBeans when there are no
+ * listeners is one volatile read per invocation.
+ *
+ * @author German Escobar
+ */
+public final class InvocationListeners {
+
+	private static final InvocationListener[] NONE = new InvocationListener[0];
+
+	private static volatile InvocationListener[] listeners = NONE;
+
+	/**
+	 * Hide public constructor.
+	 */
+	private InvocationListeners() {}
+
+	public static synchronized void add(InvocationListener listener) {
+
+		if (listener == null) {
+			throw new IllegalArgumentException("No listener specified.");
+		}
+
+		InvocationListener[] newListeners = new InvocationListener[listeners.length + 1];
+		System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+		newListeners[listeners.length] = listener;
+
+		listeners = newListeners;
+
+	}
+
+	public static synchronized void remove(InvocationListener listener) {
+
+		for (int i=0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+
+				InvocationListener[] newListeners = new InvocationListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, newListeners, 0, i);
+				System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+
+				listeners = newListeners;
+				return;
+
+			}
+		}
+
+	}
+
+	/**
+	 * @return the listeners, an empty array if there are none.
+	 */
+	static InvocationListener[] get() {
+		return listeners;
+	}
+
+	/**
+	 * Helper method. Notifies the listeners that an operation is going to be invoked.
+	 *
+	 * @return the contexts returned by the listeners, in the same order.
+	 */
+	static Object[] started(InvocationListener[] listeners, ObjectName name, String operation, Object[] params) {
+
+		Object[] contexts = new Object[listeners.length];
+		for (int i=0; i < listeners.length; i++) {
+			try {
+				contexts[i] = listeners[i].invocationStarted(name, operation, params);
+			} catch (RuntimeException e) {
+				// a failing listener doesn't fail the invocation
+			}
+		}
+
+		return contexts;
+
+	}
+
+	/**
+	 * Helper method. Notifies the listeners that an operation was invoked.
+	 */
+	static void finished(InvocationListener[] listeners, Object[] contexts, Throwable error) {
+
+		for (int i=0; i < listeners.length; i++) {
+			try {
+				listeners[i].invocationFinished(contexts[i], error);
+			} catch (RuntimeException e) {
+				// a failing listener doesn't fail the invocation
+			}
+		}
+
+	}
+
+}
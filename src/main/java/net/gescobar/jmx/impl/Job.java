@@ -0,0 +1,213 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Future;
+
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * The execution of an async operation (see {@link ManagedOperation#async()}). Jobs are created and tracked by the 
+ * {@link JobManager}.
+ * 
+ * @author German Escobar
+ */
+public final class Job implements Runnable {
+	
+	/**
+	 * The states of a job.
+	 */
+	public enum State {
+		PENDING,
+		RUNNING,
+		COMPLETED,
+		FAILED,
+		CANCELLED
+	}
+	
+	/**
+	 * The job that is running in the current thread.
+	 */
+	private static final ThreadLocal<Job> CURRENT = new ThreadLocal<Job>();
+	
+	private final long id;
+	
+	private final String description;
+	
+	private final OperationInvoker operationInvoker;
+	
+	private final Object object;
+	
+	private final Object[] params;
+	
+	private final JobManager jobManager;
+	
+	private final long createdAt = System.currentTimeMillis();
+	
+	private volatile State state = State.PENDING;
+	
+	private volatile int progress;
+	
+	private volatile Object result;
+	
+	private volatile Throwable error;
+	
+	private volatile long finishedAt;
+	
+	private volatile Future<?> future;
+	
+	Job(long id, String description, OperationInvoker operationInvoker, Object object, Object[] params, 
+			JobManager jobManager) {
+		this.id = id;
+		this.description = description;
+		this.operationInvoker = operationInvoker;
+		this.object = object;
+		this.params = params;
+		this.jobManager = jobManager;
+	}
+	
+	/**
+	 * @return the job that is running in the current thread or null if no job is running in the current thread.
+	 */
+	public static Job current() {
+		return CURRENT.get();
+	}
+
+	@Override
+	public void run() {
+		
+		synchronized (this) {
+			if (state != State.PENDING) { // cancelled before it started
+				return;
+			}
+			state = State.RUNNING;
+		}
+		
+		CURRENT.set(this);
+		try {
+			
+			Object value = operationInvoker.invoke(object, params);
+			finish(State.COMPLETED, value, null);
+			
+		} catch (InvocationTargetException e) {
+			finish(State.FAILED, null, e.getCause());
+		} catch (Throwable e) {
+			finish(State.FAILED, null, e);
+		} finally {
+			CURRENT.remove();
+			// the slot of the job is released when the worker stops, even if the job was cancelled while running
+			release();
+		}
+		
+	}
+	
+	/**
+	 * Cancels the job, interrupting the thread that is running it. A running job is counted as running until the 
+	 * thread returns.
+	 * 
+	 * @return true if the job was cancelled, false if it had already finished.
+	 */
+	public boolean cancel() {
+		
+		boolean pending;
+		synchronized (this) {
+			if (state != State.PENDING && state != State.RUNNING) {
+				return false;
+			}
+			
+			pending = state == State.PENDING;
+			finishedAt = System.currentTimeMillis();
+			state = State.CANCELLED;
+		}
+		
+		// a pending job will not run (or will return as soon as it starts), so nobody else releases it
+		if (pending) {
+			release();
+		}
+		
+		Future<?> f = future;
+		if (f != null) {
+			f.cancel(true);
+		}
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Helper method. Moves a running job to a final state with its result or error, unless it was cancelled.
+	 */
+	private synchronized void finish(State finalState, Object value, Throwable throwable) {
+		
+		if (state != State.RUNNING) {
+			return;
+		}
+		
+		result = value;
+		error = throwable;
+		finishedAt = System.currentTimeMillis();
+		if (finalState == State.COMPLETED) {
+			progress = 100;
+		}
+		state = finalState;
+		
+	}
+	
+	/**
+	 * Helper method. Releases the slot of the job in the operation and in the {@link JobManager}. It's called once, 
+	 * when the worker stops or when a pending job is cancelled.
+	 */
+	private void release() {
+		operationInvoker.jobFinished();
+		jobManager.jobFinished(this);
+	}
+	
+	void setFuture(Future<?> future) {
+		this.future = future;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	
+	public State getState() {
+		return state;
+	}
+	
+	public boolean isCancelled() {
+		return state == State.CANCELLED;
+	}
+	
+	public boolean isFinished() {
+		State s = state;
+		return s == State.COMPLETED || s == State.FAILED || s == State.CANCELLED;
+	}
+	
+	public int getProgress() {
+		return progress;
+	}
+	
+	public void setProgress(int progress) {
+		this.progress = Math.max(0, Math.min(100, progress));
+	}
+	
+	public Object getResult() {
+		return result;
+	}
+	
+	public Throwable getError() {
+		return error;
+	}
+	
+	public long getCreatedAt() {
+		return createdAt;
+	}
+	
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+	
+}
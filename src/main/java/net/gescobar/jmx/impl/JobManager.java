@@ -0,0 +1,214 @@
+package net.gescobar.jmx.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.Name;
+
+/**
+ * <p>Runs the async operations (see {@link ManagedOperation#async()}) and keeps track of their jobs. It's exposed
+ * itself as the <code>net.gescobar.jmx:type=Jobs</code> MBean, which is registered automatically in the MBeanServer
+ * of the first MBean with async operations, to query the status, progress and result of the jobs and to cancel
+ * them.</p>
+ *
+ * <p>Jobs run in virtual threads if the JVM supports them, or in a pool of daemon threads otherwise. Finished jobs are
+ * kept until {@link #MAX_FINISHED_JOBS} newer jobs finish.</p>
+ *
+ * @author German Escobar
+ */
+@Description("Jobs of the async operations")
+public final class JobManager {
+
+	/**
+	 * The name of the MBean that exposes the jobs.
+	 */
+	public static final String OBJECT_NAME = "net.gescobar.jmx:type=Jobs";
+
+	/**
+	 * The number of finished jobs that we keep so their results can be retrieved.
+	 */
+	public static final int MAX_FINISHED_JOBS = 100;
+
+	private static final JobManager INSTANCE = new JobManager();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final Map<Long,Job> jobs = new ConcurrentHashMap<Long,Job>();
+
+	/**
+	 * The ids of the finished jobs in the order they finished.
+	 */
+	private final Queue<Long> finishedJobs = new ConcurrentLinkedQueue<Long>();
+
+	private final AtomicInteger runningJobs = new AtomicInteger();
+
+	private final ExecutorService executor;
+
+	private final boolean virtualThreads;
+
+	private JobManager() {
+
+		ExecutorService virtualExecutor = VirtualThreads.newExecutor();
+		virtualThreads = virtualExecutor != null;
+
+		executor = virtualThreads ? virtualExecutor : Executors.newCachedThreadPool(new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jmx-job-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+
+	}
+
+	/**
+	 * @return the single instance of this class.
+	 */
+	public static JobManager getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers this object in an MBeanServer with the {@link #OBJECT_NAME} name if it's not already registered.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the jobs MBean.
+	 */
+	void registerIn(MBeanServer mBeanServer) {
+		LibraryMBeans.registerIfAbsent(mBeanServer, OBJECT_NAME, this);
+	}
+
+	/**
+	 * Starts a job for an async operation. The params must be already converted.
+	 *
+	 * @return the id of the job.
+	 * @throws IllegalStateException if the maximum number of concurrent jobs of the operation was reached.
+	 */
+	long submit(OperationInvoker operationInvoker, Object object, Object[] params, String description)
+			throws IllegalStateException {
+
+		if (!operationInvoker.tryStartJob()) {
+			throw new IllegalStateException("Too many running jobs of operation " + operationInvoker.getName() +
+					", try again later");
+		}
+
+		long id = sequence.incrementAndGet();
+		Job job = new Job(id, description, operationInvoker, object, params, this);
+
+		jobs.put(id, job);
+		runningJobs.incrementAndGet();
+
+		try {
+			job.setFuture( executor.submit(job) );
+		} catch (RejectedExecutionException e) {
+			job.cancel();
+			throw new IllegalStateException("Cannot start the job of operation " + operationInvoker.getName(), e);
+		}
+
+		return id;
+
+	}
+
+	/**
+	 * Called by the jobs when they finish (including cancelled jobs).
+	 */
+	void jobFinished(Job job) {
+
+		runningJobs.decrementAndGet();
+
+		finishedJobs.add( job.getId() );
+		while (finishedJobs.size() > MAX_FINISHED_JOBS) {
+			Long oldest = finishedJobs.poll();
+			if (oldest != null) {
+				jobs.remove(oldest);
+			}
+		}
+
+	}
+
+	/**
+	 * @param id the id of the job.
+	 *
+	 * @return the Job object.
+	 * @throws IllegalArgumentException if the job doesn't exist (or was already discarded).
+	 */
+	public Job getJob(long id) throws IllegalArgumentException {
+
+		Job job = jobs.get(id);
+		if (job == null) {
+			throw new IllegalArgumentException("Job " + id + " not found");
+		}
+
+		return job;
+
+	}
+
+	@ManagedAttribute(description="The number of jobs that are pending or running")
+	public int getRunningJobs() {
+		return runningJobs.get();
+	}
+
+	@ManagedAttribute(description="True if the jobs run in virtual threads")
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="Lists the known jobs: id, state, progress and operation")
+	public String[] listJobs() {
+
+		List<String> list = new ArrayList<String>();
+		for (Job job : jobs.values()) {
+			list.add( job.getId() + " " + job.getState() + " " + job.getProgress() + "% " + job.getDescription() );
+		}
+
+		return list.toArray( new String[list.size()] );
+
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The state of a job")
+	public String getState(@Name("id") @Description("The id of the job") long id) {
+		return getJob(id).getState().name();
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The progress of a job, from 0 to 100")
+	public int getProgress(@Name("id") @Description("The id of the job") long id) {
+		return getJob(id).getProgress();
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The result of a completed job")
+	public Object getResult(@Name("id") @Description("The id of the job") long id) {
+		return getJob(id).getResult();
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The error of a failed job")
+	public String getError(@Name("id") @Description("The id of the job") long id) {
+		Throwable error = getJob(id).getError();
+		return error == null ? null : error.toString();
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Cancels a job, returns false if it had already finished")
+	public boolean cancel(@Name("id") @Description("The id of the job") long id) {
+		return getJob(id).cancel();
+	}
+
+}
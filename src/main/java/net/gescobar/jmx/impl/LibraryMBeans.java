@@ -0,0 +1,106 @@
+package net.gescobar.jmx.impl;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.ManagementException;
+
+/**
+ * <p>Registers the MBeans of the library itself. The {@link JobManager} and the {@link LimitManager} are registered
+ * along with the first MBean that needs them. The {@link StatisticsManager}, {@link SnapshotManager},
+ * {@link QueryManager} and {@link FanOutManager} read or invoke every MBean of the MBeanServer, so they are
+ * registered only when they are enabled with {@link #enable(MBeanServer)}.</p>
+ *
+ * @author German Escobar
+ */
+public final class LibraryMBeans {
+
+	/**
+	 * The names of the MBeans that are registered with {@link #enable(MBeanServer)}.
+	 */
+	private static final String[] OPTIONAL_MBEANS = { StatisticsManager.OBJECT_NAME, SnapshotManager.OBJECT_NAME,
+			QueryManager.OBJECT_NAME, FanOutManager.OBJECT_NAME };
+
+	/**
+	 * Hide public constructor.
+	 */
+	private LibraryMBeans() {}
+
+	/**
+	 * Registers the statistics, snapshot, query and fan-out MBeans in an MBeanServer, if they are not already
+	 * registered. They only see the MBeans of that MBeanServer.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the MBeans.
+	 *
+	 * @throws ManagementException if an MBean cannot be created or registered.
+	 */
+	public static void enable(MBeanServer mBeanServer) throws ManagementException {
+
+		if (mBeanServer == null) {
+			throw new IllegalArgumentException("No MBeanServer specified.");
+		}
+
+		StatisticsManager.registerIn(mBeanServer);
+		SnapshotManager.registerIn(mBeanServer);
+		QueryManager.registerIn(mBeanServer);
+		FanOutManager.registerIn(mBeanServer);
+
+	}
+
+	/**
+	 * Unregisters the MBeans registered with {@link #enable(MBeanServer)} from an MBeanServer, if they are registered.
+	 *
+	 * @param mBeanServer the MBeanServer from which we are unregistering the MBeans.
+	 *
+	 * @throws ManagementException if an MBean cannot be unregistered.
+	 */
+	public static void disable(MBeanServer mBeanServer) throws ManagementException {
+
+		if (mBeanServer == null) {
+			throw new IllegalArgumentException("No MBeanServer specified.");
+		}
+
+		for (String name : OPTIONAL_MBEANS) {
+
+			try {
+				mBeanServer.unregisterMBean( new ObjectName(name) );
+			} catch (InstanceNotFoundException e) {
+				// not enabled or unregistered by another thread
+			} catch (Exception e) {
+				throw new ManagementException(e);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Registers an annotated object in an MBeanServer if there is no MBean with the same name.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the object.
+	 * @param name the name of the MBean.
+	 * @param object the annotated object.
+	 *
+	 * @throws ManagementException if the MBean cannot be created or registered.
+	 */
+	static void registerIfAbsent(MBeanServer mBeanServer, String name, Object object)
+			throws ManagementException {
+
+		try {
+			ObjectName objectName = new ObjectName(name);
+			if (!mBeanServer.isRegistered(objectName)) {
+				MBeanImpl mBean = (MBeanImpl) MBeanFactory.createMBean(object);
+				mBean.setLibrary(true);
+				mBeanServer.registerMBean(mBean, objectName);
+			}
+		} catch (InstanceAlreadyExistsException e) {
+			// registered by another thread
+		} catch (Exception e) {
+			throw new ManagementException(e);
+		}
+
+	}
+
+}
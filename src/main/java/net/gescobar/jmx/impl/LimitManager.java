@@ -0,0 +1,95 @@
+package net.gescobar.jmx.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * Exposes the limits (see {@link Limiter}) and rejected calls of the attributes and operations of the MBeans
+ * registered in an MBeanServer as the <code>net.gescobar.jmx:type=Limits</code> MBean, which is registered automatically in the MBeanServer
+ * of the first MBean with limits.
+ *
+ * @author German Escobar
+ */
+@Description("Limits and rejected calls of the attributes and operations")
+public final class LimitManager {
+
+	/**
+	 * The name of the MBean that exposes the limits.
+	 */
+	public static final String OBJECT_NAME = "net.gescobar.jmx:type=Limits";
+
+	/**
+	 * The MBeanServer whose MBeans are reported.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer whose MBeans are reported.
+	 */
+	private LimitManager(MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	/**
+	 * Registers a limits MBean in an MBeanServer with the {@link #OBJECT_NAME} name if it's not already registered.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the limits MBean.
+	 */
+	static void registerIn(MBeanServer mBeanServer) {
+		LibraryMBeans.registerIfAbsent(mBeanServer, OBJECT_NAME, new LimitManager(mBeanServer));
+	}
+
+	@ManagedAttribute(description="The number of calls rejected by all the limits")
+	public long getRejectedCalls() {
+
+		long rejected = 0;
+		for (MBeanImpl mBean : MBeanRegistry.values(mBeanServer)) {
+			for (Limiter limiter : mBean.getLimiters().values()) {
+				rejected += limiter.getRejected();
+			}
+		}
+
+		return rejected;
+
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="Lists the limits: MBean, attribute or operation, max " +
+			"concurrency, max rate and rejected calls")
+	public String[] listLimits() {
+
+		List<String> list = new ArrayList<String>();
+		for (Map.Entry<ObjectName,MBeanImpl> mBean : MBeanRegistry.getAll(mBeanServer).entrySet()) {
+			for (Map.Entry<String,Limiter> limiter : mBean.getValue().getLimiters().entrySet()) {
+				list.add( mBean.getKey() + " " + limiter.getKey() + " maxConcurrency=" +
+						limiter.getValue().getMaxConcurrency() + " maxRate=" + limiter.getValue().getMaxRate() +
+						" rejected=" + limiter.getValue().getRejected() );
+			}
+		}
+
+		return list.toArray( new String[list.size()] );
+
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Resets the counters of rejected calls")
+	public void resetRejectedCalls() {
+
+		for (MBeanImpl mBean : MBeanRegistry.values(mBeanServer)) {
+			for (Limiter limiter : mBean.getLimiters().values()) {
+				limiter.resetRejected();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,155 @@
+package net.gescobar.jmx.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Limits the calls to an attribute or operation: the number of concurrent calls and the number of calls per second.
+ * Calls are admitted with {@link #tryAcquire()} and, if admitted, must be followed by {@link #release()}.</p>
+ *
+ * <p>The rate is enforced with a token bucket that holds up to one second of calls (at least one) and is implemented
+ * as a single timestamp (the time at which the bucket will be full again) that is updated with compare-and-set, so no
+ * locks are taken.</p>
+ *
+ * @author German Escobar
+ */
+final class Limiter {
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final int maxConcurrency;
+
+	private final double maxRate;
+
+	/**
+	 * The nanoseconds that one call takes from the bucket, 0 if the rate is not limited.
+	 */
+	private final long interval;
+
+	/**
+	 * The capacity of the bucket in nanoseconds.
+	 */
+	private final long capacity;
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * The time (from <code>System.nanoTime()</code>) at which all the taken tokens are returned to the bucket.
+	 */
+	private final AtomicLong refilledAt = new AtomicLong( System.nanoTime() );
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxConcurrency the maximum number of concurrent calls, 0 for no limit.
+	 * @param maxRate the maximum number of calls per second, 0 for no limit.
+	 */
+	public Limiter(int maxConcurrency, double maxRate) {
+
+		this.maxConcurrency = maxConcurrency;
+		this.maxRate = maxRate;
+
+		if (maxRate > 0) {
+			this.interval = Math.max( 1L, (long) (NANOS_PER_SECOND / maxRate) );
+			this.capacity = interval * Math.max( 1L, (long) Math.ceil(maxRate) );
+		} else {
+			this.interval = 0;
+			this.capacity = 0;
+		}
+
+	}
+
+	/**
+	 * Tells if a call is admitted. A rejected call is counted and must not call {@link #release()}.
+	 *
+	 * @return true if the call can proceed, false if it's over one of the limits.
+	 */
+	public boolean tryAcquire() {
+
+		if (maxConcurrency > 0 && !tryIncrementRunning()) {
+			rejected.incrementAndGet();
+			return false;
+		}
+
+		if (interval > 0 && !tryTakeToken()) {
+			if (maxConcurrency > 0) {
+				running.decrementAndGet();
+			}
+			rejected.incrementAndGet();
+			return false;
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Called when an admitted call finishes.
+	 */
+	public void release() {
+		if (maxConcurrency > 0) {
+			running.decrementAndGet();
+		}
+	}
+
+	private boolean tryIncrementRunning() {
+
+		while (true) {
+			int current = running.get();
+			if (current >= maxConcurrency) {
+				return false;
+			}
+			if (running.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+
+	}
+
+	private boolean tryTakeToken() {
+
+		while (true) {
+
+			long now = System.nanoTime();
+			long current = refilledAt.get();
+			long next = (current - now > 0 ? current : now) + interval;
+			if (next - now > capacity) {
+				return false;
+			}
+			if (refilledAt.compareAndSet(current, next)) {
+				return true;
+			}
+
+		}
+
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public double getMaxRate() {
+		return maxRate;
+	}
+
+	/**
+	 * @return the number of calls that are running, only tracked if the concurrency is limited.
+	 */
+	public int getRunning() {
+		return running.get();
+	}
+
+	/**
+	 * @return the number of rejected calls.
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	void resetRejected() {
+		rejected.set(0);
+	}
+
+}
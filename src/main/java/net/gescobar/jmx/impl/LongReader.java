@@ -0,0 +1,21 @@
+package net.gescobar.jmx.impl;
+
+/**
+ * Reads a numeric attribute of the instrumented object as a <code>long</code>, without boxing it. Readers are 
+ * generated by {@link ReaderGenerator} for the getters that return a <code>long</code>, <code>int</code>, 
+ * <code>short</code> or <code>byte</code>. It's public only because the generated classes, which are defined by their 
+ * own class loaders, must be able to implement it.
+ * 
+ * @author German Escobar
+ */
+public interface LongReader {
+
+	/**
+	 * @param object the instrumented object.
+	 * 
+	 * @return the value returned by the getter.
+	 * @throws Exception if the getter throws an exception.
+	 */
+	long read(Object object) throws Exception;
+	
+}
@@ -4,9 +4,18 @@ import static net.gescobar.jmx.util.StringUtils.capitalize;
 import static net.gescobar.jmx.util.StringUtils.decapitalize;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.DynamicMBean;
 import javax.management.MBeanAttributeInfo;
@@ -16,12 +25,18 @@ import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
 
+import net.gescobar.jmx.Limits;
 import net.gescobar.jmx.Management;
 import net.gescobar.jmx.ManagementException;
 import net.gescobar.jmx.annotation.Description;
 import net.gescobar.jmx.annotation.Impact;
 import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedAttributeMap;
+import net.gescobar.jmx.annotation.ManagedComponent;
 import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.ManagedSnapshot;
+import net.gescobar.jmx.annotation.Name;
+import net.gescobar.jmx.util.ClassUtils;
 
 /**
  * <p>Factory of DynamicMBeans. Users can use this object directly to create DynamicMBeans and then registering them 
@@ -36,56 +51,178 @@ public final class MBeanFactory {
 	 * Hide public constructor.
 	 */
 	private MBeanFactory() {}
+	
+	/**
+	 * The models of the prepared classes (see {@link #prepare(Class)}).
+	 */
+	private static final Map<Class<?>,MBeanModel> MODELS = new ConcurrentHashMap<Class<?>,MBeanModel>();
 
 	/**
 	 * Creates a DynamicMBean from an object annotated with {@link ManagedBean} exposing all methods and attributes
-	 * annotated with {@link ManagedOperation} and {@link ManagedAttribute} respectively.
+	 * annotated with {@link ManagedOperation} and {@link ManagedAttribute} respectively. If the class was prepared 
+	 * (see {@link #prepare(Class)}) its model is used instead of introspecting the class again.
 	 * 
 	 * @param object the object from which we are creating the DynamicMBean.
 	 * 
 	 * @return a constructed DynamicMBean object that can be registered with any MBeanServer.
 	 */
 	public static DynamicMBean createMBean(Object object) {
+		return createMBean(object, (Limits) null);
+	}
+	
+	/**
+	 * Creates a DynamicMBean from an object exposing all its annotated methods and attributes and replacing the 
+	 * limits declared in the annotations with the specified ones. If the class was prepared (see 
+	 * {@link #prepare(Class)}) its model is used instead of introspecting the class again.
+	 * 
+	 * @param object the object from which we are creating the DynamicMBean.
+	 * @param limits the limits of the attributes and operations, can be null.
+	 * 
+	 * @return a constructed DynamicMBean object that can be registered with any MBeanServer.
+	 * @throws ManagementException if a limit references an attribute or operation that doesn't exist.
+	 */
+	public static DynamicMBean createMBean(Object object, Limits limits) throws ManagementException {
 		
 		if (object == null) {
 			throw new IllegalArgumentException("No object specified.");
 		}
-     	
-		Class<?> objectType = object.getClass();
 		
-		// retrieve description
-		String description = "";
-    	if (objectType.isAnnotationPresent(Description.class)) {
-    	    description = objectType.getAnnotation(Description.class).value();
-    	}
-    	
+		return createMBean( object, MODELS.get(object.getClass()), object.getClass().getMethods(), limits );
+		
+	}
+	
+	/**
+	 * Creates a DynamicMBean from an object handling only the specified methods instead of all the public methods of 
+	 * its class. Used when the annotated methods are already known (e.g. from the index generated at compile time, 
+	 * see {@link ResourceIndex}) to avoid introspecting the whole class.
+	 * 
+	 * @param object the object from which we are creating the DynamicMBean.
+	 * @param methods the public methods of the object's class that we need to handle.
+	 * 
+	 * @return a constructed DynamicMBean object that can be registered with any MBeanServer.
+	 */
+	public static DynamicMBean createMBean(Object object, Method[] methods) {
+		return createMBean(object, methods, null);
+	}
+	
+	/**
+	 * Creates a DynamicMBean from an object handling only the specified methods and replacing the limits declared in 
+	 * the annotations with the specified ones.
+	 * 
+	 * @param object the object from which we are creating the DynamicMBean.
+	 * @param methods the public methods of the object's class that we need to handle.
+	 * @param limits the limits of the attributes and operations, can be null.
+	 * 
+	 * @return a constructed DynamicMBean object that can be registered with any MBeanServer.
+	 * @throws ManagementException if a limit references an attribute or operation that doesn't exist.
+	 */
+	public static DynamicMBean createMBean(Object object, Method[] methods, Limits limits) 
+			throws ManagementException {
+		
+		if (object == null) {
+			throw new IllegalArgumentException("No object specified.");
+		}
+		
+		if (methods == null) {
+			throw new IllegalArgumentException("No methods specified.");
+		}
+		
+		return createMBean(object, null, methods, limits);
+		
+	}
+	
+	/**
+	 * Helper method. Creates the DynamicMBean from the model of a prepared class or, if it's null, from a model 
+	 * built with the specified methods.
+	 * 
+	 * @param object the object from which we are creating the DynamicMBean.
+	 * @param model the model of the prepared class of the object, can be null.
+	 * @param methods the public methods of the object's class that we need to handle.
+	 * @param limits the limits of the attributes and operations, can be null.
+	 * 
+	 * @return a constructed DynamicMBean object that can be registered with any MBeanServer.
+	 * @throws ManagementException if a limit references an attribute or operation that doesn't exist.
+	 */
+	private static DynamicMBean createMBean(Object object, MBeanModel model, Method[] methods, Limits limits) 
+			throws ManagementException {
+		
+		long start = StatisticsManager.enabled() ? System.nanoTime() : 0;
+		
+		if (model == null) {
+			model = buildModel( object.getClass(), methods ).getModel();
+		}
+		
+		// create the MBean
+	    MBeanImpl mBean = model.newMBean(object, limits);
+	    
+	    if (start != 0) {
+	    	StatisticsManager.mBeanCreated( System.nanoTime() - start );
+	    }
+	    
+	    return mBean;
+	    
+	}
+	
+	/**
+	 * <p>Introspects a class once so that its MBeans are created without finding the annotated members again. It's 
+	 * meant to be called while a native image is built (see the <code>jmx-annotations-native</code> module), so the 
+	 * MBeanInfo and the accessors are part of the image and no introspection is done when the application starts, 
+	 * but it can also be used to move the cost of the introspection out of the registration.</p>
+	 * 
+	 * <p>Only the classes that are prepared are kept, so the classes that are only registered can be unloaded.</p>
+	 * 
+	 * @param type the class of the objects from which MBeans will be created.
+	 * 
+	 * @return the methods and fields of the class (or of its snapshots and components) that are accessed with 
+	 * 		reflection, which need to be registered for reflection in a native image.
+	 * @throws ManagementException if the class has invalid annotations.
+	 */
+	public static Collection<Member> prepare(Class<?> type) throws ManagementException {
+		
+		if (type == null) {
+			throw new IllegalArgumentException("No type specified.");
+		}
+		
+		MethodHandler methodHandler = buildModel( type, type.getMethods() );
+		MODELS.put( type, methodHandler.getModel() );
+		
+		return methodHandler.getMembers();
+		
+	}
+	
+	/**
+	 * Helper method. Introspects the methods and fields of a class.
+	 * 
+	 * @param type the class from which we are creating the model.
+	 * @param methods the public methods of the class that we need to handle.
+	 * 
+	 * @return the MethodHandler that built the model.
+	 */
+	private static MethodHandler buildModel(Class<?> type, Method[] methods) throws ManagementException {
+		
     	// build attributes and operations
-    	Method[] methods = objectType.getMethods();
-    	MethodHandler methodHandler = new MBeanFactory().new MethodHandler( objectType );
+    	MethodHandler methodHandler = new MBeanFactory().new MethodHandler(type);
     	for (Method method : methods) {
     		methodHandler.handleMethod(method);
     	}
+    	methodHandler.handleFields();
     	
-    	// build the MBeanInfo
-    	MBeanInfo mBeanInfo = new MBeanInfo(objectType.getName(), description, methodHandler.getMBeanAttributes(), 
-    			new MBeanConstructorInfo[0], methodHandler.getMBeanOperations(), new MBeanNotificationInfo[0]);
-    	
-    	// create the MBean
-	    return new MBeanImpl(object, mBeanInfo);
-	    
+    	return methodHandler;
+		
 	}
     
     /**
-     * This class is used internally to handle the methods of the object that the 
+     * This class is used internally to handle the methods of the class of the object that the 
      * {@link MBeanFactory#createMBean(Object)} receives as an argument. It creates a collection of MBeanAttributeInfo
-     * and MBeanOperationInfo from the information of the methods that it handles.
+     * and MBeanOperationInfo from the information of the methods that it handles, which is then used to build the 
+     * {@link MBeanModel} of the class.
      * 
      * @author German Escobar
      */
     private class MethodHandler {
     	
     	/**
-    	 * The class of the object.
+    	 * The class from which we are creating the MBean.
     	 */
     	private Class<?> objectType;
     	
@@ -103,9 +240,44 @@ public final class MBeanFactory {
     	private Collection<MBeanOperationInfo> mBeanOperations = new ArrayList<MBeanOperationInfo>();
     	
     	/**
-    	 * Constructor. Initializes the object with the specified class.
+    	 * Holds the accessors of the attributes, one for each MBeanAttributeInfo.
+    	 */
+    	private Collection<AttributeAccessor> attributeAccessors = new ArrayList<AttributeAccessor>();
+    	
+    	/**
+    	 * Holds the invokers of the operations, one for each MBeanOperationInfo.
+    	 */
+    	private Collection<OperationInvoker> operationInvokers = new ArrayList<OperationInvoker>();
+    	
+    	/**
+    	 * The names of the attributes exposed from snapshots, used to detect collisions with other attributes.
+    	 */
+    	private Set<String> snapshotAttributes = new HashSet<String>();
+    	
+    	/**
+    	 * Holds the accessors of the maps whose entries are exposed as attributes.
+    	 */
+    	private Collection<AttributeMapAccessor> attributeMaps = new ArrayList<AttributeMapAccessor>();
+    	
+    	/**
+    	 * Holds the accessors of the counters with rates by attribute name.
+    	 */
+    	private Map<String,AttributeAccessor> rateCounters = new LinkedHashMap<String,AttributeAccessor>();
+    	
+    	/**
+    	 * Holds the limits declared in the annotations.
+    	 */
+    	private Limits limits = new Limits();
+    	
+    	/**
+    	 * Holds the methods and fields that are accessed with reflection.
+    	 */
+    	private Collection<Member> members = new LinkedHashSet<Member>();
+    	
+    	/**
+    	 * Constructor. Initializes the object with the class that the MBeanFactory is handling.
     	 * 
-    	 * @param objectType the class of the object that the MBeanFactory is handling.
+    	 * @param objectType the class that the MBeanFactory is handling.
     	 */
     	public MethodHandler(Class<?> objectType) {
     		this.objectType = objectType;
@@ -125,12 +297,24 @@ public final class MBeanFactory {
     		
     		boolean hasManagedAttribute = method.isAnnotationPresent(ManagedAttribute.class);
     		boolean hasManagedOperation = method.isAnnotationPresent(ManagedOperation.class);
+    		boolean hasManagedSnapshot = method.isAnnotationPresent(ManagedSnapshot.class);
+    		boolean hasManagedAttributeMap = method.isAnnotationPresent(ManagedAttributeMap.class);
     		
     		if (hasManagedAttribute && hasManagedOperation) {
     			throw new ManagementException("Method " + method.getName() + " cannot have both ManagedAttribute and " +
     					"ManagedOperation annotations.");
     		}
     		
+    		if (hasManagedSnapshot && (hasManagedAttribute || hasManagedOperation)) {
+    			throw new ManagementException("Method " + method.getName() + " cannot have ManagedSnapshot and " +
+    					"ManagedAttribute or ManagedOperation annotations.");
+    		}
+    		
+    		if (hasManagedAttributeMap && (hasManagedAttribute || hasManagedOperation || hasManagedSnapshot)) {
+    			throw new ManagementException("Method " + method.getName() + " cannot have ManagedAttributeMap and " +
+    					"other annotations.");
+    		}
+    		
     		if (hasManagedAttribute) {
     			handleManagedAttribute(method);
     		} 
@@ -139,26 +323,113 @@ public final class MBeanFactory {
     			handleManagedOperation(method);
     		}
     		
+    		if (hasManagedSnapshot) {
+    			handleManagedSnapshot(method);
+    		}
+    		
+    		if (hasManagedAttributeMap) {
+    			handleManagedAttributeMap(null, method);
+    		}
+    		
     	}
 
     	/**
-    	 * Called after the {@link #handleMethod(Method)} is called for all the methods of the <code>objectType</code>.
-    	 * Retrieves the exposed attributes.
+    	 * Called after the {@link #handleMethod(Method)} is called for all the methods. Exposes the fields (declared
+    	 * or inherited, of any visibility) whose type is annotated with {@link ManagedComponent} and the maps of the 
+    	 * fields annotated with {@link ManagedAttributeMap}.
+    	 * 
+    	 * @throws ManagementException if an attribute or operation of a component is already exposed.
+    	 */
+    	public void handleFields() throws ManagementException {
+    		
+    		for (Class<?> type = objectType; type != null && !type.equals(Object.class); type = type.getSuperclass()) {
+    			for (Field field : type.getDeclaredFields()) {
+    				if (field.getType().isAnnotationPresent(ManagedComponent.class)) {
+    					handleManagedComponent(field);
+    				}
+    				if (field.isAnnotationPresent(ManagedAttributeMap.class)) {
+    					handleManagedAttributeMap(field, null);
+    				}
+    			}
+    		}
+    		
+    	}
+    	
+    	/**
+    	 * Called after the {@link #handleFields()} is called. Builds the model of the class from the exposed 
+    	 * attributes and operations.
     	 * 
-    	 * @return an array of initialized MBeanAttributeInfo objects. It will never return null.
+    	 * @return an MBeanModel object. It will never return null.
     	 */
-    	public MBeanAttributeInfo[] getMBeanAttributes() {
-    		return mBeanAttributes.toArray( new MBeanAttributeInfo[0] );
+    	public MBeanModel getModel() {
+    		
+			// retrieve description
+			String description = "";
+	    	if (objectType.isAnnotationPresent(Description.class)) {
+	    	    description = objectType.getAnnotation(Description.class).value();
+	    	}
+	    	
+	    	MBeanInfo mBeanInfo = new MBeanInfo(objectType.getName(), description, 
+	    			mBeanAttributes.toArray( new MBeanAttributeInfo[0] ), new MBeanConstructorInfo[0], 
+	    			mBeanOperations.toArray( new MBeanOperationInfo[0] ), new MBeanNotificationInfo[0]);
+	    	
+	    	return new MBeanModel(mBeanInfo, attributeAccessors, operationInvokers, attributeMaps, rateCounters, 
+	    			limits);
+	    	
     	}
     	
     	/**
-    	 * Called after the {@link #handleMethod(Method)} is called for all the methods of the <code>objectType</code>.
-    	 * Retrieves the exposed operations.
+    	 * Called after the {@link #handleFields()} is called. Retrieves the methods and fields that are accessed with 
+    	 * reflection.
     	 * 
-    	 * @return an array of initialized MBeanOperationInfo objects. It will never return null.
+    	 * @return a collection of Method and Field objects. It will never return null.
     	 */
-    	public MBeanOperationInfo[] getMBeanOperations() {
-    		return mBeanOperations.toArray( new MBeanOperationInfo[0] );
+    	public Collection<Member> getMembers() {
+    		return members;
+    	}
+    	
+    	/**
+    	 * Helper method. Records the limits of an attribute or operation if there is any limit and it's not already 
+    	 * limited (e.g. by another overload of the operation).
+    	 */
+    	private void addLimiter(String name, int maxConcurrency, double maxRate) {
+    		
+    		if ((maxConcurrency > 0 || maxRate > 0) && !limits.getNames().contains(name)) {
+    			limits.limit(name, maxConcurrency, maxRate);
+    		}
+    		
+    	}
+    	
+    	/**
+    	 * Helper method. Records a method or field that is accessed with reflection.
+    	 */
+    	private void addMember(Member member) {
+    		
+    		if (member != null) {
+    			members.add(member);
+    		}
+    		
+    	}
+    	
+    	/**
+    	 * Helper method. Tells if there is an attribute or operation with the specified name.
+    	 */
+    	private boolean existsMember(String name) {
+    		
+    		for (MBeanAttributeInfo mBeanAttribute : mBeanAttributes) {
+    			if (mBeanAttribute.getName().equals(name)) {
+    				return true;
+    			}
+    		}
+    		
+    		for (MBeanOperationInfo mBeanOperation : mBeanOperations) {
+    			if (mBeanOperation.getName().equals(name)) {
+    				return true;
+    			}
+    		}
+    		
+    		return false;
+    		
     	}
     	
     	/**
@@ -191,6 +462,10 @@ public final class MBeanFactory {
     		getterMethod = getterMethod == null ? findGetterMethod(objectType, attributeName) : getterMethod;
     		setterMethod = setterMethod == null ? findSetterMethod(objectType, attributeName, attributeType) : setterMethod;
     		
+    		if (snapshotAttributes.contains(attributeName)) {
+    			throw new ManagementException("Attribute " + attributeName + " is already exposed by a ManagedSnapshot.");
+    		}
+    		
     		boolean existsAttribute = existsAttribute(mBeanAttributes, attributeName, attributeType);
 	    	if ( !existsAttribute ) {
 	    		
@@ -199,6 +474,26 @@ public final class MBeanFactory {
 	    				setterMethod, method);
 	    		if (mBeanAttribute != null) { // it can be null if it is neither readable or writable
 	    			mBeanAttributes.add( mBeanAttribute );
+	    			AttributeAccessor attributeAccessor = new AttributeAccessor(attributeName, 
+	    					mBeanAttribute.isReadable() ? getterMethod : null, 
+	    					mBeanAttribute.isWritable() ? setterMethod : null);
+	    			attributeAccessors.add(attributeAccessor);
+	    			addMember( mBeanAttribute.isReadable() ? getterMethod : null );
+	    			addMember( mBeanAttribute.isWritable() ? setterMethod : null );
+	    			
+	    			// primitive numbers are read without boxing them by in-process consumers
+	    			if (mBeanAttribute.isReadable()) {
+	    				attributeAccessor.bind( ReaderFactory.longReader(getterMethod), 
+	    						ReaderFactory.doubleReader(getterMethod) );
+	    			}
+	    			
+	    			ManagedAttribute managedAttribute = method.getAnnotation(ManagedAttribute.class);
+	    			addLimiter( attributeName, managedAttribute.maxConcurrency(), managedAttribute.maxRate() );
+	    			
+	    			if (managedAttribute.rate()) {
+	    				addRateAttributes(attributeName, attributeType, 
+	    						mBeanAttribute.isReadable() ? attributeAccessor : null);
+	    			}
 	    		}
 	    		
 	    	} else {
@@ -209,6 +504,41 @@ public final class MBeanFactory {
     		
     	}
     	
+    	/**
+    	 * Helper method. Exposes the rates of a counter in the last 1, 5 and 15 minutes as read-only attributes.
+    	 * 
+    	 * @param attributeName the name of the counter.
+    	 * @param attributeType the type of the counter.
+    	 * @param counter the accessor of the counter, null if it's not readable.
+    	 * 
+    	 * @throws ManagementException if the counter is not a readable number.
+    	 */
+    	private void addRateAttributes(String attributeName, Class<?> attributeType, AttributeAccessor counter) 
+    			throws ManagementException {
+    		
+    		Class<?> wrapper = ClassUtils.wrapperClass(attributeType);
+    		if (counter == null || !Number.class.isAssignableFrom(wrapper)) {
+    			throw new ManagementException("Attribute " + attributeName + " has rate=true but it's not a " + 
+    					"readable number.");
+    		}
+    		
+    		// the tracker of each MBean is created by the model
+    		rateCounters.put(attributeName, counter);
+    		
+    		for (int minutes : MBeanModel.rateWindows()) {
+    			
+    			String name = MBeanModel.rateName(attributeName, minutes);
+    			if (existsMember(name)) {
+    				throw new ManagementException("Attribute " + name + " is already exposed.");
+    			}
+    			
+    			mBeanAttributes.add( new MBeanAttributeInfo(name, Double.TYPE.getName(), "Per second rate of " + 
+    					attributeName + " in the last " + minutes + " minutes", true, false, false) );
+    			
+    		}
+    		
+    	}
+    	
     	/**
     	 * Helper method. Tells if the method is a getter or not. It checks if the method name starts with "get" or 
     	 * "is", that the method has no parameters and returns something different than <code>void</code>.
@@ -336,6 +666,177 @@ public final class MBeanFactory {
     		
         }
     	
+    	/**
+    	 * Helper method. Handles a field or method annotated with {@link ManagedAttributeMap}. The entries of the map 
+    	 * are not known until the MBeanInfo is requested, so no attributes are added here.
+    	 * 
+    	 * @param field the annotated field or null if it's a method.
+    	 * @param method the annotated method or null if it's a field.
+    	 */
+    	private void handleManagedAttributeMap(Field field, Method method) {
+    		
+    		Class<?> type = field != null ? field.getType() : method.getReturnType();
+    		String name = field != null ? field.getName() : method.getName();
+    		
+    		if (!Map.class.isAssignableFrom(type) || (method != null && method.getParameterTypes().length != 0)) {
+    			throw new ManagementException((field != null ? "Field " : "Method ") + name + " is annotated as " +
+    					"ManagedAttributeMap but is not a Map" + (method != null ? " or has parameters." : "."));
+    		}
+    		
+    		try {
+    			if (field != null) {
+    				field.setAccessible(true);
+    			}
+    		} catch (SecurityException e) {
+    			throw new ManagementException(e, "Cannot access field " + name);
+    		}
+    		
+    		ManagedAttributeMap managedAttributeMap = field != null ? field.getAnnotation(ManagedAttributeMap.class) : 
+    			method.getAnnotation(ManagedAttributeMap.class);
+    		attributeMaps.add( new AttributeMapAccessor(field, method, managedAttributeMap.prefix(), 
+    				managedAttributeMap.description()) );
+    		addMember( field != null ? field : method );
+    		
+    	}
+    	
+    	/**
+    	 * Helper method. Handles a method that has a {@link ManagedSnapshot} annotation. Each component of the 
+    	 * snapshot class (the getters of a POJO or the accessors of a record) is exposed as a read-only attribute.
+    	 * 
+    	 * @param method the method that is annotated with {@link ManagedSnapshot}
+    	 */
+    	private void handleManagedSnapshot(Method method) {
+    		
+    		if (method.getParameterTypes().length != 0 || method.getReturnType().equals(Void.TYPE) 
+    				|| method.getReturnType().isPrimitive()) {
+    			throw new ManagementException("Method " + method.getName() + " is annotated as ManagedSnapshot " +
+    					"but doesn't return an object or has parameters.");
+    		}
+    		
+    		ManagedSnapshot managedSnapshot = method.getAnnotation(ManagedSnapshot.class);
+    		String prefix = managedSnapshot.prefix();
+    		
+    		for (Map.Entry<String,Method> component : findSnapshotComponents(method.getReturnType()).entrySet()) {
+    			
+    			String attributeName = "".equals(prefix) ? component.getKey() : prefix + capitalize(component.getKey());
+    			Method componentMethod = component.getValue();
+    			
+    			for (MBeanAttributeInfo mBeanAttribute : mBeanAttributes) {
+    				if (mBeanAttribute.getName().equals(attributeName)) {
+    					throw new ManagementException("Attribute " + attributeName + " of ManagedSnapshot " + 
+    							method.getName() + " is already exposed.");
+    				}
+    			}
+    			
+    			try {
+    				componentMethod.setAccessible(true); // snapshot classes are usually private
+    			} catch (SecurityException e) {}
+    			
+    			mBeanAttributes.add( new MBeanAttributeInfo(attributeName, componentMethod.getReturnType().getName(), 
+    					managedSnapshot.description(), true, false, false) );
+    			attributeAccessors.add( new SnapshotAttributeAccessor(attributeName, method, componentMethod) );
+    			addMember(method);
+    			addMember(componentMethod);
+    			snapshotAttributes.add(attributeName);
+    			
+    		}
+    		
+    	}
+    	
+    	/**
+    	 * Helper method. Finds the components of a snapshot class: the accessors of the components if it's a record, 
+    	 * the getters otherwise.
+    	 * 
+    	 * @param snapshotType the class returned by the method annotated with {@link ManagedSnapshot}.
+    	 * 
+    	 * @return a map of component names and accessor methods.
+    	 */
+    	private Map<String,Method> findSnapshotComponents(Class<?> snapshotType) {
+    		
+    		Map<String,Method> components = new LinkedHashMap<String,Method>();
+    		
+    		if (snapshotType.getSuperclass() != null 
+    				&& "java.lang.Record".equals(snapshotType.getSuperclass().getName())) {
+    			
+    			// the components of a record are its instance fields, each one with an accessor of the same name
+    			for (Field field : snapshotType.getDeclaredFields()) {
+    				if (!Modifier.isStatic(field.getModifiers())) {
+    					try {
+    						components.put( field.getName(), snapshotType.getMethod(field.getName()) );
+    					} catch (NoSuchMethodException e) {}
+    				}
+    			}
+    			
+    			return components;
+    			
+    		}
+    		
+    		for (Method method : snapshotType.getMethods()) {
+    			if (isGetterMethod(method) && !method.getDeclaringClass().equals(Object.class)) {
+    				String name = method.getName().startsWith("is") ? 
+    	    				decapitalize( method.getName().substring(2) ) : decapitalize( method.getName().substring(3) );
+    				components.put(name, method);
+    			}
+    		}
+    		
+    		return components;
+    		
+    	}
+    	
+    	/**
+    	 * Helper method. Handles a field whose type is annotated with {@link ManagedComponent}: the attributes (read 
+    	 * only) and operations of the type are exposed with the name of the field as prefix.
+    	 * 
+    	 * @param field the field whose type is annotated with {@link ManagedComponent}.
+    	 */
+    	private void handleManagedComponent(Field field) {
+    		
+    		try {
+    			field.setAccessible(true); // fields are usually private
+    		} catch (SecurityException e) {
+    			throw new ManagementException(e, "Cannot access field " + field.getName());
+    		}
+    		
+    		for (Method method : field.getType().getMethods()) {
+    			
+    			if (method.isAnnotationPresent(ManagedAttribute.class) && isGetterMethod(method)) {
+    				
+    				String name = field.getName() + capitalize( method.getName().startsWith("is") ? 
+    						method.getName().substring(2) : method.getName().substring(3) );
+    				if (existsMember(name)) {
+    					throw new ManagementException("Attribute " + name + " of field " + field.getName() + 
+    							" is already exposed.");
+    				}
+    				
+    				ManagedAttribute managedAttribute = method.getAnnotation(ManagedAttribute.class);
+    				mBeanAttributes.add( new MBeanAttributeInfo(name, method.getReturnType().getName(), 
+    						managedAttribute.description(), true, false, method.getName().startsWith("is")) );
+    				attributeAccessors.add( new ComponentAttributeAccessor(name, field, method) );
+    				addMember(field);
+    				addMember(method);
+    				
+    			} else if (method.isAnnotationPresent(ManagedOperation.class)) {
+    				
+    				String name = field.getName() + capitalize( method.getName() );
+    				if (existsMember(name)) {
+    					throw new ManagementException("Operation " + name + " of field " + field.getName() + 
+    							" is already exposed.");
+    				}
+    				
+    				ManagedOperation managedOperation = method.getAnnotation(ManagedOperation.class);
+    				mBeanOperations.add( new MBeanOperationInfo(name, managedOperation.description(), 
+    						buildMBeanParameters(method.getParameterTypes(), method.getParameterAnnotations()), 
+    						method.getReturnType().getName(), managedOperation.impact().getCode()) );
+    				operationInvokers.add( new ComponentOperationInvoker(name, field, method) );
+    				addMember(field);
+    				addMember(method);
+    				
+    			}
+    			
+    		}
+    		
+    	}
+    	
         /**
     	 * Helper method. Handles a method that has a {@link ManagedOperation} annotation. It creates an 
     	 * MBeanOperationInfo from the method.
@@ -351,17 +852,24 @@ public final class MBeanFactory {
     		ManagedOperation managedOperation = method.getAnnotation(ManagedOperation.class);
 			Impact impact = managedOperation.impact();
 		
+			// async operations return the id of the job instead of the value of the method
+			String returnType = managedOperation.async() ? Long.TYPE.getName() : method.getReturnType().getName();
+		
 			mBeanOperations.add( new MBeanOperationInfo(method.getName(), managedOperation.description(), 
-					mBeanParameters, method.getReturnType().getName(), impact.getCode()) );
+					mBeanParameters, returnType, impact.getCode()) );
+			operationInvokers.add( new OperationInvoker(method) );
+			addMember(method);
+			addLimiter( method.getName(), managedOperation.maxConcurrency(), managedOperation.maxRate() );
 		
     	}
     	
     	/**
-    	 * Helper method. Builds an array of MBeanParameterInfo objects that represent the parameters. 
+    	 * Helper method. Builds an array of MBeanParameterInfo objects that represent the parameters. The name of a 
+    	 * parameter is the value of its {@link Name} annotation (<code>param</code> followed by the position of the 
+    	 * parameter if it has none) and its description is the value of its {@link Description} annotation.
     	 * 
     	 * @param paramsTypes the type of the parameters from which we are building the MBeanParameterInfo array.
-    	 * @param paramsAnnotations the annotations on the parameters .. we are not using this info yet but we will 
-    	 * 		  need it to retrieve the description of the parameters. 
+    	 * @param paramsAnnotations the annotations on the parameters, used to retrieve their names and descriptions. 
     	 * 
     	 * @return an array of MBeanParameterInfo objects of the same size of the <code>paramsTypes</code> argument.
     	 */
@@ -370,8 +878,18 @@ public final class MBeanFactory {
         	MBeanParameterInfo[] mBeanParameters = new MBeanParameterInfo[paramsTypes.length];
         	
         	for (int i=0; i < paramsTypes.length; i++) {
+        		
+        		String name = "param" + i;
+        		String description = "";
+        		for (Annotation annotation : paramsAnnotations[i]) {
+        			if (annotation instanceof Name) {
+        				name = ((Name) annotation).value();
+        			} else if (annotation instanceof Description) {
+        				description = ((Description) annotation).value();
+        			}
+        		}
 
-    			MBeanParameterInfo parameterInfo = new MBeanParameterInfo("param" + i, paramsTypes[i].getName(), "");
+    			MBeanParameterInfo parameterInfo = new MBeanParameterInfo(name, paramsTypes[i].getName(), description);
     		    mBeanParameters[i] = parameterInfo;
     		    
     		}
@@ -3,7 +3,18 @@ package net.gescobar.jmx.impl;
 import static net.gescobar.jmx.util.StringUtils.capitalize;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -15,76 +26,279 @@ import javax.management.MBeanException;
 import javax.management.MBeanInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.RuntimeOperationsException;
 
+import net.gescobar.jmx.InvocationListener;
+import net.gescobar.jmx.ManagementException;
+import net.gescobar.jmx.util.ClassUtils;
+import net.gescobar.jmx.util.SnapshotCodec;
+
 /**
  * This is the DynamicMBean implementation that is returned from the {@link MBeanFactory#createMBean(Object)} method.
- * 
+ *
  * @author German Escobar
  */
-public class MBeanImpl implements DynamicMBean {
+public class MBeanImpl implements DynamicMBean, MBeanRegistration {
+
+	private static final InvocationListener[] NO_LISTENERS = new InvocationListener[0];
 
 	/**
 	 * The object that is being instrumented.
 	 */
 	private Object object;
-    
+
 	/**
 	 * Describes the exposed information of the object.
 	 */
     private MBeanInfo mBeanInfo;
+
+    /**
+     * The accessors of the attributes by attribute name.
+     */
+    private final Map<String,AttributeAccessor> attributes = new HashMap<String,AttributeAccessor>();
+
+    /**
+     * The invokers of the operations by operation name (an operation can be overloaded).
+     */
+    private final Map<String,OperationInvoker[]> operations = new HashMap<String,OperationInvoker[]>();
+
+    /**
+     * The names of the readable attributes whose values are numbers, booleans or strings, which are read by the
+     * {@link SnapshotManager}.
+     */
+    private final String[] encodedAttributes;
+
+    /**
+     * The accessors of the maps whose entries are exposed as attributes (see {@link AttributeMapAccessor}).
+     */
+    private final AttributeMapAccessor[] attributeMaps;
+
+    /**
+     * The MBeanInfo with the entries of the maps, rebuilt (copy-on-write) when the keys of the maps change. Null if
+     * there are no maps or it was not built yet.
+     */
+    private volatile MapAttributes mapAttributes;
+
+    /**
+     * The limiters of the attributes and operations by name, only for the ones that are limited.
+     */
+    private final Map<String,Limiter> limiters;
+
+    /**
+     * The name with which this MBean is registered, set in {@link #preRegister(MBeanServer, ObjectName)}.
+     */
+    private volatile ObjectName objectName;
     
     /**
-     * Constructor. Creates an instance using the Object instance that is going to be instrumented and the MBeanInfo 
-     * that describes the exposed information from the object. 
-     * 
+     * The MBeanServer in which this MBean is registered, set in {@link #preRegister(MBeanServer, ObjectName)}.
+     */
+    private volatile MBeanServer mBeanServer;
+
+    /**
+     * The statistics of the calls to <code>getAttribute</code>, <code>setAttribute</code> and <code>invoke</code> by
+     * attribute or operation name, created on the first call recorded (see {@link StatisticsManager}).
+     */
+    private final ConcurrentMap<String,CallStats> getStats = new ConcurrentHashMap<String,CallStats>();
+
+    private final ConcurrentMap<String,CallStats> setStats = new ConcurrentHashMap<String,CallStats>();
+
+    private final ConcurrentMap<String,CallStats> invokeStats = new ConcurrentHashMap<String,CallStats>();
+
+    /**
+     * True if this is an MBean of the library itself, which is not registered in the {@link MBeanRegistry}.
+     */
+    private boolean library;
+
+    /**
+     * True if any of the operations is async, in which case the jobs MBean is registered along with this MBean.
+     */
+    private boolean async;
+
+    /**
+     * Constructor. Creates an instance using the Object instance that is going to be instrumented and the MBeanInfo
+     * that describes the exposed information from the object. The getters, setters and methods are found once,
+     * using the names and types of the MBeanInfo.
+     *
+     * @param object the object that is going to be instrumented.
+     * @param mBeanInfo describes the exposed information of the object.
+     *
+     * @throws ManagementException if a method described in the MBeanInfo cannot be found.
+     */
+    public MBeanImpl(Object object, MBeanInfo mBeanInfo) throws ManagementException {
+    	this(object, mBeanInfo, findAttributeAccessors(object, mBeanInfo), findOperationInvokers(object, mBeanInfo),
+    			Collections.<AttributeMapAccessor>emptyList(), Collections.<String,Limiter>emptyMap());
+    }
+
+    /**
+     * Constructor. Used by the {@link MBeanFactory} that already knows the accessors of the attributes and the
+     * invokers of the operations.
+     *
      * @param object the object that is going to be instrumented.
      * @param mBeanInfo describes the exposed information of the object.
+     * @param attributeAccessors the accessors of the attributes described in the MBeanInfo.
+     * @param operationInvokers the invokers of the operations described in the MBeanInfo.
+     * @param attributeMaps the accessors of the maps whose entries are exposed as attributes.
+     * @param limiters the limiters of the limited attributes and operations by name.
      */
-    public MBeanImpl(Object object, MBeanInfo mBeanInfo) {
+    MBeanImpl(Object object, MBeanInfo mBeanInfo, Collection<AttributeAccessor> attributeAccessors,
+    		Collection<OperationInvoker> operationInvokers, Collection<AttributeMapAccessor> attributeMaps,
+    		Map<String,Limiter> limiters) {
+
     	this.object = object;
     	this.mBeanInfo = mBeanInfo;
+    	this.attributeMaps = attributeMaps.toArray( new AttributeMapAccessor[attributeMaps.size()] );
+    	this.limiters = limiters;
+
+    	for (AttributeAccessor attributeAccessor : attributeAccessors) {
+    		attributes.put( attributeAccessor.getName(), attributeAccessor );
+    	}
+
+    	encodedAttributes = findEncodedAttributes(mBeanInfo);
+
+    	for (OperationInvoker operationInvoker : operationInvokers) {
+
+    		async |= operationInvoker.isAsync();
+
+    		OperationInvoker[] overloads = operations.get( operationInvoker.getName() );
+    		if (overloads == null) {
+    			overloads = new OperationInvoker[] { operationInvoker };
+    		} else {
+    			OperationInvoker[] newOverloads = new OperationInvoker[overloads.length + 1];
+    			System.arraycopy(overloads, 0, newOverloads, 0, overloads.length);
+    			newOverloads[overloads.length] = operationInvoker;
+    			overloads = newOverloads;
+    		}
+
+    		operations.put( operationInvoker.getName(), overloads );
+
+    	}
+
     }
 
     @Override
-    public Object getAttribute(String attributeName) throws AttributeNotFoundException, MBeanException, 
+    public Object getAttribute(String attributeName) throws AttributeNotFoundException, MBeanException,
     		ReflectionException {
-	
+
     	// check attribute_name is not null to avoid NullPointerException later on
     	if (attributeName == null) {
-    		throw new RuntimeOperationsException(new IllegalArgumentException("Attribute name cannot be null"),  
+    		throw new RuntimeOperationsException(new IllegalArgumentException("Attribute name cannot be null"),
     				"Cannot invoke a getter of " + mBeanInfo.getClassName() + " with null attribute name");
     	}
-    	
-    	MBeanAttributeInfo mBeanAttribute = findMBeanAttribute(attributeName);
-    	if (mBeanAttribute == null) {
-        	throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute in " + 
-        				mBeanInfo.getClassName());
+
+    	AttributeAccessor attributeAccessor = attributes.get(attributeName);
+    	if (attributeAccessor == null && attributeMaps.length != 0) {
+    		return getMapAttribute(attributeName);
     	}
-    	
-    	Method getterMethod = findGetterMethod( mBeanAttribute );
-    	if (getterMethod == null) {
-    		throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute or equivalent getter in " + 
-    				mBeanInfo.getClassName());
+
+    	if (attributeAccessor == null || !attributeAccessor.isReadable()) {
+        	throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute or equivalent getter in " +
+        				mBeanInfo.getClassName());
     	}
 
+    	long start = StatisticsManager.enabled() ? System.nanoTime() : 0;
+    	Limiter limiter = acquire(attributeName);
     	try {
-			return getterMethod.invoke(object);
+			return attributeAccessor.get(object);
 		} catch (Exception e) {
 			throw new MBeanException(e);
-		} 
+		} finally {
+			release(limiter);
+			record(getStats, attributeName, start);
+		}
+    }
+
+    /**
+     * Reads a numeric attribute as a <code>long</code>. Getters that return primitive numbers are called without 
+     * boxing the value (see {@link LongReader}), so in-process consumers (e.g. samplers and exporters) can read them 
+     * without allocating. Other attributes are read with {@link #getAttribute(String)} and converted. The limits and 
+     * statistics are applied as in {@link #getAttribute(String)}.
+     * 
+     * @param attributeName the name of the attribute.
+     * 
+     * @return the value of the attribute.
+     * @throws AttributeNotFoundException if the attribute doesn't exist or is not readable.
+     * @throws MBeanException if the getter throws an exception or the value is not a number.
+     * @throws ReflectionException if the getter cannot be invoked.
+     */
+    public long getLong(String attributeName) throws AttributeNotFoundException, MBeanException, ReflectionException {
+    	
+    	AttributeAccessor attributeAccessor = attributes.get(attributeName);
+    	if (attributeAccessor == null || !attributeAccessor.isReadable()) {
+    		return number( attributeName, getAttribute(attributeName) ).longValue();
+    	}
+    	
+    	long start = StatisticsManager.enabled() ? System.nanoTime() : 0;
+    	Limiter limiter = acquire(attributeName);
+    	try {
+    		return attributeAccessor.getLong(object);
+    	} catch (Exception e) {
+    		throw new MBeanException(e);
+    	} finally {
+    		release(limiter);
+    		record(getStats, attributeName, start);
+    	}
+    	
+    }
+    
+    /**
+     * Reads a numeric attribute as a <code>double</code>, without allocating if the getter returns a primitive 
+     * number (see {@link #getLong(String)}).
+     * 
+     * @param attributeName the name of the attribute.
+     * 
+     * @return the value of the attribute.
+     * @throws AttributeNotFoundException if the attribute doesn't exist or is not readable.
+     * @throws MBeanException if the getter throws an exception or the value is not a number.
+     * @throws ReflectionException if the getter cannot be invoked.
+     */
+    public double getDouble(String attributeName) throws AttributeNotFoundException, MBeanException, 
+    		ReflectionException {
+    	
+    	AttributeAccessor attributeAccessor = attributes.get(attributeName);
+    	if (attributeAccessor == null || !attributeAccessor.isReadable()) {
+    		return number( attributeName, getAttribute(attributeName) ).doubleValue();
+    	}
+    	
+    	long start = StatisticsManager.enabled() ? System.nanoTime() : 0;
+    	Limiter limiter = acquire(attributeName);
+    	try {
+    		return attributeAccessor.getDouble(object);
+    	} catch (Exception e) {
+    		throw new MBeanException(e);
+    	} finally {
+    		release(limiter);
+    		record(getStats, attributeName, start);
+    	}
+    	
+    }
+    
+    /**
+     * Helper method. Checks that the value of an attribute read with <code>getAttribute</code> is a number.
+     */
+    private Number number(String attributeName, Object value) throws MBeanException {
+    	
+    	if (!(value instanceof Number)) {
+    		String message = "The value of " + attributeName + " is not a number: " + value;
+    		throw new MBeanException(new IllegalArgumentException(message), message);
+    	}
+    	
+    	return (Number) value;
+    	
     }
     
     @Override
     public AttributeList getAttributes(String[] attributesNames) {
-    	
+
     	// check attributeNames is not null to avoid NullPointerException later on
     	if (attributesNames == null) {
-    		throw new RuntimeOperationsException(new IllegalArgumentException("attributeNames[] cannot be null"), 
+    		throw new RuntimeOperationsException(new IllegalArgumentException("attributeNames[] cannot be null"),
     				"Cannot invoke a getter of " + mBeanInfo.getClassName());
     	}
-	
+
     	AttributeList resultList = new AttributeList();
 
     	// if attributeNames is empty, return an empty result list
@@ -92,27 +306,50 @@ public class MBeanImpl implements DynamicMBean {
     		return resultList;
     	}
 
-    	// build the result attribute list
+    	// the snapshots taken in this read, so each snapshot method is called only once
+    	Map<Method,Object> snapshots = null;
+
+    	// build the result attribute list, attributes that cannot be retrieved are left out (as the DynamicMBean
+    	// contract says) so one failing getter doesn't break a bulk read
     	for (int i=0 ; i < attributesNames.length ; i++){
     		try {
-    			Object value = getAttribute((String) attributesNames[i]);     
+
+    			AttributeAccessor attributeAccessor = attributes.get(attributesNames[i]);
+    			Object value;
+    			if (attributeAccessor instanceof SnapshotAttributeAccessor) {
+    				if (snapshots == null) {
+    					snapshots = new HashMap<Method,Object>();
+    				}
+    				long start = StatisticsManager.enabled() ? System.nanoTime() : 0;
+    				Limiter limiter = acquire(attributesNames[i]);
+    				try {
+    					value = ((SnapshotAttributeAccessor) attributeAccessor).get(object, snapshots);
+    				} finally {
+    					release(limiter);
+    					record(getStats, attributesNames[i], start);
+    				}
+    			} else {
+    				value = getAttribute(attributesNames[i]);
+    			}
+
     			resultList.add(new Attribute(attributesNames[i], value));
+
     		} catch (Exception e) {
-    			throw new RuntimeException(e);
+    			continue;
     		}
     	}
 
     	return resultList;
-    	
+
     }
 
     @Override
     public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException,
 	    	MBeanException, ReflectionException {
-	
+
     	// check attribute is not null to avoid NullPointerException later on
     	if (attribute == null) {
-    		throw new RuntimeOperationsException(new IllegalArgumentException("Attribute cannot be null"), 
+    		throw new RuntimeOperationsException(new IllegalArgumentException("Attribute cannot be null"),
     				"Cannot invoke a setter of " + mBeanInfo.getClassName() + " with null attribute");
     	}
 
@@ -120,45 +357,38 @@ public class MBeanImpl implements DynamicMBean {
     	Object value = attribute.getValue();
 
     	if (attributeName == null) {
-    		throw new RuntimeOperationsException(new IllegalArgumentException("Attribute name cannot be null"), 
+    		throw new RuntimeOperationsException(new IllegalArgumentException("Attribute name cannot be null"),
     				"Cannot invoke the setter of " + mBeanInfo.getClassName() + " with null attribute name");
     	}
-	
+
     	if (value == null) {
     		throw(new InvalidAttributeValueException("Cannot set attribute " + attributeName + " to null"));
     	}
-    	
-    	// try to set from the setter method
-    	MBeanAttributeInfo mBeanAttribute = findMBeanAttribute(attributeName);    	
-    	if (mBeanAttribute == null) {
-        	throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute in " + 
+
+    	AttributeAccessor attributeAccessor = attributes.get(attributeName);
+    	if (attributeAccessor == null || !attributeAccessor.isWritable()) {
+        	throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute or equivalent setter in " +
         				mBeanInfo.getClassName());
     	}
-    	
-    	Class<?> type = null;
+
+    	Object convertedValue;
     	try {
-    		type = findClass(mBeanAttribute.getType());
-			if ( !isAssignable(type, value.getClass()) ) {
-				throw new InvalidAttributeValueException("Cannot set attribute "+ attributeName +" to a " + 
-						value.getClass().getName() + " object, " + type.getName() + " expected");
-			}
-		} catch (ClassNotFoundException e) {
-			throw new RuntimeException(e);
-		}
-    	
-    	Method setterMethod = findSetterMethod( mBeanAttribute, type );
-    	if (setterMethod == null) {
-    		throw new RuntimeException("No setter method for attribute " + attributeName);
+    		convertedValue = attributeAccessor.convert(value);
+    	} catch (IllegalArgumentException e) {
+    		throw new InvalidAttributeValueException("Cannot set attribute " + attributeName + ": " + e.getMessage());
     	}
 
+    	long start = StatisticsManager.enabled() ? System.nanoTime() : 0;
     	try {
-			setterMethod.invoke(object, value);
+    		attributeAccessor.set(object, convertedValue);
 		} catch (Exception e) {
 			throw new MBeanException(e);
-		} 
-    	
+		} finally {
+			record(setStats, attributeName, start);
+		}
+
     }
-    
+
     @Override
     public AttributeList setAttributes(AttributeList attributes) {
 
@@ -181,7 +411,7 @@ public class MBeanImpl implements DynamicMBean {
     		try {
     			setAttribute(attr);
     			String name = attr.getName();
-    			Object value = getAttribute(name); 
+    			Object value = getAttribute(name);
     			resultList.add(new Attribute(name,value));
     		} catch(Exception e) {
     			throw new RuntimeException(e);
@@ -190,277 +420,560 @@ public class MBeanImpl implements DynamicMBean {
 
     	return resultList;
     }
-    
+
     @Override
-    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, 
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException,
     		ReflectionException {
-	
+
     	// check operationName is not null to avoid NullPointerException later on
     	if (actionName == null) {
-    		throw new RuntimeOperationsException(new IllegalArgumentException("Operation name cannot be null"), 
+    		throw new RuntimeOperationsException(new IllegalArgumentException("Operation name cannot be null"),
     				"Cannot invoke a null operation in " + mBeanInfo.getClassName());
     	}
-    	
-    	MBeanOperationInfo mBeanOperation = findMBeanOperation(actionName, signature);
-    	if (mBeanOperation == null) {
-    		throw new ReflectionException(new NoSuchMethodException(actionName), 
-    				"Cannot find the operation " + actionName + " with specified signature in " + 
+
+    	OperationInvoker operationInvoker = findOperationInvoker(actionName, params, signature);
+    	if (operationInvoker == null) {
+    		throw new ReflectionException(new NoSuchMethodException(actionName),
+    				"Cannot find the operation " + actionName + " with specified signature in " +
     				mBeanInfo.getClassName());
     	}
-    	
+
+    	InvocationListener[] listeners = library ? NO_LISTENERS : InvocationListeners.get();
+    	if (listeners.length == 0) {
+    		return invoke(operationInvoker, actionName, params);
+    	}
+
+    	Object[] contexts = InvocationListeners.started(listeners, objectName, actionName, params);
+    	Throwable error = null;
     	try {
-    		
-    		Method method = object.getClass().getMethod(actionName, getParametersTypes(signature));
-			return method.invoke(object, params);
-			
-    	} catch (NoSuchMethodException e) {
-    		throw new ReflectionException(e);
-		} catch (Exception e) {
-			throw new ReflectionException(e);
-		}
-    }
-    
-    private Class<?>[] getParametersTypes(String[] signature) throws ClassNotFoundException {
-    	
-    	if (signature == null) {
-    		return null;
+    		return invoke(operationInvoker, actionName, params);
+    	} catch (MBeanException e) {
+    		error = e;
+    		throw e;
+    	} catch (ReflectionException e) {
+    		error = e;
+    		throw e;
+    	} catch (RuntimeException e) {
+    		error = e;
+    		throw e;
+    	} finally {
+    		InvocationListeners.finished(listeners, contexts, error);
     	}
-    	
-    	Class<?>[] paramTypes = new Class<?>[signature.length];
-    	for (int i=0; i < signature.length; i++) {
-    		paramTypes[i] = findClass( signature[i] );
+
+    }
+
+    /**
+     * Helper method. Invokes an operation (or submits it as a job if it's async) applying the limits and recording
+     * the statistics.
+     */
+    private Object invoke(OperationInvoker operationInvoker, String actionName, Object[] params)
+    		throws MBeanException, ReflectionException {
+
+    	long start = StatisticsManager.enabled() ? System.nanoTime() : 0;
+    	Limiter limiter = acquire(actionName);
+    	try {
+
+	    	if (operationInvoker.isAsync()) {
+	    		try {
+	    			return JobManager.getInstance().submit( operationInvoker, object, operationInvoker.convert(params),
+	    					mBeanInfo.getClassName() + "." + actionName );
+	    		} catch (IllegalStateException e) {
+	    			throw new MBeanException(e, e.getMessage());
+	    		} catch (IllegalArgumentException e) {
+	    			throw new ReflectionException(e);
+	    		}
+	    	}
+
+	    	try {
+	    		return operationInvoker.invoke( object, operationInvoker.convert(params) );
+			} catch (Exception e) {
+				throw new ReflectionException(e);
+			}
+
+    	} finally {
+    		release(limiter);
+    		record(invokeStats, actionName, start);
     	}
-    	
-    	return paramTypes;
     }
-    
+
     @Override
     public MBeanInfo getMBeanInfo() {
-    	return mBeanInfo;
+
+    	if (attributeMaps.length == 0) {
+    		return mBeanInfo;
+    	}
+
+    	return getMapAttributes().mBeanInfo;
+
     }
-    
+
     /**
-     * Helper method. Tries to find the MBeanAttributeInfo from the mBeanInfo instance variable. 
-     * 
-     * @param attributeName the name of the attribute we are looking for.
-     * 
-     * @return the MBeanAttributeInfo for the attribute name or null if not found.
+     * Helper method. Reads an attribute from the maps, straight from the map without locking.
+     *
+     * @param attributeName the name of the attribute.
+     *
+     * @return the value of the entry.
+     * @throws AttributeNotFoundException if there is no entry for the attribute in the maps.
      */
-    private MBeanAttributeInfo findMBeanAttribute(String attributeName) {
-    	
-    	MBeanAttributeInfo[] mBeanAttributes = mBeanInfo.getAttributes();
-    	for (MBeanAttributeInfo mBeanAttribute : mBeanAttributes) {
-    		
-    		if (mBeanAttribute.getName().equals(attributeName)) {
-    			return mBeanAttribute;
+    private Object getMapAttribute(String attributeName) throws AttributeNotFoundException, MBeanException {
+
+    	for (AttributeMapAccessor attributeMap : attributeMaps) {
+
+    		String key = attributeMap.key(attributeName);
+    		if (key == null) {
+    			continue;
+    		}
+
+    		Map<?,?> map;
+    		try {
+    			map = attributeMap.get(object);
+    		} catch (Exception e) {
+    			throw new MBeanException(e);
     		}
-    		
+
+    		Object value = map != null ? map.get(key) : null;
+    		if (value != null || (map != null && map.containsKey(key))) {
+    			return value;
+    		}
+
     	}
-    	
-    	return null;
+
+    	throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute in " +
+    			mBeanInfo.getClassName());
+
     }
-    
+
     /**
-     * Helper method. Tries to find the <code>MBeanOperationInfo</code> from the <code>mBeanInfo</code> instance 
-     * variable.
-     * 
-     * @param operationName the name of the operation we are looking for.
-     * @param receivedSignature the signature of the operation we are looking for.
-     * 
-     * @return the MBeanOperationInfo that matches the <code>operationName</code> and <code>receivedSignature</code>. 
+     * Helper method. Retrieves the MBeanInfo with the current entries of the maps. The MBeanInfo is rebuilt only if
+     * the names or the types of the entries changed since the last time.
      */
-    private MBeanOperationInfo findMBeanOperation(String operationName, String[] receivedSignature) {
-    	
-    	MBeanOperationInfo[] mBeanOperations = mBeanInfo.getOperations();
-    	for (MBeanOperationInfo mBeanOperation : mBeanOperations) {
-    		
-    		if (mBeanOperation.getName().equals(operationName) 
-    				&& isAssignableSignature(mBeanOperation.getSignature(), receivedSignature) ) {
-    			return mBeanOperation;
+    private MapAttributes getMapAttributes() {
+
+    	MapAttributes current = mapAttributes;
+
+    	Map<String,String> types = new LinkedHashMap<String,String>();
+    	for (AttributeMapAccessor attributeMap : attributeMaps) {
+    		try {
+
+    			Map<?,?> map = attributeMap.get(object);
+    			if (map == null) {
+    				continue;
+    			}
+
+    			for (Map.Entry<?,?> entry : map.entrySet()) {
+    				String attributeName = attributeMap.getPrefix() + entry.getKey();
+    				if (!attributes.containsKey(attributeName) && !types.containsKey(attributeName)) {
+    					Object value = entry.getValue();
+    					types.put( attributeName, (value != null ? value.getClass() : Object.class).getName() );
+    				}
+    			}
+
+    		} catch (Exception e) {
+    			// the map changed while we were reading it (it's not a concurrent map) or it failed
+    			return current != null ? current : new MapAttributes(Collections.<String,String>emptyMap(), mBeanInfo);
     		}
-    		
     	}
-    	
+
+    	if (current != null && current.types.equals(types)) {
+    		return current;
+    	}
+
+    	List<MBeanAttributeInfo> mBeanAttributes = new ArrayList<MBeanAttributeInfo>();
+    	Collections.addAll( mBeanAttributes, mBeanInfo.getAttributes() );
+    	for (Map.Entry<String,String> type : types.entrySet()) {
+    		mBeanAttributes.add( new MBeanAttributeInfo(type.getKey(), type.getValue(),
+    				findAttributeMap(type.getKey()).getDescription(), true, false, false) );
+    	}
+
+    	MBeanInfo newMBeanInfo = new MBeanInfo( mBeanInfo.getClassName(), mBeanInfo.getDescription(),
+    			mBeanAttributes.toArray(new MBeanAttributeInfo[mBeanAttributes.size()]), mBeanInfo.getConstructors(),
+    			mBeanInfo.getOperations(), mBeanInfo.getNotifications() );
+
+    	MapAttributes newMapAttributes = new MapAttributes(types, newMBeanInfo);
+    	mapAttributes = newMapAttributes;
+
+    	return newMapAttributes;
+
+    }
+
+    /**
+     * Helper method. Finds the map that exposes an attribute, the first one whose prefix matches.
+     */
+    private AttributeMapAccessor findAttributeMap(String attributeName) {
+
+    	for (AttributeMapAccessor attributeMap : attributeMaps) {
+    		if (attributeMap.key(attributeName) != null) {
+    			return attributeMap;
+    		}
+    	}
+
     	return null;
+
     }
-    
+
     /**
-     * Helper method. Validates if the <code>receivedSignature</code> is assignable to the 
-     * <code>operationSignature</code>.
-     * 
-     * @param operationSignature the signature of the operation.
-     * @param receivedSignature the received signature.
-     * 
-     * @return true if the <code>receivedSignature</code> is assignable to the <code>operationSignature</code>.
+     * Helper method. Finds the names of the readable attributes whose values are numbers, booleans or strings.
      */
-    private boolean isAssignableSignature(MBeanParameterInfo[] operationSignature, String[] receivedSignature) {
-    	
-    	if (operationSignature == null && receivedSignature == null) {
-    		return true;
+    private static String[] findEncodedAttributes(MBeanInfo mBeanInfo) {
+
+    	List<String> encoded = new ArrayList<String>();
+    	for (MBeanAttributeInfo mBeanAttribute : mBeanInfo.getAttributes()) {
+    		if (mBeanAttribute.isReadable() && SnapshotCodec.isEncoded( mBeanAttribute.getType() )) {
+    			encoded.add( mBeanAttribute.getName() );
+    		}
     	}
-    	
-    	if ( (operationSignature == null && receivedSignature != null) 
-    			|| (operationSignature != null && receivedSignature == null) ) {
-    		return false;
+
+    	return encoded.toArray( new String[encoded.size()] );
+
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+
+    	objectName = name;
+    	mBeanServer = server;
+
+    	if (library) {
+    		return name;
+    	}
+
+    	if (async) {
+    		JobManager.getInstance().registerIn(server);
+    	}
+
+    	if (!limiters.isEmpty()) {
+    		LimitManager.registerIn(server);
+    	}
+
+    	for (RateTracker rateTracker : getRateTrackers()) {
+    		RateTicker.add(rateTracker);
     	}
+
+    	return name;
+
+    }
+
+    @Override
+    public void postRegister(Boolean registrationDone) {
     	
-    	if (operationSignature.length != receivedSignature.length) {
-    		return false;
+    	if (!registrationDone.booleanValue()) {
+    		postDeregister();
+    		return;
     	}
     	
-    	try {
-	    	for (int i=0; i < operationSignature.length; i++) {
-	    		
-	    		Class<?> operationParamClass = findClass( operationSignature[i].getType() );
-	    		Class<?> receivedParamClass = findClass( receivedSignature[i] );
-	    		
-	    		if ( !isAssignable(operationParamClass, receivedParamClass) ) {
-	    			return false;
-	    		}
-	    	}
-    	} catch (ClassNotFoundException e) {
-    		throw new RuntimeException(e);
+    	// added once the MBeanServer accepted the name, so an MBean that is rejected (e.g. because the name is taken) 
+    	// doesn't replace the one that is registered
+    	if (!library && objectName != null) {
+    		MBeanRegistry.add(mBeanServer, objectName, this);
     	}
     	
-    	return true;
     }
-    
+
+    @Override
+    public void preDeregister() throws Exception {}
+
+    @Override
+    public void postDeregister() {
+
+    	if (!library && objectName != null) {
+    		MBeanRegistry.remove(mBeanServer, objectName, this);
+    	}
+
+    	for (RateTracker rateTracker : getRateTrackers()) {
+    		RateTicker.remove(rateTracker);
+    	}
+
+    }
+
     /**
-     * Helper method. Tries to find a getter method from the instrumented object using the <code>mBeanAttribute<code> 
-     * info.
-     * 
-     * @param mBeanAttribute the MBeanAttributeInfo from which we are trying to find the getter method.
-     * 
-     * @return a java.lang.reflect.Method object that represents the getter method; null if no match.
+     * Helper method. Retrieves the trackers of the counters with rates (see {@link RateAttributeAccessor}).
      */
-    private Method findGetterMethod(MBeanAttributeInfo mBeanAttribute) {
-    	String prefix = "get";
-    	if (mBeanAttribute.isIs()) {
-    		prefix = "is";
+    private Collection<RateTracker> getRateTrackers() {
+
+    	Collection<RateTracker> rateTrackers = new HashSet<RateTracker>();
+    	for (AttributeAccessor attributeAccessor : attributes.values()) {
+    		if (attributeAccessor instanceof RateAttributeAccessor) {
+    			rateTrackers.add( ((RateAttributeAccessor) attributeAccessor).getRateTracker() );
+    		}
     	}
-    	
-    	try {
-    		return object.getClass().getMethod( prefix + capitalize(mBeanAttribute.getName()) );
-    	} catch (NoSuchMethodException e) {
-    		return null;
+
+    	return rateTrackers;
+
+    }
+
+    /**
+     * Marks this MBean as an MBean of the library itself (see {@link LibraryMBeans}).
+     */
+    void setLibrary(boolean library) {
+    	this.library = library;
+    }
+
+    Map<String,CallStats> getGetStats() {
+    	return getStats;
+    }
+
+    Map<String,CallStats> getSetStats() {
+    	return setStats;
+    }
+
+    Map<String,CallStats> getInvokeStats() {
+    	return invokeStats;
+    }
+
+    /**
+     * Tells if an attribute can be read without looking it up in the MBeanInfo (used by {@link QueryRow} to skip the
+     * attributes that an MBean doesn't have without creating exceptions).
+     *
+     * @param attributeName the name of the attribute.
+     *
+     * @return true if the attribute exists and is readable or it may be the entry of a map, false otherwise.
+     */
+    boolean isReadable(String attributeName) {
+
+    	AttributeAccessor attributeAccessor = attributes.get(attributeName);
+    	if (attributeAccessor != null) {
+    		return attributeAccessor.isReadable();
     	}
-    	
+
+    	return attributeMaps.length != 0;
+
     }
-    
+
     /**
-     * Helper method. Tries to find a setter method from the instrumented object using the <code>mBeanAttribute</code>
-     * and the <code>paramType</code>.
-     * 
-     * @param mBeanAttribute the MBeanAttributeInfo from which we are trying to find the setter method.
-     * @param attributeType the class of the attribute.
-     * 
-     * @return a java.lang.reflect.Method object that represents the setter method; null if no match.
+     * @return the names of the readable attributes whose values are numbers, booleans or strings.
      */
-    private Method findSetterMethod(MBeanAttributeInfo mBeanAttribute, Class<?> attributeType) {
-    	
-    	try {
-    		return object.getClass().getMethod( "set" + capitalize(mBeanAttribute.getName()), attributeType);
-    	} catch (NoSuchMethodException e) {
+    String[] getEncodedAttributes() {
+
+    	if (attributeMaps.length == 0) {
+    		return encodedAttributes;
+    	}
+
+    	return getMapAttributes().encodedAttributes;
+
+    }
+
+    /**
+     * @return the limiters of the limited attributes and operations by name.
+     */
+    Map<String,Limiter> getLimiters() {
+    	return limiters;
+    }
+
+    /**
+     * Helper method. Admits a call to a limited attribute or operation.
+     *
+     * @param name the name of the attribute or operation.
+     *
+     * @return the Limiter that must be released when the call finishes or null if the name is not limited.
+     * @throws MBeanException wrapping a RejectedExecutionException if the call is over the limits.
+     */
+    private Limiter acquire(String name) throws MBeanException {
+
+    	if (limiters.isEmpty()) {
     		return null;
     	}
-    	
+
+    	Limiter limiter = limiters.get(name);
+    	if (limiter != null && !limiter.tryAcquire()) {
+    		String message = "Call to " + name + " of " + (objectName != null ? objectName : mBeanInfo.getClassName())
+    				+ " rejected, over its limits (maxConcurrency=" + limiter.getMaxConcurrency() + ", maxRate=" +
+    				limiter.getMaxRate() + ")";
+    		throw new MBeanException(new RejectedExecutionException(message), message);
+    	}
+
+    	return limiter;
+
     }
-    
+
+    private void release(Limiter limiter) {
+    	if (limiter != null) {
+    		limiter.release();
+    	}
+    }
+
     /**
-     * Helper method. Finds a class from its class name. 
-     * 
-     * @param className
-     * @return
-     * @throws ClassNotFoundException
+     * Helper method. Records a call if the statistics were enabled when it started.
+     *
+     * @param stats the statistics of the kind of call.
+     * @param name the name of the attribute or operation.
+     * @param start the value of <code>System.nanoTime()</code> when the call started, 0 if it's not recorded.
      */
-    private Class<?> findClass(String className) throws ClassNotFoundException {
-    	
-    	if (className == null) {
-    		throw new ClassNotFoundException(className);
+    private void record(ConcurrentMap<String,CallStats> stats, String name, long start) {
+
+    	if (start == 0 || library) {
+    		return;
     	}
-    	
-    	if (Integer.TYPE.getName().equals(className)) {
-    		return Integer.TYPE;
-    	} else if (Byte.TYPE.getName().equals(className)) {
-    		return Byte.TYPE;
-    	} else if (Short.TYPE.getName().equals(className)) {
-    		return Short.TYPE;
-    	} else if (Long.TYPE.getName().equals(className)) {
-    		return Long.TYPE;
-    	} else if (Float.TYPE.getName().equals(className)) {
-    		return Float.TYPE;
-    	} else if (Double.TYPE.getName().equals(className)) {
-    		return Double.TYPE;
-    	} else if (Boolean.TYPE.getName().equals(className)) {
-    		return Boolean.TYPE;
-    	} else if (Character.TYPE.getName().equals(className)) {
-    		return Character.TYPE;
+
+    	long elapsed = System.nanoTime() - start;
+
+    	CallStats callStats = stats.get(name);
+    	if (callStats == null) {
+    		CallStats newCallStats = new CallStats();
+    		callStats = stats.putIfAbsent(name, newCallStats);
+    		if (callStats == null) {
+    			callStats = newCallStats;
+    		}
     	}
-    	
-    	return Class.forName(className);
-    	
+
+    	callStats.record(elapsed);
+
     }
-    
+
     /**
-     * Helper method. Checks if a class is assignable to another (i.e. the class must be the same or a subclass). 
-     * Actually, the test is done using the Class.isAssignableFrom(Class) method.
-     * 
-     * @param to the class to which we are assigning.
-     * @param from the class from which we are assigning. 
-     * 
-     * @return true if the <code>from</code> class is assignable to the <code>to</code> class.
+     * Helper method. Finds the invoker of an operation. If there is no operation with exactly the received
+     * signature, we look for an operation with the same number of parameters to which the received parameters can be
+     * converted (e.g. a client that sends a String for an int parameter).
+     *
+     * @param operationName the name of the operation we are looking for.
+     * @param params the received parameters.
+     * @param signature the received signature.
+     *
+     * @return the OperationInvoker that matches the operation or null if not found.
      */
-    private boolean isAssignable(final Class<?> to, final Class<?> from) {
-    	
-    	if (to == null) {
-    		throw new IllegalArgumentException("no to class specified");
+    private OperationInvoker findOperationInvoker(String operationName, Object[] params, String[] signature) {
+
+    	OperationInvoker[] overloads = operations.get(operationName);
+    	if (overloads == null) {
+    		return null;
     	}
-    	
-    	if (from == null) {
-    		throw new IllegalArgumentException("no from class specified");
+
+    	for (OperationInvoker operationInvoker : overloads) {
+    		if (operationInvoker.matches(signature)) {
+    			return operationInvoker;
+    		}
     	}
-    	
-    	Class<?> toClass = to;
-    	if (toClass.isPrimitive()) {
-    		toClass = fromPrimitiveToObject(toClass);
+
+    	int paramsCount = signature != null ? signature.length : (params != null ? params.length : 0);
+    	for (OperationInvoker operationInvoker : overloads) {
+
+    		if (operationInvoker.getParamsCount() != paramsCount) {
+    			continue;
+    		}
+
+    		try {
+    			operationInvoker.convert(params);
+    			return operationInvoker;
+    		} catch (IllegalArgumentException e) {
+    			continue;
+    		}
+
     	}
 
-    	Class<?> fromClass = from;
-    	if (fromClass.isPrimitive()) {
-    		fromClass = fromPrimitiveToObject(fromClass);
+    	return null;
+    }
+
+    /**
+     * Helper method. Finds the getters and setters of the attributes described in the <code>mBeanInfo</code>.
+     *
+     * @param object the instrumented object.
+     * @param mBeanInfo describes the exposed information of the object.
+     *
+     * @return a collection of AttributeAccessor objects, one for each attribute.
+     */
+    private static Collection<AttributeAccessor> findAttributeAccessors(Object object, MBeanInfo mBeanInfo) {
+
+    	List<AttributeAccessor> attributeAccessors = new ArrayList<AttributeAccessor>();
+    	for (MBeanAttributeInfo mBeanAttribute : mBeanInfo.getAttributes()) {
+
+    		Method getterMethod = null;
+    		if (mBeanAttribute.isReadable()) {
+    			String prefix = mBeanAttribute.isIs() ? "is" : "get";
+    			getterMethod = findMethod(object, prefix + capitalize(mBeanAttribute.getName()));
+    		}
+
+    		Method setterMethod = null;
+    		if (mBeanAttribute.isWritable()) {
+    			setterMethod = findMethod(object, "set" + capitalize(mBeanAttribute.getName()),
+    					findClass(object, mBeanAttribute.getType()));
+    		}
+
+    		attributeAccessors.add( new AttributeAccessor(mBeanAttribute.getName(), getterMethod, setterMethod) );
+
     	}
 
-    	return toClass.isAssignableFrom(fromClass);
+    	return attributeAccessors;
+
     }
-    
+
     /**
-     * Returns the wrapper class of the primitive class.
-     * 
-     * @param primitive the primitive class for which we are looking the wrapper.
-     * 
-     * @return the wrapper class of the primitive or the same class if not a primitive.
+     * Helper method. Finds the methods of the operations described in the <code>mBeanInfo</code>.
+     *
+     * @param object the instrumented object.
+     * @param mBeanInfo describes the exposed information of the object.
+     *
+     * @return a collection of OperationInvoker objects, one for each operation.
      */
-    private Class<?> fromPrimitiveToObject(Class<?> primitive) {
-    	
-    	if (primitive.equals(Integer.TYPE)) {
-    		return Integer.class;
-    	} else if (primitive.equals(Byte.TYPE)) {
-    		return Byte.class;
-    	} else if (primitive.equals(Short.TYPE)) {
-    		return Short.class;
-    	} else if (primitive.equals(Long.TYPE)) {
-    		return Long.class;
-    	} else if (primitive.equals(Float.TYPE)) {
-    		return Float.class;
-    	} else if (primitive.equals(Double.TYPE)) {
-    		return Double.class;
-    	} else if (primitive.equals(Boolean.TYPE)) {
-    		return Boolean.class;
-    	} else if (primitive.equals(Character.TYPE)) {
-    		return Character.class;
-    	}
-    		
-    	return primitive;
+    private static Collection<OperationInvoker> findOperationInvokers(Object object, MBeanInfo mBeanInfo) {
+
+    	List<OperationInvoker> operationInvokers = new ArrayList<OperationInvoker>();
+    	for (MBeanOperationInfo mBeanOperation : mBeanInfo.getOperations()) {
+
+    		MBeanParameterInfo[] signature = mBeanOperation.getSignature();
+    		Class<?>[] paramTypes = new Class<?>[signature.length];
+    		for (int i=0; i < signature.length; i++) {
+    			paramTypes[i] = findClass( object, signature[i].getType() );
+    		}
+
+    		operationInvokers.add( new OperationInvoker(findMethod(object, mBeanOperation.getName(), paramTypes)) );
+
+    	}
+
+    	return operationInvokers;
+
+    }
+
+    /**
+     * Helper method. Finds a public method of the instrumented object.
+     *
+     * @throws ManagementException if the method doesn't exist.
+     */
+    private static Method findMethod(Object object, String name, Class<?>... paramTypes) {
+
+    	try {
+    		return object.getClass().getMethod(name, paramTypes);
+    	} catch (NoSuchMethodException e) {
+    		throw new ManagementException(e, "Method " + name + " not found in " + object.getClass().getName());
+    	}
+
+    }
+
+    /**
+     * Helper method. Finds a class from its class name using the class loader of the instrumented object.
+     *
+     * @throws ManagementException if the class doesn't exist.
+     */
+    private static Class<?> findClass(Object object, String className) {
+
+    	Class<?> primitive = ClassUtils.primitiveClass(className);
+    	if (primitive != null) {
+    		return primitive;
+    	}
+
+    	try {
+    		return Class.forName(className, false, object.getClass().getClassLoader());
+    	} catch (ClassNotFoundException e) {
+    		throw new ManagementException(e, "Class " + className + " not found");
+    	}
+
+    }
+
+    /**
+     * The MBeanInfo with the entries of the maps and the types of the entries from which it was built.
+     */
+    private static class MapAttributes {
+
+    	private final Map<String,String> types;
+
+    	private final MBeanInfo mBeanInfo;
+
+    	private final String[] encodedAttributes;
+
+    	public MapAttributes(Map<String,String> types, MBeanInfo mBeanInfo) {
+    		this.types = types;
+    		this.mBeanInfo = mBeanInfo;
+    		this.encodedAttributes = findEncodedAttributes(mBeanInfo);
+    	}
+
     }
 
 }
@@ -0,0 +1,165 @@
+package net.gescobar.jmx.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+import net.gescobar.jmx.Limits;
+import net.gescobar.jmx.ManagementException;
+
+/**
+ * <p>The result of introspecting a class: the MBeanInfo, the accessors and invokers of its attributes and operations
+ * and the limits declared in the annotations. It holds nothing of a specific object, so it can be built once for a
+ * class (see {@link MBeanFactory#prepare(Class)}), even while a native image is built, and each MBean is created
+ * from it without using reflection to find the annotated members.</p>
+ *
+ * <p>The state of each MBean is created in {@link #newMBean(Object, Limits)}: the trackers of the rates, the
+ * limiters and the counters of running jobs of the invokers.</p>
+ *
+ * @author German Escobar
+ */
+final class MBeanModel {
+
+	private static final int[] RATE_WINDOWS = { 1, 5, 15 };
+
+	private final MBeanInfo mBeanInfo;
+
+	/**
+	 * The accessors of the attributes, without the accessors of the rates, which are created for each MBean.
+	 */
+	private final Collection<AttributeAccessor> attributeAccessors;
+
+	/**
+	 * The invokers of the operations, copied for each MBean.
+	 */
+	private final Collection<OperationInvoker> operationInvokers;
+
+	private final Collection<AttributeMapAccessor> attributeMaps;
+
+	/**
+	 * The accessors of the counters with rates by attribute name.
+	 */
+	private final Map<String,AttributeAccessor> rateCounters;
+
+	/**
+	 * The limits declared in the annotations.
+	 */
+	private final Limits limits;
+
+	public MBeanModel(MBeanInfo mBeanInfo, Collection<AttributeAccessor> attributeAccessors,
+			Collection<OperationInvoker> operationInvokers, Collection<AttributeMapAccessor> attributeMaps,
+			Map<String,AttributeAccessor> rateCounters, Limits limits) {
+		this.mBeanInfo = mBeanInfo;
+		this.attributeAccessors = attributeAccessors;
+		this.operationInvokers = operationInvokers;
+		this.attributeMaps = attributeMaps;
+		this.rateCounters = rateCounters;
+		this.limits = limits;
+	}
+
+	/**
+	 * Creates an MBean of an object of the class of this model.
+	 *
+	 * @param object the object from which we are creating the MBean.
+	 * @param overrides the limits configured at registration, which replace the ones of the annotations. Can be null.
+	 *
+	 * @return a new MBeanImpl object.
+	 * @throws ManagementException if a limit references an attribute or operation that doesn't exist.
+	 */
+	public MBeanImpl newMBean(Object object, Limits overrides) throws ManagementException {
+
+		Collection<AttributeAccessor> accessors = new ArrayList<AttributeAccessor>(attributeAccessors);
+		for (Map.Entry<String,AttributeAccessor> rateCounter : rateCounters.entrySet()) {
+
+			RateTracker rateTracker = new RateTracker( object, rateCounter.getValue() );
+			for (int minutes : RATE_WINDOWS) {
+				accessors.add( new RateAttributeAccessor(rateName(rateCounter.getKey(), minutes), rateTracker,
+						minutes * 60) );
+			}
+
+		}
+
+		Collection<OperationInvoker> invokers = new ArrayList<OperationInvoker>();
+		for (OperationInvoker operationInvoker : operationInvokers) {
+			invokers.add( operationInvoker.copy() );
+		}
+
+		Map<String,Limiter> limiters = new HashMap<String,Limiter>();
+		for (String name : limits.getNames()) {
+			if (overrides == null || !overrides.getNames().contains(name)) {
+				addLimiter( limiters, name, limits.getMaxConcurrency(name), limits.getMaxRate(name) );
+			}
+		}
+
+		if (overrides != null) {
+			for (String name : overrides.getNames()) {
+
+				if (!existsMember(name)) {
+					throw new ManagementException("Cannot limit " + name + ", it's not an attribute or operation of " +
+							mBeanInfo.getClassName());
+				}
+
+				addLimiter( limiters, name, overrides.getMaxConcurrency(name), overrides.getMaxRate(name) );
+
+			}
+		}
+
+		return new MBeanImpl(object, mBeanInfo, accessors, invokers, attributeMaps, limiters);
+
+	}
+
+	/**
+	 * @param counter the name of a counter with rates.
+	 * @param minutes the window of the rate.
+	 *
+	 * @return the name of the attribute of the rate.
+	 */
+	public static String rateName(String counter, int minutes) {
+		return counter + "Rate" + minutes + "m";
+	}
+
+	/**
+	 * @return the windows, in minutes, of the rates of a counter.
+	 */
+	public static int[] rateWindows() {
+		return RATE_WINDOWS.clone();
+	}
+
+	/**
+	 * Helper method. Adds a limiter if there is any limit.
+	 */
+	private void addLimiter(Map<String,Limiter> limiters, String name, int maxConcurrency, double maxRate) {
+
+		if (maxConcurrency > 0 || maxRate > 0) {
+			limiters.put( name, new Limiter(maxConcurrency, maxRate) );
+		}
+
+	}
+
+	/**
+	 * Helper method. Tells if there is an attribute or operation with the specified name.
+	 */
+	private boolean existsMember(String name) {
+
+		for (MBeanAttributeInfo mBeanAttribute : mBeanInfo.getAttributes()) {
+			if (mBeanAttribute.getName().equals(name)) {
+				return true;
+			}
+		}
+
+		for (MBeanOperationInfo mBeanOperation : mBeanInfo.getOperations()) {
+			if (mBeanOperation.getName().equals(name)) {
+				return true;
+			}
+		}
+
+		return false;
+
+	}
+
+}
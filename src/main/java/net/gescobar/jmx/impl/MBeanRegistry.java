@@ -0,0 +1,109 @@
+package net.gescobar.jmx.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the MBeans created by the library that are registered in each MBeanServer by the name with which they are
+ * registered (the MBeans of the library itself are left out), so the MBeans of the library (e.g. the
+ * {@link SnapshotManager}) only see the MBeans of the MBeanServer in which they are registered. MBeans add themselves
+ * when they are registered and remove themselves when they are unregistered.
+ *
+ * @author German Escobar
+ */
+final class MBeanRegistry {
+
+	private static final ConcurrentMap<MBeanServer,ConcurrentMap<ObjectName,MBeanImpl>> MBEANS =
+			new ConcurrentHashMap<MBeanServer,ConcurrentMap<ObjectName,MBeanImpl>>();
+
+	/**
+	 * Hide public constructor.
+	 */
+	private MBeanRegistry() {}
+
+	/**
+	 * Adds an MBean, replacing the one registered with the same name in the MBeanServer (if any).
+	 *
+	 * @param mBeanServer the MBeanServer in which the MBean is registered.
+	 * @param objectName the name with which the MBean is registered.
+	 * @param mBean the MBean that is added.
+	 */
+	public static synchronized void add(MBeanServer mBeanServer, ObjectName objectName, MBeanImpl mBean) {
+
+		ConcurrentMap<ObjectName,MBeanImpl> mBeans = MBEANS.get(mBeanServer);
+		if (mBeans == null) {
+			mBeans = new ConcurrentHashMap<ObjectName,MBeanImpl>();
+			MBEANS.put(mBeanServer, mBeans);
+		}
+
+		mBeans.put(objectName, mBean);
+
+	}
+
+	/**
+	 * Removes an MBean only if it's the one registered with the name, so an MBean can't remove another one. The
+	 * MBeanServer is forgotten when it has no MBeans.
+	 *
+	 * @param mBeanServer the MBeanServer in which the MBean was registered.
+	 * @param objectName the name with which the MBean was registered.
+	 * @param mBean the MBean that is removed.
+	 */
+	public static synchronized void remove(MBeanServer mBeanServer, ObjectName objectName, MBeanImpl mBean) {
+
+		ConcurrentMap<ObjectName,MBeanImpl> mBeans = MBEANS.get(mBeanServer);
+		if (mBeans == null) {
+			return;
+		}
+
+		mBeans.remove(objectName, mBean);
+		if (mBeans.isEmpty()) {
+			MBEANS.remove(mBeanServer);
+		}
+
+	}
+
+	/**
+	 * @param mBeanServer the MBeanServer in which the MBean is registered.
+	 * @param objectName the name with which the MBean was registered.
+	 *
+	 * @return the MBeanImpl object or null if there is no MBean registered with that name.
+	 */
+	public static MBeanImpl get(MBeanServer mBeanServer, ObjectName objectName) {
+
+		Map<ObjectName,MBeanImpl> mBeans = MBEANS.get(mBeanServer);
+		return mBeans != null ? mBeans.get(objectName) : null;
+
+	}
+
+	/**
+	 * @param mBeanServer the MBeanServer in which the MBeans are registered.
+	 *
+	 * @return an unmodifiable view of the MBeans registered in the MBeanServer by name.
+	 */
+	public static Map<ObjectName,MBeanImpl> getAll(MBeanServer mBeanServer) {
+
+		Map<ObjectName,MBeanImpl> mBeans = MBEANS.get(mBeanServer);
+		if (mBeans == null) {
+			return Collections.emptyMap();
+		}
+
+		return Collections.unmodifiableMap(mBeans);
+
+	}
+
+	/**
+	 * @param mBeanServer the MBeanServer in which the MBeans are registered.
+	 *
+	 * @return an unmodifiable view of the MBeans registered in the MBeanServer.
+	 */
+	public static Collection<MBeanImpl> values(MBeanServer mBeanServer) {
+		return getAll(mBeanServer).values();
+	}
+
+}
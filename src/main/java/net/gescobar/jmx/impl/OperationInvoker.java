@@ -0,0 +1,197 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * Invokes an operation of the instrumented object. It's built once, when the MBean is created, with the method, the
+ * signature and the {@link Converter} of each parameter, so that {@link MBeanImpl} doesn't need to find any method or
+ * class when the operation is invoked.
+ * 
+ * @author German Escobar
+ */
+class OperationInvoker {
+	
+	private static final Object[] NO_PARAMS = new Object[0];
+	
+	/**
+	 * The method of the operation.
+	 */
+	private final Method method;
+	
+	/**
+	 * The names of the parameter types, as they are received in <code>invoke</code>.
+	 */
+	private final String[] signature;
+	
+	/**
+	 * The converter of each parameter.
+	 */
+	private final Converter[] converters;
+	
+	/**
+	 * True if the operation runs in the background (see {@link ManagedOperation#async()}).
+	 */
+	private final boolean async;
+	
+	/**
+	 * The maximum number of jobs of this operation that can be running at the same time, if it's async.
+	 */
+	private final int maxConcurrentJobs;
+	
+	/**
+	 * The number of jobs of this operation that are running.
+	 */
+	private final AtomicInteger runningJobs = new AtomicInteger();
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param method the method of the operation.
+	 */
+	public OperationInvoker(Method method) {
+		
+		this.method = method;
+		
+		Class<?>[] paramTypes = method.getParameterTypes();
+		this.signature = new String[paramTypes.length];
+		this.converters = new Converter[paramTypes.length];
+		for (int i=0; i < paramTypes.length; i++) {
+			signature[i] = paramTypes[i].getName();
+			converters[i] = Converters.forType( paramTypes[i] );
+		}
+		
+		ManagedOperation managedOperation = method.getAnnotation(ManagedOperation.class);
+		this.async = managedOperation != null && managedOperation.async();
+		this.maxConcurrentJobs = managedOperation != null ? managedOperation.maxConcurrentJobs() : 1;
+		
+	}
+	
+	/**
+	 * Copy constructor. The copy shares the method, signature and converters but not the running jobs.
+	 * 
+	 * @param prototype the invoker to copy.
+	 */
+	protected OperationInvoker(OperationInvoker prototype) {
+		this.method = prototype.method;
+		this.signature = prototype.signature;
+		this.converters = prototype.converters;
+		this.async = prototype.async;
+		this.maxConcurrentJobs = prototype.maxConcurrentJobs;
+	}
+	
+	/**
+	 * Creates an invoker of the same operation for another MBean (see {@link MBeanModel}).
+	 * 
+	 * @return a copy of this invoker with no running jobs.
+	 */
+	public OperationInvoker copy() {
+		return new OperationInvoker(this);
+	}
+	
+	public String getName() {
+		return method.getName();
+	}
+	
+	/**
+	 * @return the number of parameters of the operation.
+	 */
+	public int getParamsCount() {
+		return signature.length;
+	}
+	
+	public boolean isAsync() {
+		return async;
+	}
+	
+	/**
+	 * Reserves a slot for a new job of this operation.
+	 * 
+	 * @return true if the job can be started, false if the maximum number of concurrent jobs was reached.
+	 */
+	public boolean tryStartJob() {
+		
+		while (true) {
+			int running = runningJobs.get();
+			if (running >= maxConcurrentJobs) {
+				return false;
+			}
+			if (runningJobs.compareAndSet(running, running + 1)) {
+				return true;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Releases the slot reserved with {@link #tryStartJob()}.
+	 */
+	public void jobFinished() {
+		runningJobs.decrementAndGet();
+	}
+	
+	/**
+	 * Tells if the operation has exactly the received signature. A null signature is the same as an empty one.
+	 * 
+	 * @param receivedSignature the signature received in <code>invoke</code>.
+	 * 
+	 * @return true if the signatures are equal, false otherwise.
+	 */
+	public boolean matches(String[] receivedSignature) {
+		
+		if (receivedSignature == null) {
+			return signature.length == 0;
+		}
+		
+		return Arrays.equals(signature, receivedSignature);
+		
+	}
+	
+	/**
+	 * Converts the parameters to the types of the method. A new array is created only if a parameter changes.
+	 * 
+	 * @param params the parameters received in <code>invoke</code>, can be null.
+	 * 
+	 * @return the converted parameters.
+	 * @throws IllegalArgumentException if the number of parameters doesn't match or one of them cannot be converted.
+	 */
+	public Object[] convert(Object[] params) throws IllegalArgumentException {
+		
+		Object[] values = params == null ? NO_PARAMS : params;
+		if (values.length != converters.length) {
+			throw new IllegalArgumentException("Operation " + method.getName() + " expects " + converters.length + 
+					" parameters, received " + values.length);
+		}
+		
+		Object[] converted = values;
+		for (int i=0; i < converters.length; i++) {
+			Object value = converters[i].convert( values[i] );
+			if (value != values[i]) {
+				if (converted == values) {
+					converted = values.clone();
+				}
+				converted[i] = value;
+			}
+		}
+		
+		return converted;
+		
+	}
+	
+	/**
+	 * Invokes the operation. 
+	 * 
+	 * @param object the instrumented object.
+	 * @param params the converted parameters.
+	 * 
+	 * @return the value returned by the method.
+	 * @throws Exception if the method throws an exception or cannot be invoked.
+	 */
+	public Object invoke(Object object, Object[] params) throws Exception {
+		return method.invoke(object, params);
+	}
+	
+}
@@ -0,0 +1,86 @@
+package net.gescobar.jmx.impl;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.ManagementException;
+
+/**
+ * <p>Reads numeric attributes of the MBeans created by the library from the same JVM, without going through the
+ * <code>MBeanServer</code>. The MBean is found by the name with which it was registered and the attribute is read
+ * with {@link MBeanImpl#getLong(String)} or {@link MBeanImpl#getDouble(String)}, so reading an attribute whose getter
+ * returns a primitive number doesn't allocate. It's meant for consumers that read many attributes periodically (e.g.
+ * samplers and exporters), which should keep the <code>ObjectName</code> objects instead of parsing the names on each
+ * read.</p>
+ *
+ * @author German Escobar
+ */
+public final class PrimitiveAttributes {
+
+	/**
+	 * Hide public constructor.
+	 */
+	private PrimitiveAttributes() {}
+
+	/**
+	 * Reads a numeric attribute as a <code>long</code>.
+	 *
+	 * @param mBeanServer the MBeanServer in which the MBean is registered.
+	 * @param name the name with which the MBean was registered.
+	 * @param attribute the name of the attribute.
+	 *
+	 * @return the value of the attribute.
+	 * @throws ManagementException if there is no MBean created by the library with that name, the attribute doesn't
+	 * 		exist or is not a number, or the getter throws an exception.
+	 */
+	public static long getLong(MBeanServer mBeanServer, ObjectName name, String attribute) throws ManagementException {
+
+		try {
+			return find(mBeanServer, name).getLong(attribute);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ManagementException(e);
+		}
+
+	}
+
+	/**
+	 * Reads a numeric attribute as a <code>double</code>.
+	 *
+	 * @param mBeanServer the MBeanServer in which the MBean is registered.
+	 * @param name the name with which the MBean was registered.
+	 * @param attribute the name of the attribute.
+	 *
+	 * @return the value of the attribute.
+	 * @throws ManagementException if there is no MBean created by the library with that name, the attribute doesn't
+	 * 		exist or is not a number, or the getter throws an exception.
+	 */
+	public static double getDouble(MBeanServer mBeanServer, ObjectName name, String attribute) throws ManagementException {
+
+		try {
+			return find(mBeanServer, name).getDouble(attribute);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ManagementException(e);
+		}
+
+	}
+
+	private static MBeanImpl find(MBeanServer mBeanServer, ObjectName name) throws ManagementException {
+
+		if (name == null) {
+			throw new IllegalArgumentException("No name specified.");
+		}
+
+		MBeanImpl mBean = MBeanRegistry.get(mBeanServer, name);
+		if (mBean == null) {
+			throw new ManagementException("No MBean created by the library is registered with name " + name + " in the MBeanServer");
+		}
+
+		return mBean;
+
+	}
+
+}
@@ -0,0 +1,239 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.ManagementException;
+
+/**
+ * <p>Finds the MBeans created by the library that match an ObjectName pattern and a condition on their attributes
+ * and reads some of their attributes, in the same JVM, so a client gets only the rows that it needs instead of every
+ * attribute of every MBean (e.g. "the pools with more than 90% of their connections in use"):</p>
+ *
+ * <pre>
+ * Query query = Query.compile("org.test:type=Pool,*", "name, active", "active &gt; 0.9 * max");
+ * Map&lt;ObjectName,Map&lt;String,Object&gt;&gt; rows = query.execute();
+ * </pre>
+ *
+ * <p>The condition is compiled once (see {@link QueryParser} for the syntax) into a tree in which the attributes
+ * are referenced by slot, and a query can be executed many times. For each MBean, an attribute is read (with the
+ * accessors of the MBean, so the limits are applied) only when the condition needs it and at most once. MBeans that
+ * don't have an attribute (or fail to read it) see it as null. The rows are in no particular order and only the
+ * selected attributes that could be read (and are not null) are included.</p>
+ *
+ * <p>The MBeans can be evaluated in parallel with {@link #execute(MBeanServer, ExecutorService)}. The query is immutable, so it
+ * can be shared by many threads. The <code>net.gescobar.jmx:type=Query</code> MBean (see {@link QueryManager})
+ * executes queries remotely.</p>
+ *
+ * @author German Escobar
+ */
+public final class Query {
+
+	/**
+	 * The number of MBeans that are evaluated by each task when the query is executed in parallel.
+	 */
+	public static final int PARALLEL_CHUNK_SIZE = 256;
+
+	private final ObjectName pattern;
+
+	/**
+	 * The attributes that are returned, null to return the numeric, boolean and string attributes.
+	 */
+	private final int[] projection;
+
+	/**
+	 * The condition, null if all the MBeans that match the pattern are returned.
+	 */
+	private final QueryExpression condition;
+
+	/**
+	 * The attributes referenced by the query by slot.
+	 */
+	private final String[] attributes;
+
+	private Query(ObjectName pattern, int[] projection, QueryExpression condition, String[] attributes) {
+		this.pattern = pattern;
+		this.projection = projection;
+		this.condition = condition;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Compiles a query.
+	 *
+	 * @param pattern the ObjectName pattern of the MBeans (e.g. <code>org.test:type=Pool,*</code>).
+	 * @param select the comma separated names of the attributes that are returned, all the numeric, boolean and
+	 * 		string attributes if it's null, empty or <code>*</code>.
+	 * @param where the condition that the MBeans must match, can be null or empty.
+	 *
+	 * @return the compiled query.
+	 * @throws IllegalArgumentException if the pattern or the condition are not valid.
+	 */
+	public static Query compile(String pattern, String select, String where) throws IllegalArgumentException {
+
+		if (pattern == null || "".equals(pattern)) {
+			throw new IllegalArgumentException("No pattern specified.");
+		}
+
+		ObjectName objectName;
+		try {
+			objectName = new ObjectName(pattern);
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException("Invalid pattern " + pattern + ": " + e.getMessage());
+		}
+
+		List<String> attributes = new ArrayList<String>();
+
+		int[] projection = null;
+		if (select != null && !"".equals(select.trim()) && !"*".equals(select.trim())) {
+
+			String[] names = select.split(",");
+			projection = new int[names.length];
+			for (int i=0; i < names.length; i++) {
+
+				String name = names[i].trim();
+				if ("".equals(name)) {
+					throw new IllegalArgumentException("Empty attribute name in select: " + select);
+				}
+
+				int slot = attributes.indexOf(name);
+				if (slot < 0) {
+					slot = attributes.size();
+					attributes.add(name);
+				}
+				projection[i] = slot;
+
+			}
+
+		}
+
+		QueryExpression condition = null;
+		if (where != null && !"".equals(where.trim())) {
+			condition = new QueryParser(where, attributes).parse();
+		}
+
+		return new Query( objectName, projection, condition, attributes.toArray(new String[attributes.size()]) );
+
+	}
+
+	/**
+	 * Executes the query on the MBeans registered in the default <code>MBeanServer</code> in the calling thread.
+	 *
+	 * @return the values of the selected attributes by attribute name of the matching MBeans by name.
+	 */
+	public Map<ObjectName,Map<String,Object>> execute() {
+		return execute(ManagementFactory.getPlatformMBeanServer(), null);
+	}
+
+	/**
+	 * Executes the query on the MBeans registered in an MBeanServer evaluating them in parallel, in chunks of
+	 * {@link #PARALLEL_CHUNK_SIZE} MBeans.
+	 *
+	 * @param mBeanServer the MBeanServer in which the MBeans are registered.
+	 * @param executor the executor that evaluates the chunks, if it's null (or there is only one chunk) the query
+	 * 		is executed in the calling thread.
+	 *
+	 * @return the values of the selected attributes by attribute name of the matching MBeans by name.
+	 * @throws ManagementException if the evaluation of a chunk fails or the thread is interrupted.
+	 */
+	public Map<ObjectName,Map<String,Object>> execute(MBeanServer mBeanServer, ExecutorService executor) 
+			throws ManagementException {
+
+		final List<Map.Entry<ObjectName,MBeanImpl>> mBeans = new ArrayList<Map.Entry<ObjectName,MBeanImpl>>();
+		for (Map.Entry<ObjectName,MBeanImpl> mBean : MBeanRegistry.getAll(mBeanServer).entrySet()) {
+			if (pattern.apply( mBean.getKey() )) {
+				mBeans.add(mBean);
+			}
+		}
+
+		Map<ObjectName,Map<String,Object>> rows = new LinkedHashMap<ObjectName,Map<String,Object>>();
+		if (executor == null || mBeans.size() <= PARALLEL_CHUNK_SIZE) {
+			evaluate(mBeans, rows);
+			return rows;
+		}
+
+		List<Future<Map<ObjectName,Map<String,Object>>>> chunks =
+				new ArrayList<Future<Map<ObjectName,Map<String,Object>>>>();
+		for (int start=0; start < mBeans.size(); start += PARALLEL_CHUNK_SIZE) {
+
+			final List<Map.Entry<ObjectName,MBeanImpl>> chunk =
+					mBeans.subList( start, Math.min(start + PARALLEL_CHUNK_SIZE, mBeans.size()) );
+			chunks.add( executor.submit(new Callable<Map<ObjectName,Map<String,Object>>>() {
+
+				@Override
+				public Map<ObjectName,Map<String,Object>> call() {
+					Map<ObjectName,Map<String,Object>> chunkRows = new LinkedHashMap<ObjectName,Map<String,Object>>();
+					evaluate(chunk, chunkRows);
+					return chunkRows;
+				}
+
+			}) );
+
+		}
+
+		try {
+			for (Future<Map<ObjectName,Map<String,Object>>> chunk : chunks) {
+				rows.putAll( chunk.get() );
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ManagementException(e, "Interrupted while executing query");
+		} catch (ExecutionException e) {
+			throw new ManagementException(e, "Cannot execute query");
+		} finally {
+			for (Future<?> chunk : chunks) {
+				chunk.cancel(true);
+			}
+		}
+
+		return rows;
+
+	}
+
+	/**
+	 * Helper method. Evaluates the MBeans adding the rows of the matching ones.
+	 */
+	private void evaluate(List<Map.Entry<ObjectName,MBeanImpl>> mBeans, Map<ObjectName,Map<String,Object>> rows) {
+
+		QueryRow row = new QueryRow(attributes);
+		for (Map.Entry<ObjectName,MBeanImpl> mBean : mBeans) {
+
+			row.reset( mBean.getValue() );
+			if (condition != null && !condition.matches(row)) {
+				continue;
+			}
+
+			Map<String,Object> values = new LinkedHashMap<String,Object>();
+			if (projection == null) {
+				MBeanImpl mBeanImpl = mBean.getValue();
+				for (Object attribute : mBeanImpl.getAttributes( mBeanImpl.getEncodedAttributes() )) {
+					values.put( ((Attribute) attribute).getName(), ((Attribute) attribute).getValue() );
+				}
+			} else {
+				for (int slot : projection) {
+					Object value = row.value(slot);
+					if (value != null) {
+						values.put(attributes[slot], value);
+					}
+				}
+			}
+
+			rows.put(mBean.getKey(), values);
+
+		}
+
+	}
+
+}
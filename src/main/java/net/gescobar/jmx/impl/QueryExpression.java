@@ -0,0 +1,275 @@
+package net.gescobar.jmx.impl;
+
+/**
+ * <p>A compiled expression of a {@link Query}: the <code>where</code> clause is parsed once by {@link QueryParser}
+ * into a tree of these objects, in which the attributes are referenced by the index of a slot of the
+ * {@link QueryRow}, so evaluating the expression for an MBean doesn't parse or look up anything but the attributes
+ * that it needs.</p>
+ *
+ * <p>Values are numbers (<code>Long</code> for integers, <code>Double</code> otherwise), strings, booleans or null.
+ * Attributes that an MBean doesn't have (or that cannot be read) are null; comparisons other than <code>=</code> and
+ * <code>!=</code> with null are false, as are the comparisons of values that are not comparable.</p>
+ *
+ * @author German Escobar
+ */
+abstract class QueryExpression {
+
+	/**
+	 * Evaluates the expression for an MBean.
+	 *
+	 * @param row the MBean and the values of its attributes that were already read.
+	 *
+	 * @return the value of the expression, can be null.
+	 */
+	public abstract Object evaluate(QueryRow row);
+
+	/**
+	 * @param row the MBean and the values of its attributes that were already read.
+	 *
+	 * @return true if the expression evaluates to <code>true</code>, false otherwise.
+	 */
+	public boolean matches(QueryRow row) {
+		return Boolean.TRUE.equals( evaluate(row) );
+	}
+
+	/**
+	 * A number, string, boolean or null.
+	 */
+	static class Literal extends QueryExpression {
+
+		private final Object value;
+
+		public Literal(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object evaluate(QueryRow row) {
+			return value;
+		}
+
+	}
+
+	/**
+	 * The value of an attribute, read when it's first needed.
+	 */
+	static class AttributeReference extends QueryExpression {
+
+		private final int slot;
+
+		public AttributeReference(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		public Object evaluate(QueryRow row) {
+			return row.value(slot);
+		}
+
+	}
+
+	static class Not extends QueryExpression {
+
+		private final QueryExpression operand;
+
+		public Not(QueryExpression operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		public Object evaluate(QueryRow row) {
+			return !operand.matches(row);
+		}
+
+	}
+
+	/**
+	 * <code>and</code> and <code>or</code>, the right operand (and its attributes) is only evaluated if needed.
+	 */
+	static class Logical extends QueryExpression {
+
+		private final boolean and;
+
+		private final QueryExpression left;
+
+		private final QueryExpression right;
+
+		public Logical(boolean and, QueryExpression left, QueryExpression right) {
+			this.and = and;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public Object evaluate(QueryRow row) {
+
+			if (left.matches(row)) {
+				return and ? right.matches(row) : true;
+			}
+
+			return and ? false : right.matches(row);
+
+		}
+
+	}
+
+	static class Negate extends QueryExpression {
+
+		private final QueryExpression operand;
+
+		public Negate(QueryExpression operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		public Object evaluate(QueryRow row) {
+
+			Object value = operand.evaluate(row);
+			if (isIntegral(value)) {
+				return -((Number) value).longValue();
+			} else if (value instanceof Number) {
+				return -((Number) value).doubleValue();
+			}
+
+			return null;
+
+		}
+
+	}
+
+	/**
+	 * <code>+</code>, <code>-</code>, <code>*</code> and <code>/</code>. The result is a <code>Long</code> if both
+	 * operands are integers (except for divisions), a <code>Double</code> if they are numbers and null otherwise.
+	 */
+	static class Arithmetic extends QueryExpression {
+
+		private final char operator;
+
+		private final QueryExpression left;
+
+		private final QueryExpression right;
+
+		public Arithmetic(char operator, QueryExpression left, QueryExpression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public Object evaluate(QueryRow row) {
+
+			Object leftValue = left.evaluate(row);
+			Object rightValue = right.evaluate(row);
+			if (!(leftValue instanceof Number) || !(rightValue instanceof Number)) {
+				return null;
+			}
+
+			if (operator != '/' && isIntegral(leftValue) && isIntegral(rightValue)) {
+
+				long l = ((Number) leftValue).longValue();
+				long r = ((Number) rightValue).longValue();
+				return operator == '+' ? l + r : operator == '-' ? l - r : l * r;
+
+			}
+
+			double l = ((Number) leftValue).doubleValue();
+			double r = ((Number) rightValue).doubleValue();
+			switch (operator) {
+				case '+': return l + r;
+				case '-': return l - r;
+				case '*': return l * r;
+				default: return l / r;
+			}
+
+		}
+
+	}
+
+	/**
+	 * <code>=</code>, <code>!=</code>, <code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code> and
+	 * <code>&gt;=</code>. Numbers are compared by value (e.g. <code>1 = 1.0</code>), strings lexicographically.
+	 */
+	static class Comparison extends QueryExpression {
+
+		public static final int EQ = 0;
+
+		public static final int NE = 1;
+
+		public static final int LT = 2;
+
+		public static final int LE = 3;
+
+		public static final int GT = 4;
+
+		public static final int GE = 5;
+
+		private final int operator;
+
+		private final QueryExpression left;
+
+		private final QueryExpression right;
+
+		public Comparison(int operator, QueryExpression left, QueryExpression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public Object evaluate(QueryRow row) {
+
+			Object leftValue = left.evaluate(row);
+			Object rightValue = right.evaluate(row);
+
+			Integer comparison = compare(leftValue, rightValue);
+			if (operator == EQ || operator == NE) {
+				boolean equal = comparison != null ? comparison == 0 :
+					(leftValue == null ? rightValue == null : leftValue.equals(rightValue));
+				return operator == EQ ? equal : !equal;
+			}
+
+			if (comparison == null) {
+				return false;
+			}
+
+			switch (operator) {
+				case LT: return comparison < 0;
+				case LE: return comparison <= 0;
+				case GT: return comparison > 0;
+				default: return comparison >= 0;
+			}
+
+		}
+
+		/**
+		 * Helper method. Compares two numbers or two strings.
+		 *
+		 * @return the result of the comparison or null if the values are not comparable.
+		 */
+		private Integer compare(Object leftValue, Object rightValue) {
+
+			if (isIntegral(leftValue) && isIntegral(rightValue)) {
+				long l = ((Number) leftValue).longValue();
+				long r = ((Number) rightValue).longValue();
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+
+			if (leftValue instanceof Number && rightValue instanceof Number) {
+				return Double.compare( ((Number) leftValue).doubleValue(), ((Number) rightValue).doubleValue() );
+			}
+
+			if (leftValue instanceof String && rightValue instanceof String) {
+				return ((String) leftValue).compareTo( (String) rightValue );
+			}
+
+			return null;
+
+		}
+
+	}
+
+	private static boolean isIntegral(Object value) {
+		return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+	}
+
+}
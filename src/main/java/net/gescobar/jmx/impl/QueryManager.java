@@ -0,0 +1,172 @@
+package net.gescobar.jmx.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.Name;
+import net.gescobar.jmx.util.SnapshotCodec;
+
+/**
+ * <p>Executes {@link Query} objects on behalf of remote clients, exposed as the
+ * <code>net.gescobar.jmx:type=Query</code> MBean which is registered with {@link LibraryMBeans#enable(MBeanServer)}.
+ * A client invokes the <code>query</code> operation with a pattern, the attributes
+ * to return and a condition, and decodes the result with {@link SnapshotCodec#decode(byte[])}:</p>
+ *
+ * <pre>
+ * byte[] rows = (byte[]) connection.invoke(new ObjectName("net.gescobar.jmx:type=Query"), "query",
+ * 		new Object[] { "org.test:type=Pool,*", "name, active", "active &gt; 0.9 * max" },
+ * 		new String[] { String.class.getName(), String.class.getName(), String.class.getName() });
+ * </pre>
+ *
+ * <p>The last {@link #MAX_CACHED_QUERIES} compiled queries are kept, so a collector that polls with the same query
+ * doesn't parse it each time. When more than {@link Query#PARALLEL_CHUNK_SIZE} MBeans match the pattern, they are
+ * evaluated in parallel by a pool of daemon threads (one for each processor) that is created the first time it's
+ * needed.</p>
+ *
+ * @author German Escobar
+ */
+@Description("Finds the MBeans that match a condition on their attributes")
+public final class QueryManager {
+
+	/**
+	 * The name of the MBean that executes the queries.
+	 */
+	public static final String OBJECT_NAME = "net.gescobar.jmx:type=Query";
+
+	/**
+	 * The number of compiled queries that are kept.
+	 */
+	public static final int MAX_CACHED_QUERIES = 64;
+
+	/**
+	 * The compiled queries by pattern, select and where, in access order, shared by all the MBeanServers.
+	 */
+	private static final Map<String,Query> QUERIES = new LinkedHashMap<String,Query>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Query> eldest) {
+			return size() > MAX_CACHED_QUERIES;
+		}
+
+	};
+
+	private static ExecutorService executor;
+
+	/**
+	 * The MBeanServer whose MBeans are queried.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer whose MBeans are queried.
+	 */
+	private QueryManager(MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	/**
+	 * Registers a query MBean in an MBeanServer with the {@link #OBJECT_NAME} name if it's not already registered.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the query MBean.
+	 */
+	static void registerIn(MBeanServer mBeanServer) {
+		LibraryMBeans.registerIfAbsent(mBeanServer, OBJECT_NAME, new QueryManager(mBeanServer));
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="Reads the selected attributes (all the numeric, boolean and " +
+			"string attributes if it's empty) of the MBeans that match a pattern and a condition, encoded in a " +
+			"compact binary format")
+	public byte[] query(@Name("pattern") @Description("The name of the MBeans, can be a pattern") String pattern,
+			@Name("select") @Description("The comma separated names of the attributes, empty for all") String select,
+			@Name("where") @Description("The condition on the attributes, empty for all the MBeans") String where)
+			throws IllegalArgumentException {
+
+		Map<ObjectName,AttributeList> rows = new LinkedHashMap<ObjectName,AttributeList>();
+		for (Map.Entry<ObjectName,Map<String,Object>> row : execute(mBeanServer, pattern, select, where).entrySet()) {
+
+			AttributeList attributes = new AttributeList();
+			for (Map.Entry<String,Object> value : row.getValue().entrySet()) {
+				attributes.add( new Attribute(value.getKey(), value.getValue()) );
+			}
+			rows.put(row.getKey(), attributes);
+
+		}
+
+		return SnapshotCodec.encode(rows, 0);
+
+	}
+
+	/**
+	 * Compiles (or retrieves from the cache) and executes a query on the MBeans registered in an MBeanServer, in
+	 * parallel if many MBeans match the pattern.
+	 *
+	 * @param mBeanServer the MBeanServer in which the MBeans are registered.
+	 * @param pattern the ObjectName pattern of the MBeans.
+	 * @param select the comma separated names of the attributes that are returned, can be null.
+	 * @param where the condition that the MBeans must match, can be null.
+	 *
+	 * @return the values of the selected attributes by attribute name of the matching MBeans by name.
+	 * @throws IllegalArgumentException if the pattern or the condition are not valid.
+	 */
+	public static Map<ObjectName,Map<String,Object>> execute(MBeanServer mBeanServer, String pattern, String select, 
+			String where) throws IllegalArgumentException {
+
+		String key = pattern + '\n' + select + '\n' + where;
+
+		Query query;
+		synchronized (QUERIES) {
+			query = QUERIES.get(key);
+		}
+
+		if (query == null) {
+			query = Query.compile(pattern, select, where);
+			synchronized (QUERIES) {
+				QUERIES.put(key, query);
+			}
+		}
+
+		return query.execute( mBeanServer, getExecutor() );
+
+	}
+
+	/**
+	 * Helper method. Creates the pool that evaluates the queries in parallel the first time it's needed.
+	 */
+	private static synchronized ExecutorService getExecutor() {
+
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "jmx-query-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+
+			});
+		}
+
+		return executor;
+
+	}
+
+}
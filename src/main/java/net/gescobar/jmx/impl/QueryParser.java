@@ -0,0 +1,332 @@
+package net.gescobar.jmx.impl;
+
+import java.util.List;
+
+/**
+ * <p>Parses the <code>where</code> clause of a {@link Query} into a {@link QueryExpression}. The grammar, from the
+ * lowest to the highest precedence:</p>
+ *
+ * <pre>
+ * expression := and ( "or" and )*
+ * and        := not ( "and" not )*
+ * not        := "not" not | comparison
+ * comparison := sum ( ( "=" | "!=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;=" ) sum )?
+ * sum        := product ( ( "+" | "-" ) product )*
+ * product    := unary ( ( "*" | "/" ) unary )*
+ * unary      := "-" unary | primary
+ * primary    := number | 'string' | true | false | null | attribute | "(" expression ")"
+ * </pre>
+ *
+ * <p>Attributes are identifiers (letters, digits, <code>_</code>, <code>$</code> and <code>.</code>) or any name in
+ * double quotes. Keywords are case insensitive. Each attribute gets a slot in the list of attributes of the query.</p>
+ *
+ * @author German Escobar
+ */
+final class QueryParser {
+
+	private final String expression;
+
+	/**
+	 * The attributes referenced by the query, the index of each one is its slot.
+	 */
+	private final List<String> attributes;
+
+	private int position;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param expression the expression to parse.
+	 * @param attributes the attributes referenced by the query, new attributes are added.
+	 */
+	public QueryParser(String expression, List<String> attributes) {
+		this.expression = expression;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * @return the compiled expression.
+	 * @throws IllegalArgumentException if the expression is not valid.
+	 */
+	public QueryExpression parse() throws IllegalArgumentException {
+
+		QueryExpression result = parseOr();
+
+		skipSpaces();
+		if (position < expression.length()) {
+			throw error("Unexpected '" + expression.charAt(position) + "'");
+		}
+
+		return result;
+
+	}
+
+	private QueryExpression parseOr() {
+
+		QueryExpression result = parseAnd();
+		while (acceptKeyword("or")) {
+			result = new QueryExpression.Logical( false, result, parseAnd() );
+		}
+
+		return result;
+
+	}
+
+	private QueryExpression parseAnd() {
+
+		QueryExpression result = parseNot();
+		while (acceptKeyword("and")) {
+			result = new QueryExpression.Logical( true, result, parseNot() );
+		}
+
+		return result;
+
+	}
+
+	private QueryExpression parseNot() {
+
+		if (acceptKeyword("not")) {
+			return new QueryExpression.Not( parseNot() );
+		}
+
+		return parseComparison();
+
+	}
+
+	private QueryExpression parseComparison() {
+
+		QueryExpression left = parseSum();
+
+		int operator;
+		if (accept("!=") || accept("<>")) {
+			operator = QueryExpression.Comparison.NE;
+		} else if (accept("<=")) {
+			operator = QueryExpression.Comparison.LE;
+		} else if (accept(">=")) {
+			operator = QueryExpression.Comparison.GE;
+		} else if (accept("==") || accept("=")) {
+			operator = QueryExpression.Comparison.EQ;
+		} else if (accept("<")) {
+			operator = QueryExpression.Comparison.LT;
+		} else if (accept(">")) {
+			operator = QueryExpression.Comparison.GT;
+		} else {
+			return left;
+		}
+
+		return new QueryExpression.Comparison( operator, left, parseSum() );
+
+	}
+
+	private QueryExpression parseSum() {
+
+		QueryExpression result = parseProduct();
+		while (true) {
+			if (accept("+")) {
+				result = new QueryExpression.Arithmetic( '+', result, parseProduct() );
+			} else if (accept("-")) {
+				result = new QueryExpression.Arithmetic( '-', result, parseProduct() );
+			} else {
+				return result;
+			}
+		}
+
+	}
+
+	private QueryExpression parseProduct() {
+
+		QueryExpression result = parseUnary();
+		while (true) {
+			if (accept("*")) {
+				result = new QueryExpression.Arithmetic( '*', result, parseUnary() );
+			} else if (accept("/")) {
+				result = new QueryExpression.Arithmetic( '/', result, parseUnary() );
+			} else {
+				return result;
+			}
+		}
+
+	}
+
+	private QueryExpression parseUnary() {
+
+		if (accept("-")) {
+			return new QueryExpression.Negate( parseUnary() );
+		}
+
+		return parsePrimary();
+
+	}
+
+	private QueryExpression parsePrimary() {
+
+		skipSpaces();
+		if (position >= expression.length()) {
+			throw error("Unexpected end of expression");
+		}
+
+		char c = expression.charAt(position);
+
+		if (accept("(")) {
+			QueryExpression result = parseOr();
+			if (!accept(")")) {
+				throw error("Expected ')'");
+			}
+			return result;
+		}
+
+		if (c == '\'') {
+			return new QueryExpression.Literal( quoted('\'') );
+		}
+
+		if (c == '"') {
+			return attribute( quoted('"') );
+		}
+
+		if (Character.isDigit(c) || c == '.') {
+			return new QueryExpression.Literal( number() );
+		}
+
+		if (isIdentifierPart(c)) {
+
+			String identifier = identifier();
+			if (identifier.equalsIgnoreCase("true") || identifier.equalsIgnoreCase("false")) {
+				return new QueryExpression.Literal( Boolean.valueOf(identifier.toLowerCase()) );
+			} else if (identifier.equalsIgnoreCase("null")) {
+				return new QueryExpression.Literal(null);
+			}
+
+			return attribute(identifier);
+
+		}
+
+		throw error("Unexpected '" + c + "'");
+
+	}
+
+	/**
+	 * Helper method. Creates the reference to an attribute, adding it to the attributes of the query.
+	 */
+	private QueryExpression attribute(String name) {
+
+		int slot = attributes.indexOf(name);
+		if (slot < 0) {
+			slot = attributes.size();
+			attributes.add(name);
+		}
+
+		return new QueryExpression.AttributeReference(slot);
+
+	}
+
+	/**
+	 * Helper method. Reads a quoted string, two quotes inside the string stand for one quote.
+	 */
+	private String quoted(char quote) {
+
+		StringBuilder value = new StringBuilder();
+		position++;
+		while (position < expression.length()) {
+
+			char c = expression.charAt(position++);
+			if (c != quote) {
+				value.append(c);
+			} else if (position < expression.length() && expression.charAt(position) == quote) {
+				value.append(quote);
+				position++;
+			} else {
+				return value.toString();
+			}
+
+		}
+
+		throw error("Unterminated string");
+
+	}
+
+	private Object number() {
+
+		int start = position;
+		boolean decimal = false;
+		while (position < expression.length()) {
+
+			char c = expression.charAt(position);
+			if (c == '.' || c == 'e' || c == 'E') {
+				decimal = true;
+			} else if ((c == '-' || c == '+') && (expression.charAt(position - 1) == 'e'
+					|| expression.charAt(position - 1) == 'E')) {
+				// the sign of the exponent
+			} else if (!Character.isDigit(c)) {
+				break;
+			}
+			position++;
+
+		}
+
+		String number = expression.substring(start, position);
+		try {
+			return decimal ? (Object) Double.valueOf(number) : (Object) Long.valueOf(number);
+		} catch (NumberFormatException e) {
+			throw error("Invalid number " + number);
+		}
+
+	}
+
+	private String identifier() {
+
+		int start = position;
+		while (position < expression.length() && isIdentifierPart( expression.charAt(position) )) {
+			position++;
+		}
+
+		return expression.substring(start, position);
+
+	}
+
+	private boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+	}
+
+	/**
+	 * Helper method. Consumes a keyword if it's next (and it's not the start of a longer identifier).
+	 */
+	private boolean acceptKeyword(String keyword) {
+
+		skipSpaces();
+		int end = position + keyword.length();
+		if (expression.regionMatches(true, position, keyword, 0, keyword.length())
+				&& (end == expression.length() || !isIdentifierPart( expression.charAt(end) ))) {
+			position = end;
+			return true;
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Helper method. Consumes a symbol if it's next.
+	 */
+	private boolean accept(String symbol) {
+
+		skipSpaces();
+		if (expression.startsWith(symbol, position)) {
+			position += symbol.length();
+			return true;
+		}
+
+		return false;
+
+	}
+
+	private void skipSpaces() {
+		while (position < expression.length() && Character.isWhitespace( expression.charAt(position) )) {
+			position++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + position + " of query: " + expression);
+	}
+
+}
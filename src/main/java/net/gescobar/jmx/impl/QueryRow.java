@@ -0,0 +1,71 @@
+package net.gescobar.jmx.impl;
+
+import java.util.Arrays;
+
+/**
+ * The attributes of an MBean that a {@link Query} evaluates. Each attribute referenced by the query has a slot and
+ * is read (with the accessors of the MBean, so the limits are applied) the first time it's needed, so the attributes
+ * that the expression doesn't reach (e.g. the right side of an <code>and</code> that is false) are not read. A row is
+ * reused for the MBeans that are evaluated by the same thread.
+ *
+ * @author German Escobar
+ */
+final class QueryRow {
+
+	/**
+	 * Marks the slots that were not read yet.
+	 */
+	private static final Object UNREAD = new Object();
+
+	/**
+	 * The names of the attributes by slot.
+	 */
+	private final String[] attributes;
+
+	private final Object[] values;
+
+	private MBeanImpl mBean;
+
+	public QueryRow(String[] attributes) {
+		this.attributes = attributes;
+		this.values = new Object[attributes.length];
+	}
+
+	/**
+	 * Prepares the row to evaluate another MBean.
+	 *
+	 * @param mBean the MBean that will be evaluated.
+	 */
+	public void reset(MBeanImpl mBean) {
+		this.mBean = mBean;
+		Arrays.fill(values, UNREAD);
+	}
+
+	/**
+	 * @param slot the slot of the attribute.
+	 *
+	 * @return the value of the attribute or null if the MBean doesn't have it or it cannot be read.
+	 */
+	public Object value(int slot) {
+
+		Object value = values[slot];
+		if (value == UNREAD) {
+
+			value = null;
+			if (mBean.isReadable( attributes[slot] )) {
+				try {
+					value = mBean.getAttribute( attributes[slot] );
+				} catch (Exception e) {
+					// the getter failed or the call was rejected by a limit
+				}
+			}
+
+			values[slot] = value;
+
+		}
+
+		return value;
+
+	}
+
+}
@@ -0,0 +1,42 @@
+package net.gescobar.jmx.impl;
+
+/**
+ * Reads a synthetic rate attribute (e.g. <code>requestsRate1m</code>) of a counter exposed with 
+ * <code>@ManagedAttribute(rate=true)</code>.
+ * 
+ * @author German Escobar
+ */
+class RateAttributeAccessor extends AttributeAccessor {
+	
+	private final RateTracker rateTracker;
+	
+	private final int windowSeconds;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name the name of the attribute.
+	 * @param rateTracker the tracker of the counter.
+	 * @param windowSeconds the duration of the window of the rate.
+	 */
+	public RateAttributeAccessor(String name, RateTracker rateTracker, int windowSeconds) {
+		super(name, null, null);
+		this.rateTracker = rateTracker;
+		this.windowSeconds = windowSeconds;
+	}
+	
+	@Override
+	public boolean isReadable() {
+		return true;
+	}
+	
+	@Override
+	public Object get(Object object) throws Exception {
+		return rateTracker.rate(windowSeconds);
+	}
+	
+	public RateTracker getRateTracker() {
+		return rateTracker;
+	}
+	
+}
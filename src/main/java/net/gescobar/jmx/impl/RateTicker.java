@@ -0,0 +1,83 @@
+package net.gescobar.jmx.impl;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the counters of the registered {@link RateTracker} objects every {@link #TICK_SECONDS} seconds in a 
+ * daemon thread that is started when the first tracker is added.
+ * 
+ * @author German Escobar
+ */
+final class RateTicker {
+	
+	/**
+	 * The seconds between samples.
+	 */
+	public static final int TICK_SECONDS = 5;
+	
+	private static final Set<RateTracker> TRACKERS = new CopyOnWriteArraySet<RateTracker>();
+	
+	private static ScheduledExecutorService executor;
+	
+	/**
+	 * Hide public constructor.
+	 */
+	private RateTicker() {}
+	
+	/**
+	 * Adds a tracker, taking its first sample right away.
+	 * 
+	 * @param rateTracker the tracker to add.
+	 */
+	public static void add(RateTracker rateTracker) {
+		
+		rateTracker.tick();
+		TRACKERS.add(rateTracker);
+		
+		start();
+		
+	}
+	
+	public static void remove(RateTracker rateTracker) {
+		TRACKERS.remove(rateTracker);
+	}
+	
+	/**
+	 * Helper method. Starts the thread if it's not started.
+	 */
+	private static synchronized void start() {
+		
+		if (executor != null) {
+			return;
+		}
+		
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jmx-rate-ticker");
+				thread.setDaemon(true);
+				return thread;
+			}
+			
+		});
+		
+		executor.scheduleAtFixedRate(new Runnable() {
+			
+			@Override
+			public void run() {
+				for (RateTracker rateTracker : TRACKERS) {
+					rateTracker.tick();
+				}
+			}
+			
+		}, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+		
+	}
+	
+}
@@ -0,0 +1,138 @@
+package net.gescobar.jmx.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.gescobar.jmx.annotation.ManagedAttribute;
+
+/**
+ * <p>Computes the per second rates of a monotonic counter exposed with <code>@ManagedAttribute(rate=true)</code> (see 
+ * {@link ManagedAttribute#rate()}). The value of the counter is sampled every {@link RateTicker#TICK_SECONDS} seconds 
+ * and the samples of the last {@link #MAX_WINDOW_SECONDS} seconds are kept in a ring buffer with their timestamps.</p>
+ * 
+ * <p>A rate is computed when it's read, from the current value of the counter and the sample that is closest to the
+ * start of the window, dividing by the actual time between both so that late ticks or polls don't distort it.</p>
+ * 
+ * <p>Only the tick thread writes samples and readers never block it: each sample is an immutable object published in 
+ * an <code>AtomicReferenceArray</code>.</p>
+ * 
+ * @author German Escobar
+ */
+final class RateTracker {
+	
+	/**
+	 * The longest window of the rates (15 minutes).
+	 */
+	public static final int MAX_WINDOW_SECONDS = 15 * 60;
+	
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+	
+	/**
+	 * The instrumented object.
+	 */
+	private final Object object;
+	
+	/**
+	 * The accessor of the counter, which reads it without boxing it if it's a primitive.
+	 */
+	private final AttributeAccessor counter;
+	
+	private final AtomicReferenceArray<Sample> samples = 
+			new AtomicReferenceArray<Sample>( MAX_WINDOW_SECONDS / RateTicker.TICK_SECONDS + 2 );
+	
+	/**
+	 * The number of samples taken, the last one is at position <code>(taken - 1) % samples.length()</code>.
+	 */
+	private final AtomicLong taken = new AtomicLong();
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param object the instrumented object.
+	 * @param counter the accessor of the counter, it must be readable and return a number.
+	 */
+	public RateTracker(Object object, AttributeAccessor counter) {
+		this.object = object;
+		this.counter = counter;
+	}
+	
+	/**
+	 * Takes a sample of the counter. Called by the {@link RateTicker}, ignores the errors of the getter.
+	 */
+	public void tick() {
+		
+		try {
+			
+			Sample sample = read();
+			long position = taken.get();
+			samples.set( (int) (position % samples.length()), sample );
+			taken.set(position + 1);
+			
+		} catch (Exception e) {
+			// the sample is skipped
+		}
+		
+	}
+	
+	/**
+	 * Computes the rate of the counter in a window.
+	 * 
+	 * @param windowSeconds the duration of the window, at most {@link #MAX_WINDOW_SECONDS}.
+	 * 
+	 * @return the change of the counter per second in the window (or since the first sample if there are not 
+	 * samples of the whole window).
+	 * @throws Exception if the getter of the counter throws an exception.
+	 */
+	public double rate(int windowSeconds) throws Exception {
+		
+		Sample now = read();
+		long windowStart = now.time - (long) (windowSeconds * NANOS_PER_SECOND);
+		
+		// go back from the newest sample until the one that is at (or before) the start of the window
+		Sample start = null;
+		long last = taken.get() - 1;
+		for (long i = last; i >= 0 && i > last - samples.length(); i--) {
+			Sample sample = samples.get( (int) (i % samples.length()) );
+			if (sample == null) {
+				break;
+			}
+			start = sample;
+			if (sample.time - windowStart <= 0) {
+				break;
+			}
+		}
+		
+		if (start == null || now.time - start.time <= 0) {
+			return 0.0;
+		}
+		
+		double delta = now.value - start.value;
+		if (delta < 0) { // the counter was reset
+			delta = now.value;
+		}
+		
+		return delta / ((now.time - start.time) / NANOS_PER_SECOND);
+		
+	}
+	
+	private Sample read() throws Exception {
+		return new Sample( System.nanoTime(), counter.getDouble(object) );
+	}
+	
+	/**
+	 * A value of the counter and the time (from <code>System.nanoTime()</code>) it was taken.
+	 */
+	private static class Sample {
+		
+		private final long time;
+		
+		private final double value;
+		
+		public Sample(long time, double value) {
+			this.time = time;
+			this.value = value;
+		}
+		
+	}
+	
+}
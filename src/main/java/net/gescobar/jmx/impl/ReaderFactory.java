@@ -0,0 +1,39 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the readers of the getters that return primitive numbers (see {@link LongReader} and {@link DoubleReader}). 
+ * This version generates them with {@link ReaderGenerator}; the multi-release jar has a version for Java 11 (in 
+ * <code>src/main/java11</code>) that creates them with <code>LambdaMetafactory</code>.
+ * 
+ * @author German Escobar
+ */
+final class ReaderFactory {
+	
+	/**
+	 * Hide public constructor.
+	 */
+	private ReaderFactory() {}
+	
+	/**
+	 * @param getter the getter of an attribute.
+	 * 
+	 * @return a reader that calls the getter or null if the getter doesn't return a primitive integer or the reader 
+	 * 		cannot be created.
+	 */
+	public static LongReader longReader(Method getter) {
+		return ReaderGenerator.longReader(getter);
+	}
+	
+	/**
+	 * @param getter the getter of an attribute.
+	 * 
+	 * @return a reader that calls the getter or null if the getter doesn't return a <code>double</code> or 
+	 * 		<code>float</code> or the reader cannot be created.
+	 */
+	public static DoubleReader doubleReader(Method getter) {
+		return ReaderGenerator.doubleReader(getter);
+	}
+	
+}
@@ -0,0 +1,340 @@
+package net.gescobar.jmx.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Generates the {@link LongReader} and {@link DoubleReader} of the getters that return primitive numbers. Each
+ * reader is a small class whose <code>read</code> method casts the object and calls the getter directly, so reading
+ * the attribute doesn't box the value nor allocate the arguments of <code>Method.invoke</code>. Method handles are
+ * not available in Java 6, so the class file is written here: it has no branches, so it needs no stack map frames.
+ * </p>
+ *
+ * <p>A reader can only be generated if the getter and the class that declares it are public, null is returned
+ * otherwise (and the attribute is read with reflection). Each reader is defined by its own class loader (whose parent
+ * is the loader of the class that declares the getter) and they are cached by getter, so all the MBeans of a class
+ * share them, without preventing the classes from being unloaded.</p>
+ *
+ * @author German Escobar
+ */
+final class ReaderGenerator {
+
+	private static final int CONSTANT_UTF8 = 1;
+
+	private static final int CONSTANT_CLASS = 7;
+
+	private static final int CONSTANT_METHODREF = 10;
+
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private static final int ACC_PUBLIC = 0x0001;
+
+	private static final int ACC_FINAL = 0x0010;
+
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int ALOAD_0 = 0x2a;
+
+	private static final int ALOAD_1 = 0x2b;
+
+	private static final int I2L = 0x85;
+
+	private static final int F2D = 0x8d;
+
+	private static final int LRETURN = 0xad;
+
+	private static final int DRETURN = 0xaf;
+
+	private static final int RETURN = 0xb1;
+
+	private static final int INVOKEVIRTUAL = 0xb6;
+
+	private static final int INVOKESPECIAL = 0xb7;
+
+	private static final int INVOKEINTERFACE = 0xb9;
+
+	private static final int CHECKCAST = 0xc0;
+
+	private static final AtomicInteger COUNTER = new AtomicInteger();
+
+	/**
+	 * The generated readers by getter name and reader type by the class that declares the getter. The readers are
+	 * weakly referenced, as they reference the class.
+	 */
+	private static final Map<Class<?>,Map<String,WeakReference<Object>>> READERS =
+			new WeakHashMap<Class<?>,Map<String,WeakReference<Object>>>();
+
+	/**
+	 * Hide public constructor.
+	 */
+	private ReaderGenerator() {}
+
+	/**
+	 * Classes cannot be defined at runtime in a native image (nor while it's built, for the image), so the
+	 * attributes are read with reflection there.
+	 *
+	 * @return true if we are running in (or building) a GraalVM native image.
+	 */
+	public static boolean inNativeImage() {
+		return System.getProperty("org.graalvm.nativeimage.imagecode") != null;
+	}
+
+	/**
+	 * @param getter the getter of an attribute.
+	 *
+	 * @return a reader that calls the getter or null if the getter doesn't return a <code>long</code>,
+	 * 		<code>int</code>, <code>short</code> or <code>byte</code> or the reader cannot be generated.
+	 */
+	public static LongReader longReader(Method getter) {
+
+		Class<?> type = getter.getReturnType();
+		if (type != Long.TYPE && type != Integer.TYPE && type != Short.TYPE && type != Byte.TYPE) {
+			return null;
+		}
+
+		return (LongReader) reader(getter, LongReader.class);
+
+	}
+
+	/**
+	 * @param getter the getter of an attribute.
+	 *
+	 * @return a reader that calls the getter or null if the getter doesn't return a <code>double</code> or
+	 * 		<code>float</code> or the reader cannot be generated.
+	 */
+	public static DoubleReader doubleReader(Method getter) {
+
+		Class<?> type = getter.getReturnType();
+		if (type != Double.TYPE && type != Float.TYPE) {
+			return null;
+		}
+
+		return (DoubleReader) reader(getter, DoubleReader.class);
+
+	}
+
+	/**
+	 * Helper method. Finds the reader of a getter in the cache or generates it.
+	 */
+	private static synchronized Object reader(Method getter, Class<?> readerType) {
+
+		Class<?> owner = getter.getDeclaringClass();
+		if (inNativeImage() || !Modifier.isPublic( owner.getModifiers() ) || !Modifier.isPublic( getter.getModifiers() )
+				|| Modifier.isStatic( getter.getModifiers() )) {
+			return null;
+		}
+
+		Map<String,WeakReference<Object>> readers = READERS.get(owner);
+		if (readers == null) {
+			readers = new HashMap<String,WeakReference<Object>>();
+			READERS.put(owner, readers);
+		}
+
+		// getters have no parameters, so the name is enough
+		String key = getter.getName() + ":" + readerType.getName();
+		WeakReference<Object> reference = readers.get(key);
+		Object reader = reference != null ? reference.get() : null;
+		if (reader != null) {
+			return reader;
+		}
+
+		String className = ReaderGenerator.class.getName() + "$Reader" + COUNTER.incrementAndGet();
+		try {
+
+			byte[] classFile = classFile( className.replace('.', '/'), getter, readerType );
+			reader = new ReaderClassLoader( owner.getClassLoader() ).define(className, classFile).newInstance();
+
+		} catch (Exception e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+
+		readers.put( key, new WeakReference<Object>(reader) );
+
+		return reader;
+
+	}
+
+	/**
+	 * Helper method. Writes the class file of a reader, the equivalent of:
+	 *
+	 * <pre>
+	 * public final class Reader1 implements LongReader {
+	 *     public long read(Object object) {
+	 *         return ((Owner) object).getCounter();
+	 *     }
+	 * }
+	 * </pre>
+	 */
+	private static byte[] classFile(String className, Method getter, Class<?> readerType) throws IOException {
+
+		Class<?> owner = getter.getDeclaringClass();
+		Class<?> type = getter.getReturnType();
+		boolean longReader = readerType == LongReader.class;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49); // Java 5, the oldest version that we support
+
+		// the constant pool, the first index is 1
+		out.writeShort(20);
+		utf8(out, className); // 1
+		constant(out, CONSTANT_CLASS, 1); // 2
+		utf8(out, "java/lang/Object"); // 3
+		constant(out, CONSTANT_CLASS, 3); // 4
+		utf8(out, readerType.getName().replace('.', '/')); // 5
+		constant(out, CONSTANT_CLASS, 5); // 6
+		utf8(out, "<init>"); // 7
+		utf8(out, "()V"); // 8
+		constant(out, CONSTANT_NAME_AND_TYPE, 7, 8); // 9
+		constant(out, CONSTANT_METHODREF, 4, 9); // 10
+		utf8(out, owner.getName().replace('.', '/')); // 11
+		constant(out, CONSTANT_CLASS, 11); // 12
+		utf8(out, getter.getName()); // 13
+		utf8(out, "()" + descriptor(type)); // 14
+		constant(out, CONSTANT_NAME_AND_TYPE, 13, 14); // 15
+		constant(out, owner.isInterface() ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF, 12, 15); // 16
+		utf8(out, "read"); // 17
+		utf8(out, longReader ? "(Ljava/lang/Object;)J" : "(Ljava/lang/Object;)D"); // 18
+		utf8(out, "Code"); // 19
+
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(2); // this class
+		out.writeShort(4); // super class
+		out.writeShort(1); // interfaces
+		out.writeShort(6);
+		out.writeShort(0); // fields
+
+		out.writeShort(2); // methods
+		method( out, 7, 8, 1, 1, code(ALOAD_0, INVOKESPECIAL, 0, 10, RETURN) );
+
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		write(read, ALOAD_1, CHECKCAST, 0, 12);
+		if (owner.isInterface()) {
+			write(read, INVOKEINTERFACE, 0, 16, 1, 0);
+		} else {
+			write(read, INVOKEVIRTUAL, 0, 16);
+		}
+		if (longReader && type != Long.TYPE) {
+			write(read, I2L);
+		} else if (!longReader && type == Float.TYPE) {
+			write(read, F2D);
+		}
+		write(read, longReader ? LRETURN : DRETURN);
+		method( out, 17, 18, 2, 2, read.toByteArray() );
+
+		out.writeShort(0); // attributes
+		out.flush();
+
+		return bytes.toByteArray();
+
+	}
+
+	private static void utf8(DataOutputStream out, String value) throws IOException {
+		out.writeByte(CONSTANT_UTF8);
+		out.writeUTF(value); // the modified UTF-8 of the class file format
+	}
+
+	private static void constant(DataOutputStream out, int tag, int... indexes) throws IOException {
+		out.writeByte(tag);
+		for (int index : indexes) {
+			out.writeShort(index);
+		}
+	}
+
+	/**
+	 * Helper method. Writes a public method with its <code>Code</code> attribute.
+	 */
+	private static void method(DataOutputStream out, int name, int descriptor, int maxStack, int maxLocals,
+			byte[] code) throws IOException {
+
+		out.writeShort(ACC_PUBLIC);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1); // attributes
+
+		out.writeShort(19); // Code
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // attributes
+
+	}
+
+	private static byte[] code(int... instructions) {
+		ByteArrayOutputStream code = new ByteArrayOutputStream();
+		write(code, instructions);
+		return code.toByteArray();
+	}
+
+	private static void write(ByteArrayOutputStream code, int... instructions) {
+		for (int instruction : instructions) {
+			code.write(instruction);
+		}
+	}
+
+	private static String descriptor(Class<?> type) {
+
+		if (type == Long.TYPE) {
+			return "J";
+		} else if (type == Integer.TYPE) {
+			return "I";
+		} else if (type == Short.TYPE) {
+			return "S";
+		} else if (type == Byte.TYPE) {
+			return "B";
+		} else if (type == Double.TYPE) {
+			return "D";
+		}
+
+		return "F";
+
+	}
+
+	/**
+	 * Defines one reader. Its parent is the loader of the class that declares the getter, the reader interfaces are
+	 * loaded from the loader of the library (which may not be visible from the parent).
+	 */
+	private static class ReaderClassLoader extends ClassLoader {
+
+		public ReaderClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+
+			if (name.equals( LongReader.class.getName() )) {
+				return LongReader.class;
+			} else if (name.equals( DoubleReader.class.getName() )) {
+				return DoubleReader.class;
+			}
+
+			return super.loadClass(name, resolve);
+
+		}
+
+		public Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+
+	}
+
+}
@@ -0,0 +1,231 @@
+package net.gescobar.jmx.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import net.gescobar.jmx.ManagementException;
+import net.gescobar.jmx.annotation.ManagedResource;
+import net.gescobar.jmx.util.ClassUtils;
+
+/**
+ * <p>Reads the index of classes annotated with {@link ManagedResource} that is generated at compile time by the
+ * <code>net.gescobar.jmx.processor.ManagedResourceProcessor</code>. Each jar (or classes directory) has its own
+ * {@link #INDEX_RESOURCE} file and all of them are read. When the jars are merged into one (e.g. with the Maven Shade
+ * Plugin), the indexes must be appended (with the <code>AppendingTransformer</code>), otherwise only one of them is
+ * kept.</p>
+ *
+ * <p>The index is a UTF-8 text file with tab separated values. A <code>resource</code> line names a class and the
+ * ObjectName with which it's registered; the <code>method</code> lines that follow name the annotated methods of that
+ * class (with their parameter types) so the MBean can be created without introspecting the whole class:</p>
+ *
+ * <pre>
+ * resource	org.test.Statistics	org.test:type=Statistics
+ * method	getCounter
+ * method	addCounter	int
+ * </pre>
+ *
+ * <p>A <code>class</code> line names a class that is not registered automatically but has annotated members, so its
+ * MBeans can be prepared ahead of time (e.g. while a native image is built, see
+ * {@link MBeanFactory#prepare(Class)}).</p>
+ *
+ * @author German Escobar
+ */
+public final class ResourceIndex {
+
+	/**
+	 * The location of the index in the classpath.
+	 */
+	public static final String INDEX_RESOURCE = "META-INF/jmx-annotations.index";
+
+	public static final String RESOURCE = "resource";
+
+	public static final String METHOD = "method";
+
+	public static final String CLASS = "class";
+
+	public static final String SEPARATOR = "\t";
+
+	/**
+	 * Hide public constructor.
+	 */
+	private ResourceIndex() {}
+
+	/**
+	 * Reads all the indexes that are visible from a class loader.
+	 *
+	 * @param classLoader the class loader from which we are reading the indexes and loading the classes.
+	 *
+	 * @return a list of {@link Entry} objects, one for each indexed class. It will never return null.
+	 * @throws ManagementException if an index cannot be read or references a class or method that doesn't exist.
+	 */
+	public static List<Entry> load(ClassLoader classLoader) throws ManagementException {
+
+		if (classLoader == null) {
+			throw new IllegalArgumentException("No class loader specified.");
+		}
+
+		List<Entry> entries = new ArrayList<Entry>();
+
+		try {
+			Enumeration<URL> urls = classLoader.getResources(INDEX_RESOURCE);
+			while (urls.hasMoreElements()) {
+				read( urls.nextElement(), classLoader, entries, null );
+			}
+		} catch (IOException e) {
+			throw new ManagementException(e, "Cannot read " + INDEX_RESOURCE);
+		}
+
+		return entries;
+
+	}
+
+	/**
+	 * Reads the classes of all the indexes that are visible from a class loader: the classes annotated with
+	 * {@link ManagedResource} and the ones that only have annotated members.
+	 *
+	 * @param classLoader the class loader from which we are reading the indexes and loading the classes.
+	 *
+	 * @return a list of the indexed classes. It will never return null.
+	 * @throws ManagementException if an index cannot be read or references a class that doesn't exist.
+	 */
+	public static List<Class<?>> loadClasses(ClassLoader classLoader) throws ManagementException {
+
+		if (classLoader == null) {
+			throw new IllegalArgumentException("No class loader specified.");
+		}
+
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+
+		try {
+			Enumeration<URL> urls = classLoader.getResources(INDEX_RESOURCE);
+			while (urls.hasMoreElements()) {
+				read( urls.nextElement(), classLoader, null, classes );
+			}
+		} catch (IOException e) {
+			throw new ManagementException(e, "Cannot read " + INDEX_RESOURCE);
+		}
+
+		return classes;
+
+	}
+
+	/**
+	 * Helper method. Reads one index file adding its entries to the <code>entries</code> list or its classes to the
+	 * <code>classes</code> list (the other one is null).
+	 */
+	private static void read(URL url, ClassLoader classLoader, List<Entry> entries, List<Class<?>> classes)
+			throws IOException {
+
+		InputStream in = url.openStream();
+		try {
+
+			BufferedReader reader = new BufferedReader( new InputStreamReader(in, "UTF-8") );
+
+			Entry entry = null;
+			boolean resource = false; // if the methods that follow are of a resource
+			String line;
+			while ( (line = reader.readLine()) != null ) {
+
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] values = line.split(SEPARATOR);
+				if ((RESOURCE.equals(values[0]) && values.length == 3)
+						|| (CLASS.equals(values[0]) && values.length == 2)) {
+					entry = null;
+					resource = RESOURCE.equals(values[0]);
+					if (classes != null) {
+						classes.add( loadClass(values[1], classLoader) );
+					} else if (resource) {
+						entry = new Entry( loadClass(values[1], classLoader), values[2] );
+						entries.add(entry);
+					}
+				} else if (METHOD.equals(values[0]) && values.length >= 2 && resource) {
+					if (entry != null) {
+						entry.methods.add( findMethod(entry.type, values, classLoader) );
+					}
+				} else {
+					throw new ManagementException("Invalid line in " + url + ": " + line);
+				}
+
+			}
+
+		} finally {
+			in.close();
+		}
+
+	}
+
+	private static Method findMethod(Class<?> type, String[] values, ClassLoader classLoader) {
+
+		Class<?>[] paramTypes = new Class<?>[values.length - 2];
+		for (int i=0; i < paramTypes.length; i++) {
+			paramTypes[i] = loadClass(values[i + 2], classLoader);
+		}
+
+		try {
+			return type.getMethod(values[1], paramTypes);
+		} catch (NoSuchMethodException e) {
+			throw new ManagementException(e, "Indexed method " + values[1] + " not found in " + type.getName() +
+					", is the index out of date?");
+		}
+
+	}
+
+	private static Class<?> loadClass(String name, ClassLoader classLoader) {
+
+		Class<?> primitive = ClassUtils.primitiveClass(name);
+		if (primitive != null) {
+			return primitive;
+		}
+
+		try {
+			return Class.forName(name, false, classLoader);
+		} catch (ClassNotFoundException e) {
+			throw new ManagementException(e, "Indexed class " + name + " not found, is the index out of date?");
+		}
+
+	}
+
+	/**
+	 * An indexed class: its type, the name with which it has to be registered and its annotated methods.
+	 *
+	 * @author German Escobar
+	 */
+	public static final class Entry {
+
+		private final Class<?> type;
+
+		private final String name;
+
+		private final List<Method> methods = new ArrayList<Method>();
+
+		private Entry(Class<?> type, String name) {
+			this.type = type;
+			this.name = name;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public List<Method> getMethods() {
+			return Collections.unmodifiableList(methods);
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import net.gescobar.jmx.annotation.ManagedSnapshot;
+
+/**
+ * Reads a component of the snapshot returned by a method annotated with {@link ManagedSnapshot}.
+ * 
+ * @author German Escobar
+ */
+class SnapshotAttributeAccessor extends AttributeAccessor {
+	
+	/**
+	 * The method annotated with {@link ManagedSnapshot}.
+	 */
+	private final Method snapshotMethod;
+	
+	/**
+	 * The accessor method of the component in the snapshot object.
+	 */
+	private final Method componentMethod;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param name the name of the attribute.
+	 * @param snapshotMethod the method annotated with {@link ManagedSnapshot}.
+	 * @param componentMethod the accessor method of the component in the snapshot object.
+	 */
+	public SnapshotAttributeAccessor(String name, Method snapshotMethod, Method componentMethod) {
+		super(name, componentMethod, null);
+		this.snapshotMethod = snapshotMethod;
+		this.componentMethod = componentMethod;
+	}
+
+	/**
+	 * Takes a new snapshot and reads the component from it.
+	 */
+	@Override
+	public Object get(Object object) throws Exception {
+		return read( snapshotMethod.invoke(object) );
+	}
+	
+	/**
+	 * Reads the component from a snapshot that was already taken in the same bulk read, or takes it and adds it to 
+	 * <code>snapshots</code> if this is the first component of the snapshot that is read.
+	 * 
+	 * @param object the instrumented object.
+	 * @param snapshots the snapshots taken in the current bulk read by snapshot method.
+	 * 
+	 * @return the value of the component.
+	 * @throws Exception if the snapshot method or the component accessor throws an exception.
+	 */
+	public Object get(Object object, Map<Method,Object> snapshots) throws Exception {
+		
+		Object snapshot = snapshots.get(snapshotMethod);
+		if (snapshot == null && !snapshots.containsKey(snapshotMethod)) {
+			snapshot = snapshotMethod.invoke(object);
+			snapshots.put(snapshotMethod, snapshot);
+		}
+		
+		return read(snapshot);
+		
+	}
+	
+	private Object read(Object snapshot) throws Exception {
+		return snapshot == null ? null : componentMethod.invoke(snapshot);
+	}
+	
+}
@@ -0,0 +1,166 @@
+package net.gescobar.jmx.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.Name;
+import net.gescobar.jmx.util.SnapshotCodec;
+
+/**
+ * <p>Reads the numeric, boolean and string attributes of all the MBeans that match a pattern in one call, exposed as
+ * the <code>net.gescobar.jmx:type=Snapshot</code> MBean which is registered with
+ * {@link LibraryMBeans#enable(MBeanServer)}. Instead of one round trip for each attribute, a collector invokes the
+ * <code>snapshot</code> operation and decodes the result with {@link SnapshotCodec#decode(byte[])}.</p>
+ *
+ * <p>Most attributes don't change between polls, so the last value of each attribute is kept with the version in
+ * which it changed. Every snapshot has a token (see {@link SnapshotCodec#token(byte[])}) and the
+ * <code>changesSince</code> operation returns only the attributes that changed after the snapshot with that token,
+ * along with a new token. Changes are detected by comparing the values read in each call with the last ones (so
+ * the attributes are still read, but only the changes are sent). MBeans that are unregistered are not reported.</p>
+ *
+ * <p>Only the MBeans created by the library that are registered in the same MBeanServer are read. The attributes are read with the accessors precomputed when
+ * the MBeans were created (as in <code>getAttributes</code>), so the limits are applied and attributes that fail
+ * are left out.</p>
+ *
+ * @author German Escobar
+ */
+@Description("Reads the values of many MBeans in one call")
+public final class SnapshotManager {
+
+	/**
+	 * The name of the MBean that takes the snapshots.
+	 */
+	public static final String OBJECT_NAME = "net.gescobar.jmx:type=Snapshot";
+
+	/**
+	 * The MBeanServer whose MBeans are read.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * The last value of each attribute by attribute name by MBean name.
+	 */
+	private final Map<ObjectName,Map<String,VersionedValue>> lastValues =
+			new HashMap<ObjectName,Map<String,VersionedValue>>();
+
+	/**
+	 * The version of the last snapshot. It starts with the time in microseconds so the tokens of a previous run of
+	 * the JVM are lower than the tokens of this run.
+	 */
+	private long version = System.currentTimeMillis() * 1000;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer whose MBeans are read.
+	 */
+	private SnapshotManager(MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	/**
+	 * Registers a snapshot MBean in an MBeanServer with the {@link #OBJECT_NAME} name if it's not already registered.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the snapshot MBean.
+	 */
+	static void registerIn(MBeanServer mBeanServer) {
+		LibraryMBeans.registerIfAbsent(mBeanServer, OBJECT_NAME, new SnapshotManager(mBeanServer));
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="Reads the numeric, boolean and string attributes of the " +
+			"MBeans that match a pattern, encoded in a compact binary format")
+	public byte[] snapshot(@Name("pattern") @Description("The name of the MBeans, can be a pattern") String pattern)
+			throws MalformedObjectNameException {
+		return changesSince(pattern, 0);
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="Reads the numeric, boolean and string attributes of the " +
+			"MBeans that match a pattern that changed after the snapshot with the token")
+	public synchronized byte[] changesSince(
+			@Name("pattern") @Description("The name of the MBeans, can be a pattern") String pattern,
+			@Name("token") @Description("The token of the previous snapshot, 0 for all the values") long token)
+			throws MalformedObjectNameException {
+
+		ObjectName name = new ObjectName(pattern);
+
+		// a token of another run of the JVM (or an invalid one), all the values are sent
+		if (token > version) {
+			token = 0;
+		}
+
+		long newVersion = ++version;
+
+		Map<ObjectName,AttributeList> changes = new LinkedHashMap<ObjectName,AttributeList>();
+		for (Map.Entry<ObjectName,MBeanImpl> mBean : MBeanRegistry.getAll(mBeanServer).entrySet()) {
+
+			if (!name.apply(mBean.getKey())) {
+				continue;
+			}
+
+			Map<String,VersionedValue> mBeanValues = lastValues.get( mBean.getKey() );
+			if (mBeanValues == null) {
+				mBeanValues = new HashMap<String,VersionedValue>();
+				lastValues.put(mBean.getKey(), mBeanValues);
+			}
+
+			AttributeList changed = new AttributeList();
+			for (Object object : mBean.getValue().getAttributes( mBean.getValue().getEncodedAttributes() )) {
+
+				Attribute attribute = (Attribute) object;
+
+				VersionedValue lastValue = mBeanValues.get( attribute.getName() );
+				if (lastValue == null) {
+					lastValue = new VersionedValue();
+					mBeanValues.put(attribute.getName(), lastValue);
+				}
+
+				if (lastValue.version == 0 || !equals(lastValue.value, attribute.getValue())) {
+					lastValue.value = attribute.getValue();
+					lastValue.version = newVersion;
+				}
+
+				if (lastValue.version > token) {
+					changed.add(attribute);
+				}
+
+			}
+
+			if (!changed.isEmpty()) {
+				changes.put(mBean.getKey(), changed);
+			}
+
+		}
+
+		// forget the MBeans that were unregistered
+		lastValues.keySet().retainAll( MBeanRegistry.getAll(mBeanServer).keySet() );
+
+		return SnapshotCodec.encode(changes, newVersion);
+
+	}
+
+	private static boolean equals(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+
+	/**
+	 * The last value of an attribute and the version in which it changed.
+	 */
+	private static class VersionedValue {
+
+		private Object value;
+
+		private long version;
+
+	}
+
+}
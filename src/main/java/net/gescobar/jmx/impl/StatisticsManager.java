@@ -0,0 +1,234 @@
+package net.gescobar.jmx.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * <p>Statistics of the library itself, exposed as the <code>net.gescobar.jmx:type=Statistics</code> MBean which is
+ * registered with {@link LibraryMBeans#enable(MBeanServer)}. It tells how much time is
+ * spent serving JMX clients: the number of <code>getAttribute</code>, <code>setAttribute</code> and
+ * <code>invoke</code> calls of each attribute and operation with the cumulative and maximum time spent, the time
+ * spent creating MBeans and the number of registered MBeans by domain. The calls and MBeans are the ones of the
+ * MBeanServer in which it's registered; the creation of MBeans is counted for all the MBeanServers.</p>
+ *
+ * <p>The calls and the creation of MBeans are recorded only while the statistics are enabled (they are disabled by default), so the cost of a
+ * disabled recorder is one volatile read per call.</p>
+ *
+ * @author German Escobar
+ */
+@Description("Statistics of the JMX annotations library")
+public final class StatisticsManager {
+
+	/**
+	 * The name of the MBean that exposes the statistics.
+	 */
+	public static final String OBJECT_NAME = "net.gescobar.jmx:type=Statistics";
+
+	private static final String GET = "get";
+
+	private static final String SET = "set";
+
+	private static final String INVOKE = "invoke";
+
+	private static volatile boolean enabled;
+
+	private static final AtomicLong createdMBeans = new AtomicLong();
+
+	private static final AtomicLong creationNanos = new AtomicLong();
+
+	private static final AtomicLong maxCreationNanos = new AtomicLong();
+
+	/**
+	 * The MBeanServer whose MBeans are reported.
+	 */
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer whose MBeans are reported.
+	 */
+	private StatisticsManager(MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	/**
+	 * @return true if the calls are being recorded, false otherwise.
+	 */
+	static boolean enabled() {
+		return enabled;
+	}
+
+	/**
+	 * Registers a statistics MBean in an MBeanServer with the {@link #OBJECT_NAME} name if it's not already
+	 * registered.
+	 *
+	 * @param mBeanServer the MBeanServer in which we are registering the statistics MBean.
+	 */
+	static void registerIn(MBeanServer mBeanServer) {
+		LibraryMBeans.registerIfAbsent(mBeanServer, OBJECT_NAME, new StatisticsManager(mBeanServer));
+	}
+
+	/**
+	 * Records the creation of an MBean in {@link MBeanFactory}. The caller checks {@link #enabled()} first, so it's
+	 * only recorded while the statistics are enabled.
+	 *
+	 * @param elapsed the nanoseconds spent introspecting the class and creating the MBean.
+	 */
+	static void mBeanCreated(long elapsed) {
+
+		createdMBeans.incrementAndGet();
+		creationNanos.addAndGet(elapsed);
+
+		long max = maxCreationNanos.get();
+		while (elapsed > max && !maxCreationNanos.compareAndSet(max, elapsed)) {
+			max = maxCreationNanos.get();
+		}
+
+	}
+
+	@ManagedAttribute(description="True if the calls to the MBeans are being recorded")
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		StatisticsManager.enabled = enabled;
+	}
+
+	@ManagedAttribute(description="The number of MBeans created by the library")
+	public long getCreatedMBeans() {
+		return createdMBeans.get();
+	}
+
+	@ManagedAttribute(description="The milliseconds spent introspecting classes and creating MBeans")
+	public long getCreationTime() {
+		return creationNanos.get() / 1000000;
+	}
+
+	@ManagedAttribute(description="The maximum milliseconds spent creating one MBean")
+	public long getMaxCreationTime() {
+		return maxCreationNanos.get() / 1000000;
+	}
+
+	@ManagedAttribute(description="The number of calls recorded in all the MBeans")
+	public long getCalls() {
+
+		long calls = 0;
+		for (MBeanImpl mBean : MBeanRegistry.values(mBeanServer)) {
+			for (CallStats callStats : allStats(mBean)) {
+				calls += callStats.getCalls();
+			}
+		}
+
+		return calls;
+
+	}
+
+	@ManagedAttribute(description="The milliseconds spent in the recorded calls of all the MBeans")
+	public long getCallTime() {
+
+		long nanos = 0;
+		for (MBeanImpl mBean : MBeanRegistry.values(mBeanServer)) {
+			for (CallStats callStats : allStats(mBean)) {
+				nanos += callStats.getNanos();
+			}
+		}
+
+		return nanos / 1000000;
+
+	}
+
+	@ManagedAttribute(description="The number of MBeans registered by the library in each domain")
+	public String[] getMBeansByDomain() {
+
+		Map<String,Integer> domains = new TreeMap<String,Integer>();
+		for (ObjectName objectName : MBeanRegistry.getAll(mBeanServer).keySet()) {
+			Integer count = domains.get( objectName.getDomain() );
+			domains.put( objectName.getDomain(), count == null ? 1 : count + 1 );
+		}
+
+		List<String> list = new ArrayList<String>();
+		for (Map.Entry<String,Integer> domain : domains.entrySet()) {
+			list.add( domain.getKey() + " " + domain.getValue() );
+		}
+
+		return list.toArray( new String[list.size()] );
+
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="Lists the recorded calls, the most expensive first: MBean, " +
+			"call (get, set or invoke), attribute or operation, calls, total and max microseconds")
+	public String[] listCalls() {
+
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (Map.Entry<ObjectName,MBeanImpl> mBean : MBeanRegistry.getAll(mBeanServer).entrySet()) {
+			addRows( rows, mBean.getKey(), GET, mBean.getValue().getGetStats() );
+			addRows( rows, mBean.getKey(), SET, mBean.getValue().getSetStats() );
+			addRows( rows, mBean.getKey(), INVOKE, mBean.getValue().getInvokeStats() );
+		}
+
+		Collections.sort(rows, new Comparator<Object[]>() {
+
+			@Override
+			public int compare(Object[] o1, Object[] o2) {
+				long n1 = ((CallStats) o1[3]).getNanos();
+				long n2 = ((CallStats) o2[3]).getNanos();
+				return n1 < n2 ? 1 : (n1 == n2 ? 0 : -1);
+			}
+
+		});
+
+		List<String> list = new ArrayList<String>();
+		for (Object[] row : rows) {
+			CallStats callStats = (CallStats) row[3];
+			list.add( row[0] + " " + row[1] + " " + row[2] + " calls=" + callStats.getCalls() + " totalMicros=" +
+					callStats.getNanos() / 1000 + " maxMicros=" + callStats.getMaxNanos() / 1000 );
+		}
+
+		return list.toArray( new String[list.size()] );
+
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Resets the recorded calls")
+	public void reset() {
+
+		for (MBeanImpl mBean : MBeanRegistry.values(mBeanServer)) {
+			for (CallStats callStats : allStats(mBean)) {
+				callStats.reset();
+			}
+		}
+
+	}
+
+	private void addRows(List<Object[]> rows, ObjectName objectName, String call, Map<String,CallStats> stats) {
+		for (Map.Entry<String,CallStats> entry : stats.entrySet()) {
+			rows.add( new Object[] { objectName, call, entry.getKey(), entry.getValue() } );
+		}
+	}
+
+	private List<CallStats> allStats(MBeanImpl mBean) {
+
+		List<CallStats> stats = new ArrayList<CallStats>();
+		stats.addAll( mBean.getGetStats().values() );
+		stats.addAll( mBean.getSetStats().values() );
+		stats.addAll( mBean.getInvokeStats().values() );
+
+		return stats;
+
+	}
+
+}
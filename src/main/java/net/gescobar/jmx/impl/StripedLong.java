@@ -0,0 +1,148 @@
+package net.gescobar.jmx.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter that is updated by many threads. Updates go to a single base value until threads contend on it; then
+ * each thread adds to one of several cells (chosen by the id of the thread) and the cells are doubled every time
+ * threads contend on a cell, up to the next power of two of the number of processors. The value is the sum of the base
+ * and the cells. Counters that are not updated concurrently take the memory of a single long, like the
+ * <code>LongAdder</code> of Java 8.
+ *
+ * @author German Escobar
+ */
+final class StripedLong {
+
+	private static final int MAX_CELLS = cells( Runtime.getRuntime().availableProcessors() );
+
+	private final AtomicLong base = new AtomicLong();
+
+	/**
+	 * Null until threads contend on the base. Its length is a power of two.
+	 */
+	private volatile Cell[] cells;
+
+	/**
+	 * Helper method. The maximum number of cells: the next power of two of the number of processors, up to 64.
+	 */
+	private static int cells(int processors) {
+
+		int cells = 1;
+		while (cells < processors && cells < 64) {
+			cells <<= 1;
+		}
+
+		return cells;
+
+	}
+
+	public void add(long value) {
+
+		Cell[] cs = cells;
+		if (cs == null) {
+			long b = base.get();
+			if (base.compareAndSet(b, b + value)) {
+				return;
+			}
+			cs = grow(null);
+		}
+
+		Cell cell = cs[cell(cs.length)];
+		long v = cell.get();
+		if (cell.compareAndSet(v, v + value)) {
+			return;
+		}
+
+		// contended, the thread probably lands on another cell after growing
+		cs = grow(cs);
+		cs[cell(cs.length)].addAndGet(value);
+
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * @return the sum of the base and the cells. It's not an atomic snapshot if there are concurrent updates.
+	 */
+	public long sum() {
+
+		long sum = base.get();
+
+		Cell[] cs = cells;
+		if (cs != null) {
+			for (Cell cell : cs) {
+				sum += cell.get();
+			}
+		}
+
+		return sum;
+
+	}
+
+	public void reset() {
+
+		base.set(0);
+
+		Cell[] cs = cells;
+		if (cs != null) {
+			for (Cell cell : cs) {
+				cell.set(0);
+			}
+		}
+
+	}
+
+	/**
+	 * Helper method. Doubles the cells (or creates the first two) unless another thread already replaced them or they
+	 * reached the maximum. The existing cells are kept, so no update is lost.
+	 *
+	 * @param current the cells the caller contended on, null if it contended on the base.
+	 *
+	 * @return the cells after growing.
+	 */
+	private synchronized Cell[] grow(Cell[] current) {
+
+		Cell[] cs = cells;
+		if (cs != current || (cs != null && cs.length >= MAX_CELLS)) {
+			return cs;
+		}
+
+		int length = cs == null ? Math.min(2, MAX_CELLS) : cs.length << 1;
+		Cell[] grown = new Cell[length];
+		int i = 0;
+		if (cs != null) {
+			System.arraycopy(cs, 0, grown, 0, cs.length);
+			i = cs.length;
+		}
+		for (; i < length; i++) {
+			grown[i] = new Cell();
+		}
+
+		cells = grown;
+		return grown;
+
+	}
+
+	private static int cell(int length) {
+
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32));
+		hash ^= (hash >>> 16);
+
+		return hash & (length - 1);
+
+	}
+
+	/**
+	 * A cell padded to (at least) a cache line of 64 bytes, so cells allocated together are not falsely shared.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Cell extends AtomicLong {
+
+		volatile long p1, p2, p3, p4, p5, p6, p7;
+
+	}
+
+}
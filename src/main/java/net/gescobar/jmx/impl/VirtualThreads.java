@@ -0,0 +1,34 @@
+package net.gescobar.jmx.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors of virtual threads. This version finds them with reflection because the library is compiled 
+ * for older versions of Java; the multi-release jar has a version for Java 21 (in <code>src/main/java21</code>) that 
+ * calls them directly.
+ * 
+ * @author German Escobar
+ */
+final class VirtualThreads {
+	
+	/**
+	 * Hide public constructor.
+	 */
+	private VirtualThreads() {}
+	
+	/**
+	 * @return an executor that starts a virtual thread for each task or null if the JVM doesn't support them (Java 
+	 * 		21 or newer).
+	 */
+	public static ExecutorService newExecutor() {
+		
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,476 @@
+package net.gescobar.jmx.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.ManagementException;
+import net.gescobar.jmx.annotation.Description;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.Name;
+
+/**
+ * <p>A family of metrics with the same slots (e.g. requests, errors and bytes) for many keys (e.g. customers or
+ * endpoints). Instead of registering one MBean for each key, the family is registered as one MBean (with
+ * {@link Management#register(Object, String)}) that exposes the metrics of the keys as <code>TabularData</code>
+ * through paged and filtered operations.</p>
+ *
+ * <pre>
+ * MetricFamily customers = new MetricFamily(10000, MetricFamily.Eviction.LEAST_ACTIVE, "requests", "errors");
+ * int requests = customers.slot("requests");
+ * Management.register(customers, "org.test:type=Customers");
+ *
+ * customers.add(customerId, requests, 1);
+ * </pre>
+ *
+ * <p>Each key holds its values in an <code>AtomicLongArray</code>, so updates don't lock or allocate (except the first
+ * update of a key). The number of keys is capped: when the cap is exceeded, a tenth of the keys are evicted, either
+ * the least recently updated or the least active ones (the activity of the keys is halved on each eviction so old
+ * activity fades away).</p>
+ *
+ * @author German Escobar
+ */
+@Description("Metrics by key")
+public class MetricFamily {
+
+	/**
+	 * The policies to choose the keys that are evicted when the cap is exceeded.
+	 */
+	public enum Eviction {
+		LEAST_RECENTLY_USED,
+		LEAST_ACTIVE
+	}
+
+	private static final String KEY = "key";
+
+	private static final String LAST_UPDATE = "lastUpdate";
+
+	private final String[] slots;
+
+	private final int maxKeys;
+
+	private final Eviction eviction;
+
+	private final ConcurrentMap<String,Metric> metrics = new ConcurrentHashMap<String,Metric>();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Only one thread evicts at a time, the others keep updating.
+	 */
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * The names of the items of the rows: the key, the slots and the last update.
+	 */
+	private final String[] itemNames;
+
+	private final CompositeType rowType;
+
+	private final TabularType tableType;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxKeys the maximum number of keys.
+	 * @param eviction the policy to choose the keys that are evicted when there are more than <code>maxKeys</code>.
+	 * @param slots the names of the metrics of each key.
+	 */
+	public MetricFamily(int maxKeys, Eviction eviction, String... slots) {
+
+		if (maxKeys <= 0) {
+			throw new IllegalArgumentException("maxKeys must be greater than 0.");
+		}
+
+		if (eviction == null) {
+			throw new IllegalArgumentException("No eviction specified.");
+		}
+
+		if (slots == null || slots.length == 0) {
+			throw new IllegalArgumentException("No slots specified.");
+		}
+
+		this.maxKeys = maxKeys;
+		this.eviction = eviction;
+		this.slots = slots.clone();
+
+		itemNames = new String[slots.length + 2];
+		OpenType<?>[] itemTypes = new OpenType<?>[slots.length + 2];
+		itemNames[0] = KEY;
+		itemTypes[0] = SimpleType.STRING;
+		for (int i=0; i < slots.length; i++) {
+			itemNames[i + 1] = slots[i];
+			itemTypes[i + 1] = SimpleType.LONG;
+		}
+		itemNames[slots.length + 1] = LAST_UPDATE;
+		itemTypes[slots.length + 1] = SimpleType.LONG;
+
+		try {
+			rowType = new CompositeType("Metric", "The metrics of a key", itemNames, itemNames, itemTypes);
+			tableType = new TabularType("Metrics", "The metrics by key", rowType, new String[] { KEY });
+		} catch (OpenDataException e) {
+			throw new IllegalArgumentException("Invalid slots: " + e.getMessage(), e);
+		}
+
+	}
+
+	/**
+	 * @param name the name of a slot.
+	 *
+	 * @return the index of the slot, to be used in {@link #add(String, int, long)} and {@link #set(String, int, long)}.
+	 * @throws IllegalArgumentException if there is no slot with that name.
+	 */
+	public int slot(String name) throws IllegalArgumentException {
+
+		for (int i=0; i < slots.length; i++) {
+			if (slots[i].equals(name)) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("No slot " + name);
+
+	}
+
+	/**
+	 * Adds a value to a slot of a key, creating the key if it doesn't exist.
+	 *
+	 * @param key the key.
+	 * @param slot the index of the slot (see {@link #slot(String)}).
+	 * @param delta the value to add.
+	 */
+	public void add(String key, int slot, long delta) {
+
+		Metric metric = metric(key);
+		metric.values.addAndGet(slot, delta);
+		touch(metric);
+
+	}
+
+	/**
+	 * Sets the value of a slot of a key, creating the key if it doesn't exist.
+	 *
+	 * @param key the key.
+	 * @param slot the index of the slot (see {@link #slot(String)}).
+	 * @param value the new value.
+	 */
+	public void set(String key, int slot, long value) {
+
+		Metric metric = metric(key);
+		metric.values.set(slot, value);
+		touch(metric);
+
+	}
+
+	/**
+	 * @param key the key.
+	 * @param slot the index of the slot (see {@link #slot(String)}).
+	 *
+	 * @return the value of the slot, 0 if the key doesn't exist.
+	 */
+	public long get(String key, int slot) {
+
+		Metric metric = metrics.get(key);
+		return metric == null ? 0 : metric.values.get(slot);
+
+	}
+
+	/**
+	 * Helper method. Records an update of a key. The activity is counted only if it's used for eviction.
+	 */
+	private void touch(Metric metric) {
+
+		if (eviction == Eviction.LEAST_ACTIVE) {
+			metric.activity.incrementAndGet();
+		}
+		metric.lastUpdate = System.currentTimeMillis();
+
+	}
+
+	/**
+	 * Helper method. Retrieves the metric of a key, creating it if it doesn't exist (and evicting keys if the cap is
+	 * exceeded).
+	 */
+	private Metric metric(String key) {
+
+		if (key == null) {
+			throw new IllegalArgumentException("No key specified.");
+		}
+
+		Metric metric = metrics.get(key);
+		if (metric != null) {
+			return metric;
+		}
+
+		Metric newMetric = new Metric(key, slots.length);
+		metric = metrics.putIfAbsent(key, newMetric);
+		if (metric != null) {
+			return metric;
+		}
+
+		if (metrics.size() > maxKeys) {
+			evict();
+		}
+
+		return newMetric;
+
+	}
+
+	/**
+	 * Helper method. Evicts a tenth of the keys using the eviction policy.
+	 */
+	private void evict() {
+
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+
+		try {
+
+			int size = metrics.size();
+			if (size <= maxKeys) {
+				return;
+			}
+
+			// the keys are copied, sorting by values that change while we sort breaks the sort
+			List<Ranked> candidates = new ArrayList<Ranked>( metrics.size() );
+			for (Metric metric : metrics.values()) {
+				long rank = eviction == Eviction.LEAST_ACTIVE ? metric.activity.get() : metric.lastUpdate;
+				candidates.add( new Ranked(metric, rank) );
+			}
+			Collections.sort(candidates, BY_RANK);
+
+			int count = Math.min( candidates.size(), size - maxKeys + Math.max(1, maxKeys / 10) );
+			for (int i=0; i < count; i++) {
+				Metric metric = candidates.get(i).metric;
+				if (metrics.remove(metric.key, metric)) {
+					evictions.incrementAndGet();
+				}
+			}
+
+			if (eviction == Eviction.LEAST_ACTIVE) {
+				for (int i=count; i < candidates.size(); i++) {
+					candidates.get(i).metric.age();
+				}
+			}
+
+		} finally {
+			evictionLock.unlock();
+		}
+
+	}
+
+	@ManagedAttribute(description="The number of keys")
+	public int getSize() {
+		return metrics.size();
+	}
+
+	@ManagedAttribute(description="The maximum number of keys")
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	@ManagedAttribute(description="The number of evicted keys")
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@ManagedAttribute(description="The names of the metrics of each key")
+	public String[] getSlots() {
+		return slots.clone();
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The metrics of the keys sorted by key, from offset")
+	public TabularData page(@Name("offset") @Description("The position of the first key") int offset,
+			@Name("limit") @Description("The maximum number of keys") int limit) {
+
+		List<Metric> sorted = new ArrayList<Metric>( metrics.values() );
+		Collections.sort(sorted, BY_KEY);
+
+		int from = Math.max(0, Math.min(offset, sorted.size()));
+		return table( sorted.subList(from, sorted.size()), limit );
+
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The metrics of the keys that match a regular expression")
+	public TabularData filter(@Name("regex") @Description("A regular expression that the keys contain") String regex,
+			@Name("limit") @Description("The maximum number of keys") int limit) {
+
+		Pattern pattern = Pattern.compile(regex);
+
+		List<Metric> matching = new ArrayList<Metric>();
+		for (Metric metric : metrics.values()) {
+			if (pattern.matcher(metric.key).find()) {
+				matching.add(metric);
+			}
+		}
+		Collections.sort(matching, BY_KEY);
+
+		return table(matching, limit);
+
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The metrics of the keys with the highest values of a slot")
+	public TabularData top(@Name("slot") @Description("The name of the metric by which the keys are sorted") String slot,
+			@Name("limit") @Description("The maximum number of keys") int limit) {
+
+		int index = slot(slot);
+
+		// the values are copied, sorting by values that change while we sort breaks the sort
+		List<Ranked> ranked = new ArrayList<Ranked>( metrics.size() );
+		for (Metric metric : metrics.values()) {
+			ranked.add( new Ranked(metric, metric.values.get(index)) );
+		}
+		Collections.sort( ranked, Collections.reverseOrder(BY_RANK) );
+
+		List<Metric> sorted = new ArrayList<Metric>( ranked.size() );
+		for (Ranked r : ranked) {
+			sorted.add(r.metric);
+		}
+
+		return table(sorted, limit);
+
+	}
+
+	@ManagedOperation(impact=Impact.INFO, description="The metrics of a key, null if it doesn't exist")
+	public CompositeData lookup(@Name("key") @Description("The key") String key) {
+
+		Metric metric = metrics.get(key);
+		return metric == null ? null : row(metric);
+
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Removes a key")
+	public boolean remove(@Name("key") @Description("The key") String key) {
+		return metrics.remove(key) != null;
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Removes all the keys")
+	public void reset() {
+		metrics.clear();
+	}
+
+	/**
+	 * Helper method. Builds the TabularData of the first <code>limit</code> metrics.
+	 */
+	private TabularData table(List<Metric> list, int limit) {
+
+		TabularData table = new TabularDataSupport(tableType);
+
+		int count = Math.min( list.size(), Math.max(0, limit) );
+		for (int i=0; i < count; i++) {
+			table.put( row(list.get(i)) );
+		}
+
+		return table;
+
+	}
+
+	private CompositeData row(Metric metric) {
+
+		Object[] values = new Object[slots.length + 2];
+		values[0] = metric.key;
+		for (int i=0; i < slots.length; i++) {
+			values[i + 1] = metric.values.get(i);
+		}
+		values[slots.length + 1] = metric.lastUpdate;
+
+		try {
+			return new CompositeDataSupport(rowType, itemNames, values);
+		} catch (OpenDataException e) {
+			throw new ManagementException(e);
+		}
+
+	}
+
+	private static int compareLongs(long l1, long l2) {
+		return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+	}
+
+	private static final Comparator<Metric> BY_KEY = new Comparator<Metric>() {
+
+		@Override
+		public int compare(Metric o1, Metric o2) {
+			return o1.key.compareTo(o2.key);
+		}
+
+	};
+
+	private static final Comparator<Ranked> BY_RANK = new Comparator<Ranked>() {
+
+		@Override
+		public int compare(Ranked o1, Ranked o2) {
+			return compareLongs(o1.rank, o2.rank);
+		}
+
+	};
+
+	/**
+	 * A metric with the value by which it's sorted, read once before sorting.
+	 */
+	private static class Ranked {
+
+		private final Metric metric;
+
+		private final long rank;
+
+		public Ranked(Metric metric, long rank) {
+			this.metric = metric;
+			this.rank = rank;
+		}
+
+	}
+
+	/**
+	 * The values of a key.
+	 */
+	private static class Metric {
+
+		private final String key;
+
+		private final AtomicLongArray values;
+
+		/**
+		 * The number of updates, halved on each eviction.
+		 */
+		private final AtomicLong activity = new AtomicLong();
+
+		private volatile long lastUpdate;
+
+		public Metric(String key, int slots) {
+			this.key = key;
+			this.values = new AtomicLongArray(slots);
+		}
+
+		public void age() {
+
+			long current = activity.get();
+			while (!activity.compareAndSet(current, current >> 1)) {
+				current = activity.get();
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,469 @@
+package net.gescobar.jmx.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedComponent;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * <p>Estimates the quantiles (e.g. the 99th percentile) of a distribution of values with a bounded relative error and
+ * fixed memory, using the DDSketch approach: the positive values are counted in buckets whose bounds grow
+ * geometrically, so any quantile is estimated within the relative accuracy (1% by default) of the real value.</p>
+ *
+ * <p>Unlike percentiles, sketches can be merged: the sketches of many JVMs (serialized with {@link #toBytes()} and
+ * exposed as the <code>sketch</code> attribute) are combined with {@link #merge(byte[][])} into the sketch of the
+ * whole fleet, whose quantiles have the same accuracy.</p>
+ *
+ * <p>Recording a value doesn't allocate or lock: it's the increment of a counter in an <code>AtomicLongArray</code>.
+ * Values lower than the minimum of the range (including zero and negative values) are counted apart as zeros, 
+ * values greater than the maximum (including infinity) are counted in the last bucket and NaN is ignored.</p>
+ *
+ * <p>When an object with a field of this type is registered, the field is exposed automatically (see
+ * {@link ManagedComponent}): a field named <code>latency</code> is exposed as the <code>latencyP50</code>,
+ * <code>latencyP99</code>, ..., <code>latencySketch</code> attributes and the <code>latencyReset</code>
+ * operation.</p>
+ *
+ * @author German Escobar
+ */
+@ManagedComponent
+public class QuantileSketch {
+
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+	public static final double DEFAULT_MIN_VALUE = 1e-6;
+
+	public static final double DEFAULT_MAX_VALUE = 1e12;
+
+	/**
+	 * The maximum number of buckets of a sketch (8 MB of counters), the default range takes about 2,000.
+	 */
+	public static final int MAX_BUCKETS = 1 << 20;
+
+	/**
+	 * The first byte of the serialized sketches, followed by the version of the format.
+	 */
+	private static final byte MAGIC = 'Q';
+
+	private static final byte VERSION = 1;
+
+	private final double relativeAccuracy;
+
+	private final double logGamma;
+
+	/**
+	 * The index (in the logarithmic scale) of the first bucket. The bucket <code>i</code> counts the values in
+	 * <code>(gamma^(i + offset - 1), gamma^(i + offset)]</code>.
+	 */
+	private final int offset;
+
+	private final double minValue;
+
+	private final AtomicLongArray buckets;
+
+	private final AtomicLong zeros = new AtomicLong();
+
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Constructor. Creates a sketch with 1% of relative accuracy for values between 1e-6 and 1e12.
+	 */
+	public QuantileSketch() {
+		this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MIN_VALUE, DEFAULT_MAX_VALUE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param relativeAccuracy the maximum relative error of the quantiles, between 0 and 1 (exclusive).
+	 * @param minValue the lowest value that is distinguished from zero.
+	 * @param maxValue the highest value that is distinguished from lower values.
+	 */
+	public QuantileSketch(double relativeAccuracy, double minValue, double maxValue) {
+		this(relativeAccuracy, minValue, bucketCount(relativeAccuracy, minValue, maxValue));
+	}
+
+	/**
+	 * Constructor. Used to deserialize sketches.
+	 *
+	 * @param relativeAccuracy the maximum relative error of the quantiles, between 0 and 1 (exclusive).
+	 * @param minValue the lowest value that is distinguished from zero.
+	 * @param bucketCount the number of buckets.
+	 */
+	private QuantileSketch(double relativeAccuracy, double minValue, int bucketCount) {
+
+		if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+			throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1.");
+		}
+
+		if (!(minValue > 0) || bucketCount <= 0) {
+			throw new IllegalArgumentException("Invalid range of values.");
+		}
+
+		if (bucketCount > MAX_BUCKETS) {
+			throw new IllegalArgumentException("Too many buckets: " + bucketCount);
+		}
+
+		this.relativeAccuracy = relativeAccuracy;
+		this.logGamma = logGamma(relativeAccuracy);
+		this.minValue = minValue;
+		this.offset = index(minValue, logGamma);
+		this.buckets = new AtomicLongArray(bucketCount);
+
+	}
+
+	/**
+	 * Helper method. The number of buckets needed for the range of values.
+	 */
+	private static int bucketCount(double relativeAccuracy, double minValue, double maxValue) {
+
+		if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+			throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1.");
+		}
+
+		if (!(minValue > 0) || !(maxValue > minValue)) {
+			throw new IllegalArgumentException("Invalid range of values.");
+		}
+
+		double logGamma = logGamma(relativeAccuracy);
+		long bucketCount = (long) index(maxValue, logGamma) - index(minValue, logGamma) + 1;
+		if (bucketCount > MAX_BUCKETS) {
+			throw new IllegalArgumentException("Too many buckets: " + bucketCount);
+		}
+
+		return (int) bucketCount;
+
+	}
+
+	private static double logGamma(double relativeAccuracy) {
+		return Math.log( (1 + relativeAccuracy) / (1 - relativeAccuracy) );
+	}
+
+	/**
+	 * Records a value. NaN is ignored.
+	 *
+	 * @param value the value.
+	 */
+	public void record(double value) {
+
+		if (Double.isNaN(value)) {
+			return;
+		}
+
+		if (value < minValue) {
+			zeros.incrementAndGet();
+		} else {
+			// in a long, the index of infinity (Integer.MAX_VALUE) minus the offset overflows an int
+			long bucket = (long) index(value, logGamma) - offset;
+			buckets.incrementAndGet( (int) Math.min(bucket, buckets.length() - 1) );
+		}
+
+		count.incrementAndGet();
+
+	}
+
+	/**
+	 * Estimates a quantile.
+	 *
+	 * @param quantile the quantile, between 0 and 1 (e.g. 0.99 for the 99th percentile).
+	 *
+	 * @return the estimated value of the quantile, or 0 if no values have been recorded.
+	 */
+	public double quantile(double quantile) {
+
+		if (quantile < 0 || quantile > 1) {
+			throw new IllegalArgumentException("The quantile must be between 0 and 1.");
+		}
+
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+
+		// the rank of the value, counting from 0
+		long rank = (long) (quantile * (total - 1));
+
+		long seen = zeros.get();
+		if (seen > rank) {
+			return 0;
+		}
+
+		int last = 0;
+		for (int i=0; i < buckets.length(); i++) {
+			long bucket = buckets.get(i);
+			if (bucket == 0) {
+				continue;
+			}
+			last = i;
+			seen += bucket;
+			if (seen > rank) {
+				return value(i);
+			}
+		}
+
+		// the buckets changed while we were reading them
+		return value(last);
+
+	}
+
+	/**
+	 * Adds the values of another sketch to this one. The sketches must have the same relative accuracy; values out
+	 * of the range of this sketch go to its first or last bucket.
+	 *
+	 * @param other the sketch to merge into this one.
+	 */
+	public void merge(QuantileSketch other) {
+
+		if (Double.compare(relativeAccuracy, other.relativeAccuracy) != 0) {
+			throw new IllegalArgumentException("Cannot merge sketches with different relative accuracy.");
+		}
+
+		long merged = other.zeros.get();
+		zeros.addAndGet(merged);
+
+		for (int i=0; i < other.buckets.length(); i++) {
+			long bucket = other.buckets.get(i);
+			if (bucket != 0) {
+				int index = Math.max(0, Math.min(i + other.offset - offset, buckets.length() - 1));
+				buckets.addAndGet(index, bucket);
+				merged += bucket;
+			}
+		}
+
+		count.addAndGet(merged);
+
+	}
+
+	/**
+	 * Combines serialized sketches (e.g. from the <code>sketch</code> attribute of many JVMs) into one.
+	 *
+	 * @param sketches the serialized sketches, all with the same relative accuracy.
+	 *
+	 * @return a new sketch with the values of all the sketches.
+	 * @throws IllegalArgumentException if a sketch is not valid or the relative accuracies differ.
+	 */
+	public static QuantileSketch merge(byte[]... sketches) throws IllegalArgumentException {
+
+		if (sketches == null || sketches.length == 0) {
+			throw new IllegalArgumentException("No sketches specified.");
+		}
+
+		QuantileSketch result = fromBytes(sketches[0]);
+		for (int i=1; i < sketches.length; i++) {
+			result.merge( fromBytes(sketches[i]) );
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Serializes the sketch: a header with the relative accuracy and range followed by the non empty buckets, each one
+	 * as the distance from the previous one and its count in variable length integers. A sketch of a typical latency
+	 * distribution takes a few hundred bytes.
+	 *
+	 * @return the serialized sketch.
+	 */
+	public byte[] toBytes() {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+
+			out.writeByte(MAGIC);
+			out.writeByte(VERSION);
+			out.writeDouble(relativeAccuracy);
+			out.writeDouble(minValue);
+			writeVarLong( out, buckets.length() );
+			writeVarLong( out, zeros.get() );
+
+			int previous = -1;
+			for (int i=0; i < buckets.length(); i++) {
+				long bucket = buckets.get(i);
+				if (bucket != 0) {
+					writeVarLong(out, i - previous);
+					writeVarLong(out, bucket);
+					previous = i;
+				}
+			}
+			writeVarLong(out, 0); // end of buckets
+
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // doesn't happen with a ByteArrayOutputStream
+		}
+
+		return bytes.toByteArray();
+
+	}
+
+	/**
+	 * Deserializes a sketch serialized with {@link #toBytes()}.
+	 *
+	 * @param data the serialized sketch.
+	 *
+	 * @return the QuantileSketch object.
+	 * @throws IllegalArgumentException if the data is not a valid sketch.
+	 */
+	public static QuantileSketch fromBytes(byte[] data) throws IllegalArgumentException {
+
+		if (data == null) {
+			throw new IllegalArgumentException("No data specified.");
+		}
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream(data) );
+
+		try {
+
+			if (in.readByte() != MAGIC || in.readByte() != VERSION) {
+				throw new IllegalArgumentException("Not a serialized sketch or unknown version");
+			}
+
+			double relativeAccuracy = in.readDouble();
+			double minValue = in.readDouble();
+
+			// checked before it's allocated, the data may come from anywhere
+			long length = readVarLong(in);
+			if (length <= 0 || length > MAX_BUCKETS) {
+				throw new IllegalArgumentException("Invalid number of buckets: " + length);
+			}
+
+			QuantileSketch sketch = new QuantileSketch(relativeAccuracy, minValue, (int) length);
+
+			long zeros = checkCount( readVarLong(in) );
+			sketch.zeros.set(zeros);
+
+			long total = zeros;
+			long index = -1;
+			for (long delta = readVarLong(in); delta != 0; delta = readVarLong(in)) {
+				if (delta < 0 || delta >= length - index) {
+					throw new IllegalArgumentException("Invalid bucket index: " + index + " + " + delta);
+				}
+				index += delta;
+				long bucket = checkCount( readVarLong(in) );
+				sketch.buckets.set((int) index, bucket);
+				total += bucket;
+			}
+			sketch.count.set(total);
+
+			return sketch;
+
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Truncated sketch", e);
+		}
+
+	}
+
+	@ManagedAttribute(description="The number of recorded values")
+	public long getCount() {
+		return count.get();
+	}
+
+	@ManagedAttribute(description="The estimated median")
+	public double getP50() {
+		return quantile(0.5);
+	}
+
+	@ManagedAttribute(description="The estimated 90th percentile")
+	public double getP90() {
+		return quantile(0.9);
+	}
+
+	@ManagedAttribute(description="The estimated 95th percentile")
+	public double getP95() {
+		return quantile(0.95);
+	}
+
+	@ManagedAttribute(description="The estimated 99th percentile")
+	public double getP99() {
+		return quantile(0.99);
+	}
+
+	@ManagedAttribute(description="The estimated 99.9th percentile")
+	public double getP999() {
+		return quantile(0.999);
+	}
+
+	@ManagedAttribute(description="The serialized sketch, to be merged with the sketches of other JVMs")
+	public byte[] getSketch() {
+		return toBytes();
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Clears the recorded values")
+	public void reset() {
+
+		for (int i=0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		zeros.set(0);
+		count.set(0);
+
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+
+	/**
+	 * Helper method. The index, in the logarithmic scale, of the bucket of a positive value.
+	 */
+	private static int index(double value, double logGamma) {
+		return (int) Math.ceil( Math.log(value) / logGamma );
+	}
+
+	/**
+	 * Helper method. The value that represents a bucket: the one with the same relative distance to both bounds.
+	 */
+	private double value(int bucket) {
+		double gamma = Math.exp(logGamma);
+		return 2 * Math.exp( (bucket + offset) * logGamma ) / (gamma + 1);
+	}
+
+	/**
+	 * Helper method. Checks a count read from a serialized sketch.
+	 *
+	 * @throws IllegalArgumentException if the count is negative.
+	 */
+	private static long checkCount(long count) throws IllegalArgumentException {
+
+		if (count < 0) {
+			throw new IllegalArgumentException("Invalid count: " + count);
+		}
+
+		return count;
+
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte( (int) ((value & 0x7F) | 0x80) );
+			value >>>= 7;
+		}
+		out.writeByte( (int) value );
+
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Invalid variable length integer");
+
+	}
+
+}
@@ -0,0 +1,356 @@
+package net.gescobar.jmx.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import net.gescobar.jmx.ManagementException;
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedComponent;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+/**
+ * <p>Tracks the keys that occur most often in a stream (the heavy hitters) with fixed memory, using the Space-Saving
+ * algorithm: a fixed number of counters is kept and, when a new key arrives and all counters are taken, the counter
+ * with the lowest count is given to the new key, which inherits its count as the maximum overestimation (the
+ * error). The estimated count of a key is never lower than its real count and never higher than the real count plus
+ * the error, which is at most the total count divided by the number of counters.</p>
+ *
+ * <p>To support concurrent updates the keys are split by hash among several independent shards, each with its own
+ * lock and its share of the counters, so threads updating different keys rarely contend.</p>
+ *
+ * <p>When an object with a field of this type is registered, the field is exposed automatically (see
+ * {@link ManagedComponent}): a field named <code>urls</code> is exposed as the <code>urlsTop</code> attribute (a
+ * <code>TabularData</code> with the key, the estimated count and the error of the top keys) and the
+ * <code>urlsReset</code> operation.</p>
+ *
+ * <pre>
+ * private final TopK urls = new TopK(10);
+ *
+ * public void handle(Request request) {
+ *     urls.add( request.getPath() );
+ * }
+ * </pre>
+ *
+ * @author German Escobar
+ */
+@ManagedComponent
+public class TopK {
+
+	private static final String[] ITEM_NAMES = { "key", "count", "error" };
+
+	private static final CompositeType ROW_TYPE;
+
+	private static final TabularType TABLE_TYPE;
+
+	static {
+		try {
+			ROW_TYPE = new CompositeType("TopKEntry", "A key with its estimated count and maximum error", ITEM_NAMES,
+					ITEM_NAMES, new OpenType<?>[] { SimpleType.STRING, SimpleType.LONG, SimpleType.LONG });
+			TABLE_TYPE = new TabularType("TopK", "The keys with the highest estimated counts", ROW_TYPE,
+					new String[] { "key" });
+		} catch (OpenDataException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final int k;
+
+	private final Shard[] shards;
+
+	/**
+	 * Constructor. Tracks ten counters for each reported key.
+	 *
+	 * @param k the number of keys that are reported.
+	 */
+	public TopK(int k) {
+		this(k, k * 10);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param k the number of keys that are reported.
+	 * @param capacity the number of counters: more counters give more accurate counts.
+	 */
+	public TopK(int k, int capacity) {
+
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be greater than 0.");
+		}
+
+		if (capacity < k) {
+			throw new IllegalArgumentException("capacity cannot be less than k.");
+		}
+
+		this.k = k;
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		int count = 1;
+		while (count < processors && count < 16) {
+			count <<= 1;
+		}
+
+		// each shard needs at least k counters as all the top keys could fall in the same shard
+		int shardCapacity = Math.max( k, (capacity + count - 1) / count );
+
+		shards = new Shard[count];
+		for (int i=0; i < count; i++) {
+			shards[i] = new Shard(shardCapacity);
+		}
+
+	}
+
+	/**
+	 * Counts one occurrence of a key.
+	 *
+	 * @param key the key.
+	 */
+	public void add(String key) {
+		add(key, 1);
+	}
+
+	/**
+	 * Counts occurrences of a key.
+	 *
+	 * @param key the key.
+	 * @param count the number of occurrences.
+	 */
+	public void add(String key, long count) {
+
+		if (key == null) {
+			throw new IllegalArgumentException("No key specified.");
+		}
+
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+
+		shards[hash & (shards.length - 1)].add(key, count);
+
+	}
+
+	/**
+	 * @return the top keys, the highest estimated counts first.
+	 */
+	public List<Entry> getEntries() {
+
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Shard shard : shards) {
+			shard.copyTo(entries);
+		}
+
+		Collections.sort(entries, new Comparator<Entry>() {
+
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return o1.count < o2.count ? 1 : (o1.count == o2.count ? 0 : -1);
+			}
+
+		});
+
+		return entries.size() > k ? new ArrayList<Entry>( entries.subList(0, k) ) : entries;
+
+	}
+
+	@ManagedAttribute(description="The keys with the highest estimated counts")
+	public TabularData getTop() {
+
+		TabularData table = new TabularDataSupport(TABLE_TYPE);
+		for (Entry entry : getEntries()) {
+			try {
+				table.put( new CompositeDataSupport(ROW_TYPE, ITEM_NAMES,
+						new Object[] { entry.key, entry.count, entry.error }) );
+			} catch (OpenDataException e) {
+				throw new ManagementException(e);
+			}
+		}
+
+		return table;
+
+	}
+
+	@ManagedOperation(impact=Impact.ACTION, description="Clears the counters")
+	public void reset() {
+		for (Shard shard : shards) {
+			shard.reset();
+		}
+	}
+
+	/**
+	 * A key with its estimated count and the maximum overestimation of the count.
+	 *
+	 * @author German Escobar
+	 */
+	public static final class Entry {
+
+		private final String key;
+
+		private final long count;
+
+		private final long error;
+
+		private Entry(String key, long count, long error) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + count + " (error " + error + ")";
+		}
+
+	}
+
+	/**
+	 * A Space-Saving summary: the counters are kept in a binary min-heap (by count) so the counter with the lowest
+	 * count is found in constant time and updated in logarithmic time.
+	 */
+	private static class Shard {
+
+		private final Counter[] heap;
+
+		private final Map<String,Counter> counters = new HashMap<String,Counter>();
+
+		private int size;
+
+		public Shard(int capacity) {
+			heap = new Counter[capacity];
+		}
+
+		public synchronized void add(String key, long count) {
+
+			Counter counter = counters.get(key);
+			if (counter != null) {
+				counter.count += count;
+				siftDown(counter.index);
+				return;
+			}
+
+			if (size < heap.length) {
+				counter = new Counter(key, count, 0);
+				counter.index = size;
+				heap[size++] = counter;
+				counters.put(key, counter);
+				siftUp(counter.index);
+				return;
+			}
+
+			// replace the counter with the lowest count
+			counter = heap[0];
+			counters.remove(counter.key);
+			counter.key = key;
+			counter.error = counter.count;
+			counter.count += count;
+			counters.put(key, counter);
+			siftDown(0);
+
+		}
+
+		public synchronized void copyTo(List<Entry> entries) {
+			for (int i=0; i < size; i++) {
+				entries.add( new Entry(heap[i].key, heap[i].count, heap[i].error) );
+			}
+		}
+
+		public synchronized void reset() {
+			for (int i=0; i < size; i++) {
+				heap[i] = null;
+			}
+			counters.clear();
+			size = 0;
+		}
+
+		private void siftUp(int index) {
+
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (heap[parent].count <= heap[index].count) {
+					return;
+				}
+				swap(parent, index);
+				index = parent;
+			}
+
+		}
+
+		private void siftDown(int index) {
+
+			while (true) {
+
+				int smallest = index;
+				int left = 2 * index + 1;
+				int right = left + 1;
+				if (left < size && heap[left].count < heap[smallest].count) {
+					smallest = left;
+				}
+				if (right < size && heap[right].count < heap[smallest].count) {
+					smallest = right;
+				}
+				if (smallest == index) {
+					return;
+				}
+
+				swap(smallest, index);
+				index = smallest;
+
+			}
+
+		}
+
+		private void swap(int i, int j) {
+
+			Counter tmp = heap[i];
+			heap[i] = heap[j];
+			heap[j] = tmp;
+			heap[i].index = i;
+			heap[j].index = j;
+
+		}
+
+	}
+
+	private static class Counter {
+
+		private String key;
+
+		private long count;
+
+		private long error;
+
+		private int index;
+
+		public Counter(String key, long count, long error) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+		}
+
+	}
+
+}
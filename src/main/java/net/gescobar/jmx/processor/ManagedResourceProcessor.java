@@ -0,0 +1,611 @@
+package net.gescobar.jmx.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import net.gescobar.jmx.annotation.ManagedComponent;
+import net.gescobar.jmx.annotation.ManagedResource;
+import net.gescobar.jmx.annotation.ManagedSnapshot;
+import net.gescobar.jmx.impl.ResourceIndex;
+
+/**
+ * <p>Annotation processor that generates the index of classes annotated with {@link ManagedResource} (see
+ * {@link ResourceIndex} for the format). For each class it records the public methods, declared or inherited, that
+ * have any of the annotations of the <code>net.gescobar.jmx.annotation</code> package. The other classes that declare
+ * annotated members (fields of a {@link ManagedComponent} type are also indexed if the class declares an annotated
+ * member) are also indexed, so their MBeans can be prepared ahead of time.</p>
+ *
+ * <p>It only supports the annotations of the library, so the compiler doesn't run it for compilations that don't
+ * use them, and it only looks at the classes that declare annotated elements.</p>
+ *
+ * <p>It also generates the reflection configuration that a GraalVM native image needs to create the MBeans of the
+ * indexed classes ({@link #REFLECT_CONFIG}), which is found by <code>native-image</code> in the classpath.</p>
+ *
+ * <p>Incremental builds compile only some of the classes, so the entries of the resources that were generated by a
+ * previous compilation are kept for the classes that were not compiled again and still exist. The entries of the
+ * classes that were compiled again are replaced by the new ones (or removed if the classes are no longer indexed).
+ * The reflection configuration is only added to, so an entry of a class that is no longer needed can remain until
+ * the next full build.</p>
+ *
+ * <p>It's registered in <code>META-INF/services</code> so it runs automatically when the library is in the
+ * compilation classpath.</p>
+ *
+ * @author German Escobar
+ */
+@SupportedAnnotationTypes("net.gescobar.jmx.annotation.*")
+public class ManagedResourceProcessor extends AbstractProcessor {
+
+	/**
+	 * The location of the generated reflection configuration in the classpath.
+	 */
+	public static final String REFLECT_CONFIG = "META-INF/native-image/jmx-annotations/generated/reflect-config.json";
+
+	private static final String ANNOTATIONS_PACKAGE = ManagedResource.class.getPackage().getName();
+
+	/**
+	 * Matches the name of a class in a line of the reflection configuration.
+	 */
+	private static final Pattern REFLECT_ENTRY = Pattern.compile("\"name\": \"([^\"]+)\"");
+
+	/**
+	 * Matches a flag in a line of the reflection configuration.
+	 */
+	private static final Pattern REFLECT_FLAG = Pattern.compile("\"(\\w+)\": true");
+
+	/**
+	 * The lines of the index collected through all the rounds by class name.
+	 */
+	private final Map<String,List<String>> lines = new LinkedHashMap<String,List<String>>();
+
+	/**
+	 * The names of the classes compiled in all the rounds, whose entries in a previous index are replaced.
+	 */
+	private final Set<String> compiled = new HashSet<String>();
+
+	/**
+	 * The entries of the reflection configuration collected through all the rounds: the reflection flags by class
+	 * name.
+	 */
+	private final Map<String,Set<String>> reflection = new TreeMap<String,Set<String>>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(ManagedResource.class)) {
+			if (element.getKind() == ElementKind.CLASS && isValid((TypeElement) element)) {
+				index( (TypeElement) element );
+				addReflection( (TypeElement) element, true );
+			}
+		}
+
+		for (TypeElement type : ElementFilter.typesIn( roundEnv.getRootElements() )) {
+			addCompiled(type);
+		}
+
+		// the classes that declare annotated elements, the only ones that can have managed members
+		Set<TypeElement> candidates = new LinkedHashSet<TypeElement>();
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				TypeElement type = declaringType(element);
+				if (type != null) {
+					candidates.add(type);
+				}
+			}
+		}
+
+		for (TypeElement type : candidates) {
+			indexClass(type);
+		}
+
+		if (roundEnv.processingOver()) {
+
+			Map<String,List<String>> previousLines = readPreviousIndex();
+			Map<String,Set<String>> previousReflection = readPreviousReflectConfig();
+
+			if (!lines.isEmpty() || !previousLines.isEmpty()) {
+				writeIndex(previousLines);
+				writeReflectConfig(previousReflection);
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Helper method. Checks that the class can be instantiated by the library.
+	 */
+	private boolean isValid(TypeElement type) {
+
+		Set<Modifier> modifiers = type.getModifiers();
+		boolean valid = modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.ABSTRACT)
+				&& (type.getNestingKind() == NestingKind.TOP_LEVEL || modifiers.contains(Modifier.STATIC));
+
+		boolean hasConstructor = false;
+		for (ExecutableElement constructor : ElementFilter.constructorsIn( type.getEnclosedElements() )) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				hasConstructor = true;
+			}
+		}
+
+		if (!valid || !hasConstructor) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Classes annotated with ManagedResource " +
+					"must be public, static if nested and have a public constructor without arguments", type);
+			return false;
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Helper method. Adds the lines of a class to the index.
+	 */
+	private void index(TypeElement type) {
+
+		String name = type.getAnnotation(ManagedResource.class).value();
+
+		List<String> resourceLines = new ArrayList<String>();
+		resourceLines.add( ResourceIndex.RESOURCE + ResourceIndex.SEPARATOR + binaryName(type)
+				+ ResourceIndex.SEPARATOR + name );
+		lines.put(binaryName(type), resourceLines);
+
+		List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(type);
+		for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+
+			if (!method.getModifiers().contains(Modifier.PUBLIC) || !isManaged(method)) {
+				continue;
+			}
+
+			StringBuilder line = new StringBuilder( ResourceIndex.METHOD + ResourceIndex.SEPARATOR );
+			line.append( method.getSimpleName() );
+			for (VariableElement parameter : method.getParameters()) {
+				line.append( ResourceIndex.SEPARATOR ).append( runtimeName(parameter.asType()) );
+			}
+			resourceLines.add( line.toString() );
+
+		}
+
+	}
+
+	/**
+	 * Helper method. Records the name of a compiled class and its nested classes, so their entries in a previous
+	 * index are replaced.
+	 */
+	private void addCompiled(TypeElement type) {
+
+		compiled.add( binaryName(type) );
+
+		for (TypeElement nested : ElementFilter.typesIn( type.getEnclosedElements() )) {
+			addCompiled(nested);
+		}
+
+	}
+
+	/**
+	 * Helper method. Retrieves the class that declares an annotated element: the class itself, the class of a field
+	 * or method, or the class of the method of a parameter.
+	 *
+	 * @return the class or null if the element is not in a class (e.g. it's in an interface).
+	 */
+	private TypeElement declaringType(Element element) {
+
+		Element current = element;
+		while (current != null && !current.getKind().isClass() && !current.getKind().isInterface()) {
+			current = current.getEnclosingElement();
+		}
+
+		return current != null && current.getKind() == ElementKind.CLASS ? (TypeElement) current : null;
+
+	}
+
+	/**
+	 * Helper method. Adds a <code>class</code> line for a class if it has annotated members and it's not annotated
+	 * with {@link ManagedResource}.
+	 */
+	private void indexClass(TypeElement type) {
+
+		if (type.getAnnotation(ManagedResource.class) == null && hasManagedMembers(type)) {
+			lines.put( binaryName(type), Collections.singletonList(ResourceIndex.CLASS + ResourceIndex.SEPARATOR
+					+ binaryName(type)) );
+			addReflection(type, false);
+		}
+
+	}
+
+	/**
+	 * Helper method. Tells if a class has public methods with annotations of the library or fields (declared or
+	 * inherited) that are annotated or whose type is a {@link ManagedComponent}.
+	 */
+	private boolean hasManagedMembers(TypeElement type) {
+
+		for (ExecutableElement method : ElementFilter.methodsIn( processingEnv.getElementUtils().getAllMembers(type) )) {
+			if (method.getModifiers().contains(Modifier.PUBLIC) && isManaged(method)) {
+				return true;
+			}
+		}
+
+		for (TypeElement current = type; current != null; current = superclass(current)) {
+			for (VariableElement field : ElementFilter.fieldsIn( current.getEnclosedElements() )) {
+				if (isManaged(field) || componentType(field) != null) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Helper method. Adds the entries of the reflection configuration of an indexed class: its public methods, the
+	 * fields of the class and its superclasses, the public methods of the components and the snapshot classes and
+	 * the public constructors if it's instantiated by the library.
+	 */
+	private void addReflection(TypeElement type, boolean resource) {
+
+		addReflection( binaryName(type), "allPublicMethods" );
+		if (resource) {
+			addReflection( binaryName(type), "allPublicConstructors" );
+		}
+
+		for (TypeElement current = type; current != null; current = superclass(current)) {
+
+			addReflection( binaryName(current), "allDeclaredFields" );
+
+			for (VariableElement field : ElementFilter.fieldsIn( current.getEnclosedElements() )) {
+				TypeElement componentType = componentType(field);
+				if (componentType != null) {
+					addReflection( binaryName(componentType), "allPublicMethods" );
+				}
+			}
+
+		}
+
+		for (ExecutableElement method : ElementFilter.methodsIn( processingEnv.getElementUtils().getAllMembers(type) )) {
+			if (method.getAnnotation(ManagedSnapshot.class) != null
+					&& method.getReturnType().getKind() == TypeKind.DECLARED) {
+				// the components of a record are found with its fields
+				String snapshotType = binaryName( (TypeElement) ((DeclaredType) method.getReturnType()).asElement() );
+				addReflection( snapshotType, "allPublicMethods" );
+				addReflection( snapshotType, "allDeclaredFields" );
+			}
+		}
+
+	}
+
+	private void addReflection(String className, String flag) {
+
+		Set<String> flags = reflection.get(className);
+		if (flags == null) {
+			flags = new TreeSet<String>();
+			reflection.put(className, flags);
+		}
+
+		flags.add(flag);
+
+	}
+
+	/**
+	 * Helper method. Retrieves the type of a field if it's annotated with {@link ManagedComponent}.
+	 *
+	 * @return the type of the field or null if it's not a component.
+	 */
+	private TypeElement componentType(VariableElement field) {
+
+		if (field.asType().getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+
+		TypeElement fieldType = (TypeElement) ((DeclaredType) field.asType()).asElement();
+		return fieldType.getAnnotation(ManagedComponent.class) != null ? fieldType : null;
+
+	}
+
+	/**
+	 * Helper method. Retrieves the superclass of a class, null if it's <code>java.lang.Object</code>.
+	 */
+	private TypeElement superclass(TypeElement type) {
+
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+
+		TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+		return Object.class.getName().equals( element.getQualifiedName().toString() ) ? null : element;
+
+	}
+
+	/**
+	 * Helper method. Tells if the method or field has any of the annotations of the library.
+	 */
+	private boolean isManaged(Element element) {
+
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			Element annotationType = annotation.getAnnotationType().asElement();
+			String packageName = processingEnv.getElementUtils().getPackageOf(annotationType).getQualifiedName()
+					.toString();
+			if (ANNOTATIONS_PACKAGE.equals(packageName)) {
+				return true;
+			}
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Helper method. Reads the index generated by a previous compilation (if any) keeping the lines of the classes
+	 * that were not compiled again and still exist.
+	 *
+	 * @return the lines of the previous index by class name, empty if there is no previous index.
+	 */
+	private Map<String,List<String>> readPreviousIndex() {
+
+		Map<String,List<String>> previousLines = new LinkedHashMap<String,List<String>>();
+
+		List<String> classLines = null;
+		for (String line : readPreviousResource(ResourceIndex.INDEX_RESOURCE)) {
+
+			String[] values = line.split(ResourceIndex.SEPARATOR);
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			} else if (ResourceIndex.METHOD.equals(values[0])) {
+				if (classLines != null) {
+					classLines.add(line);
+				}
+				continue;
+			}
+
+			// a resource or class line, followed by the method lines of a resource
+			classLines = null;
+			if (values.length > 1 && isPreviousClass(values[1])) {
+				classLines = new ArrayList<String>();
+				classLines.add(line);
+				previousLines.put(values[1], classLines);
+			}
+
+		}
+
+		return previousLines;
+
+	}
+
+	/**
+	 * Helper method. Reads the reflection configuration generated by a previous compilation (if any) keeping the
+	 * entries of the classes that still exist. Each entry was written in its own line by
+	 * {@link #writeReflectConfig(Map)}.
+	 *
+	 * @return the reflection flags by class name, empty if there is no previous configuration.
+	 */
+	private Map<String,Set<String>> readPreviousReflectConfig() {
+
+		Map<String,Set<String>> previousReflection = new TreeMap<String,Set<String>>();
+
+		for (String line : readPreviousResource(REFLECT_CONFIG)) {
+
+			Matcher matcher = REFLECT_ENTRY.matcher(line);
+			if (!matcher.find() || !exists(matcher.group(1))) {
+				continue;
+			}
+
+			Set<String> flags = new TreeSet<String>();
+			Matcher flagMatcher = REFLECT_FLAG.matcher( line.substring(matcher.end()) );
+			while (flagMatcher.find()) {
+				flags.add( flagMatcher.group(1) );
+			}
+			previousReflection.put(matcher.group(1), flags);
+
+		}
+
+		return previousReflection;
+
+	}
+
+	/**
+	 * Helper method. Reads the lines of a resource generated by a previous compilation.
+	 *
+	 * @return the lines of the resource, empty if it doesn't exist.
+	 */
+	private List<String> readPreviousResource(String resource) {
+
+		List<String> resourceLines = new ArrayList<String>();
+
+		try {
+
+			FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", resource);
+			BufferedReader reader = new BufferedReader( new InputStreamReader(file.openInputStream(), "UTF-8") );
+			try {
+				String line;
+				while ( (line = reader.readLine()) != null ) {
+					resourceLines.add(line);
+				}
+			} finally {
+				reader.close();
+			}
+
+		} catch (IOException e) {
+			// there is no previous resource (e.g. a clean build)
+		} catch (IllegalArgumentException e) {
+			// the location is not supported by the compiler
+		}
+
+		return resourceLines;
+
+	}
+
+	/**
+	 * Helper method. Tells if the entries of a class in a previous resource are kept: it was not compiled again
+	 * and it still exists.
+	 */
+	private boolean isPreviousClass(String className) {
+		return !compiled.contains(className) && exists(className);
+	}
+
+	/**
+	 * Helper method. Tells if a class (by binary name) can be found by the compiler.
+	 */
+	private boolean exists(String className) {
+		return processingEnv.getElementUtils().getTypeElement( className.replace('$', '.') ) != null;
+	}
+
+	private void writeIndex(Map<String,List<String>> previousLines) {
+
+		Map<String,List<String>> allLines = new LinkedHashMap<String,List<String>>(previousLines);
+		allLines.putAll(lines);
+
+		try {
+
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					ResourceIndex.INDEX_RESOURCE);
+			Writer writer = new OutputStreamWriter(file.openOutputStream(), "UTF-8");
+			try {
+				writer.write("# Generated by " + getClass().getName() + ", do not edit\n");
+				for (List<String> classLines : allLines.values()) {
+					for (String line : classLines) {
+						writer.write(line);
+						writer.write('\n');
+					}
+				}
+			} finally {
+				writer.close();
+			}
+
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " +
+					ResourceIndex.INDEX_RESOURCE + ": " + e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Helper method. Writes the reflection configuration in the format of the <code>reflect-config.json</code> files
+	 * of GraalVM, with the entries of a previous configuration.
+	 */
+	private void writeReflectConfig(Map<String,Set<String>> previousReflection) {
+
+		for (Map.Entry<String,Set<String>> entry : previousReflection.entrySet()) {
+			for (String flag : entry.getValue()) {
+				addReflection(entry.getKey(), flag);
+			}
+		}
+
+		try {
+
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					REFLECT_CONFIG);
+			Writer writer = new OutputStreamWriter(file.openOutputStream(), "UTF-8");
+			try {
+
+				writer.write("[");
+				String separator = "\n";
+				for (Map.Entry<String,Set<String>> entry : reflection.entrySet()) {
+
+					writer.write(separator + "  { \"name\": \"" + entry.getKey() + "\"");
+					for (String flag : entry.getValue()) {
+						writer.write(", \"" + flag + "\": true");
+					}
+					writer.write(" }");
+
+					separator = ",\n";
+
+				}
+				writer.write("\n]\n");
+
+			} finally {
+				writer.close();
+			}
+
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + REFLECT_CONFIG + ": " +
+					e.getMessage());
+		}
+
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	/**
+	 * Helper method. Retrieves the name of a type as returned by <code>Class.getName()</code> so it can be loaded
+	 * at runtime.
+	 */
+	private String runtimeName(TypeMirror type) {
+
+		TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+		switch (erasure.getKind()) {
+			case ARRAY:
+				return descriptor(erasure);
+			case DECLARED:
+				return binaryName( (TypeElement) ((DeclaredType) erasure).asElement() );
+			default:
+				return erasure.toString(); // primitives
+		}
+
+	}
+
+	/**
+	 * Helper method. Retrieves the JVM descriptor of a type (used for the names of array classes).
+	 */
+	private String descriptor(TypeMirror type) {
+
+		switch (type.getKind()) {
+			case BOOLEAN: return "Z";
+			case BYTE: return "B";
+			case CHAR: return "C";
+			case SHORT: return "S";
+			case INT: return "I";
+			case LONG: return "J";
+			case FLOAT: return "F";
+			case DOUBLE: return "D";
+			case ARRAY: return "[" + descriptor( ((ArrayType) type).getComponentType() );
+			default: return "L" + runtimeName(type) + ";";
+		}
+
+	}
+
+}
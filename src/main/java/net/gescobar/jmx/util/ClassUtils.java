@@ -0,0 +1,70 @@
+package net.gescobar.jmx.util;
+
+public class ClassUtils {
+	
+	/**
+	 * The primitive classes.
+	 */
+	private static final Class<?>[] PRIMITIVES = { Integer.TYPE, Long.TYPE, Boolean.TYPE, Double.TYPE, Float.TYPE, 
+		Short.TYPE, Byte.TYPE, Character.TYPE, Void.TYPE };
+	
+	/**
+	 * Hide public constructor.
+	 */
+	private ClassUtils() {}
+	
+	/**
+	 * Helper method. Finds the primitive class with the specified name.
+	 * 
+	 * @param name the name of the primitive class (e.g. "int").
+	 * 
+	 * @return the primitive class or null if the name is not the name of a primitive class.
+	 */
+	public static Class<?> primitiveClass(String name) {
+		
+		for (Class<?> primitive : PRIMITIVES) {
+			if (primitive.getName().equals(name)) {
+				return primitive;
+			}
+		}
+		
+		return null;
+		
+	}
+	
+	/**
+	 * Helper method. Returns the wrapper class of a primitive class.
+	 * 
+	 * @param type the primitive class for which we are looking the wrapper.
+	 * 
+	 * @return the wrapper class of the primitive or the same class if not a primitive.
+	 */
+	public static Class<?> wrapperClass(Class<?> type) {
+		
+		if (!type.isPrimitive()) {
+			return type;
+		}
+		
+		if (type.equals(Integer.TYPE)) {
+			return Integer.class;
+		} else if (type.equals(Byte.TYPE)) {
+			return Byte.class;
+		} else if (type.equals(Short.TYPE)) {
+			return Short.class;
+		} else if (type.equals(Long.TYPE)) {
+			return Long.class;
+		} else if (type.equals(Float.TYPE)) {
+			return Float.class;
+		} else if (type.equals(Double.TYPE)) {
+			return Double.class;
+		} else if (type.equals(Boolean.TYPE)) {
+			return Boolean.class;
+		} else if (type.equals(Character.TYPE)) {
+			return Character.class;
+		}
+		
+		return Void.class;
+		
+	}
+	
+}
@@ -0,0 +1,353 @@
+package net.gescobar.jmx.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * <p>Encodes and decodes the values of the attributes of many MBeans in a compact binary format, used by the
+ * <code>snapshot</code> operation of the <code>net.gescobar.jmx:type=Snapshot</code> MBean so that a collector
+ * reads all the numbers of a JVM in one call.</p>
+ *
+ * <p>The format starts with a header that has the token of the snapshot (see {@link #token(byte[])}) and lists
+ * every string once (MBean names, attribute names and string values),
+ * followed by the MBeans: the index of the name in the header, the number of attributes and, for each attribute,
+ * the index of its name, the type and the value. Integer values are written as zig-zag variable-length longs (one
+ * byte for small values), other numbers as 8 byte doubles and booleans as one byte. Other values (and strings
+ * longer than {@link #MAX_STRING_LENGTH}) are left out.</p>
+ *
+ * @author German Escobar
+ */
+public final class SnapshotCodec {
+
+	/**
+	 * The first byte of the encoded snapshots, followed by the version of the format.
+	 */
+	private static final byte MAGIC = 'S';
+
+	private static final byte VERSION = 1;
+
+	private static final byte LONG = 'J';
+
+	private static final byte DOUBLE = 'D';
+
+	private static final byte BOOLEAN = 'Z';
+
+	private static final byte STRING = 'S';
+
+	/**
+	 * Longer string values are left out.
+	 */
+	public static final int MAX_STRING_LENGTH = 1024;
+
+	/**
+	 * The classes (other than primitives) whose values are encoded.
+	 */
+	private static final Class<?>[] ENCODED_TYPES = { String.class, Boolean.class, Long.class, Integer.class,
+		Short.class, Byte.class, Double.class, Float.class };
+
+	/**
+	 * Hide public constructor.
+	 */
+	private SnapshotCodec() {}
+
+	/**
+	 * Helper method. Checks if the values of an attribute type are encoded.
+	 *
+	 * @param type the name of the attribute type (as in <code>MBeanAttributeInfo.getType()</code>).
+	 *
+	 * @return true if the values are numbers, booleans or strings, false otherwise.
+	 */
+	public static boolean isEncoded(String type) {
+
+		Class<?> primitive = ClassUtils.primitiveClass(type);
+		if (primitive != null) {
+			return primitive != Character.TYPE && primitive != Void.TYPE;
+		}
+
+		for (Class<?> encoded : ENCODED_TYPES) {
+			if (encoded.getName().equals(type)) {
+				return true;
+			}
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Encodes the values of the attributes of many MBeans. Values that are not numbers, booleans or strings (e.g.
+	 * null) and long strings are left out.
+	 *
+	 * @param values the attributes by MBean name.
+	 * @param token identifies the state of the values, used to retrieve the changes since the snapshot.
+	 *
+	 * @return the encoded values.
+	 */
+	public static byte[] encode(Map<ObjectName,AttributeList> values, long token) {
+
+		try {
+
+			Map<String,Integer> strings = new LinkedHashMap<String,Integer>();
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(body);
+
+			writeVarLong(out, values.size());
+			for (Map.Entry<ObjectName,AttributeList> mBean : values.entrySet()) {
+
+				List<Attribute> attributes = new ArrayList<Attribute>();
+				for (Object attribute : mBean.getValue()) {
+					Object value = ((Attribute) attribute).getValue();
+					if (value instanceof Number || value instanceof Boolean
+							|| value instanceof String && ((String) value).length() <= MAX_STRING_LENGTH) {
+						attributes.add( (Attribute) attribute );
+					}
+				}
+
+				writeVarLong(out, index(strings, mBean.getKey().getCanonicalName()));
+				writeVarLong(out, attributes.size());
+				for (Attribute attribute : attributes) {
+					writeVarLong(out, index(strings, attribute.getName()));
+					writeValue(out, strings, attribute.getValue());
+				}
+
+			}
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.size() + strings.size() * 16 + 8);
+			DataOutputStream header = new DataOutputStream(bytes);
+
+			header.writeByte(MAGIC);
+			header.writeByte(VERSION);
+			header.writeLong(token);
+			writeVarLong(header, strings.size());
+			for (String string : strings.keySet()) {
+				header.writeUTF(string);
+			}
+			body.writeTo(header);
+			header.flush();
+
+			return bytes.toByteArray();
+
+		} catch (IOException e) {
+			// we are writing to memory
+			throw new IllegalStateException(e);
+		}
+
+	}
+
+	/**
+	 * Decodes the values of the attributes of many MBeans encoded with {@link #encode(Map, long)}. Integer values are
+	 * decoded as <code>Long</code> and other numbers as <code>Double</code>.
+	 *
+	 * @param snapshot the encoded values.
+	 *
+	 * @return the values of the attributes (by attribute name) by MBean name, in the order in which they were
+	 * encoded.
+	 * @throws IllegalArgumentException if the bytes are not a valid snapshot.
+	 */
+	public static Map<ObjectName,Map<String,Object>> decode(byte[] snapshot) throws IllegalArgumentException {
+
+		if (snapshot == null) {
+			throw new IllegalArgumentException("No snapshot specified.");
+		}
+
+		try {
+
+			DataInputStream in = open(snapshot);
+			in.readLong();
+
+			String[] strings = new String[ readLength(in) ];
+			for (int i=0; i < strings.length; i++) {
+				strings[i] = in.readUTF();
+			}
+
+			Map<ObjectName,Map<String,Object>> values = new LinkedHashMap<ObjectName,Map<String,Object>>();
+
+			int mBeans = readLength(in);
+			for (int i=0; i < mBeans; i++) {
+
+				ObjectName name = new ObjectName( string(strings, readLength(in)) );
+
+				int attributes = readLength(in);
+				Map<String,Object> mBeanValues = new LinkedHashMap<String,Object>();
+				for (int j=0; j < attributes; j++) {
+					String attribute = string(strings, readLength(in));
+					mBeanValues.put( attribute, readValue(in, strings) );
+				}
+
+				values.put(name, mBeanValues);
+
+			}
+
+			return values;
+
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid snapshot: " + e.getMessage(), e);
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException("Invalid snapshot: " + e.getMessage(), e);
+		}
+
+	}
+
+	/**
+	 * Retrieves the token of an encoded snapshot, which is passed to the <code>changesSince</code> operation of the
+	 * <code>net.gescobar.jmx:type=Snapshot</code> MBean to retrieve only the values that changed after the snapshot.
+	 *
+	 * @param snapshot the encoded values.
+	 *
+	 * @return the token of the snapshot.
+	 * @throws IllegalArgumentException if the bytes are not a valid snapshot.
+	 */
+	public static long token(byte[] snapshot) throws IllegalArgumentException {
+
+		if (snapshot == null) {
+			throw new IllegalArgumentException("No snapshot specified.");
+		}
+
+		try {
+			return open(snapshot).readLong();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid snapshot: " + e.getMessage(), e);
+		}
+
+	}
+
+	/**
+	 * Helper method. Opens an encoded snapshot and checks the magic byte and the version of the format.
+	 */
+	private static DataInputStream open(byte[] snapshot) throws IOException {
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream(snapshot) );
+		if (in.readByte() != MAGIC || in.readByte() != VERSION) {
+			throw new IllegalArgumentException("Not a snapshot or unsupported version.");
+		}
+
+		return in;
+
+	}
+
+	/**
+	 * Helper method. Retrieves the index of a string in the header, adding it if it's not there yet.
+	 */
+	private static int index(Map<String,Integer> strings, String string) {
+
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.put(string, index);
+		}
+
+		return index;
+
+	}
+
+	private static String string(String[] strings, int index) throws IOException {
+
+		if (index >= strings.length) {
+			throw new IOException("Invalid string index: " + index);
+		}
+
+		return strings[index];
+
+	}
+
+	/**
+	 * Helper method. Writes the type and the value of an attribute.
+	 */
+	private static void writeValue(DataOutputStream out, Map<String,Integer> strings, Object value)
+			throws IOException {
+
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			// zig-zag encoding so small negative numbers also take few bytes
+			long longValue = ((Number) value).longValue();
+			out.writeByte(LONG);
+			writeVarLong(out, (longValue << 1) ^ (longValue >> 63));
+		} else if (value instanceof Number) {
+			out.writeByte(DOUBLE);
+			out.writeDouble( ((Number) value).doubleValue() );
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean( (Boolean) value );
+		} else {
+			out.writeByte(STRING);
+			writeVarLong(out, index(strings, (String) value));
+		}
+
+	}
+
+	/**
+	 * Helper method. Reads the type and the value of an attribute.
+	 */
+	private static Object readValue(DataInputStream in, String[] strings) throws IOException {
+
+		byte type = in.readByte();
+		if (type == LONG) {
+			long zigZag = readVarLong(in);
+			return (zigZag >>> 1) ^ -(zigZag & 1);
+		} else if (type == DOUBLE) {
+			return in.readDouble();
+		} else if (type == BOOLEAN) {
+			return in.readBoolean();
+		} else if (type == STRING) {
+			return string(strings, readLength(in));
+		}
+
+		throw new IOException("Unknown type: " + type);
+
+	}
+
+	/**
+	 * Helper method. Writes an unsigned long using 7 bits of each byte, the highest bit tells if more bytes follow.
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+
+		while ( (value & ~0x7FL) != 0 ) {
+			out.writeByte( (int) ((value & 0x7F) | 0x80) );
+			value >>>= 7;
+		}
+		out.writeByte( (int) value );
+
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+
+		long value = 0;
+		for (int shift=0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ( (b & 0x80) == 0 ) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed variable-length number.");
+
+	}
+
+	/**
+	 * Helper method. Reads a count or an index, which must fit in an int.
+	 */
+	private static int readLength(DataInputStream in) throws IOException {
+
+		long length = readVarLong(in);
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			throw new IOException("Invalid length: " + length);
+		}
+
+		return (int) length;
+
+	}
+
+}
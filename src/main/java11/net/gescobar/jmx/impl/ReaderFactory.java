@@ -0,0 +1,123 @@
+package net.gescobar.jmx.impl;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Creates the readers of the getters that return primitive numbers (see {@link LongReader} and
+ * {@link DoubleReader}). This is the Java 11 version of the class: the readers are created with
+ * <code>LambdaMetafactory</code>, as the JDK does for lambdas, so no class files or class loaders of our own are
+ * needed and the getters don't need to be public.</p>
+ *
+ * <p>The readers are defined in the class that declares the getter (through a private lookup) and they are cached in
+ * a <code>ClassValue</code> of that class, so they are unloaded with it. If a private lookup is not allowed (e.g. the
+ * package belongs to a named module that is not open), the reader is generated by {@link ReaderGenerator}.</p>
+ *
+ * @author German Escobar
+ */
+final class ReaderFactory {
+
+	/**
+	 * The readers by getter name and reader type of each class.
+	 */
+	private static final ClassValue<Map<String,Object>> READERS = new ClassValue<Map<String,Object>>() {
+
+		@Override
+		protected Map<String,Object> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String,Object>();
+		}
+
+	};
+
+	/**
+	 * Hide public constructor.
+	 */
+	private ReaderFactory() {}
+
+	/**
+	 * @param getter the getter of an attribute.
+	 *
+	 * @return a reader that calls the getter or null if the getter doesn't return a primitive integer or the reader
+	 * 		cannot be created.
+	 */
+	public static LongReader longReader(Method getter) {
+
+		Class<?> type = getter.getReturnType();
+		if (type != Long.TYPE && type != Integer.TYPE && type != Short.TYPE && type != Byte.TYPE) {
+			return null;
+		}
+
+		if (ReaderGenerator.inNativeImage()) {
+			return null;
+		}
+
+		LongReader reader = (LongReader) reader(getter, LongReader.class, Long.TYPE);
+		return reader != null ? reader : ReaderGenerator.longReader(getter);
+
+	}
+
+	/**
+	 * @param getter the getter of an attribute.
+	 *
+	 * @return a reader that calls the getter or null if the getter doesn't return a <code>double</code> or
+	 * 		<code>float</code> or the reader cannot be created.
+	 */
+	public static DoubleReader doubleReader(Method getter) {
+
+		Class<?> type = getter.getReturnType();
+		if (type != Double.TYPE && type != Float.TYPE) {
+			return null;
+		}
+
+		if (ReaderGenerator.inNativeImage()) {
+			return null;
+		}
+
+		DoubleReader reader = (DoubleReader) reader(getter, DoubleReader.class, Double.TYPE);
+		return reader != null ? reader : ReaderGenerator.doubleReader(getter);
+
+	}
+
+	/**
+	 * Helper method. Finds the reader of a getter in the cache or creates it.
+	 *
+	 * @return the reader or null if it cannot be created.
+	 */
+	private static Object reader(Method getter, Class<?> readerType, Class<?> valueType) {
+
+		Class<?> owner = getter.getDeclaringClass();
+		Map<String,Object> readers = READERS.get(owner);
+
+		// getters have no parameters, so the name is enough
+		String key = getter.getName() + ":" + readerType.getName();
+		Object reader = readers.get(key);
+		if (reader != null) {
+			return reader;
+		}
+
+		try {
+
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn( owner, MethodHandles.lookup() );
+			MethodHandle target = lookup.unreflect(getter);
+
+			// read(Object) casts the object to the owner and widens the value (e.g. int to long)
+			CallSite callSite = LambdaMetafactory.metafactory( lookup, "read", MethodType.methodType(readerType),
+					MethodType.methodType(valueType, Object.class), target, MethodType.methodType(valueType, owner) );
+			reader = callSite.getTarget().invoke();
+
+		} catch (Throwable e) {
+			return null;
+		}
+
+		Object existing = readers.putIfAbsent(key, reader);
+		return existing != null ? existing : reader;
+
+	}
+
+}
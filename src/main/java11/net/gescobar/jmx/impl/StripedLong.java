@@ -0,0 +1,35 @@
+package net.gescobar.jmx.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that is updated by many threads. This is the Java 11 version of the class, backed by a
+ * <code>LongAdder</code>, which also adds cells only when threads contend but rehashes a contending thread to another
+ * cell instead of relying on the id of the thread.
+ *
+ * @author German Escobar
+ */
+final class StripedLong {
+
+	private final LongAdder adder = new LongAdder();
+
+	public void add(long value) {
+		adder.add(value);
+	}
+
+	public void increment() {
+		adder.increment();
+	}
+
+	/**
+	 * @return the sum of the cells. It's not an atomic snapshot if there are concurrent updates.
+	 */
+	public long sum() {
+		return adder.sum();
+	}
+
+	public void reset() {
+		adder.reset();
+	}
+
+}
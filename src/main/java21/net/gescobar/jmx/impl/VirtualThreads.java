@@ -0,0 +1,26 @@
+package net.gescobar.jmx.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors of virtual threads. This is the Java 21 version of the class, which calls the API directly
+ * instead of finding it with reflection.
+ *
+ * @author German Escobar
+ */
+final class VirtualThreads {
+
+	/**
+	 * Hide public constructor.
+	 */
+	private VirtualThreads() {}
+
+	/**
+	 * @return an executor that starts a virtual thread for each task.
+	 */
+	public static ExecutorService newExecutor() {
+		return Executors.newVirtualThreadPerTaskExecutor();
+	}
+
+}
@@ -16,7 +16,7 @@ public class AnnotatedCounter {
 	}
 	
 	@ManagedOperation(impact=Impact.ACTION)
-	public boolean addCounter(int value) {
+	public boolean addCounter(@Description("value") int value) {
 		counter += value;
 		return true;
 	}
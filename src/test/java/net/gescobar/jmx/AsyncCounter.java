@@ -0,0 +1,25 @@
+package net.gescobar.jmx;
+
+import java.util.concurrent.CountDownLatch;
+
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+public class AsyncCounter {
+	
+	private final CountDownLatch latch = new CountDownLatch(1);
+	
+	@ManagedOperation(async=true)
+	public int count(int times) throws InterruptedException {
+		
+		JobProgress.update(50);
+		latch.await();
+		
+		return times * 2;
+		
+	}
+	
+	public void release() {
+		latch.countDown();
+	}
+
+}
@@ -0,0 +1,13 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+public class BlockingCounter {
+	
+	@ManagedOperation(impact=Impact.ACTION)
+	public void block(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+
+}
@@ -0,0 +1,13 @@
+package net.gescobar.jmx;
+
+public interface CounterClient {
+	
+	int getCounter();
+	
+	void setCounter(int counter);
+	
+	boolean addCounter(Integer value);
+	
+	void resetCounter();
+
+}
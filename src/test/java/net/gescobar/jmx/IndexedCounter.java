@@ -0,0 +1,14 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.ManagedResource;
+
+@ManagedResource("org.test:type=IndexedCounter")
+public class IndexedCounter extends AnnotatedCounter {
+
+	@ManagedOperation
+	public void decrementCounter() {
+		setCounter( getCounter() - 1 );
+	}
+	
+}
@@ -0,0 +1,13 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.metrics.QuantileSketch;
+
+public class LatencyCounter {
+	
+	private final QuantileSketch latency = new QuantileSketch();
+	
+	public void request(double millis) {
+		latency.record(millis);
+	}
+
+}
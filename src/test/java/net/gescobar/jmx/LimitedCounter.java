@@ -0,0 +1,20 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+public class LimitedCounter {
+	
+	private int counter;
+	
+	@ManagedAttribute(maxRate=1)
+	public int getCounter() {
+		return counter;
+	}
+	
+	@ManagedOperation
+	public void incrementCounter() {
+		counter++;
+	}
+
+}
@@ -0,0 +1,43 @@
+package net.gescobar.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.gescobar.jmx.annotation.Impact;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+public class LoadCounter {
+
+	private final AtomicLong counter = new AtomicLong();
+
+	private final String name;
+
+	public LoadCounter(String name) {
+		this.name = name;
+	}
+
+	@ManagedAttribute
+	public long getCounter() {
+		return counter.get();
+	}
+
+	public void setCounter(long counter) {
+		this.counter.set(counter);
+	}
+
+	@ManagedAttribute
+	public double getLoad() {
+		return counter.get() / 1000.0;
+	}
+
+	@ManagedAttribute
+	public String getName() {
+		return name;
+	}
+
+	@ManagedOperation(impact=Impact.ACTION)
+	public long add(long value) {
+		return counter.addAndGet(value);
+	}
+
+}
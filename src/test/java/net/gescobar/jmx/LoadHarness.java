@@ -0,0 +1,425 @@
+package net.gescobar.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import com.sun.management.ThreadMXBean;
+
+import net.gescobar.jmx.metrics.QuantileSketch;
+
+/**
+ * <p>Drives concurrent JMX traffic through a real connector: it registers <code>mBeans</code> {@link LoadCounter}
+ * objects with {@link Management#register(Object, String)}, starts an RMI <code>JMXConnectorServer</code> on
+ * loopback and runs <code>clients</code> threads, each with its own connection, doing a mix of
+ * <code>getAttribute</code> (40%), <code>getAttributes</code> (20%), <code>setAttribute</code> (20%) and
+ * <code>invoke</code> (20%) calls on random MBeans.</p>
+ *
+ * <p>It reports the time spent registering the MBeans, the throughput, the latency percentiles seen by the clients
+ * and the bytes allocated by the threads of the connector server (the <code>RMI TCP Connection</code> threads, which
+ * run the MBeans), so scaling problems show up as the number of MBeans or clients grows. Run it with:</p>
+ *
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes net.gescobar.jmx.LoadHarness [mBeans] [clients] [seconds]
+ * </pre>
+ *
+ * <p>where <code>mBeans</code> and <code>clients</code> are comma separated lists (e.g. <code>10,1000 1,4,16</code>);
+ * every combination is run.</p>
+ *
+ * @author German Escobar
+ */
+public class LoadHarness {
+
+	private static final String DOMAIN = "org.test.load";
+
+	private static final String[] ATTRIBUTES = { "counter", "load", "name" };
+
+	private static final int WARMUP = 0;
+
+	private static final int MEASURE = 1;
+
+	private static final int STOP = 2;
+
+	private final int mBeans;
+
+	private final int clients;
+
+	/**
+	 * The phase of the run, read by the clients.
+	 */
+	private volatile int phase;
+
+	public LoadHarness(int mBeans, int clients) {
+
+		if (mBeans <= 0 || clients <= 0) {
+			throw new IllegalArgumentException("The number of MBeans and clients must be positive.");
+		}
+
+		this.mBeans = mBeans;
+		this.clients = clients;
+
+	}
+
+	/**
+	 * Registers the MBeans, runs the clients and unregisters the MBeans.
+	 *
+	 * @param warmupMillis the time that the clients run before measuring.
+	 * @param durationMillis the time that the clients are measured.
+	 *
+	 * @return the results of the run.
+	 * @throws Exception if the MBeans cannot be registered or the connector cannot be started.
+	 */
+	public Result run(long warmupMillis, long durationMillis) throws Exception {
+
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+		ObjectName[] names = new ObjectName[mBeans];
+		long registrationStart = System.nanoTime();
+		for (int i=0; i < mBeans; i++) {
+			String name = DOMAIN + ":type=LoadCounter,name=counter" + i;
+			Management.register( new LoadCounter("counter" + i), name );
+			names[i] = new ObjectName(name);
+		}
+		long registrationNanos = System.nanoTime() - registrationStart;
+
+		JMXConnectorServer server = JMXConnectorServerFactory.newJMXConnectorServer(
+				new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, mBeanServer);
+		server.start();
+
+		try {
+
+			phase = WARMUP;
+
+			CountDownLatch ready = new CountDownLatch(clients);
+			Client[] workers = new Client[clients];
+			for (int i=0; i < clients; i++) {
+				workers[i] = new Client( i, JMXConnectorFactory.connect(server.getAddress()), names, ready );
+				workers[i].start();
+			}
+
+			ready.await();
+			Thread.sleep(warmupMillis);
+
+			Map<Long,Long> allocatedBefore = serverAllocatedBytes();
+			long start = System.nanoTime();
+			phase = MEASURE;
+
+			Thread.sleep(durationMillis);
+
+			phase = STOP;
+			long durationNanos = System.nanoTime() - start;
+			Map<Long,Long> allocatedAfter = serverAllocatedBytes();
+
+			Result result = new Result(mBeans, clients, registrationNanos, durationNanos,
+					allocated(allocatedBefore, allocatedAfter));
+			for (Client worker : workers) {
+				worker.join();
+				result.add(worker);
+			}
+
+			return result;
+
+		} finally {
+
+			phase = STOP;
+			server.stop();
+
+			for (ObjectName name : names) {
+				if (name != null) {
+					Management.unregister( name.toString() );
+				}
+			}
+
+		}
+
+	}
+
+	/**
+	 * Helper method. Retrieves the bytes allocated by each thread of the connector server.
+	 *
+	 * @return the allocated bytes by thread id or null if the JVM doesn't measure them.
+	 */
+	private Map<Long,Long> serverAllocatedBytes() {
+
+		if (!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean)) {
+			return null;
+		}
+
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			return null;
+		}
+
+		Map<Long,Long> allocated = new HashMap<Long,Long>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("RMI TCP Connection")) {
+				long bytes = threads.getThreadAllocatedBytes( thread.getId() );
+				if (bytes >= 0) {
+					allocated.put( thread.getId(), bytes );
+				}
+			}
+		}
+
+		return allocated;
+
+	}
+
+	/**
+	 * Helper method. Sums what each thread allocated between the two measures, the threads that were created in
+	 * between count since they started (the ones that finished are lost).
+	 *
+	 * @return the allocated bytes or -1 if the JVM doesn't measure them.
+	 */
+	private long allocated(Map<Long,Long> before, Map<Long,Long> after) {
+
+		if (before == null || after == null) {
+			return -1;
+		}
+
+		long allocated = 0;
+		for (Map.Entry<Long,Long> entry : after.entrySet()) {
+			Long previous = before.get( entry.getKey() );
+			allocated += entry.getValue() - (previous != null ? previous : 0);
+		}
+
+		return allocated;
+
+	}
+
+	/**
+	 * A client that sends random calls through its own connection until the run stops.
+	 */
+	private class Client extends Thread {
+
+		private final JMXConnector connector;
+
+		private final ObjectName[] names;
+
+		private final CountDownLatch ready;
+
+		private final Random random;
+
+		/**
+		 * The latencies of the measured calls in microseconds.
+		 */
+		private final QuantileSketch latencies = new QuantileSketch();
+
+		private long operations;
+
+		private long errors;
+
+		private Exception firstError;
+
+		public Client(int id, JMXConnector connector, ObjectName[] names, CountDownLatch ready) {
+			super("load-client-" + id);
+			this.connector = connector;
+			this.names = names;
+			this.ready = ready;
+			this.random = new Random(id);
+		}
+
+		@Override
+		public void run() {
+
+			try {
+
+				MBeanServerConnection connection = connector.getMBeanServerConnection();
+				ready.countDown();
+
+				int current;
+				while ( (current = phase) != STOP ) {
+
+					long start = System.nanoTime();
+					boolean failed = false;
+					try {
+						call(connection);
+					} catch (Exception e) {
+						failed = true;
+						if (firstError == null && current == MEASURE) {
+							firstError = e;
+						}
+					}
+
+					if (current == MEASURE) {
+						operations++;
+						if (failed) {
+							errors++;
+						} else {
+							latencies.record( (System.nanoTime() - start) / 1000.0 );
+						}
+					}
+
+				}
+
+			} catch (Exception e) {
+				firstError = e;
+				ready.countDown();
+			} finally {
+				try {
+					connector.close();
+				} catch (Exception e) {}
+			}
+
+		}
+
+		/**
+		 * Helper method. Sends one call to a random MBean.
+		 */
+		private void call(MBeanServerConnection connection) throws Exception {
+
+			ObjectName name = names[ random.nextInt(names.length) ];
+			int kind = random.nextInt(10);
+
+			if (kind < 4) {
+				connection.getAttribute( name, ATTRIBUTES[random.nextInt(ATTRIBUTES.length)] );
+			} else if (kind < 6) {
+				connection.getAttributes(name, ATTRIBUTES);
+			} else if (kind < 8) {
+				connection.setAttribute( name, new Attribute("counter", (long) random.nextInt(1000)) );
+			} else {
+				connection.invoke( name, "add", new Object[] { 1L }, new String[] { "long" } );
+			}
+
+		}
+
+	}
+
+	/**
+	 * The results of a run.
+	 */
+	public static class Result {
+
+		private final int mBeans;
+
+		private final int clients;
+
+		private final long registrationNanos;
+
+		private final long durationNanos;
+
+		private final long allocatedBytes;
+
+		private final QuantileSketch latencies = new QuantileSketch();
+
+		private long operations;
+
+		private long errors;
+
+		private Exception firstError;
+
+		private Result(int mBeans, int clients, long registrationNanos, long durationNanos, long allocatedBytes) {
+			this.mBeans = mBeans;
+			this.clients = clients;
+			this.registrationNanos = registrationNanos;
+			this.durationNanos = durationNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		private void add(Client client) {
+
+			latencies.merge(client.latencies);
+			operations += client.operations;
+			errors += client.errors;
+			if (firstError == null) {
+				firstError = client.firstError;
+			}
+
+		}
+
+		public long getOperations() {
+			return operations;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return the first error of a client, null if there were no errors.
+		 */
+		public Exception getFirstError() {
+			return firstError;
+		}
+
+		/**
+		 * @return the calls per second.
+		 */
+		public double getThroughput() {
+			return operations * 1000000000.0 / durationNanos;
+		}
+
+		/**
+		 * @param quantile a number between 0 and 1 (e.g. 0.99).
+		 *
+		 * @return the latency of the calls at that quantile in microseconds.
+		 */
+		public double getLatency(double quantile) {
+			return latencies.quantile(quantile);
+		}
+
+		/**
+		 * @return the bytes allocated by the connector server per call or -1 if the JVM doesn't measure them.
+		 */
+		public double getAllocatedBytesPerOperation() {
+			return allocatedBytes < 0 || operations == 0 ? -1 : (double) allocatedBytes / operations;
+		}
+
+		/**
+		 * @return the megabytes per second allocated by the connector server or -1 if the JVM doesn't measure them.
+		 */
+		public double getAllocationRate() {
+			return allocatedBytes < 0 ? -1 : allocatedBytes * 1000000000.0 / durationNanos / (1024 * 1024);
+		}
+
+		/**
+		 * @return the milliseconds spent registering the MBeans.
+		 */
+		public double getRegistrationMillis() {
+			return registrationNanos / 1000000.0;
+		}
+
+		public static String header() {
+			return String.format("%8s %8s %10s %12s %10s %10s %10s %10s %12s %10s %8s", "mbeans", "clients",
+					"reg (ms)", "ops/s", "p50 (us)", "p90 (us)", "p99 (us)", "p999 (us)", "alloc B/op", "alloc MB/s",
+					"errors");
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%8d %8d %10.1f %12.0f %10.0f %10.0f %10.0f %10.0f %12.0f %10.1f %8d", mBeans, clients,
+					getRegistrationMillis(), getThroughput(), getLatency(0.5), getLatency(0.9), getLatency(0.99),
+					getLatency(0.999), getAllocatedBytesPerOperation(), getAllocationRate(), errors);
+		}
+
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String[] mBeans = (args.length > 0 ? args[0] : "10,100,1000").split(",");
+		String[] clients = (args.length > 1 ? args[1] : "1,4,16").split(",");
+		long durationMillis = (args.length > 2 ? Long.parseLong(args[2]) : 5) * 1000;
+
+		System.out.println( Result.header() );
+		for (String m : mBeans) {
+			for (String c : clients) {
+				LoadHarness harness = new LoadHarness( Integer.parseInt(m.trim()), Integer.parseInt(c.trim()) );
+				System.out.println( harness.run(durationMillis / 2, durationMillis) );
+			}
+		}
+
+	}
+
+}
@@ -1,16 +1,61 @@
 package net.gescobar.jmx;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InvalidAttributeValueException;
 import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
 import javax.management.MBeanInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
 import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import com.sun.management.ThreadMXBean;
 
 import net.gescobar.jmx.annotation.ManagedAttribute;
 import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.jmx.annotation.ManagedResource;
+import net.gescobar.jmx.impl.MBeanFactory;
+import net.gescobar.jmx.impl.Query;
+import net.gescobar.jmx.impl.ResourceIndex;
+import net.gescobar.jmx.metrics.MetricFamily;
+import net.gescobar.jmx.metrics.QuantileSketch;
+import net.gescobar.jmx.metrics.TopK;
+import net.gescobar.jmx.processor.ManagedResourceProcessor;
+import net.gescobar.jmx.util.SnapshotCodec;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -52,6 +97,9 @@ public class ManagementTest {
 				addCounter = true;
 				Assert.assertEquals( mBeanOperation.getReturnType(), "boolean" );
 				Assert.assertEquals( mBeanOperation.getSignature().length, 1 );
+				// the description is not used as the name
+				Assert.assertEquals( mBeanOperation.getSignature()[0].getName(), "param0" );
+				Assert.assertEquals( mBeanOperation.getSignature()[0].getDescription(), "value" );
 			}
 			
 		}
@@ -106,6 +154,1116 @@ public class ManagementTest {
 		
 	}
 	
+	@Test(dependsOnMethods="shouldRegisterAndUnregisterAnnotatedObject")
+	public void shouldConvertValues() throws Exception {
+		
+		String name = "org.test:type=AnnotatedCounter5589";
+		String enumName = "org.test:type=EnumAnnotatedCounter5589";
+		
+		Management.register(new AnnotatedCounter(), name);
+		Management.register(new EnumAnnotatedCounter(), enumName);
+		
+		ObjectName on = new ObjectName(name);
+		ObjectName enumOn = new ObjectName(enumName);
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		// strings from generic consoles
+		mBeanServer.setAttribute(on, new Attribute("counter", "42"));
+		Assert.assertEquals( mBeanServer.getAttribute(on, "counter"), 42);
+		
+		mBeanServer.setAttribute(enumOn, new Attribute("state", "STARTED"));
+		Assert.assertEquals( mBeanServer.getAttribute(enumOn, "state"), EnumAnnotatedCounter.State.STARTED);
+		
+		// widening primitive conversion
+		mBeanServer.setAttribute(on, new Attribute("counter", (short) 7));
+		Assert.assertEquals( mBeanServer.getAttribute(on, "counter"), 7);
+		
+		// operation parameters
+		mBeanServer.invoke(on, "addCounter", new Object[] { "3" } , new String[] { String.class.getName() });
+		Assert.assertEquals( mBeanServer.getAttribute(on, "counter"), 10);
+		
+		try {
+			mBeanServer.setAttribute(on, new Attribute("counter", "abc"));
+			Assert.fail("InvalidAttributeValueException expected");
+		} catch (InvalidAttributeValueException e) {}
+		
+		try {
+			mBeanServer.setAttribute(on, new Attribute("counter", 10L));
+			Assert.fail("InvalidAttributeValueException expected");
+		} catch (InvalidAttributeValueException e) {}
+		
+		Management.unregister(name);
+		Management.unregister(enumName);
+		
+	}
+	
+	@Test
+	public void shouldExposeSnapshotComponents() throws Exception {
+		
+		String name = "org.test:type=SnapshotCounter";
+		
+		SnapshotCounter counter = new SnapshotCounter();
+		counter.request(false);
+		counter.request(true);
+		Management.register(counter, name);
+		
+		ObjectName on = new ObjectName(name);
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		MBeanInfo mBeanInfo = mBeanServer.getMBeanInfo(on);
+		Assert.assertEquals( mBeanInfo.getAttributes().length, 2 );
+		for (MBeanAttributeInfo mBeanAttribute : mBeanInfo.getAttributes()) {
+			Assert.assertEquals( mBeanAttribute.getType(), "long" );
+			Assert.assertFalse( mBeanAttribute.isWritable() );
+		}
+		
+		Assert.assertEquals( mBeanServer.getAttribute(on, "httpRequests"), 2L );
+		Assert.assertEquals( counter.getSnapshots(), 1 );
+		
+		AttributeList values = mBeanServer.getAttributes(on, new String[] { "httpRequests", "httpErrors" });
+		Assert.assertEquals( values.size(), 2 );
+		Assert.assertEquals( ((Attribute) values.get(0)).getValue(), 2L );
+		Assert.assertEquals( ((Attribute) values.get(1)).getValue(), 1L );
+		Assert.assertEquals( counter.getSnapshots(), 2 );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldRunAsyncOperation() throws Exception {
+		
+		String name = "org.test:type=AsyncCounter";
+		
+		AsyncCounter counter = new AsyncCounter();
+		Management.register(counter, name);
+		
+		ObjectName on = new ObjectName(name);
+		ObjectName jobsName = new ObjectName("net.gescobar.jmx:type=Jobs");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		Assert.assertEquals( mBeanServer.getMBeanInfo(on).getOperations()[0].getReturnType(), "long" );
+		Assert.assertTrue( mBeanServer.isRegistered(jobsName) );
+		
+		Long id = (Long) mBeanServer.invoke(on, "count", new Object[] { 4 }, new String[] { "int" });
+		Assert.assertNotNull( id );
+		
+		// only one job of the operation can be running
+		try {
+			mBeanServer.invoke(on, "count", new Object[] { 4 }, new String[] { "int" });
+			Assert.fail("should have been rejected");
+		} catch (MBeanException e) {}
+		
+		counter.release();
+		
+		Object[] params = new Object[] { id };
+		String[] signature = new String[] { "long" };
+		for (int i=0; i < 100 && !"COMPLETED".equals(mBeanServer.invoke(jobsName, "getState", params, signature)); i++) {
+			Thread.sleep(20);
+		}
+		
+		Assert.assertEquals( mBeanServer.invoke(jobsName, "getState", params, signature), "COMPLETED" );
+		Assert.assertEquals( mBeanServer.invoke(jobsName, "getProgress", params, signature), 100 );
+		Assert.assertEquals( mBeanServer.invoke(jobsName, "getResult", params, signature), 8 );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldKeepSlotOfCancelledJobUntilItReturns() throws Exception {
+		
+		String name = "org.test:type=StubbornCounter";
+		
+		StubbornCounter counter = new StubbornCounter();
+		Management.register(counter, name);
+		
+		ObjectName on = new ObjectName(name);
+		ObjectName jobsName = new ObjectName("net.gescobar.jmx:type=Jobs");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		Long id = (Long) mBeanServer.invoke(on, "count", new Object[] { 4 }, new String[] { "int" });
+		
+		Object[] params = new Object[] { id };
+		String[] signature = new String[] { "long" };
+		for (int i=0; i < 100 && !"RUNNING".equals(mBeanServer.invoke(jobsName, "getState", params, signature)); i++) {
+			Thread.sleep(20);
+		}
+		
+		Assert.assertEquals( mBeanServer.invoke(jobsName, "cancel", params, signature), true );
+		Assert.assertEquals( mBeanServer.invoke(jobsName, "getState", params, signature), "CANCELLED" );
+		
+		// the cancelled job is still running, so it keeps its slot
+		try {
+			mBeanServer.invoke(on, "count", new Object[] { 4 }, new String[] { "int" });
+			Assert.fail("should have been rejected");
+		} catch (MBeanException e) {}
+		
+		counter.release();
+		counter.awaitFinished();
+		
+		Long next = null;
+		for (int i=0; i < 100 && next == null; i++) {
+			try {
+				next = (Long) mBeanServer.invoke(on, "count", new Object[] { 4 }, new String[] { "int" });
+			} catch (MBeanException e) {
+				Thread.sleep(20);
+			}
+		}
+		
+		Assert.assertNotNull( next );
+		Assert.assertEquals( mBeanServer.invoke(jobsName, "getState", params, signature), "CANCELLED" );
+		Assert.assertNull( mBeanServer.invoke(jobsName, "getResult", params, signature) );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldRejectCallsOverTheLimits() throws Exception {
+		
+		String name = "org.test:type=LimitedCounter";
+		
+		LimitedCounter counter = new LimitedCounter();
+		Management.register(counter, name, new Limits().limit("incrementCounter", 0, 1));
+		
+		ObjectName on = new ObjectName(name);
+		ObjectName limitsName = new ObjectName("net.gescobar.jmx:type=Limits");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		// one call per second, declared in the annotation
+		Assert.assertEquals( mBeanServer.getAttribute(on, "counter"), 0 );
+		try {
+			mBeanServer.getAttribute(on, "counter");
+			Assert.fail("should have been rejected");
+		} catch (MBeanException e) {
+			Assert.assertTrue( e.getCause() instanceof RejectedExecutionException );
+		}
+		
+		// one call per second, configured at registration
+		mBeanServer.invoke(on, "incrementCounter", new Object[0], new String[0]);
+		try {
+			mBeanServer.invoke(on, "incrementCounter", new Object[0], new String[0]);
+			Assert.fail("should have been rejected");
+		} catch (MBeanException e) {}
+		
+		Assert.assertEquals( counter.getCounter(), 1 );
+		Assert.assertEquals( mBeanServer.getAttribute(limitsName, "rejectedCalls"), 2L );
+		
+		Management.unregister(name);
+		Assert.assertEquals( mBeanServer.getAttribute(limitsName, "rejectedCalls"), 0L );
+		
+	}
+	
+	@Test
+	public void shouldRecordStatistics() throws Exception {
+		
+		String name = "org.test:type=AnnotatedCounter,name=statistics";
+		
+		Management.enableLibraryMBeans();
+		
+		ObjectName on = new ObjectName(name);
+		ObjectName statisticsName = new ObjectName("net.gescobar.jmx:type=Statistics");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		long createdMBeans = (Long) mBeanServer.getAttribute(statisticsName, "createdMBeans");
+		
+		mBeanServer.setAttribute(statisticsName, new Attribute("enabled", true));
+		try {
+			Management.register(new AnnotatedCounter(), name);
+			Assert.assertEquals( createdMBeans + 1, mBeanServer.getAttribute(statisticsName, "createdMBeans") );
+			
+			mBeanServer.getAttribute(on, "counter");
+			mBeanServer.invoke(on, "addCounter", new Object[] { 2 }, new String[] { "int" });
+			mBeanServer.invoke(on, "addCounter", new Object[] { 3 }, new String[] { "int" });
+		} finally {
+			mBeanServer.setAttribute(statisticsName, new Attribute("enabled", false));
+		}
+		
+		String[] calls = (String[]) mBeanServer.invoke(statisticsName, "listCalls", new Object[0], new String[0]);
+		boolean getCounter = false;
+		boolean addCounter = false;
+		for (String call : calls) {
+			getCounter |= call.startsWith(name + " get counter calls=1 ");
+			addCounter |= call.startsWith(name + " invoke addCounter calls=2 ");
+		}
+		Assert.assertTrue( getCounter );
+		Assert.assertTrue( addCounter );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldExposeMetricFamily() throws Exception {
+		
+		String name = "org.test:type=Customers";
+		
+		MetricFamily customers = new MetricFamily(10, MetricFamily.Eviction.LEAST_ACTIVE, "requests", "errors");
+		int requests = customers.slot("requests");
+		for (int i=0; i < 10; i++) {
+			customers.add("customer-" + i, requests, i + 1);
+		}
+		customers.add("customer-9", customers.slot("errors"), 1);
+		customers.add("customer-new", requests, 1); // exceeds the cap
+		
+		Assert.assertTrue( customers.getSize() <= 10 );
+		Assert.assertTrue( customers.getEvictions() > 0 );
+		Assert.assertEquals( customers.get("customer-9", requests), 10L );
+		
+		Management.register(customers, name);
+		
+		ObjectName on = new ObjectName(name);
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		TabularData top = (TabularData) mBeanServer.invoke(on, "top", new Object[] { "requests", 2 }, 
+				new String[] { "java.lang.String", "int" });
+		Assert.assertEquals( top.size(), 2 );
+		CompositeData row = top.get( new Object[] { "customer-9" } );
+		Assert.assertEquals( row.get("requests"), 10L );
+		Assert.assertEquals( row.get("errors"), 1L );
+		
+		TabularData page = (TabularData) mBeanServer.invoke(on, "page", new Object[] { 0, 100 }, 
+				new String[] { "int", "int" });
+		Assert.assertEquals( page.size(), customers.getSize() );
+		
+		TabularData filtered = (TabularData) mBeanServer.invoke(on, "filter", new Object[] { "-9$", 100 }, 
+				new String[] { "java.lang.String", "int" });
+		Assert.assertEquals( filtered.size(), 1 );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldExposeTopKField() throws Exception {
+		
+		String name = "org.test:type=TopKCounter";
+		
+		TopKCounter counter = new TopKCounter();
+		for (int i=0; i < 100; i++) {
+			counter.request("/home");
+			if (i % 2 == 0) {
+				counter.request("/search");
+			}
+			counter.request("/page/" + i); // noise
+		}
+		Management.register(counter, name);
+		
+		ObjectName on = new ObjectName(name);
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		TabularData top = (TabularData) mBeanServer.getAttribute(on, "urlsTop");
+		Assert.assertEquals( top.size(), 2 );
+		
+		CompositeData home = top.get( new Object[] { "/home" } );
+		Assert.assertNotNull( home );
+		long count = (Long) home.get("count");
+		long error = (Long) home.get("error");
+		Assert.assertTrue( count >= 100 && count - error <= 100 );
+		Assert.assertNotNull( top.get(new Object[] { "/search" }) );
+		
+		mBeanServer.invoke(on, "urlsReset", new Object[0], new String[0]);
+		Assert.assertEquals( ((TabularData) mBeanServer.getAttribute(on, "urlsTop")).size(), 0 );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldExposeRates() throws Exception {
+		
+		String name = "org.test:type=RateCounter";
+		
+		RateCounter counter = new RateCounter();
+		Management.register(counter, name);
+		
+		ObjectName on = new ObjectName(name);
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		MBeanInfo mBeanInfo = mBeanServer.getMBeanInfo(on);
+		Assert.assertEquals( mBeanInfo.getAttributes().length, 4 );
+		
+		Assert.assertEquals( mBeanServer.getAttribute(on, "requestsRate1m"), 0.0 );
+		
+		Thread.sleep(50);
+		for (int i=0; i < 10; i++) {
+			counter.request();
+		}
+		
+		double rate = (Double) mBeanServer.getAttribute(on, "requestsRate5m");
+		Assert.assertTrue( rate > 0 && rate <= 10 / 0.05 );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldExposeAndMergeQuantileSketches() throws Exception {
+		
+		String name = "org.test:type=LatencyCounter";
+		
+		// two "nodes", the first one with the values 1 to 1000 and the second one with 1001 to 2000
+		LatencyCounter node1 = new LatencyCounter();
+		QuantileSketch node2 = new QuantileSketch();
+		for (int i=1; i <= 1000; i++) {
+			node1.request(i);
+			node2.record(i + 1000);
+		}
+		Management.register(node1, name);
+		
+		ObjectName on = new ObjectName(name);
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		double p99 = (Double) mBeanServer.getAttribute(on, "latencyP99");
+		Assert.assertEquals( p99, 990.0, 990.0 * 0.01 );
+		Assert.assertEquals( mBeanServer.getAttribute(on, "latencyCount"), 1000L );
+		
+		byte[] sketch = (byte[]) mBeanServer.getAttribute(on, "latencySketch");
+		QuantileSketch merged = QuantileSketch.merge(sketch, node2.toBytes());
+		Assert.assertEquals( merged.getCount(), 2000L );
+		Assert.assertEquals( merged.getP50(), 1000.0, 1000.0 * 0.01 );
+		Assert.assertEquals( merged.quantile(0.99), 1980.0, 1980.0 * 0.01 );
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldHandleSpecialValuesAndMalformedSketches() throws Exception {
+		
+		QuantileSketch sketch = new QuantileSketch();
+		sketch.record(Double.NaN);
+		sketch.record(Double.POSITIVE_INFINITY);
+		sketch.record(Double.NEGATIVE_INFINITY);
+		
+		// NaN is ignored, infinity goes to the last bucket and negative infinity to the zeros
+		Assert.assertEquals( sketch.getCount(), 2L );
+		Assert.assertEquals( sketch.quantile(1), QuantileSketch.DEFAULT_MAX_VALUE, QuantileSketch.DEFAULT_MAX_VALUE * 0.01 );
+		
+		// too many buckets, a bucket out of range, an index that overflows and a negative count
+		long[][] malformed = {
+				{ Integer.MAX_VALUE, 0, 0 },
+				{ 10, 0, 11, 1, 0 },
+				{ 10, 0, 1, 1, Long.MAX_VALUE, 1, 0 },
+				{ 10, 0, 1, -1, 0 }
+		};
+		for (long[] varLongs : malformed) {
+			try {
+				QuantileSketch.fromBytes( serializedSketch(varLongs) );
+				Assert.fail("Malformed sketch accepted: " + Arrays.toString(varLongs));
+			} catch (IllegalArgumentException e) {}
+		}
+		
+		Assert.assertEquals( QuantileSketch.fromBytes(serializedSketch(10, 0, 10, 3, 0)).getCount(), 3L );
+		
+	}
+	
+	/**
+	 * Helper method. A serialized sketch with the default accuracy and minimum followed by the number of buckets, the
+	 * zeros and the buckets.
+	 */
+	private byte[] serializedSketch(long... varLongs) throws Exception {
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte('Q');
+		out.writeByte(1);
+		out.writeDouble(QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+		out.writeDouble(QuantileSketch.DEFAULT_MIN_VALUE);
+		for (long value : varLongs) {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte( (int) ((value & 0x7F) | 0x80) );
+				value >>>= 7;
+			}
+			out.writeByte( (int) value );
+		}
+		
+		return bytes.toByteArray();
+		
+	}
+	
+	@Test
+	public void shouldTakeSnapshotsOfManyMBeans() throws Exception {
+		
+		AnnotatedCounter first = new AnnotatedCounter();
+		first.setCounter(-3);
+		AnnotatedCounter second = new AnnotatedCounter();
+		second.setCounter(300);
+		LatencyCounter latency = new LatencyCounter();
+		latency.request(10);
+		
+		Management.register(first, "org.test.snapshot:type=Counter,name=first");
+		Management.register(second, "org.test.snapshot:type=Counter,name=second");
+		Management.register(latency, "org.test.snapshot:type=Latency");
+		Management.enableLibraryMBeans();
+		
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		// the parameters are named with @Name and described with @Description
+		for (MBeanOperationInfo operation : 
+				mBeanServer.getMBeanInfo(new ObjectName("net.gescobar.jmx:type=Snapshot")).getOperations()) {
+			if (operation.getName().equals("changesSince")) {
+				Assert.assertEquals( operation.getSignature()[0].getName(), "pattern" );
+				Assert.assertEquals( operation.getSignature()[0].getDescription(), 
+						"The name of the MBeans, can be a pattern" );
+				Assert.assertEquals( operation.getSignature()[1].getName(), "token" );
+			}
+		}
+		
+		byte[] snapshot = (byte[]) mBeanServer.invoke( new ObjectName("net.gescobar.jmx:type=Snapshot"), "snapshot", 
+				new Object[] { "org.test.snapshot:*" }, new String[] { String.class.getName() } );
+		
+		Map<ObjectName,Map<String,Object>> values = SnapshotCodec.decode(snapshot);
+		Assert.assertEquals( values.size(), 3 );
+		Assert.assertEquals( values.get(new ObjectName("org.test.snapshot:type=Counter,name=first")).get("counter"), -3L );
+		Assert.assertEquals( values.get(new ObjectName("org.test.snapshot:type=Counter,name=second")).get("counter"), 
+				300L );
+		
+		// the byte[] of the sketch is left out
+		Map<String,Object> latencyValues = values.get(new ObjectName("org.test.snapshot:type=Latency"));
+		Assert.assertEquals( latencyValues.get("latencyCount"), 1L );
+		Assert.assertEquals( (Double) latencyValues.get("latencyP50"), 10.0, 0.1 );
+		Assert.assertFalse( latencyValues.containsKey("latencySketch") );
+		
+		// only the changes since the snapshot
+		second.setCounter(301);
+		byte[] changes = (byte[]) mBeanServer.invoke( new ObjectName("net.gescobar.jmx:type=Snapshot"), 
+				"changesSince", new Object[] { "org.test.snapshot:*", SnapshotCodec.token(snapshot) }, 
+				new String[] { String.class.getName(), "long" } );
+		
+		values = SnapshotCodec.decode(changes);
+		Assert.assertEquals( values.size(), 1 );
+		Assert.assertEquals( values.get(new ObjectName("org.test.snapshot:type=Counter,name=second")).get("counter"), 
+				301L );
+		Assert.assertTrue( SnapshotCodec.token(changes) > SnapshotCodec.token(snapshot) );
+		
+		changes = (byte[]) mBeanServer.invoke( new ObjectName("net.gescobar.jmx:type=Snapshot"), "changesSince", 
+				new Object[] { "org.test.snapshot:*", SnapshotCodec.token(changes) }, 
+				new String[] { String.class.getName(), "long" } );
+		Assert.assertTrue( SnapshotCodec.decode(changes).isEmpty() );
+		
+		Management.unregister("org.test.snapshot:type=Counter,name=first");
+		Management.unregister("org.test.snapshot:type=Counter,name=second");
+		Management.unregister("org.test.snapshot:type=Latency");
+		
+	}
+	
+	@Test
+	public void shouldQueryMBeansByAttributes() throws Exception {
+		
+		int mBeans = Query.PARALLEL_CHUNK_SIZE * 3;
+		for (int i=0; i < mBeans; i++) {
+			LoadCounter counter = new LoadCounter("c" + i);
+			counter.setCounter(i);
+			Management.register(counter, "org.test.query:type=LoadCounter,name=c" + i);
+		}
+		
+		try {
+			
+			Map<ObjectName,Map<String,Object>> rows = Management.query("org.test.query:*", "name, counter", 
+					"counter > 1 and counter < 5 and name != 'c3'");
+			Assert.assertEquals( rows.size(), 2 );
+			Assert.assertEquals( rows.get(new ObjectName("org.test.query:type=LoadCounter,name=c2")).get("name"), "c2" );
+			Assert.assertEquals( rows.get(new ObjectName("org.test.query:type=LoadCounter,name=c4")).get("counter"), 4L );
+			Assert.assertFalse( rows.get(new ObjectName("org.test.query:type=LoadCounter,name=c4")).containsKey("load") );
+			
+			// arithmetic, or, not and unknown attributes (which are null)
+			Assert.assertEquals( Management.query("org.test.query:*", null, 
+					"(counter * 2 = 10 or load >= 0.7) and not missing > 0").size(), 1 + mBeans - 700 );
+			Assert.assertEquals( Management.query("org.test.query:*", "load", "missing = null").size(), mBeans );
+			
+			// parallel and sequential evaluation return the same rows
+			Query query = Query.compile("org.test.query:*", "counter", "counter / 2 >= 50");
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				Map<ObjectName,Map<String,Object>> parallel = query.execute(ManagementFactory.getPlatformMBeanServer(), executor);
+				Assert.assertEquals( parallel.size(), mBeans - 100 );
+				Assert.assertEquals( parallel, query.execute() );
+			} finally {
+				executor.shutdown();
+			}
+			
+			try {
+				Management.query("org.test.query:*", null, "counter >");
+				Assert.fail("should have thrown IllegalArgumentException");
+			} catch (IllegalArgumentException e) {}
+			
+			// the remote operation
+			Management.enableLibraryMBeans();
+			byte[] encoded = (byte[]) ManagementFactory.getPlatformMBeanServer().invoke( 
+					new ObjectName("net.gescobar.jmx:type=Query"), "query", 
+					new Object[] { "org.test.query:*", "counter", "counter >= " + (mBeans - 10) }, 
+					new String[] { String.class.getName(), String.class.getName(), String.class.getName() } );
+			Map<ObjectName,Map<String,Object>> remote = SnapshotCodec.decode(encoded);
+			Assert.assertEquals( remote.size(), 10 );
+			Assert.assertEquals( remote.get(new ObjectName("org.test.query:type=LoadCounter,name=c" + (mBeans - 1)))
+					.get("counter"), (long) mBeans - 1 );
+			
+		} finally {
+			for (int i=0; i < mBeans; i++) {
+				Management.unregister("org.test.query:type=LoadCounter,name=c" + i);
+			}
+		}
+		
+	}
+	
+	@Test
+	public void shouldInvokeOperationOnManyMBeans() throws Exception {
+		
+		int mBeans = 100;
+		LoadCounter[] counters = new LoadCounter[mBeans];
+		for (int i=0; i < mBeans; i++) {
+			counters[i] = new LoadCounter("c" + i);
+			Management.register(counters[i], "org.test.fanout:type=LoadCounter,name=c" + i);
+		}
+		Management.register(new BlockingCounter(), "org.test.fanout:type=BlockingCounter,name=first");
+		Management.register(new BlockingCounter(), "org.test.fanout:type=BlockingCounter,name=second");
+		
+		try {
+			
+			Map<ObjectName,InvocationOutcome> outcomes = Management.invokeAll("org.test.fanout:type=LoadCounter,*", 
+					"add", new Object[] { 5L }, new String[] { "long" }, 8, 1000);
+			Assert.assertEquals( outcomes.size(), mBeans );
+			for (InvocationOutcome outcome : outcomes.values()) {
+				Assert.assertEquals( outcome.getStatus(), InvocationOutcome.Status.SUCCEEDED );
+				Assert.assertEquals( outcome.getValue(), 5L );
+			}
+			for (LoadCounter counter : counters) {
+				Assert.assertEquals( counter.getCounter(), 5L );
+			}
+			
+			// the calls that don't return before the timeout are interrupted
+			long start = System.nanoTime();
+			outcomes = Management.invokeAll("org.test.fanout:type=BlockingCounter,*", "block", new Object[] { 60000L }, 
+					new String[] { "long" }, 1, 100);
+			Assert.assertTrue( System.nanoTime() - start < 10000000000L );
+			Assert.assertEquals( outcomes.size(), 2 );
+			for (InvocationOutcome outcome : outcomes.values()) {
+				Assert.assertEquals( outcome.getStatus(), InvocationOutcome.Status.TIMED_OUT );
+			}
+			
+			// the remote operation, with a wrong signature
+			Management.enableLibraryMBeans();
+			TabularData table = (TabularData) ManagementFactory.getPlatformMBeanServer().invoke( 
+					new ObjectName("net.gescobar.jmx:type=FanOut"), "invokeAll", 
+					new Object[] { "org.test.fanout:type=LoadCounter,*", "add", new Object[] { "x" }, 
+						new String[] { String.class.getName() }, 4, 1000L }, 
+					new String[] { String.class.getName(), String.class.getName(), Object[].class.getName(), 
+						String[].class.getName(), "int", "long" } );
+			Assert.assertEquals( table.size(), mBeans );
+			CompositeData row = table.get( new Object[] { "org.test.fanout:type=LoadCounter,name=c0" } );
+			Assert.assertEquals( row.get("status"), "FAILED" );
+			Assert.assertNotNull( row.get("error") );
+			
+		} finally {
+			for (int i=0; i < mBeans; i++) {
+				Management.unregister("org.test.fanout:type=LoadCounter,name=c" + i);
+			}
+			Management.unregister("org.test.fanout:type=BlockingCounter,name=first");
+			Management.unregister("org.test.fanout:type=BlockingCounter,name=second");
+		}
+		
+	}
+	
+	@Test
+	public void shouldNotifyInvocationListeners() throws Exception {
+		
+		String name = "org.test:type=AnnotatedCounter,name=listeners";
+		Management.register(new AnnotatedCounter(), name);
+		
+		final List<String> invocations = new ArrayList<String>();
+		InvocationListener listener = new InvocationListener() {
+
+			@Override
+			public Object invocationStarted(ObjectName name, String operation, Object[] params) {
+				return name + " " + operation;
+			}
+
+			@Override
+			public void invocationFinished(Object context, Throwable error) {
+				invocations.add( context + (error == null ? "" : " " + error.getClass().getSimpleName()) );
+			}
+			
+		};
+		
+		Management.addInvocationListener(listener);
+		try {
+			
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			mBeanServer.invoke(new ObjectName(name), "addCounter", new Object[] { 2 }, new String[] { "int" });
+			try {
+				mBeanServer.invoke(new ObjectName(name), "addCounter", new Object[] { "x" }, new String[] { "int" });
+				Assert.fail("Should have thrown an exception");
+			} catch (ReflectionException e) {}
+			
+		} finally {
+			Management.removeInvocationListener(listener);
+			Management.unregister(name);
+		}
+		
+		Assert.assertEquals( invocations.size(), 2 );
+		Assert.assertEquals( invocations.get(0), name + " addCounter" );
+		Assert.assertEquals( invocations.get(1), name + " addCounter ReflectionException" );
+		
+	}
+	
+	@Test
+	public void shouldCreateTypedClients() throws Exception {
+		
+		String name = "org.test:type=AnnotatedCounter,name=client";
+		
+		AnnotatedCounter counter = new AnnotatedCounter();
+		Management.register(counter, name);
+		try {
+			
+			CounterClient client = Management.newClient( ManagementFactory.getPlatformMBeanServer(), 
+					new ObjectName(name), CounterClient.class );
+			
+			client.setCounter(5);
+			Assert.assertEquals( client.getCounter(), 5 );
+			Assert.assertTrue( client.addCounter(2) );
+			Assert.assertEquals( counter.getCounter(), 7 );
+			
+			// the batch has the values read when it was created
+			CounterClient batch = Management.batch(client);
+			client.resetCounter();
+			Assert.assertEquals( batch.getCounter(), 7 );
+			Assert.assertEquals( client.getCounter(), 0 );
+			
+		} finally {
+			Management.unregister(name);
+		}
+		
+	}
+	
+	@Test(expectedExceptions=ManagementException.class)
+	public void shouldFailToCreateClientWithUnknownMethods() throws Exception {
+		
+		String name = "org.test:type=AnnotatedCounter,name=unknownClient";
+		
+		Management.register(new AnnotatedCounter(), name);
+		try {
+			Management.newClient( ManagementFactory.getPlatformMBeanServer(), new ObjectName(name), 
+					Runnable.class );
+		} finally {
+			Management.unregister(name);
+		}
+		
+	}
+	
+	@Test
+	public void shouldExposeMapEntriesAsAttributes() throws Exception {
+		
+		String name = "org.test:type=ShardedCounter";
+		
+		ShardedCounter counter = new ShardedCounter();
+		Management.register(counter, name);
+		try {
+			
+			ObjectName on = new ObjectName(name);
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			Assert.assertEquals( mBeanServer.getMBeanInfo(on).getAttributes().length, 1 );
+			
+			counter.set("a", 1);
+			counter.set("b", 2);
+			
+			MBeanInfo mBeanInfo = mBeanServer.getMBeanInfo(on);
+			Assert.assertEquals( mBeanInfo.getAttributes().length, 3 );
+			Assert.assertEquals( mBeanServer.getAttribute(on, "shard.a"), 1L );
+			Assert.assertEquals( mBeanServer.getAttribute(on, "shard.b"), 2L );
+			Assert.assertEquals( mBeanServer.getAttribute(on, "shardCount"), 2 );
+			
+			// the MBeanInfo is rebuilt only when the keys change
+			counter.set("a", 10);
+			Assert.assertSame( mBeanServer.getMBeanInfo(on), mBeanInfo );
+			Assert.assertEquals( mBeanServer.getAttribute(on, "shard.a"), 10L );
+			
+			counter.remove("b");
+			Assert.assertEquals( mBeanServer.getMBeanInfo(on).getAttributes().length, 2 );
+			try {
+				mBeanServer.getAttribute(on, "shard.b");
+				Assert.fail("Should have thrown an exception");
+			} catch (AttributeNotFoundException e) {}
+			
+		} finally {
+			Management.unregister(name);
+		}
+		
+	}
+	
+	@Test
+	public void shouldRegisterIndexedResources() throws Exception {
+		
+		String name = "org.test:type=IndexedCounter";
+		
+		List<String> names = Management.registerIndexed();
+		Assert.assertTrue( names.contains(name) );
+		
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName on = new ObjectName(name);
+		
+		MBeanInfo mBeanInfo = mBeanServer.getMBeanInfo(on);
+		Assert.assertEquals( mBeanInfo.getClassName(), IndexedCounter.class.getName() );
+		Assert.assertEquals( mBeanInfo.getAttributes().length, 1 );
+		Assert.assertEquals( mBeanInfo.getOperations().length, 3 );
+		
+		mBeanServer.invoke(on, "addCounter", new Object[] { 5 } , new String[] { "int" });
+		mBeanServer.invoke(on, "decrementCounter", new Object[0], new String[0]);
+		Assert.assertEquals( mBeanServer.getAttribute(on, "counter"), 4);
+		
+		Management.unregister(name);
+		
+	}
+	
+	@Test
+	public void shouldUnregisterIndexedResourcesWhenOneFails() throws Exception {
+		
+		// an index with two resources, the second name is taken
+		File index = new File(createTempDir("index"), "jmx-annotations.index");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(index), "UTF-8");
+		try {
+			writer.write("resource\t" + IndexedCounter.class.getName() + "\torg.test:type=Rollback,name=first\n" +
+					"method\tgetCounter\n" +
+					"resource\t" + IndexedCounter.class.getName() + "\torg.test:type=Rollback,name=second\n" +
+					"method\tgetCounter\n");
+		} finally {
+			writer.close();
+		}
+		
+		final URL indexUrl = index.toURI().toURL();
+		ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+			
+			@Override
+			public Enumeration<URL> getResources(String name) throws IOException {
+				return Collections.enumeration( Collections.singletonList(indexUrl) );
+			}
+			
+		};
+		
+		Management.register(new AnnotatedCounter(), "org.test:type=Rollback,name=second");
+		try {
+			
+			try {
+				Management.registerIndexed(classLoader);
+				Assert.fail("should have thrown InstanceAlreadyExistsException");
+			} catch (InstanceAlreadyExistsException e) {}
+			
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			Assert.assertFalse( mBeanServer.isRegistered(new ObjectName("org.test:type=Rollback,name=first")) );
+			Assert.assertTrue( mBeanServer.isRegistered(new ObjectName("org.test:type=Rollback,name=second")) );
+			
+		} finally {
+			Management.unregister("org.test:type=Rollback,name=second");
+		}
+		
+	}
+	
+	@Test
+	public void shouldKeepIndexOfClassesNotCompiledAgain() throws Exception {
+		
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		File sources = createTempDir("sources");
+		File output = createTempDir("classes");
+		String classPath = new File( ManagedResource.class.getProtectionDomain().getCodeSource().getLocation().toURI() )
+				+ File.pathSeparator + output;
+		
+		compile(compiler, classPath, output, writeSource(sources, "First", 
+				"@ManagedResource(\"org.test.incremental:type=First\")"));
+		
+		// only the second class is compiled the second time
+		compile(compiler, classPath, output, writeSource(sources, "Second", 
+				"@ManagedResource(\"org.test.incremental:type=Second\")"));
+		
+		String index = readFile( new File(output, ResourceIndex.INDEX_RESOURCE) );
+		Assert.assertTrue( index.contains("org.test.incremental:type=First") );
+		Assert.assertTrue( index.contains("org.test.incremental:type=Second") );
+		Assert.assertTrue( readFile(new File(output, ManagedResourceProcessor.REFLECT_CONFIG))
+				.contains("incremental.First") );
+		
+		// the first class is compiled again without the annotation
+		compile(compiler, classPath, output, writeSource(sources, "First", ""));
+		
+		index = readFile( new File(output, ResourceIndex.INDEX_RESOURCE) );
+		Assert.assertFalse( index.contains("org.test.incremental:type=First") );
+		Assert.assertTrue( index.contains("org.test.incremental:type=Second") );
+		
+		// it still has an annotated method
+		Assert.assertTrue( index.contains(ResourceIndex.CLASS + ResourceIndex.SEPARATOR + "incremental.First\n") );
+		
+	}
+	
+	private void compile(JavaCompiler compiler, String classPath, File output, File source) {
+		int result = compiler.run(null, null, null, "-processor", ManagedResourceProcessor.class.getName(), 
+				"-cp", classPath, "-d", output.getPath(), "-implicit:none", source.getPath());
+		Assert.assertEquals( result, 0 );
+	}
+	
+	private File createTempDir(String prefix) throws Exception {
+		// in the build directory, so it's removed with the rest of the build
+		File dir = File.createTempFile(prefix, "", new File("target"));
+		Assert.assertTrue( dir.delete() && dir.mkdirs() );
+		return dir;
+	}
+	
+	private File writeSource(File dir, String className, String annotation) throws Exception {
+		
+		File source = new File(dir, "incremental/" + className + ".java");
+		source.getParentFile().mkdirs();
+		
+		Writer writer = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+		try {
+			writer.write("package incremental;\n" +
+					"import net.gescobar.jmx.annotation.*;\n" +
+					annotation + "\n" +
+					"public class " + className + " {\n" +
+					"	@ManagedAttribute public int getValue() { return 1; }\n" +
+					"}\n");
+		} finally {
+			writer.close();
+		}
+		
+		return source;
+		
+	}
+	
+	private String readFile(File file) throws Exception {
+		
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ( (read = in.read(buffer)) != -1 ) {
+				out.write(buffer, 0, read);
+			}
+			return new String(out.toByteArray(), "UTF-8");
+		} finally {
+			in.close();
+		}
+		
+	}
+	
+	@Test
+	public void shouldCreateMBeansFromPreparedModels() throws Exception {
+		
+		List<Class<?>> indexed = ResourceIndex.loadClasses( getClass().getClassLoader() );
+		Assert.assertTrue( indexed.contains(LimitedCounter.class) );
+		Assert.assertTrue( indexed.contains(IndexedCounter.class) );
+		Assert.assertTrue( indexed.contains(TopK.class) );
+		Assert.assertNotNull( getClass().getClassLoader().getResource(ManagedResourceProcessor.REFLECT_CONFIG) );
+		
+		Collection<Member> members = MBeanFactory.prepare(LimitedCounter.class);
+		Assert.assertTrue( members.contains(LimitedCounter.class.getMethod("getCounter")) );
+		Assert.assertTrue( members.contains(LimitedCounter.class.getMethod("incrementCounter")) );
+		
+		// the methods passed explicitly are still the only ones handled
+		DynamicMBean getterOnly = MBeanFactory.createMBean( new LimitedCounter(), 
+				new Method[] { LimitedCounter.class.getMethod("getCounter") } );
+		Assert.assertEquals( getterOnly.getMBeanInfo().getAttributes().length, 1 );
+		Assert.assertEquals( getterOnly.getMBeanInfo().getOperations().length, 0 );
+		
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName first = new ObjectName("org.test:type=PreparedCounter,name=first");
+		ObjectName second = new ObjectName("org.test:type=PreparedCounter,name=second");
+		
+		LimitedCounter counter = new LimitedCounter();
+		Management.register( counter, first.toString() );
+		Management.register( new LimitedCounter(), second.toString(), new Limits().limit("counter", 0, 0) );
+		
+		try {
+			
+			Assert.assertEquals( mBeanServer.getMBeanInfo(first).getAttributes().length, 1 );
+			Assert.assertEquals( mBeanServer.getMBeanInfo(first).getOperations().length, 1 );
+			
+			// each MBean has its own limiters
+			mBeanServer.invoke(first, "incrementCounter", new Object[0], new String[0]);
+			Assert.assertEquals( mBeanServer.getAttribute(first, "counter"), 1 );
+			try {
+				mBeanServer.getAttribute(first, "counter");
+				Assert.fail("should have been rejected");
+			} catch (MBeanException e) {}
+			
+			Assert.assertEquals( mBeanServer.getAttribute(second, "counter"), 0 );
+			Assert.assertEquals( mBeanServer.getAttribute(second, "counter"), 0 );
+			
+			try {
+				Management.register( new LimitedCounter(), "org.test:type=PreparedCounter,name=third", 
+						new Limits().limit("unknown", 1, 0) );
+				Assert.fail("Should have thrown an exception");
+			} catch (ManagementException e) {}
+			
+		} finally {
+			Management.unregister( first.toString() );
+			Management.unregister( second.toString() );
+		}
+		
+	}
+	
+	@Test
+	public void shouldServeConcurrentClientsThroughConnector() throws Exception {
+		
+		LoadHarness.Result result = new LoadHarness(50, 4).run(200, 500);
+		
+		Assert.assertNull( result.getFirstError() );
+		Assert.assertEquals( result.getErrors(), 0 );
+		Assert.assertTrue( result.getOperations() > 0 );
+		Assert.assertTrue( result.getLatency(0.5) <= result.getLatency(0.99) );
+		
+		// the MBeans are unregistered
+		Assert.assertTrue( ManagementFactory.getPlatformMBeanServer().queryNames(
+				new ObjectName("org.test.load:*"), null).isEmpty() );
+		
+	}
+	
+	@Test
+	public void shouldReadPrimitiveAttributesWithoutAllocating() throws Exception {
+		
+		ObjectName name = new ObjectName("org.test:type=PrimitiveCounter");
+		
+		PrimitiveCounter counter = new PrimitiveCounter();
+		Management.register(counter, name.toString());
+		
+		try {
+			
+			Assert.assertEquals( Management.getLong(name, "requests"), 1000000L );
+			Assert.assertEquals( Management.getLong(name, "threads"), 8L );
+			Assert.assertEquals( Management.getDouble(name, "threads"), 8.0 );
+			Assert.assertEquals( Management.getDouble(name, "load"), 0.5 );
+			Assert.assertEquals( Management.getDouble(name, "ratio"), 0.25 );
+			Assert.assertEquals( Management.getLong(name, "errors"), 3L );
+			
+			try {
+				Management.getLong(name, "name");
+				Assert.fail("Should have thrown an exception");
+			} catch (ManagementException e) {}
+			
+			try {
+				Management.getLong(name, "unknown");
+				Assert.fail("Should have thrown an exception");
+			} catch (ManagementException e) {}
+			
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean() instanceof ThreadMXBean ? 
+					(ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+			if (threads != null && threads.isThreadAllocatedMemorySupported() 
+					&& threads.isThreadAllocatedMemoryEnabled()) {
+				
+				// warm up the same loop, so the classes it uses are loaded and it's compiled
+				long sum = 0;
+				for (int i=0; i < 10000; i++) {
+					counter.request();
+					sum += Management.getLong(name, "requests");
+				}
+				
+				long threadId = Thread.currentThread().getId();
+				long before = threads.getThreadAllocatedBytes(threadId);
+				for (int i=0; i < 100000; i++) {
+					counter.request();
+					sum += Management.getLong(name, "requests");
+				}
+				long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+				
+				// boxing the values would take 1.6 MB, a few KB are allocated once (e.g. by the compiler)
+				Assert.assertTrue( allocated < 64 * 1024, "Allocated " + allocated + " bytes" );
+				Assert.assertTrue( sum > 0 );
+				
+			}
+			
+		} finally {
+			Management.unregister( name.toString() );
+		}
+		
+		try {
+			Management.getLong(name, "requests");
+			Assert.fail("Should have thrown an exception");
+		} catch (ManagementException e) {}
+		
+	}
+	
+	@Test
+	public void shouldKeepMBeanWhenNameIsTaken() throws Exception {
+		
+		AnnotatedCounter counter = new AnnotatedCounter();
+		counter.setCounter(7);
+		Management.register(counter, "org.test:type=Duplicate");
+		
+		try {
+			
+			try {
+				Management.register(new AnnotatedCounter(), "org.test:type=Duplicate");
+				Assert.fail("should have thrown InstanceAlreadyExistsException");
+			} catch (InstanceAlreadyExistsException e) {}
+			
+			ObjectName name = new ObjectName("org.test:type=Duplicate");
+			Assert.assertTrue( ManagementFactory.getPlatformMBeanServer().isRegistered(name) );
+			Assert.assertEquals( Management.getLong(name, "counter"), 7L );
+			
+		} finally {
+			Management.unregister("org.test:type=Duplicate");
+		}
+		
+	}
+	
+	@Test
+	public void shouldRegisterLibraryMBeansOnlyWhenEnabled() throws Exception {
+		
+		MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+		ObjectName snapshotName = new ObjectName("net.gescobar.jmx:type=Snapshot");
+		ObjectName fanOutName = new ObjectName("net.gescobar.jmx:type=FanOut");
+		
+		mBeanServer.registerMBean(MBeanFactory.createMBean(new AnnotatedCounter()), new ObjectName("org.test:type=OptIn"));
+		Assert.assertFalse( mBeanServer.isRegistered(snapshotName) );
+		Assert.assertFalse( mBeanServer.isRegistered(fanOutName) );
+		
+		Management.enableLibraryMBeans(mBeanServer);
+		Assert.assertTrue( mBeanServer.isRegistered(snapshotName) );
+		Assert.assertTrue( mBeanServer.isRegistered(fanOutName) );
+		
+		Management.disableLibraryMBeans(mBeanServer);
+		Assert.assertFalse( mBeanServer.isRegistered(snapshotName) );
+		Assert.assertFalse( mBeanServer.isRegistered(fanOutName) );
+		
+		mBeanServer.unregisterMBean(new ObjectName("org.test:type=OptIn"));
+		
+	}
+	
+	@Test
+	public void shouldKeepMBeansOfEachMBeanServerApart() throws Exception {
+		
+		MBeanServer otherServer = MBeanServerFactory.newMBeanServer();
+		ObjectName name = new ObjectName("org.test:type=Isolated");
+		
+		AnnotatedCounter counter = new AnnotatedCounter();
+		counter.setCounter(7);
+		Management.register(counter, name.toString());
+		
+		AnnotatedCounter otherCounter = new AnnotatedCounter();
+		otherCounter.setCounter(3);
+		otherServer.registerMBean(MBeanFactory.createMBean(otherCounter), name);
+		Management.enableLibraryMBeans(otherServer);
+		
+		try {
+			
+			Assert.assertEquals( Management.getLong(name, "counter"), 7L );
+			Assert.assertEquals( Management.getLong(otherServer, name, "counter"), 3L );
+			
+			// the snapshot MBean of each server reads only the MBeans of that server
+			byte[] snapshot = (byte[]) otherServer.invoke(new ObjectName("net.gescobar.jmx:type=Snapshot"), "snapshot", 
+					new Object[] { "org.test:*" }, new String[] { String.class.getName() });
+			Map<ObjectName,Map<String,Object>> values = SnapshotCodec.decode(snapshot);
+			Assert.assertEquals( values.size(), 1 );
+			Assert.assertEquals( ((Number) values.get(name).get("counter")).intValue(), 3 );
+			
+			// unregistering the MBean of one server doesn't affect the other
+			otherServer.unregisterMBean(name);
+			Assert.assertEquals( Management.getLong(name, "counter"), 7L );
+			
+		} finally {
+			Management.unregister(name.toString());
+		}
+		
+	}
+	
 	@Test(expectedExceptions=IllegalArgumentException.class)
 	public void shouldNotRegisterNullObject() throws Exception {
 		Management.register(null, "org.test:type=Counter7464789");
@@ -0,0 +1,43 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.annotation.ManagedAttribute;
+
+public class PrimitiveCounter {
+	
+	private long requests = 1000000L;
+	
+	@ManagedAttribute
+	public long getRequests() {
+		return requests;
+	}
+	
+	@ManagedAttribute
+	public int getThreads() {
+		return 8;
+	}
+	
+	@ManagedAttribute
+	public float getLoad() {
+		return 0.5f;
+	}
+	
+	@ManagedAttribute
+	public double getRatio() {
+		return 0.25;
+	}
+	
+	@ManagedAttribute
+	public Long getErrors() {
+		return 3L;
+	}
+	
+	@ManagedAttribute
+	public String getName() {
+		return "primitive";
+	}
+	
+	public void request() {
+		requests++;
+	}
+
+}
@@ -0,0 +1,20 @@
+package net.gescobar.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.gescobar.jmx.annotation.ManagedAttribute;
+
+public class RateCounter {
+	
+	private final AtomicLong requests = new AtomicLong();
+	
+	public void request() {
+		requests.incrementAndGet();
+	}
+	
+	@ManagedAttribute(rate=true)
+	public long getRequests() {
+		return requests.get();
+	}
+
+}
@@ -0,0 +1,27 @@
+package net.gescobar.jmx;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.annotation.ManagedAttributeMap;
+
+public class ShardedCounter {
+	
+	@ManagedAttributeMap(prefix="shard.")
+	private final ConcurrentMap<String,Long> shards = new ConcurrentHashMap<String,Long>();
+	
+	public void set(String shard, long value) {
+		shards.put(shard, value);
+	}
+	
+	public void remove(String shard) {
+		shards.remove(shard);
+	}
+	
+	@ManagedAttribute
+	public int getShardCount() {
+		return shards.size();
+	}
+
+}
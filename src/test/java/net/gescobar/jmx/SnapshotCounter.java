@@ -0,0 +1,51 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.annotation.ManagedSnapshot;
+
+public class SnapshotCounter {
+	
+	private long requests;
+	
+	private long errors;
+	
+	private int snapshots;
+	
+	public synchronized void request(boolean error) {
+		requests++;
+		if (error) {
+			errors++;
+		}
+	}
+	
+	@ManagedSnapshot(prefix="http")
+	public synchronized Snapshot getSnapshot() {
+		snapshots++;
+		return new Snapshot(requests, errors);
+	}
+	
+	public int getSnapshots() {
+		return snapshots;
+	}
+	
+	public static class Snapshot {
+		
+		private final long requests;
+		
+		private final long errors;
+		
+		public Snapshot(long requests, long errors) {
+			this.requests = requests;
+			this.errors = errors;
+		}
+
+		public long getRequests() {
+			return requests;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,38 @@
+package net.gescobar.jmx;
+
+import java.util.concurrent.CountDownLatch;
+
+import net.gescobar.jmx.annotation.ManagedOperation;
+
+public class StubbornCounter {
+	
+	private final CountDownLatch latch = new CountDownLatch(1);
+	
+	private final CountDownLatch finished = new CountDownLatch(1);
+	
+	@ManagedOperation(async=true)
+	public int count(int times) {
+		
+		// ignores the interruptions, so it keeps running after it's cancelled
+		boolean done = false;
+		while (!done) {
+			try {
+				latch.await();
+				done = true;
+			} catch (InterruptedException e) {}
+		}
+		
+		finished.countDown();
+		return times * 2;
+		
+	}
+	
+	public void release() {
+		latch.countDown();
+	}
+	
+	public void awaitFinished() throws InterruptedException {
+		finished.await();
+	}
+
+}
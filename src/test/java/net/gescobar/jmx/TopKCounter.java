@@ -0,0 +1,13 @@
+package net.gescobar.jmx;
+
+import net.gescobar.jmx.metrics.TopK;
+
+public class TopKCounter {
+	
+	private final TopK urls = new TopK(2, 20);
+	
+	public void request(String url) {
+		urls.add(url);
+	}
+
+}
@@ -0,0 +1,530 @@
+package net.gescobar.jmx.statsd;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.ManagementException;
+
+/**
+ * <p>Pushes the numeric attributes of the MBeans created by the library to a StatsD or Graphite server
+ * periodically, for the environments in which the metrics can't be scraped:</p>
+ *
+ * <pre>
+ * MetricsExporter exporter = new MetricsExporter(Protocol.STATSD, Transport.UDP,
+ *         new InetSocketAddress("localhost", 8125))
+ *         .sample("org.test:type=Pool,*", "active", "idle")
+ *         .prefix("myapp");
+ * exporter.start();
+ * </pre>
+ *
+ * <p>Each attribute becomes a metric named after the domain and the values of the key properties of the MBean (in
+ * the order in which they appear in the name) and the attribute, e.g. the <code>active</code> attribute of
+ * <code>org.test:type=Pool,name=main</code> is <code>myapp.org.test.Pool.main.active</code>. StatsD metrics are sent
+ * as gauges (<code>name:value|g</code>), Graphite metrics in the plaintext protocol
+ * (<code>name value timestamp</code>).</p>
+ *
+ * <p>The attributes are read with {@link Management#getDouble(MBeanServer, ObjectName, String)}, so primitive values
+ * are not boxed, and written into a reused buffer with the names encoded once for each MBean. The metrics are packed into
+ * packets of at most {@link #DEFAULT_MAX_PACKET_SIZE} bytes (so a datagram fits in an Ethernet frame) that are sent
+ * over a non-blocking channel; if the socket can't take a packet, it's dropped instead of blocking (see
+ * {@link #getDroppedMetrics()}). Attributes that are not numbers, and MBeans that were not created by the library,
+ * are skipped from then on.</p>
+ *
+ * @author German Escobar
+ */
+public class MetricsExporter {
+
+	/**
+	 * The default milliseconds between two reports.
+	 */
+	public static final long DEFAULT_INTERVAL = 10000;
+
+	/**
+	 * The default maximum size of a packet: a 1500 bytes Ethernet frame minus the IP and UDP headers, with room for
+	 * IP options.
+	 */
+	public static final int DEFAULT_MAX_PACKET_SIZE = 1432;
+
+	public enum Protocol {
+
+		/**
+		 * <code>name:value|g</code> lines.
+		 */
+		STATSD,
+
+		/**
+		 * <code>name value timestamp</code> lines, the timestamp in seconds.
+		 */
+		GRAPHITE
+
+	}
+
+	public enum Transport {
+
+		UDP,
+
+		TCP
+
+	}
+
+	private static final byte[] GAUGE_SUFFIX = "|g\n".getBytes();
+
+	/**
+	 * The MBeanServer in which we find the MBeans.
+	 */
+	private final MBeanServer mBeanServer;
+
+	private final Protocol protocol;
+
+	private final Transport transport;
+
+	private final InetSocketAddress address;
+
+	/**
+	 * The attributes that are exported.
+	 */
+	private final List<Sample> samples = new ArrayList<Sample>();
+
+	private String prefix = "";
+
+	private long interval = DEFAULT_INTERVAL;
+
+	private int maxPacketSize = DEFAULT_MAX_PACKET_SIZE;
+
+	private PacketWriter writer;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Constructor. Exports the MBeans of the default <code>MBeanServer</code> (which is retrieved using the
+	 * <code>ManagementFactory.getPlatformServer()</code> method).
+	 *
+	 * @param protocol the format of the metrics.
+	 * @param transport how the metrics are sent.
+	 * @param address the address of the server.
+	 */
+	public MetricsExporter(Protocol protocol, Transport transport, InetSocketAddress address) {
+		this(ManagementFactory.getPlatformMBeanServer(), protocol, transport, address);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param mBeanServer the MBeanServer in which we find the MBeans.
+	 * @param protocol the format of the metrics.
+	 * @param transport how the metrics are sent.
+	 * @param address the address of the server.
+	 */
+	public MetricsExporter(MBeanServer mBeanServer, Protocol protocol, Transport transport,
+			InetSocketAddress address) {
+
+		if (mBeanServer == null) {
+			throw new IllegalArgumentException("No MBeanServer specified.");
+		}
+
+		if (protocol == null) {
+			throw new IllegalArgumentException("No protocol specified.");
+		}
+
+		if (transport == null) {
+			throw new IllegalArgumentException("No transport specified.");
+		}
+
+		if (address == null) {
+			throw new IllegalArgumentException("No address specified.");
+		}
+
+		this.mBeanServer = mBeanServer;
+		this.protocol = protocol;
+		this.transport = transport;
+		this.address = address;
+
+	}
+
+	/**
+	 * Selects attributes to be exported. Values that are not numbers are ignored.
+	 *
+	 * @param pattern the name of the MBeans, can be a pattern.
+	 * @param attributes the names of the attributes.
+	 *
+	 * @return itself, so calls can be chained.
+	 * @throws IllegalArgumentException if the pattern is not a valid ObjectName.
+	 */
+	public synchronized MetricsExporter sample(String pattern, String... attributes) throws IllegalArgumentException {
+
+		if (pattern == null) {
+			throw new IllegalArgumentException("No pattern specified.");
+		}
+
+		if (attributes == null || attributes.length == 0) {
+			throw new IllegalArgumentException("No attributes specified.");
+		}
+
+		try {
+			samples.add( new Sample(new ObjectName(pattern), attributes) );
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException("Invalid pattern: " + pattern, e);
+		}
+
+		return this;
+
+	}
+
+	/**
+	 * @param prefix the prefix of the names of the metrics (e.g. the name of the application), a dot is added.
+	 *
+	 * @return itself, so calls can be chained.
+	 */
+	public synchronized MetricsExporter prefix(String prefix) {
+
+		checkNotStarted();
+		this.prefix = prefix == null || "".equals(prefix) ? "" : sanitize(prefix, true) + ".";
+
+		// the names are encoded again with the new prefix
+		for (Sample sample : samples) {
+			sample.targets.clear();
+		}
+
+		return this;
+
+	}
+
+	/**
+	 * @param interval the milliseconds between two reports.
+	 *
+	 * @return itself, so calls can be chained.
+	 */
+	public synchronized MetricsExporter interval(long interval) {
+
+		if (interval <= 0) {
+			throw new IllegalArgumentException("The interval must be positive.");
+		}
+
+		checkNotStarted();
+		this.interval = interval;
+
+		return this;
+
+	}
+
+	/**
+	 * @param maxPacketSize the maximum size in bytes of a datagram (or of a TCP write).
+	 *
+	 * @return itself, so calls can be chained.
+	 */
+	public synchronized MetricsExporter maxPacketSize(int maxPacketSize) {
+
+		if (maxPacketSize < 64) {
+			throw new IllegalArgumentException("The maximum packet size must be at least 64 bytes.");
+		}
+
+		if (writer != null) {
+			throw new IllegalStateException("Cannot change the maximum packet size after the first report.");
+		}
+
+		this.maxPacketSize = maxPacketSize;
+
+		return this;
+
+	}
+
+	/**
+	 * Starts sending the metrics every interval, in a daemon thread.
+	 */
+	public synchronized void start() {
+
+		if (executor != null) {
+			throw new IllegalStateException("Already started.");
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "jmx-metrics-exporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+
+		executor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				report();
+			}
+
+		}, interval, interval, TimeUnit.MILLISECONDS);
+
+	}
+
+	/**
+	 * Stops sending the metrics and closes the connection. Does nothing if it was not started.
+	 */
+	public synchronized void stop() {
+
+		if (executor == null) {
+			return;
+		}
+
+		executor.shutdown();
+		executor = null;
+
+		if (writer != null) {
+			writer.close();
+		}
+
+	}
+
+	/**
+	 * Reads the selected attributes and sends them now. It's called every interval after {@link #start()}.
+	 */
+	public synchronized void report() {
+
+		if (writer == null) {
+			writer = new PacketWriter(address, transport == Transport.TCP, maxPacketSize);
+		}
+		writer.connect();
+
+		byte[] suffix = suffix();
+
+		for (Sample sample : samples) {
+
+			refresh(sample);
+
+			for (Target target : sample.targets.values()) {
+				for (int i=0; i < target.attributes.length; i++) {
+
+					if (target.names[i] == null) {
+						continue;
+					}
+
+					double value;
+					try {
+						value = Management.getDouble(mBeanServer, target.name, target.attributes[i]);
+					} catch (ManagementException e) {
+						if (!isTransient(e)) {
+							target.names[i] = null;
+						}
+						continue;
+					}
+
+					if (Double.isNaN(value) || Double.isInfinite(value)) {
+						continue;
+					}
+
+					if (!writer.startMetric(target.names[i].length + PacketWriter.MAX_NUMBER_LENGTH + suffix.length)) {
+						// the name is too long for a packet
+						target.names[i] = null;
+						continue;
+					}
+
+					writer.put(target.names[i]);
+					writer.putDouble(value);
+					writer.put(suffix);
+					writer.endMetric();
+
+				}
+			}
+
+		}
+
+		writer.flush();
+
+	}
+
+	/**
+	 * Helper method. Tells if the error reading an attribute was thrown by the getter, so the attribute is read again
+	 * in the next report. If the attribute doesn't exist, is not a number or the MBean was not created by the library
+	 * the attribute is not read again.
+	 */
+	private static boolean isTransient(ManagementException e) {
+
+		if (!(e.getCause() instanceof MBeanException)) {
+			return false;
+		}
+
+		return !(e.getCause().getCause() instanceof IllegalArgumentException);
+
+	}
+
+	/**
+	 * Helper method. Finds the MBeans that match the pattern of a sample, keeping the names of the metrics of the
+	 * ones that were already found and forgetting the ones that were unregistered.
+	 */
+	private void refresh(Sample sample) {
+
+		Set<ObjectName> names = mBeanServer.queryNames(sample.pattern, null);
+
+		Iterator<ObjectName> iterator = sample.targets.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (!names.contains( iterator.next() )) {
+				iterator.remove();
+			}
+		}
+
+		for (ObjectName name : names) {
+			if (!sample.targets.containsKey(name)) {
+				sample.targets.put( name, new Target(name, sample.attributes, metricName(name)) );
+			}
+		}
+
+	}
+
+	/**
+	 * Helper method. Builds the part of the metric name that comes from the MBean name: the prefix, the domain and
+	 * the values of the key properties, separated by dots.
+	 */
+	private String metricName(ObjectName name) {
+
+		StringBuilder metricName = new StringBuilder(prefix);
+		metricName.append( sanitize(name.getDomain(), true) );
+
+		for (String property : name.getKeyPropertyListString().split(",")) {
+
+			String value = property.substring(property.indexOf('=') + 1);
+			if (value.startsWith("\"")) {
+				value = ObjectName.unquote(value);
+			}
+
+			metricName.append('.').append( sanitize(value, false) );
+
+		}
+
+		return metricName.toString();
+
+	}
+
+	/**
+	 * Helper method. Replaces the characters that have a meaning in the StatsD or Graphite protocols (or in the
+	 * hierarchy of the metrics) with <code>_</code>.
+	 *
+	 * @param keepDots true to keep the dots (e.g. for the domain), false to replace them.
+	 */
+	private static String sanitize(String value, boolean keepDots) {
+
+		StringBuilder sanitized = new StringBuilder(value.length());
+		for (int i=0; i < value.length(); i++) {
+
+			char c = value.charAt(i);
+			boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+					|| c == '-' || (keepDots && c == '.');
+			sanitized.append(valid ? c : '_');
+
+		}
+
+		return sanitized.toString();
+
+	}
+
+	/**
+	 * Helper method. The bytes that follow the value of each metric.
+	 */
+	private byte[] suffix() {
+
+		if (protocol == Protocol.STATSD) {
+			return GAUGE_SUFFIX;
+		}
+
+		return (" " + System.currentTimeMillis() / 1000 + "\n").getBytes();
+
+	}
+
+	/**
+	 * Helper method. Checks that the exporter was not started.
+	 */
+	private void checkNotStarted() {
+		if (executor != null) {
+			throw new IllegalStateException("Cannot be changed after the exporter is started.");
+		}
+	}
+
+	/**
+	 * @return the number of packets that were sent.
+	 */
+	public synchronized long getSentPackets() {
+		return writer != null ? writer.getSentPackets() : 0;
+	}
+
+	/**
+	 * @return the number of metrics that were sent.
+	 */
+	public synchronized long getSentMetrics() {
+		return writer != null ? writer.getSentMetrics() : 0;
+	}
+
+	/**
+	 * @return the number of metrics that were dropped because the socket was full or the server was not reachable.
+	 */
+	public synchronized long getDroppedMetrics() {
+		return writer != null ? writer.getDroppedMetrics() : 0;
+	}
+
+	/**
+	 * The attributes that are exported of the MBeans that match a pattern.
+	 */
+	private static class Sample {
+
+		private final ObjectName pattern;
+
+		private final String[] attributes;
+
+		/**
+		 * The MBeans that matched the pattern in the last report.
+		 */
+		private final Map<ObjectName,Target> targets = new HashMap<ObjectName,Target>();
+
+		public Sample(ObjectName pattern, String[] attributes) {
+			this.pattern = pattern;
+			this.attributes = attributes;
+		}
+
+	}
+
+	/**
+	 * An MBean that is exported with the encoded names of its metrics.
+	 */
+	private class Target {
+
+		private final ObjectName name;
+
+		private final String[] attributes;
+
+		/**
+		 * The encoded name of each metric followed by the separator of the value, null if the attribute is skipped.
+		 */
+		private final byte[][] names;
+
+		public Target(ObjectName name, String[] attributes, String metricName) {
+
+			this.name = name;
+			this.attributes = attributes;
+			this.names = new byte[attributes.length][];
+
+			char separator = protocol == Protocol.STATSD ? ':' : ' ';
+			for (int i=0; i < attributes.length; i++) {
+				names[i] = (metricName + "." + sanitize(attributes[i], false) + separator).getBytes();
+			}
+
+		}
+
+	}
+
+}
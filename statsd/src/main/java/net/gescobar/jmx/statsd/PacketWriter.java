@@ -0,0 +1,316 @@
+package net.gescobar.jmx.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>Packs metric lines into a reused buffer of at most <code>maxPacketSize</code> bytes and sends each full buffer
+ * over a non-blocking channel, so many metrics travel in each datagram (or TCP write) and nothing is allocated for
+ * each metric.</p>
+ *
+ * <p>The channel is never waited on. If a datagram doesn't fit in the send buffer of the socket, or the previous TCP
+ * packet was not completely written, the packet is dropped (and counted) instead of blocking the exporter. TCP
+ * packets are dropped whole, so the stream stays aligned to lines. If the connection fails it's closed and opened
+ * again with the next packet.</p>
+ *
+ * <p>This class is not thread-safe, it's used by one exporter at a time.</p>
+ *
+ * @author German Escobar
+ */
+class PacketWriter {
+
+	/**
+	 * The maximum number of bytes of a number written by {@link #putDouble(double)}.
+	 */
+	public static final int MAX_NUMBER_LENGTH = 32;
+
+	private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+	private final InetSocketAddress address;
+
+	private final boolean tcp;
+
+	/**
+	 * The metrics that are being packed.
+	 */
+	private final ByteBuffer packet;
+
+	/**
+	 * The rest of a TCP packet that was partially written.
+	 */
+	private final ByteBuffer pending;
+
+	/**
+	 * The number of metrics in the packet.
+	 */
+	private int metrics;
+
+	private ByteChannel channel;
+
+	private long sentPackets;
+
+	private long sentMetrics;
+
+	private long droppedMetrics;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param address the address of the StatsD or Graphite server.
+	 * @param tcp true to send the packets over TCP, false to send them over UDP.
+	 * @param maxPacketSize the maximum size of a packet in bytes.
+	 */
+	public PacketWriter(InetSocketAddress address, boolean tcp, int maxPacketSize) {
+		this.address = address;
+		this.tcp = tcp;
+		this.packet = ByteBuffer.allocateDirect(maxPacketSize);
+		this.pending = ByteBuffer.allocateDirect(maxPacketSize);
+		this.pending.flip();
+	}
+
+	/**
+	 * Opens the channel if it's not open, so a TCP connection has time to be established while the metrics are
+	 * packed.
+	 */
+	public void connect() {
+
+		if (channel != null) {
+			return;
+		}
+
+		try {
+			channel = open();
+		} catch (IOException e) {
+			// the server is not reachable, it's tried again with the first packet
+		}
+
+	}
+
+	/**
+	 * Makes room for a metric of at most <code>length</code> bytes, sending the packet if it doesn't fit.
+	 *
+	 * @param length the maximum length of the metric.
+	 *
+	 * @return false if the metric doesn't fit in an empty packet, true otherwise.
+	 */
+	public boolean startMetric(int length) {
+
+		if (length > packet.capacity()) {
+			return false;
+		}
+
+		if (packet.remaining() < length) {
+			flush();
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Marks the end of a metric that was written with the <code>put</code> methods after
+	 * {@link #startMetric(int)}.
+	 */
+	public void endMetric() {
+		metrics++;
+	}
+
+	public void put(byte[] bytes) {
+		packet.put(bytes);
+	}
+
+	/**
+	 * Writes a number in decimal notation without allocating: integers without decimals and other numbers with up
+	 * to 6 decimals. Numbers whose absolute value is 1e15 or more are rounded.
+	 */
+	public void putDouble(double value) {
+
+		if (value == (long) value || Math.abs(value) >= 1e15) {
+			putLong( Math.round(value) );
+			return;
+		}
+
+		if (value < 0) {
+			packet.put( (byte) '-' );
+			value = -value;
+		}
+
+		long integral = (long) value;
+		long fraction = Math.round( (value - integral) * 1000000 );
+		if (fraction == 1000000) {
+			integral++;
+			fraction = 0;
+		}
+
+		putLong(integral);
+		if (fraction == 0) {
+			return;
+		}
+
+		// the six digits of the fraction without the trailing zeros
+		int digits = 6;
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			digits--;
+		}
+
+		packet.put( (byte) '.' );
+		int start = packet.position();
+		for (int i=0; i < digits; i++) {
+			packet.put( start + digits - 1 - i, (byte) ('0' + fraction % 10) );
+			fraction /= 10;
+		}
+		packet.position(start + digits);
+
+	}
+
+	public void putLong(long value) {
+
+		if (value == Long.MIN_VALUE) {
+			packet.put(MIN_LONG);
+			return;
+		}
+
+		if (value < 0) {
+			packet.put( (byte) '-' );
+			value = -value;
+		}
+
+		// write the digits backwards and reverse them
+		int start = packet.position();
+		do {
+			packet.put( (byte) ('0' + value % 10) );
+			value /= 10;
+		} while (value > 0);
+
+		for (int i = start, j = packet.position() - 1; i < j; i++, j--) {
+			byte b = packet.get(i);
+			packet.put( i, packet.get(j) );
+			packet.put(j, b);
+		}
+
+	}
+
+	/**
+	 * Sends the metrics that were packed, if any.
+	 */
+	public void flush() {
+
+		if (metrics == 0) {
+			packet.clear();
+			return;
+		}
+
+		packet.flip();
+		try {
+
+			if (send()) {
+				sentPackets++;
+				sentMetrics += metrics;
+			} else {
+				droppedMetrics += metrics;
+			}
+
+		} catch (IOException e) {
+			// the server is not listening or the connection was closed, it's opened again with the next packet
+			droppedMetrics += metrics;
+			close();
+		} finally {
+			packet.clear();
+			metrics = 0;
+		}
+
+	}
+
+	/**
+	 * Helper method. Writes the packet without blocking.
+	 *
+	 * @return true if the packet was sent (or at least partially written if it's TCP), false if it was dropped.
+	 */
+	private boolean send() throws IOException {
+
+		if (channel == null) {
+			channel = open();
+		}
+
+		if (!tcp) {
+			return channel.write(packet) > 0;
+		}
+
+		SocketChannel socketChannel = (SocketChannel) channel;
+		if (!socketChannel.isConnected() && !socketChannel.finishConnect()) {
+			return false;
+		}
+
+		// the rest of the previous packet goes first, if it can't be written the new packet is dropped
+		if (pending.hasRemaining()) {
+			socketChannel.write(pending);
+			if (pending.hasRemaining()) {
+				return false;
+			}
+		}
+
+		socketChannel.write(packet);
+		if (packet.hasRemaining()) {
+			pending.clear();
+			pending.put(packet);
+			pending.flip();
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Helper method. Opens a non-blocking channel to the server.
+	 */
+	private ByteChannel open() throws IOException {
+
+		if (tcp) {
+			SocketChannel socketChannel = SocketChannel.open();
+			socketChannel.configureBlocking(false);
+			socketChannel.connect(address);
+			return socketChannel;
+		}
+
+		DatagramChannel datagramChannel = DatagramChannel.open();
+		datagramChannel.configureBlocking(false);
+		datagramChannel.connect(address);
+		return datagramChannel;
+
+	}
+
+	/**
+	 * Closes the channel, a new one is opened with the next packet.
+	 */
+	public void close() {
+
+		pending.clear();
+		pending.flip();
+
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {}
+			channel = null;
+		}
+
+	}
+
+	public long getSentPackets() {
+		return sentPackets;
+	}
+
+	public long getSentMetrics() {
+		return sentMetrics;
+	}
+
+	public long getDroppedMetrics() {
+		return droppedMetrics;
+	}
+
+}
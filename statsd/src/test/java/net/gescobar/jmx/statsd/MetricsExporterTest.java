@@ -0,0 +1,218 @@
+package net.gescobar.jmx.statsd;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.gescobar.jmx.Management;
+import net.gescobar.jmx.annotation.ManagedAttribute;
+import net.gescobar.jmx.statsd.MetricsExporter.Protocol;
+import net.gescobar.jmx.statsd.MetricsExporter.Transport;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MetricsExporterTest {
+
+	@Test
+	public void shouldSendGaugesOverUdp() throws Exception {
+
+		Management.register(new Counter(5, 0.25), "org.test.statsd:type=Counter,name=first");
+		Management.register(new Counter(-7, 1.5), "org.test.statsd:type=Counter,name=\"second one\"");
+
+		DatagramSocket listener = new DatagramSocket( new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0) );
+		listener.setSoTimeout(5000);
+
+		try {
+
+			MetricsExporter exporter = new MetricsExporter(Protocol.STATSD, Transport.UDP,
+					(InetSocketAddress) listener.getLocalSocketAddress())
+					.sample("org.test.statsd:type=Counter,*", "counter", "load", "name", "missing")
+					.prefix("app");
+			exporter.report();
+
+			DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+			listener.receive(packet);
+
+			// all the metrics in one datagram, the string and missing attributes are skipped
+			List<String> lines = Arrays.asList( new String(packet.getData(), 0, packet.getLength(), "UTF-8")
+					.split("\n") );
+			Assert.assertEquals( lines.size(), 4 );
+			Assert.assertTrue( lines.contains("app.org.test.statsd.Counter.first.counter:5|g") );
+			Assert.assertTrue( lines.contains("app.org.test.statsd.Counter.first.load:0.25|g") );
+			Assert.assertTrue( lines.contains("app.org.test.statsd.Counter.second_one.counter:-7|g") );
+			Assert.assertTrue( lines.contains("app.org.test.statsd.Counter.second_one.load:1.5|g") );
+
+			Assert.assertEquals( exporter.getSentMetrics(), 4 );
+			Assert.assertEquals( exporter.getSentPackets(), 1 );
+
+		} finally {
+			listener.close();
+			Management.unregister("org.test.statsd:type=Counter,name=first");
+			Management.unregister("org.test.statsd:type=Counter,name=\"second one\"");
+		}
+
+	}
+
+	@Test
+	public void shouldPackManyMetricsInDatagrams() throws Exception {
+
+		int mBeans = 5000;
+		for (int i=0; i < mBeans; i++) {
+			Management.register(new Counter(i, i / 3.0), "org.test.statsd.many:type=Counter,name=c" + i);
+		}
+
+		final DatagramSocket listener = new DatagramSocket( new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0) );
+		listener.setReceiveBufferSize(4 * 1024 * 1024);
+		listener.setSoTimeout(1000);
+
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicInteger oversized = new AtomicInteger();
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		Thread receiver = new Thread() {
+
+			@Override
+			public void run() {
+
+				DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+				try {
+					while (true) {
+						listener.receive(packet);
+						if (packet.getLength() > MetricsExporter.DEFAULT_MAX_PACKET_SIZE) {
+							oversized.incrementAndGet();
+						}
+						for (int i=0; i < packet.getLength(); i++) {
+							if (packet.getData()[i] == '\n') {
+								received.incrementAndGet();
+							}
+						}
+					}
+				} catch (SocketTimeoutException e) {
+				} catch (Exception e) {
+					error.set(e);
+				}
+
+			}
+
+		};
+		receiver.start();
+
+		try {
+
+			MetricsExporter exporter = new MetricsExporter(Protocol.STATSD, Transport.UDP,
+					(InetSocketAddress) listener.getLocalSocketAddress())
+					.sample("org.test.statsd.many:*", "counter", "load", "errors", "ratio");
+
+			// the first report encodes the names
+			exporter.report();
+
+			long start = System.nanoTime();
+			exporter.report();
+			long millis = (System.nanoTime() - start) / 1000000;
+
+			receiver.join();
+
+			if (error.get() != null) {
+				Assert.fail("the listener failed", error.get());
+			}
+			Assert.assertEquals( exporter.getSentMetrics() + exporter.getDroppedMetrics(), 2 * 4 * mBeans );
+			Assert.assertTrue( exporter.getSentPackets() < exporter.getSentMetrics() / 10 );
+			Assert.assertTrue( received.get() > 0 );
+			Assert.assertEquals( oversized.get(), 0 );
+			Assert.assertTrue( millis < 2000, "20000 metrics took " + millis + " ms" );
+
+		} finally {
+			listener.close();
+			for (int i=0; i < mBeans; i++) {
+				Management.unregister("org.test.statsd.many:type=Counter,name=c" + i);
+			}
+		}
+
+	}
+
+	@Test
+	public void shouldSendGraphiteLinesOverTcp() throws Exception {
+
+		Management.register(new Counter(42, 0.5), "org.test.graphite:type=Counter");
+
+		ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		server.setSoTimeout(5000);
+
+		try {
+
+			MetricsExporter exporter = new MetricsExporter(Protocol.GRAPHITE, Transport.TCP,
+					(InetSocketAddress) server.getLocalSocketAddress())
+					.sample("org.test.graphite:*", "counter");
+			exporter.report();
+
+			Socket socket = server.accept();
+			socket.setSoTimeout(5000);
+			BufferedReader reader = new BufferedReader( new InputStreamReader(socket.getInputStream(), "UTF-8") );
+
+			// the first packet is dropped if the connection was not established yet
+			exporter.report();
+
+			List<String> line = new ArrayList<String>( Arrays.asList(reader.readLine().split(" ")) );
+			Assert.assertEquals( line.get(0), "org.test.graphite.Counter.counter" );
+			Assert.assertEquals( line.get(1), "42" );
+			Assert.assertTrue( Math.abs(Long.parseLong(line.get(2)) - System.currentTimeMillis() / 1000) < 60 );
+
+			socket.close();
+
+		} finally {
+			server.close();
+			Management.unregister("org.test.graphite:type=Counter");
+		}
+
+	}
+
+	public static class Counter {
+
+		private final long counter;
+
+		private final double load;
+
+		public Counter(long counter, double load) {
+			this.counter = counter;
+			this.load = load;
+		}
+
+		@ManagedAttribute
+		public long getCounter() {
+			return counter;
+		}
+
+		@ManagedAttribute
+		public double getLoad() {
+			return load;
+		}
+
+		@ManagedAttribute
+		public int getErrors() {
+			return (int) (counter % 10);
+		}
+
+		@ManagedAttribute
+		public double getRatio() {
+			return load / 100;
+		}
+
+		@ManagedAttribute
+		public String getName() {
+			return "counter";
+		}
+
+	}
+
+}